@@ -0,0 +1,61 @@
+package com.uniolab.testeinventario.benchmark;
+
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+import com.uniolab.testeinventario.model.InventoryEntry;
+import com.uniolab.testeinventario.model.InventoryReserveEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+
+/**
+ * InventoryManager write paths and the balance-existence probes they run. Subclasses fix the
+ * mode and thread count: {@link InventoryManagerLatencyBenchmark} samples single-threaded
+ * latency, {@link InventoryManagerThroughputBenchmark} measures contended throughput.
+ * The {@code keys} parameter of {@link InventoryState} selects one hot key or random cold keys.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public abstract class InventoryManagerBenchmark {
+
+    @Benchmark
+    public InventoryEntry add(InventoryState state) {
+        return state.inventoryManager.add(LocalDateTime.now(), state.product(), state.deposit, 2);
+    }
+
+    @Benchmark
+    public InventoryEntry remove(InventoryState state) {
+        return state.inventoryManager.remove(LocalDateTime.now(), state.product(), state.deposit, 1);
+    }
+
+    @Benchmark
+    public InventoryEntry balance(InventoryState state) {
+        return state.inventoryManager.balance(LocalDateTime.now(), state.product(), state.deposit, 100);
+    }
+
+    @Benchmark
+    public void transfer(InventoryState state) {
+        state.inventoryManager.transfer(LocalDateTime.now(), state.product(), state.deposit, state.otherDeposit, 1);
+    }
+
+    @Benchmark
+    public void reserveAndRelease(InventoryState state) {
+        InventoryReserveEntry reserve = state.inventoryManager.addReserve(LocalDateTime.now(), state.product(), state.deposit, 1);
+        state.inventoryManager.releaseReserve(reserve.getReference());
+    }
+
+    @Benchmark
+    public boolean balanceExistsFrom(InventoryState state) {
+        return state.inventoryEntryRepository.existsByProductIdAndDepositIdAndTypeAndDateGreaterThanEqual(
+                state.product().getId(), state.deposit.getId(), InventoryEntryType.BALANCE, InventoryState.HISTORY_START);
+    }
+
+    @Benchmark
+    public boolean balanceExistsAfter(InventoryState state) {
+        return state.inventoryEntryRepository.existsByProductIdAndDepositIdAndTypeAndDateGreaterThan(
+                state.product().getId(), state.deposit.getId(), InventoryEntryType.BALANCE, LocalDateTime.now());
+    }
+}
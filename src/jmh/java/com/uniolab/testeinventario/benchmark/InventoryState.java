@@ -0,0 +1,100 @@
+package com.uniolab.testeinventario.benchmark;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.TesteInventarioApplication;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.repository.InventoryEntryRepository;
+import com.uniolab.testeinventario.service.DepositService;
+import com.uniolab.testeinventario.service.InventoryManager;
+import com.uniolab.testeinventario.service.ProductService;
+import com.uniolab.testeinventario.service.StockRecomputeService;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Application context on an embedded H2 database, seeded once per fork with {@code coldKeys + 1}
+ * products in two deposits, each with {@code historyPerKey} past movements (a BALANCE every 30th).
+ * History rows are generated in SQL and DepositHasProduct is then rebuilt from them, so seeding
+ * goes through the same tables the benchmarked paths read.
+ */
+@State(Scope.Benchmark)
+public class InventoryState {
+
+    static final LocalDateTime HISTORY_START = LocalDateTime.of(2015, 1, 1, 0, 0);
+
+    @Param({"hot", "cold"})
+    public String keys;
+
+    @Param("1000")
+    public int coldKeys;
+
+    @Param("200")
+    public int historyPerKey;
+
+    ConfigurableApplicationContext context;
+    InventoryManager inventoryManager;
+    InventoryEntryRepository inventoryEntryRepository;
+    Deposit deposit;
+    Deposit otherDeposit;
+    Product hot;
+    Product[] cold;
+
+    @Setup(Level.Trial)
+    public void start() throws InterruptedException {
+        context = new SpringApplicationBuilder(TesteInventarioApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.shell.interactive.enabled=false",
+                        "inventory.scheduling.enabled=false",
+                        "logging.level.com.uniolab=warn")
+                .run();
+        inventoryManager = context.getBean(InventoryManager.class);
+        inventoryEntryRepository = context.getBean(InventoryEntryRepository.class);
+
+        DepositService depositService = context.getBean(DepositService.class);
+        ProductService productService = context.getBean(ProductService.class);
+        deposit = depositService.create(InventoryFixtures.deposit());
+        otherDeposit = depositService.create(InventoryFixtures.deposit());
+        hot = productService.create(InventoryFixtures.product());
+        cold = new Product[coldKeys];
+        for (int i = 0; i < coldKeys; i++) {
+            cold[i] = productService.create(InventoryFixtures.product());
+        }
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        seed(jdbcTemplate, hot, 0);
+        for (int i = 0; i < coldKeys; i++) {
+            seed(jdbcTemplate, cold[i], i + 1);
+        }
+        context.getBean(StockRecomputeService.class).rebuildAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    Product product() {
+        return "hot".equals(keys) ? hot : cold[ThreadLocalRandom.current().nextInt(cold.length)];
+    }
+
+    private void seed(JdbcTemplate jdbcTemplate, Product product, int index) {
+        jdbcTemplate.update("INSERT INTO inventory_entry (id, type, quantity, date, registration_date, deposit_id, product_id) " +
+                        "SELECT CAST(? AS BIGINT) + x, CASE WHEN MOD(x, 30) = 0 THEN 'BALANCE' WHEN MOD(x, 3) = 0 THEN 'OUT' ELSE 'IN' END, " +
+                        "CASE WHEN MOD(x, 30) = 0 THEN 100 ELSE 1 + MOD(x, 5) END, " +
+                        "DATEADD(HOUR, x, CAST(? AS TIMESTAMP)), CURRENT_TIMESTAMP, ?, ? FROM SYSTEM_RANGE(1, ?)",
+                1_000_000_000L + (long) index * historyPerKey, HISTORY_START,
+                deposit.getId(), product.getId(), historyPerKey);
+    }
+}
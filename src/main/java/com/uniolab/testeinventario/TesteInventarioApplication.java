@@ -2,12 +2,38 @@ package com.uniolab.testeinventario;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class TesteInventarioApplication {
 
+	/**
+	 * Profile of a single command run, see application-cli.properties.
+	 */
+	public static final String CLI_PROFILE = "cli";
+
+	/**
+	 * Without arguments starts the interactive shell. With a command, e.g.
+	 * {@code add-inventory-entry --date "01/01/2024 10:00:00" --sku 123 --quantity 1 --depositName Teste},
+	 * runs it under the {@value #CLI_PROFILE} profile and exits with its exit code. A context
+	 * processed ahead of time by {@code mvn -Pfast-start package} is used with
+	 * {@code -Dspring.aot.enabled=true}.
+	 */
 	public static void main(String[] args) {
-		SpringApplication.run(TesteInventarioApplication.class, args);
+		SpringApplication application = new SpringApplication(TesteInventarioApplication.class);
+		if (!isCommand(args)) {
+			application.run(args);
+			return;
+		}
+		application.setAdditionalProfiles(CLI_PROFILE);
+		// read before any profile is loaded, restarting would build the context twice
+		System.setProperty("spring.devtools.restart.enabled", "false");
+		System.exit(SpringApplication.exit(application.run(args)));
+	}
+
+	private static boolean isCommand(String[] args) {
+		return args.length > 0 && !args[0].startsWith("--");
 	}
 
 }
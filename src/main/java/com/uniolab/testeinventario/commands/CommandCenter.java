@@ -1,19 +1,80 @@
 package com.uniolab.testeinventario.commands;
 
+import com.uniolab.testeinventario.config.ArchiveProperties;
+import com.uniolab.testeinventario.config.ReservationProperties;
+import com.uniolab.testeinventario.dto.CatalogEntry;
+import com.uniolab.testeinventario.dto.DailyStock;
+import com.uniolab.testeinventario.dto.DepositStockRow;
+import com.uniolab.testeinventario.dto.IngestResult;
+import com.uniolab.testeinventario.dto.InTransitRow;
+import com.uniolab.testeinventario.dto.KeyConflictStats;
+import com.uniolab.testeinventario.dto.ManifestLine;
+import com.uniolab.testeinventario.dto.MovementRow;
+import com.uniolab.testeinventario.dto.OrderLine;
+import com.uniolab.testeinventario.dto.ReplenishmentRow;
+import com.uniolab.testeinventario.dto.StockKey;
+import com.uniolab.testeinventario.dto.StockLevel;
+import com.uniolab.testeinventario.dto.StockoutForecastResult;
+import com.uniolab.testeinventario.dto.StockoutRow;
+import com.uniolab.testeinventario.dto.TransferProposal;
+import com.uniolab.testeinventario.enums.LockingMode;
 import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.InventoryEntry;
+import com.uniolab.testeinventario.model.InventoryReserveEntry;
 import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.model.TransferManifest;
 import com.uniolab.testeinventario.repository.DepositRepository;
 import com.uniolab.testeinventario.repository.ProductRepository;
+import com.uniolab.testeinventario.service.CatalogLookup;
 import com.uniolab.testeinventario.service.DepositService;
+import com.uniolab.testeinventario.service.InventoryArchiveService;
 import com.uniolab.testeinventario.service.InventoryManager;
+import com.uniolab.testeinventario.service.LowWatermarkMonitor;
+import com.uniolab.testeinventario.service.MovementExportService;
+import com.uniolab.testeinventario.service.MovementImportService;
+import com.uniolab.testeinventario.service.MovementIngestService;
+import com.uniolab.testeinventario.service.MovementTotalService;
 import com.uniolab.testeinventario.service.ProductService;
+import com.uniolab.testeinventario.service.ReplenishmentService;
+import com.uniolab.testeinventario.service.ReservationSweeper;
+import com.uniolab.testeinventario.service.StockCache;
+import com.uniolab.testeinventario.service.StockChangeFeed;
+import com.uniolab.testeinventario.service.StockChangeReader;
+import com.uniolab.testeinventario.service.StockHistoryService;
+import com.uniolab.testeinventario.service.StockQueryService;
+import com.uniolab.testeinventario.service.StockRecomputeService;
+import com.uniolab.testeinventario.service.StockWriteConcurrency;
+import com.uniolab.testeinventario.service.StockoutForecastService;
+import com.uniolab.testeinventario.service.TransferManifestService;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
 import lombok.RequiredArgsConstructor;
 import org.springframework.shell.standard.ShellComponent;
 import org.springframework.shell.standard.ShellMethod;
 import org.springframework.shell.standard.ShellOption;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @ShellComponent
 @RequiredArgsConstructor
@@ -24,6 +85,26 @@ public class CommandCenter {
     private final DepositRepository depositRepository;
     private final ProductRepository productRepository;
     private final InventoryManager inventoryManager;
+    private final CatalogLookup catalogLookup;
+    private final MovementImportService movementImportService;
+    private final MovementExportService movementExportService;
+    private final MovementIngestService movementIngestService;
+    private final MovementTotalService movementTotalService;
+    private final StockQueryService stockQueryService;
+    private final StockCache stockCache;
+    private final StockHistoryService stockHistoryService;
+    private final StockRecomputeService stockRecomputeService;
+    private final MeterRegistry meterRegistry;
+    private final ReservationSweeper reservationSweeper;
+    private final ReservationProperties reservationProperties;
+    private final ReplenishmentService replenishmentService;
+    private final LowWatermarkMonitor lowWatermarkMonitor;
+    private final InventoryArchiveService inventoryArchiveService;
+    private final ArchiveProperties archiveProperties;
+    private final StockWriteConcurrency stockWriteConcurrency;
+    private final TransferManifestService transferManifestService;
+    private final StockChangeFeed stockChangeFeed;
+    private final StockoutForecastService stockoutForecastService;
 
     @ShellMethod(key = "init-bd")
     public String initializeDatabase() {
@@ -61,32 +142,34 @@ public class CommandCenter {
     public void addInventoryEntry(@ShellOption String date,
                                   @ShellOption String sku,
                                   @ShellOption int quantity,
-                                  @ShellOption String depositName) {
+                                  @ShellOption String depositName,
+                                  @ShellOption(defaultValue = ShellOption.NULL, help = "key of the movement at its sender, a redelivery changes nothing") String idempotencyKey) {
         //transforms date string into a date object
         //format dd/MM/yyyy HH:mm:ss
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
         LocalDateTime localDateTime = LocalDateTime.parse(date, formatter);
 
-        Product product = productRepository.findBySku(sku).orElseThrow(() -> new IllegalArgumentException("Product not found"));
-        Deposit deposit = depositRepository.findByName(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
+        Product product = catalogLookup.findProduct(sku).orElseThrow(() -> new IllegalArgumentException("Product not found"));
+        Deposit deposit = catalogLookup.findDeposit(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
 
-        inventoryManager.add(localDateTime, product, deposit, quantity);
+        inventoryManager.add(localDateTime, product, deposit, quantity, idempotencyKey);
     }
 
     @ShellMethod(key = "remove-inventory-entry")
     public void removeInventoryEntry(@ShellOption String date,
                                      @ShellOption String sku,
                                      @ShellOption int quantity,
-                                     @ShellOption String depositName) {
+                                     @ShellOption String depositName,
+                                     @ShellOption(defaultValue = ShellOption.NULL, help = "key of the movement at its sender, a redelivery changes nothing") String idempotencyKey) {
         //transforms date string into a date object
         //format dd/MM/yyyy HH:mm:ss
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
         LocalDateTime localDateTime = LocalDateTime.parse(date, formatter);
 
-        Product product = productRepository.findBySku(sku).orElseThrow(() -> new IllegalArgumentException("Product not found"));
-        Deposit deposit = depositRepository.findByName(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
+        Product product = catalogLookup.findProduct(sku).orElseThrow(() -> new IllegalArgumentException("Product not found"));
+        Deposit deposit = catalogLookup.findDeposit(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
 
-        inventoryManager.remove(localDateTime, product, deposit, quantity);
+        inventoryManager.remove(localDateTime, product, deposit, quantity, idempotencyKey);
     }
 
     @ShellMethod(key = "rebalance-inventory")
@@ -99,8 +182,8 @@ public class CommandCenter {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
         LocalDateTime localDateTime = LocalDateTime.parse(date, formatter);
 
-        Product product = productRepository.findBySku(sku).orElseThrow(() -> new IllegalArgumentException("Product not found"));
-        Deposit deposit = depositRepository.findByName(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
+        Product product = catalogLookup.findProduct(sku).orElseThrow(() -> new IllegalArgumentException("Product not found"));
+        Deposit deposit = catalogLookup.findDeposit(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
 
         inventoryManager.balance(localDateTime, product, deposit, quantity);
     }
@@ -117,28 +200,33 @@ public class CommandCenter {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
         LocalDateTime localDateTime = LocalDateTime.parse(date, formatter);
 
-        Product product = productRepository.findBySku(sku).orElseThrow(() -> new IllegalArgumentException("Product not found"));
-        Deposit sourceDeposit = depositRepository.findByName(depositNameSource).orElseThrow(() -> new IllegalArgumentException("Source deposit not found"));
-        Deposit destinationDeposit = depositRepository.findByName(depositNameDestination).orElseThrow(() -> new IllegalArgumentException("Destination deposit not found"));
+        Product product = catalogLookup.findProduct(sku).orElseThrow(() -> new IllegalArgumentException("Product not found"));
+        Deposit sourceDeposit = catalogLookup.findDeposit(depositNameSource).orElseThrow(() -> new IllegalArgumentException("Source deposit not found"));
+        Deposit destinationDeposit = catalogLookup.findDeposit(depositNameDestination).orElseThrow(() -> new IllegalArgumentException("Destination deposit not found"));
 
         inventoryManager.transfer(localDateTime, product, sourceDeposit, destinationDeposit, quantity);
 
     }
 
     @ShellMethod(key = "add-reserve-inventory")
-    public void addReserveInventory(@ShellOption String date,
+    public String addReserveInventory(@ShellOption String date,
                                  @ShellOption String sku,
                                  @ShellOption int quantity,
-                                 @ShellOption String depositName) {
+                                 @ShellOption String depositName,
+                                 @ShellOption(defaultValue = ShellOption.NULL) String reference,
+                                 @ShellOption(defaultValue = ShellOption.NULL, help = "ISO-8601 duration, e.g. PT15M") String ttl) {
         //transforms date string into a date object
         //format dd/MM/yyyy HH:mm:ss
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
         LocalDateTime localDateTime = LocalDateTime.parse(date, formatter);
 
-        Product product = productRepository.findBySku(sku).orElseThrow(() -> new IllegalArgumentException("Product not found"));
-        Deposit deposit = depositRepository.findByName(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
+        Product product = catalogLookup.findProduct(sku).orElseThrow(() -> new IllegalArgumentException("Product not found"));
+        Deposit deposit = catalogLookup.findDeposit(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
 
-        inventoryManager.addReserve(localDateTime, product, deposit, quantity);
+        Duration timeToLive = ttl == null ? reservationProperties.defaultTtl() : Duration.parse(ttl);
+        InventoryReserveEntry reserveEntry = inventoryManager.reserve(localDateTime, product, deposit, quantity, reference, timeToLive);
+        return "Reserved " + reserveEntry.getReference() +
+                (reserveEntry.getExpiresAt() == null ? "" : " until " + reserveEntry.getExpiresAt());
     }
 
     @ShellMethod(key = "remove-reserve-inventory")
@@ -151,10 +239,533 @@ public class CommandCenter {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
         LocalDateTime localDateTime = LocalDateTime.parse(date, formatter);
 
-        Product product = productRepository.findBySku(sku).orElseThrow(() -> new IllegalArgumentException("Product not found"));
-        Deposit deposit = depositRepository.findByName(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
+        Product product = catalogLookup.findProduct(sku).orElseThrow(() -> new IllegalArgumentException("Product not found"));
+        Deposit deposit = catalogLookup.findDeposit(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
 
         inventoryManager.removeReserve(localDateTime, product, deposit, quantity);
     }
 
+    @ShellMethod(key = "release-reserve")
+    public String releaseReserve(@ShellOption String reference) {
+        inventoryManager.releaseReserve(reference);
+        return "Released " + reference;
+    }
+
+    @ShellMethod(key = "confirm-reserve")
+    public String confirmReserve(@ShellOption String reference,
+                                 @ShellOption(defaultValue = ShellOption.NULL) String date) {
+        //format dd/MM/yyyy HH:mm:ss, defaults to now
+        LocalDateTime localDateTime = date == null
+                ? LocalDateTime.now()
+                : LocalDateTime.parse(date, DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"));
+
+        InventoryEntry entry = inventoryManager.confirmReserve(reference, localDateTime);
+        return "Confirmed " + reference + " as inventory entry " + entry.getId();
+    }
+
+    @ShellMethod(key = "expire-reservations")
+    public String expireReservations() {
+        return "Released " + reservationSweeper.sweep(LocalDateTime.now()) + " expired reservations";
+    }
+
+    @ShellMethod(key = "reserve-order")
+    public String reserveOrder(@ShellOption String orderReference,
+                               @ShellOption(help = "One sku;depositName;quantity line per order line") String file,
+                               @ShellOption(defaultValue = ShellOption.NULL, help = "ISO-8601 duration, e.g. PT15M") String ttl) throws IOException {
+        List<OrderLine> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(Path.of(file), StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#") || line.startsWith("sku;")) {
+                continue;
+            }
+            String[] fields = line.split(";");
+            lines.add(new OrderLine(fields[0].trim(), fields[1].trim(), Integer.parseInt(fields[2].trim())));
+        }
+
+        Duration timeToLive = ttl == null ? reservationProperties.defaultTtl() : Duration.parse(ttl);
+        List<InventoryReserveEntry> reserves = inventoryManager.reserveOrder(orderReference, LocalDateTime.now(), lines, timeToLive);
+        return "Reserved order " + orderReference + ": " + reserves.size() + " lines";
+    }
+
+    @ShellMethod(key = "release-order")
+    public String releaseOrder(@ShellOption String orderReference) {
+        return "Released order " + orderReference + ": " + inventoryManager.releaseOrder(orderReference) + " lines";
+    }
+
+    @ShellMethod(key = "confirm-order")
+    public String confirmOrder(@ShellOption String orderReference,
+                               @ShellOption(defaultValue = ShellOption.NULL) String date) {
+        //format dd/MM/yyyy HH:mm:ss, defaults to now
+        LocalDateTime localDateTime = date == null
+                ? LocalDateTime.now()
+                : LocalDateTime.parse(date, DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"));
+
+        List<InventoryEntry> entries = inventoryManager.confirmOrder(orderReference, localDateTime);
+        return "Confirmed order " + orderReference + " as " + entries.size() + " inventory entries";
+    }
+
+    @ShellMethod(key = "dispatch-manifest")
+    public String dispatchManifest(@ShellOption String reference,
+                                   @ShellOption String sourceDepositName,
+                                   @ShellOption String destinationDepositName,
+                                   @ShellOption(help = "One sku;quantity line per manifest line") String file,
+                                   @ShellOption(defaultValue = ShellOption.NULL) String date) throws IOException {
+        //format dd/MM/yyyy HH:mm:ss, defaults to now
+        LocalDateTime localDateTime = date == null
+                ? LocalDateTime.now()
+                : LocalDateTime.parse(date, DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"));
+
+        List<ManifestLine> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(Path.of(file), StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#") || line.startsWith("sku;")) {
+                continue;
+            }
+            String[] fields = line.split(";");
+            lines.add(new ManifestLine(fields[0].trim(), Integer.parseInt(fields[1].trim())));
+        }
+        Deposit source = catalogLookup.findDeposit(sourceDepositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
+        Deposit destination = catalogLookup.findDeposit(destinationDepositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
+
+        long start = System.nanoTime();
+        TransferManifest manifest = transferManifestService.dispatch(reference, localDateTime, source, destination, lines);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return "Dispatched manifest " + reference + ": " + manifest.getLineCount() + " lines in " + elapsedMillis + " ms";
+    }
+
+    @ShellMethod(key = "receive-manifest")
+    public String receiveManifest(@ShellOption String reference,
+                                  @ShellOption(defaultValue = ShellOption.NULL) String date) {
+        //format dd/MM/yyyy HH:mm:ss, defaults to now
+        LocalDateTime localDateTime = date == null
+                ? LocalDateTime.now()
+                : LocalDateTime.parse(date, DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"));
+
+        long start = System.nanoTime();
+        List<InventoryEntry> entries = transferManifestService.receive(reference, localDateTime);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        return "Received manifest " + reference + ": " + entries.size() + " lines in " + elapsedMillis + " ms";
+    }
+
+    @ShellMethod(key = "in-transit")
+    public String inTransit(@ShellOption String depositName) {
+        Deposit deposit = catalogLookup.findDeposit(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
+
+        StringBuilder result = new StringBuilder("sku;inTransit");
+        for (InTransitRow row : transferManifestService.inTransit(deposit)) {
+            result.append('\n').append(row.sku()).append(';').append(row.quantity());
+        }
+        return result.toString();
+    }
+
+    @ShellMethod(key = "stock-changes")
+    public String stockChanges(@ShellOption(defaultValue = "1") long from,
+                               @ShellOption(defaultValue = "100") int limit) {
+        StockChangeReader reader = stockChangeFeed.reader(from);
+        StringBuilder result = new StringBuilder("sequence;operation;depositId;productId;version;delta;soh;reserved;available");
+        reader.poll(change -> result.append('\n').append(change.sequence()).append(';').append(change.operation())
+                .append(';').append(change.depositId()).append(';').append(change.productId())
+                .append(';').append(change.version()).append(';').append(change.delta())
+                .append(';').append(change.soh()).append(';').append(change.reserved())
+                .append(';').append(change.available()), limit);
+        return result.append("\nnext ").append(reader.position()).toString();
+    }
+
+    @ShellMethod(key = "import-inventory-entries")
+    public String importInventoryEntries(@ShellOption String file,
+                                         @ShellOption(defaultValue = "" + MovementImportService.DEFAULT_BATCH_SIZE) int batchSize) throws IOException {
+        long start = System.nanoTime();
+        int imported;
+        try (Reader reader = Files.newBufferedReader(Path.of(file), StandardCharsets.UTF_8)) {
+            imported = movementImportService.importCsv(reader, batchSize);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        return "Imported " + imported + " inventory entries in " + elapsedMillis + " ms";
+    }
+
+    @ShellMethod(key = "ingest-movements")
+    public String ingestMovements(@ShellOption(help = "Movements file, or - to read stdin") String source,
+                                  @ShellOption(defaultValue = "0", help = "Worker lanes, 0 for one per usable JDBC connection") int lanes) throws IOException {
+        int laneCount = lanes > 0 ? lanes : movementIngestService.defaultLanes();
+        IngestResult result;
+        if (source.equals("-")) {
+            result = movementIngestService.ingest(new InputStreamReader(System.in, StandardCharsets.UTF_8), laneCount);
+        } else {
+            try (Reader reader = Files.newBufferedReader(Path.of(source), StandardCharsets.UTF_8)) {
+                result = movementIngestService.ingest(reader, laneCount);
+            }
+        }
+
+        return String.format("Applied %d movements (%d failed) on %d lanes in %d ms, %.0f movements/s; reader blocked %d ms, connection wait %d ms",
+                result.applied(), result.failed(), laneCount, result.elapsed().toMillis(), result.throughput(),
+                result.readerBlocked().toMillis(), result.connectionWait().toMillis());
+    }
+
+    @ShellMethod(key = "watch-movements")
+    public String watchMovements(@ShellOption(help = "Directory where *.csv movement files are dropped") String dir) throws IOException {
+        movementIngestService.watch(Path.of(dir));
+        return "Watching " + dir;
+    }
+
+    @ShellMethod(key = "stop-watching-movements")
+    public String stopWatchingMovements() throws InterruptedException {
+        return movementIngestService.stopWatching() ? "Stopped watching" : "No directory watched";
+    }
+
+    @ShellMethod(key = "export-inventory-entries")
+    public String exportInventoryEntries(@ShellOption(help = "Target file, gzip compressed when ending in .gz") String file,
+                                         @ShellOption String depositName,
+                                         @ShellOption(defaultValue = ShellOption.NULL) String sku,
+                                         @ShellOption(defaultValue = ShellOption.NULL) String from,
+                                         @ShellOption(defaultValue = ShellOption.NULL) String until) throws IOException {
+        //format dd/MM/yyyy HH:mm:ss, from inclusive and until exclusive
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+        LocalDateTime fromDate = from == null ? null : LocalDateTime.parse(from, formatter);
+        LocalDateTime untilDate = until == null ? null : LocalDateTime.parse(until, formatter);
+
+        long start = System.nanoTime();
+        long exported = movementExportService.exportToFile(Path.of(file), depositName, sku, fromDate, untilDate);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        return "Exported " + exported + " inventory entries in " + elapsedMillis + " ms";
+    }
+
+    @ShellMethod(key = "availability")
+    public String availability(@ShellOption String depositName,
+                               @ShellOption(help = "Comma separated SKUs") String skus) {
+        Map<String, StockLevel> levels = stockQueryService.availability(depositName, List.of(skus.split(",")));
+
+        StringBuilder result = new StringBuilder("sku;soh;reserved;available");
+        levels.forEach((sku, level) -> result.append('\n').append(sku)
+                .append(';').append(level.soh())
+                .append(';').append(level.reserved())
+                .append(';').append(level.available()));
+        return result.toString();
+    }
+
+    @ShellMethod(key = "movements")
+    public String movements(@ShellOption String sku,
+                            @ShellOption String depositName,
+                            @ShellOption(defaultValue = ShellOption.NULL) String from,
+                            @ShellOption(defaultValue = ShellOption.NULL) String until,
+                            @ShellOption(defaultValue = "0", help = "Id of the last movement of the previous page") long afterId,
+                            @ShellOption(defaultValue = "100") int limit) {
+        //format dd/MM/yyyy HH:mm:ss, from inclusive and until exclusive
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+        LocalDateTime fromDate = from == null ? null : LocalDateTime.parse(from, formatter);
+        LocalDateTime untilDate = until == null ? null : LocalDateTime.parse(until, formatter);
+
+        List<MovementRow> rows = stockQueryService.movements(depositName, sku, fromDate, untilDate, afterId, limit);
+        Map<Long, String> depositNames = catalogNames(depositRepository.findCatalogEntries(rows.stream()
+                .map(MovementRow::transferDepositId).filter(Objects::nonNull).collect(Collectors.toSet())));
+
+        StringBuilder result = new StringBuilder("id;date;type;quantity;transferDepositName");
+        rows.forEach(row -> result.append('\n').append(row.id())
+                .append(';').append(formatter.format(row.date()))
+                .append(';').append(row.type())
+                .append(';').append(row.quantity())
+                .append(';').append(row.transferDepositId() == null ? "" : depositNames.get(row.transferDepositId())));
+        return result.toString();
+    }
+
+    @ShellMethod(key = "deposit-stock")
+    public String depositStock(@ShellOption String depositName,
+                               @ShellOption(defaultValue = "0", help = "Product id of the last row of the previous page") long afterProductId,
+                               @ShellOption(defaultValue = "100") int limit) {
+        List<DepositStockRow> rows = stockQueryService.depositStock(depositName, afterProductId, limit);
+
+        StringBuilder result = new StringBuilder("productId;sku;soh;reserved;available");
+        rows.forEach(row -> result.append('\n').append(row.productId())
+                .append(';').append(row.sku())
+                .append(';').append(row.soh())
+                .append(';').append(row.reserved())
+                .append(';').append(row.available()));
+        return result.toString();
+    }
+
+    @ShellMethod(key = "set-stock-levels")
+    public String setStockLevels(@ShellOption String sku,
+                                 @ShellOption String depositName,
+                                 @ShellOption(help = "Minimum available quantity, -1 for none") int min,
+                                 @ShellOption(defaultValue = ShellOption.NULL) Integer desired) {
+        Product product = catalogLookup.findProduct(sku).orElseThrow(() -> new IllegalArgumentException("Product not found"));
+        Deposit deposit = catalogLookup.findDeposit(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
+
+        replenishmentService.setLevels(deposit.getId(), product.getId(), min, desired);
+        return "Levels of " + sku + " in " + depositName + ": min " + min + ", desired " + desired;
+    }
+
+    @ShellMethod(key = "replenishment-scan")
+    public String replenishmentScan(@ShellOption(defaultValue = ShellOption.NULL) String depositName,
+                                    @ShellOption(defaultValue = "false", help = "Propose transfers from deposits with surplus") boolean transfers,
+                                    @ShellOption(defaultValue = "false", help = "Execute the proposed transfers") boolean execute,
+                                    @ShellOption(defaultValue = "100", help = "Lines printed per section") int limit) throws InterruptedException {
+        Long depositId = depositName == null ? null
+                : catalogLookup.findDeposit(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found")).getId();
+
+        long start = System.nanoTime();
+        List<ReplenishmentRow> shortages = replenishmentService.scan(depositId);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        StringBuilder result = new StringBuilder(shortages.size() + " keys below min, scanned in " + elapsedMillis + " ms");
+        result.append("\nsku;depositName;available;min;desired;suggested");
+        Map<Long, String> skus = catalogNames(productRepository.findCatalogEntries(
+                shortages.stream().limit(limit).map(ReplenishmentRow::productId).collect(Collectors.toSet())));
+        Map<Long, String> depositNames = catalogNames(depositRepository.findCatalogEntries(
+                shortages.stream().limit(limit).map(ReplenishmentRow::depositId).collect(Collectors.toSet())));
+        shortages.stream().limit(limit).forEach(row -> result.append('\n')
+                .append(skus.get(row.productId())).append(';').append(depositNames.get(row.depositId()))
+                .append(';').append(row.available()).append(';').append(row.min())
+                .append(';').append(row.desired()).append(';').append(row.shortage()));
+
+        if (transfers || execute) {
+            List<TransferProposal> proposals = replenishmentService.proposeTransfers(shortages);
+            result.append("\n").append(proposals.size()).append(" transfer proposals")
+                    .append("\nsku;depositNameSource;depositNameDestination;quantity");
+            Map<Long, String> proposalSkus = catalogNames(productRepository.findCatalogEntries(
+                    proposals.stream().limit(limit).map(TransferProposal::productId).collect(Collectors.toSet())));
+            Map<Long, String> proposalDeposits = catalogNames(depositRepository.findCatalogEntries(proposals.stream().limit(limit)
+                    .flatMap(proposal -> Stream.of(proposal.sourceDepositId(), proposal.destinationDepositId()))
+                    .collect(Collectors.toSet())));
+            proposals.stream().limit(limit).forEach(proposal -> result.append('\n')
+                    .append(proposalSkus.get(proposal.productId())).append(';').append(proposalDeposits.get(proposal.sourceDepositId()))
+                    .append(';').append(proposalDeposits.get(proposal.destinationDepositId())).append(';').append(proposal.quantity()));
+            if (execute) {
+                result.append("\nExecuted ").append(replenishmentService.executeTransfers(proposals, LocalDateTime.now())).append(" transfers");
+            }
+        }
+        return result.toString();
+    }
+
+    @ShellMethod(key = "replenishment-alerts")
+    public String replenishmentAlerts(@ShellOption(defaultValue = "false", help = "Clear the alerts once printed") boolean clear) {
+        List<ReplenishmentRow> alerts = clear ? lowWatermarkMonitor.take() : lowWatermarkMonitor.alerts();
+        Map<Long, String> skus = catalogNames(productRepository.findCatalogEntries(
+                alerts.stream().map(ReplenishmentRow::productId).collect(Collectors.toSet())));
+        Map<Long, String> depositNames = catalogNames(depositRepository.findCatalogEntries(
+                alerts.stream().map(ReplenishmentRow::depositId).collect(Collectors.toSet())));
+
+        StringBuilder result = new StringBuilder("sku;depositName;available;min;desired;suggested");
+        alerts.forEach(row -> result.append('\n')
+                .append(skus.get(row.productId())).append(';').append(depositNames.get(row.depositId()))
+                .append(';').append(row.available()).append(';').append(row.min())
+                .append(';').append(row.desired()).append(';').append(row.shortage()));
+        return result.toString();
+    }
+
+    @ShellMethod(key = "stock-cache-stats")
+    public String stockCacheStats() {
+        return "size=" + stockCache.size() +
+                " hits=" + stockCache.hits() +
+                " misses=" + stockCache.misses() +
+                " evictions=" + stockCache.evictions();
+    }
+
+    @ShellMethod(key = "locking-mode")
+    public String lockingMode(@ShellOption(defaultValue = ShellOption.NULL, help = "PESSIMISTIC, OPTIMISTIC or ADAPTIVE") LockingMode mode) {
+        if (mode != null) {
+            stockWriteConcurrency.setMode(mode);
+        }
+        return "mode=" + stockWriteConcurrency.mode() +
+                " conflicts=" + stockWriteConcurrency.conflicts() +
+                " retries=" + stockWriteConcurrency.retries() +
+                " fallbacks=" + stockWriteConcurrency.fallbacks();
+    }
+
+    @ShellMethod(key = "locking-conflicts")
+    public String lockingConflicts(@ShellOption(defaultValue = "20") int limit) {
+        List<KeyConflictStats> stats = stockWriteConcurrency.conflictStats().stream().limit(limit).toList();
+        Map<Long, String> skus = catalogNames(productRepository.findCatalogEntries(
+                stats.stream().map(KeyConflictStats::productId).collect(Collectors.toSet())));
+        Map<Long, String> depositNames = catalogNames(depositRepository.findCatalogEntries(
+                stats.stream().map(KeyConflictStats::depositId).collect(Collectors.toSet())));
+
+        StringBuilder result = new StringBuilder("sku;depositName;attempts;conflicts;conflictRate;pessimistic");
+        stats.forEach(row -> result.append('\n')
+                .append(skus.get(row.productId())).append(';').append(depositNames.get(row.depositId()))
+                .append(';').append(row.attempts()).append(';').append(row.conflicts())
+                .append(String.format(";%.3f;", row.conflictRate())).append(row.pessimistic()));
+        return result.toString();
+    }
+
+    @ShellMethod(key = "stock-at")
+    public String stockAt(@ShellOption String date,
+                          @ShellOption String sku,
+                          @ShellOption String depositName) {
+        //format dd/MM/yyyy HH:mm:ss
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+        LocalDateTime localDateTime = LocalDateTime.parse(date, formatter);
+
+        Product product = catalogLookup.findProduct(sku).orElseThrow(() -> new IllegalArgumentException("Product not found"));
+        Deposit deposit = catalogLookup.findDeposit(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
+
+        return "soh=" + stockHistoryService.stockAt(deposit.getId(), product.getId(), localDateTime);
+    }
+
+    @ShellMethod(key = "stock-curve")
+    public String stockCurve(@ShellOption String from,
+                             @ShellOption String to,
+                             @ShellOption String sku,
+                             @ShellOption String depositName) {
+        //format dd/MM/yyyy
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+        Product product = catalogLookup.findProduct(sku).orElseThrow(() -> new IllegalArgumentException("Product not found"));
+        Deposit deposit = catalogLookup.findDeposit(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
+
+        List<DailyStock> curve = stockHistoryService.dailyStock(deposit.getId(), product.getId(),
+                LocalDate.parse(from, formatter), LocalDate.parse(to, formatter));
+
+        StringBuilder result = new StringBuilder("date;soh");
+        curve.forEach(daily -> result.append('\n').append(formatter.format(daily.date())).append(';').append(daily.soh()));
+        return result.toString();
+    }
+
+    @ShellMethod(key = "movement-totals")
+    public String movementTotals(@ShellOption String from,
+                                 @ShellOption String to,
+                                 @ShellOption String depositName,
+                                 @ShellOption(defaultValue = ShellOption.NULL) String sku,
+                                 @ShellOption(defaultValue = "false", help = "One line per day and type, requires --sku") boolean daily) {
+        //format dd/MM/yyyy, both inclusive
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+        LocalDate fromDate = LocalDate.parse(from, formatter);
+        LocalDate toDate = LocalDate.parse(to, formatter);
+
+        Deposit deposit = catalogLookup.findDeposit(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
+        Long productId = sku == null ? null
+                : catalogLookup.findProduct(sku).orElseThrow(() -> new IllegalArgumentException("Product not found")).getId();
+
+        if (daily) {
+            if (productId == null) {
+                throw new IllegalArgumentException("--daily requires --sku");
+            }
+            StringBuilder result = new StringBuilder("date;type;quantity;entries");
+            movementTotalService.dailyTotals(deposit.getId(), productId, fromDate, toDate).forEach(row -> result.append('\n')
+                    .append(formatter.format(row.date())).append(';').append(row.type())
+                    .append(';').append(row.quantity()).append(';').append(row.entries()));
+            return result.toString();
+        }
+
+        StringBuilder result = new StringBuilder("type;quantity;entries");
+        movementTotalService.totals(deposit.getId(), productId, fromDate, toDate).forEach(total -> result.append('\n')
+                .append(total.type()).append(';').append(total.quantity()).append(';').append(total.entries()));
+        return result.toString();
+    }
+
+    @ShellMethod(key = "backfill-movement-totals")
+    public String backfillMovementTotals(@ShellOption(defaultValue = ShellOption.NULL) String from,
+                                         @ShellOption(defaultValue = ShellOption.NULL) String until) throws InterruptedException {
+        //format dd/MM/yyyy, from defaults to the first movement and until (exclusive) to today
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+        long start = System.nanoTime();
+        int rows = movementTotalService.backfill(from == null ? null : LocalDate.parse(from, formatter),
+                until == null ? null : LocalDate.parse(until, formatter));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        return "Backfilled " + rows + " daily movement totals in " + elapsedMillis + " ms";
+    }
+
+    @ShellMethod(key = "build-stock-checkpoints")
+    public String buildStockCheckpoints(@ShellOption(defaultValue = ShellOption.NULL) String upTo) {
+        //format dd/MM/yyyy, defaults to yesterday
+        LocalDate day = upTo == null
+                ? LocalDate.now().minusDays(1)
+                : LocalDate.parse(upTo, DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+
+        int keys = stockHistoryService.buildCheckpoints(day);
+        return "Checkpoints built up to " + day + " for " + keys + " keys";
+    }
+
+    @ShellMethod(key = "archive-inventory-entries")
+    public String archiveInventoryEntries(@ShellOption(defaultValue = ShellOption.NULL) String before) throws InterruptedException {
+        //format dd/MM/yyyy, exclusive, defaults to today minus inventory.archive.horizon
+        LocalDate day = before == null
+                ? LocalDate.now().minus(archiveProperties.horizon())
+                : LocalDate.parse(before, DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+        long start = System.nanoTime();
+        long entries = inventoryArchiveService.archive(day);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        return "Archived " + entries + " inventory entries before " + day + " in " + elapsedMillis + " ms";
+    }
+
+    @ShellMethod(key = "forecast-stockouts")
+    public String forecastStockouts(@ShellOption(defaultValue = ShellOption.NULL) String date) {
+        //format dd/MM/yyyy, defaults to today
+        LocalDate day = date == null ? LocalDate.now() : LocalDate.parse(date, DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+        long start = System.nanoTime();
+        StockoutForecastResult result = stockoutForecastService.forecast(day);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        return "Forecast " + result.stockouts() + " stockouts over " + result.keys() + " keys of " + result.deposits() +
+                " deposits (" + result.movements() + " OUT entries) in " + elapsedMillis + " ms";
+    }
+
+    @ShellMethod(key = "stockouts")
+    public String stockouts(@ShellOption String depositName,
+                            @ShellOption(defaultValue = "14") int days,
+                            @ShellOption(defaultValue = "100") int limit) {
+        Deposit deposit = catalogLookup.findDeposit(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
+
+        StringBuilder result = new StringBuilder("sku;soh;min;dailyConsumption;minDate;stockoutDate");
+        for (StockoutRow row : stockoutForecastService.stockouts(deposit, LocalDate.now().plusDays(days), limit)) {
+            result.append('\n').append(row.sku()).append(';').append(row.soh()).append(';').append(row.min())
+                    .append(';').append(String.format("%.2f", row.dailyConsumption()))
+                    .append(';').append(row.minDate() == null ? "" : row.minDate()).append(';').append(row.stockoutDate());
+        }
+        return result.toString();
+    }
+
+    @ShellMethod(key = "recompute-stock")
+    public String recomputeStock(@ShellOption String sku,
+                                 @ShellOption String depositName) {
+        Product product = catalogLookup.findProduct(sku).orElseThrow(() -> new IllegalArgumentException("Product not found"));
+        Deposit deposit = catalogLookup.findDeposit(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
+
+        stockRecomputeService.recompute(List.of(new StockKey(deposit.getId(), product.getId())));
+        return "Stock recomputed";
+    }
+
+    @ShellMethod(key = "rebuild-stock")
+    public String rebuildStock() throws InterruptedException {
+        long start = System.nanoTime();
+        int keys = stockRecomputeService.rebuildAll();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        return "Rebuilt " + keys + " stock keys in " + elapsedMillis + " ms";
+    }
+
+    @ShellMethod(key = "metrics")
+    public String metrics(@ShellOption(defaultValue = "inventory,spring.data,hikaricp", help = "Comma separated metric name prefixes") String prefixes) {
+        //timers in ms: count, mean, configured percentiles and max; other meters as their measurements
+        List<String> names = List.of(prefixes.split(","));
+        StringBuilder result = new StringBuilder();
+        meterRegistry.getMeters().stream()
+                .filter(meter -> names.stream().anyMatch(meter.getId().getName()::startsWith))
+                .sorted(Comparator.comparing((Meter meter) -> meter.getId().getName()).thenComparing(meter -> meter.getId().getTags().toString()))
+                .forEach(meter -> {
+                    result.append(meter.getId().getName()).append(meter.getId().getTags().stream()
+                            .map(tag -> tag.getKey() + "=" + tag.getValue())
+                            .collect(Collectors.joining(",", "{", "}")));
+                    if (meter instanceof Timer timer) {
+                        HistogramSnapshot snapshot = timer.takeSnapshot();
+                        result.append(" count=").append(snapshot.count())
+                                .append(String.format(" mean=%.3f", snapshot.mean(TimeUnit.MILLISECONDS)));
+                        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                            result.append(" p").append(BigDecimal.valueOf(percentile.percentile() * 100).stripTrailingZeros().toPlainString())
+                                    .append(String.format("=%.3f", percentile.value(TimeUnit.MILLISECONDS)));
+                        }
+                        result.append(String.format(" max=%.3f", snapshot.max(TimeUnit.MILLISECONDS)));
+                    } else {
+                        meter.measure().forEach(measurement -> result.append(' ')
+                                .append(measurement.getStatistic().name().toLowerCase()).append('=').append(measurement.getValue()));
+                    }
+                    result.append('\n');
+                });
+        return result.toString();
+    }
+
+    private static Map<Long, String> catalogNames(List<CatalogEntry> entries) {
+        return entries.stream().collect(Collectors.toMap(CatalogEntry::id, CatalogEntry::key));
+    }
 }
@@ -0,0 +1,21 @@
+package com.uniolab.testeinventario.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.time.Period;
+
+/**
+ * Settings of the {@link com.uniolab.testeinventario.service.InventoryArchiveService}. Scheduled
+ * runs follow the cron expression {@code inventory.archive.cron} (default {@code -}, disabled).
+ *
+ * @param horizon   age of the history kept live by scheduled runs: they archive the days before today minus this period
+ * @param batchSize entries moved per transaction
+ * @param pause     pause between batches, which leaves the database to live writes
+ */
+@ConfigurationProperties(prefix = "inventory.archive")
+public record ArchiveProperties(@DefaultValue("365d") Period horizon,
+                                @DefaultValue("1000") int batchSize,
+                                @DefaultValue("50ms") Duration pause) {
+}
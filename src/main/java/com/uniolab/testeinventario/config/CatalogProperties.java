@@ -0,0 +1,14 @@
+package com.uniolab.testeinventario.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of the {@link com.uniolab.testeinventario.service.CatalogLookup}.
+ *
+ * @param preload whether both catalogs are loaded at startup; without it each key is looked up in
+ *                the database on first use, which suits a single command touching a few keys
+ */
+@ConfigurationProperties(prefix = "inventory.catalog")
+public record CatalogProperties(@DefaultValue("true") boolean preload) {
+}
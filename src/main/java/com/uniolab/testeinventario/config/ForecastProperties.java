@@ -0,0 +1,22 @@
+package com.uniolab.testeinventario.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Period;
+
+/**
+ * Settings of the {@link com.uniolab.testeinventario.service.StockoutForecastService}. Scheduled
+ * runs follow the cron expression {@code inventory.forecast.cron} (default {@code -}, disabled).
+ *
+ * @param window      days before the forecast date whose OUT entries give the daily consumption
+ * @param pageSize    rows read per query while streaming stock and history
+ * @param batchSize   forecasts flushed at a time within a deposit's transaction
+ * @param parallelism deposits forecast at once; memory grows with it, as each holds the columns of all its keys
+ */
+@ConfigurationProperties(prefix = "inventory.forecast")
+public record ForecastProperties(@DefaultValue("28d") Period window,
+                                 @DefaultValue("10000") int pageSize,
+                                 @DefaultValue("1000") int batchSize,
+                                 @DefaultValue("4") int parallelism) {
+}
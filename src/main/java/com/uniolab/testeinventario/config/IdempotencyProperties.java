@@ -0,0 +1,22 @@
+package com.uniolab.testeinventario.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of the {@link com.uniolab.testeinventario.service.MovementIdempotency} filter.
+ *
+ * @param preload           whether the stored keys are loaded into the filter at startup; without
+ *                          it no filter is allocated and every key is looked up
+ * @param expectedKeys      keys the filter is sized for, about 1.2 bytes per key at a 1% rate
+ *                          (60 MB for the default); beyond it the false positive rate grows
+ * @param falsePositiveRate share of new keys the filter takes for possible duplicates, each
+ *                          costing one lookup
+ * @param pageSize          keys read per query while loading the filter
+ */
+@ConfigurationProperties(prefix = "inventory.idempotency")
+public record IdempotencyProperties(@DefaultValue("true") boolean preload,
+                                    @DefaultValue("50000000") long expectedKeys,
+                                    @DefaultValue("0.01") double falsePositiveRate,
+                                    @DefaultValue("10000") int pageSize) {
+}
@@ -0,0 +1,20 @@
+package com.uniolab.testeinventario.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the concurrent {@link com.uniolab.testeinventario.service.MovementIngestService}.
+ *
+ * @param lanes         worker threads per ingestion; a (deposit, product) always maps to the same one.
+ *                      0 means one per usable JDBC connection
+ * @param queueCapacity movements buffered per lane before the reader blocks
+ * @param pollInterval  how often a watched directory is rescanned when no file event arrives
+ */
+@ConfigurationProperties(prefix = "inventory.ingest")
+public record IngestProperties(@DefaultValue("0") int lanes,
+                               @DefaultValue("256") int queueCapacity,
+                               @DefaultValue("5s") Duration pollInterval) {
+}
@@ -0,0 +1,15 @@
+package com.uniolab.testeinventario.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of the daily movement totals backfill.
+ *
+ * @param backfillThreads parallel backfill workers
+ * @param chunkProducts   products of one deposit rebuilt per backfill transaction
+ */
+@ConfigurationProperties(prefix = "inventory.totals")
+public record MovementTotalProperties(@DefaultValue("4") int backfillThreads,
+                                      @DefaultValue("500") int chunkProducts) {
+}
@@ -0,0 +1,17 @@
+package com.uniolab.testeinventario.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of the {@link com.uniolab.testeinventario.service.ReplenishmentService}.
+ *
+ * @param lowWatermark raise an alert from the movement that drops a key below min
+ * @param pageSize     flagged keys read per scan query
+ * @param threads      deposits scanned in parallel
+ */
+@ConfigurationProperties(prefix = "inventory.replenishment")
+public record ReplenishmentProperties(@DefaultValue("false") boolean lowWatermark,
+                                      @DefaultValue("1000") int pageSize,
+                                      @DefaultValue("4") int threads) {
+}
@@ -0,0 +1,64 @@
+package com.uniolab.testeinventario.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * Read replica routing, on with {@code inventory.replica.enabled=true}: replaces the
+ * auto-configured pool by a primary pool ({@code spring.datasource}), a replica pool
+ * ({@code inventory.replica}) and the {@link ReplicaRoutingDataSource} JPA uses. Writes, and
+ * every read not marked {@link ReplicaRead}, keep using the primary pool, so a report that
+ * holds every replica connection does not take one from the writers.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "inventory.replica", name = "enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    public HikariDataSource replicaDataSource(ReplicaProperties properties) {
+        if (properties.url() == null) {
+            throw new IllegalStateException("inventory.replica.url is required with inventory.replica.enabled");
+        }
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("replica");
+        dataSource.setJdbcUrl(properties.url());
+        dataSource.setUsername(properties.username());
+        dataSource.setPassword(properties.password());
+        dataSource.setMaximumPoolSize(properties.maximumPoolSize());
+        dataSource.setConnectionTimeout(properties.connectionTimeout().toMillis());
+        // start, and keep running on the primary, while the replica is down
+        dataSource.setInitializationFailTimeout(-1);
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaMonitor replicaMonitor(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                         ReplicaProperties properties) {
+        return new ReplicaMonitor(primaryDataSource, properties);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                 @Qualifier("replicaDataSource") DataSource replicaDataSource,
+                                 ReplicaMonitor replicaMonitor) {
+        return new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primaryDataSource, replicaDataSource, replicaMonitor));
+    }
+}
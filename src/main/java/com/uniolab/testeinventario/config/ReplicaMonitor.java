@@ -0,0 +1,141 @@
+package com.uniolab.testeinventario.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tells whether the replica can serve reads. Every {@code check-interval} it stamps the
+ * {@link com.uniolab.testeinventario.model.ReplicaHeartbeat} row on the primary and reads the
+ * stamp replicated so far back from the replica: the time since it is an upper bound of the
+ * replication lag. The replica is usable while that read succeeds and the lag is within
+ * {@code max-lag}.
+ * <p>
+ * The replica is probed over a connection of its own rather than through the pool, so a pool
+ * exhausted by reports is not taken for a replica that is down.
+ */
+@Slf4j
+public class ReplicaMonitor implements MeterBinder, AutoCloseable {
+
+    private static final String STAMP = "UPDATE replica_heartbeat SET beat_millis = ? WHERE id = 1";
+    private static final String INSERT = "INSERT INTO replica_heartbeat (id, beat_millis) VALUES (1, ?)";
+    private static final String READ = "SELECT beat_millis FROM replica_heartbeat WHERE id = 1";
+
+    private final JdbcTemplate primary;
+    private final JdbcTemplate replica;
+    private final ReplicaProperties properties;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "replica-monitor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile boolean usable;
+    private volatile long lagMillis = -1;
+    private final LongAdder fallbacks = new LongAdder();
+
+    public ReplicaMonitor(DataSource primary, ReplicaProperties properties) {
+        DriverManagerDataSource probe = new DriverManagerDataSource(properties.url());
+        probe.setUsername(properties.username());
+        probe.setPassword(properties.password());
+        this.primary = new JdbcTemplate(primary);
+        this.replica = new JdbcTemplate(probe);
+        this.properties = properties;
+    }
+
+    /**
+     * Starts once the context is refreshed, so building the context alone does not need the
+     * database. Until the first check the replica is not used.
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    void start() {
+        long interval = properties.checkInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::check, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stamps the heartbeat and measures the lag now.
+     *
+     * @return whether the replica is usable
+     */
+    public synchronized boolean check() {
+        long now = System.currentTimeMillis();
+        try {
+            if (primary.update(STAMP, now) == 0) {
+                primary.update(INSERT, now);
+            }
+        } catch (DuplicateKeyException e) {
+            // stamped by another instance
+        } catch (DataAccessException e) {
+            log.warn("Cannot write the replica heartbeat on the primary: {}", e.getMessage());
+        }
+
+        boolean wasUsable = usable;
+        try {
+            Long beat = replica.queryForList(READ, Long.class).stream().findFirst().orElse(null);
+            lagMillis = beat == null ? -1 : Math.max(0, System.currentTimeMillis() - beat);
+            usable = beat != null && lagMillis <= properties.maxLag().toMillis();
+            if (wasUsable && !usable) {
+                log.warn("Replica lags {} ms, reads go to the primary", lagMillis);
+            }
+        } catch (DataAccessException e) {
+            lagMillis = -1;
+            usable = false;
+            if (wasUsable) {
+                log.warn("Replica unavailable, reads go to the primary: {}", e.getMessage());
+            }
+        }
+        if (!wasUsable && usable) {
+            log.info("Replica usable, lag {} ms", lagMillis);
+        }
+        return usable;
+    }
+
+    public boolean isUsable() {
+        return usable;
+    }
+
+    /**
+     * @return replication lag measured by the last check in ms, -1 when unknown
+     */
+    public long lagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * @return replica reads served by the primary because the replica could not connect
+     */
+    public long fallbacks() {
+        return fallbacks.sum();
+    }
+
+    void fellBack() {
+        fallbacks.increment();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("inventory.replica.lag", this, ReplicaMonitor::lagMillis).baseUnit("milliseconds").register(registry);
+        Gauge.builder("inventory.replica.usable", this, monitor -> monitor.isUsable() ? 1 : 0).register(registry);
+        FunctionCounter.builder("inventory.replica.fallbacks", this, ReplicaMonitor::fallbacks).register(registry);
+    }
+}
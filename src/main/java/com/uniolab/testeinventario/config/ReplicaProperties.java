@@ -0,0 +1,30 @@
+package com.uniolab.testeinventario.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the read replica, see {@link ReplicaDataSourceConfig}. The primary keeps the
+ * {@code spring.datasource} settings.
+ *
+ * @param enabled           whether {@link ReplicaRead} queries are routed to the replica
+ * @param url               JDBC url of the replica
+ * @param username          user of the replica
+ * @param password          password of the replica
+ * @param maximumPoolSize   connections of the replica pool, shared by all replica reads
+ * @param connectionTimeout wait for a replica connection before the read fails; a busy replica is not a reason to load the primary
+ * @param maxLag            replication lag above which replica reads go to the primary; keep it above {@code checkInterval}
+ * @param checkInterval     how often the heartbeat is written to the primary and read back from the replica
+ */
+@ConfigurationProperties(prefix = "inventory.replica")
+public record ReplicaProperties(@DefaultValue("false") boolean enabled,
+                                String url,
+                                String username,
+                                String password,
+                                @DefaultValue("10") int maximumPoolSize,
+                                @DefaultValue("30s") Duration connectionTimeout,
+                                @DefaultValue("10s") Duration maxLag,
+                                @DefaultValue("1s") Duration checkInterval) {
+}
@@ -0,0 +1,22 @@
+package com.uniolab.testeinventario.config;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks reads that may be served by the read replica: reports and queries whose callers accept
+ * data up to {@code inventory.replica.max-lag} old. Applies to a method, or to every method of
+ * a class.
+ * <p>
+ * Only the read-only transactions started during the call, and the queries run outside any,
+ * are routed; a call that joins a
+ * read-write transaction keeps its primary connection, so a read made by a write (a lock, a
+ * balance probe) always sees the primary. Reads that must see the caller's own writes, such as
+ * the {@link com.uniolab.testeinventario.service.StockCache} loads, are not marked.
+ *
+ * @see ReplicaReads
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface ReplicaRead {
+}
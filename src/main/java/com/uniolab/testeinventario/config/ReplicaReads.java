@@ -0,0 +1,54 @@
+package com.uniolab.testeinventario.config;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Scope of the {@link ReplicaRead} calls of the current thread, read by the
+ * {@link ReplicaRoutingDataSource}. Code outside a bean, e.g. a worker thread, opens the scope
+ * with {@link #call}. Without a replica the scope has no effect.
+ */
+@Aspect
+@Component
+public class ReplicaReads {
+
+    private static final ThreadLocal<Boolean> ACTIVE = new ThreadLocal<>();
+
+    @Around("@within(com.uniolab.testeinventario.config.ReplicaRead) || @annotation(com.uniolab.testeinventario.config.ReplicaRead)")
+    public Object route(ProceedingJoinPoint joinPoint) throws Throwable {
+        Boolean previous = ACTIVE.get();
+        ACTIVE.set(Boolean.TRUE);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Runs the read as a {@link ReplicaRead} call.
+     */
+    public static <T> T call(Supplier<T> read) {
+        Boolean previous = ACTIVE.get();
+        ACTIVE.set(Boolean.TRUE);
+        try {
+            return read.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    public static boolean isActive() {
+        return ACTIVE.get() != null;
+    }
+
+    private static void restore(Boolean previous) {
+        if (previous == null) {
+            ACTIVE.remove();
+        }
+    }
+}
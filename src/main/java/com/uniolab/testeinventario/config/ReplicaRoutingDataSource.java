@@ -0,0 +1,80 @@
+package com.uniolab.testeinventario.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Hands out replica connections to the read-only transactions, and the reads outside any
+ * transaction, of {@link ReplicaRead} calls while the {@link ReplicaMonitor} finds the replica usable, and primary connections to
+ * everything else. Must sit behind a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: the connection of
+ * a transaction is then taken at its first statement, once the transaction is marked
+ * read-only.
+ * <p>
+ * A replica connection that cannot be opened is replaced by a primary one if a check confirms
+ * the replica is down. If the replica is up the failure is thrown: the replica pool is busy,
+ * and moving its reports onto the primary would slow down the writes.
+ * <p>
+ * Unwraps to the primary, the pool sizing concerns of writers are about.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final ReplicaMonitor monitor;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, ReplicaMonitor monitor) {
+        this.primary = primary;
+        this.replica = replica;
+        this.monitor = monitor;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!ReplicaReads.isActive() || !monitor.isUsable() || !readOnly()) {
+            return primary.getConnection();
+        }
+        try {
+            return replica.getConnection();
+        } catch (SQLException e) {
+            if (monitor.check()) {
+                throw e;
+            }
+            log.debug("Replica connection failed, reading from the primary", e);
+            monitor.fellBack();
+            return primary.getConnection();
+        }
+    }
+
+    /**
+     * Query methods without a transaction of their own run outside any, and read-only.
+     */
+    private static boolean readOnly() {
+        return !TransactionSynchronizationManager.isActualTransactionActive()
+                || TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : primary.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primary.isWrapperFor(iface);
+    }
+
+    /**
+     * Connections for other credentials are opened by the primary, as writes are.
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+}
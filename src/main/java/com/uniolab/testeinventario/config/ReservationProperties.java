@@ -0,0 +1,18 @@
+package com.uniolab.testeinventario.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of reservations and the {@link com.uniolab.testeinventario.service.ReservationSweeper}.
+ * The sweep period is {@code inventory.reservation.sweep-interval} (ISO-8601, default {@code PT30S}).
+ *
+ * @param defaultTtl     lifetime of reservations created without an explicit TTL; unset means they never expire
+ * @param sweepBatchSize expired reservations released per transaction
+ */
+@ConfigurationProperties(prefix = "inventory.reservation")
+public record ReservationProperties(Duration defaultTtl,
+                                    @DefaultValue("500") int sweepBatchSize) {
+}
@@ -0,0 +1,15 @@
+package com.uniolab.testeinventario.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Background jobs (checkpoints, sweeps). Disable with {@code inventory.scheduling.enabled=false}
+ * for one-off command runs, whose JVM would otherwise be kept alive by the scheduler thread.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(prefix = "inventory.scheduling", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class SchedulingConfig {
+}
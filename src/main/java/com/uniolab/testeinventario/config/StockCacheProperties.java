@@ -0,0 +1,13 @@
+package com.uniolab.testeinventario.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings of the {@link com.uniolab.testeinventario.service.StockCache}.
+ *
+ * @param maxSize number of (deposit, product) stock levels kept before the least recently used is evicted
+ */
+@ConfigurationProperties(prefix = "inventory.stock-cache")
+public record StockCacheProperties(@DefaultValue("100000") int maxSize) {
+}
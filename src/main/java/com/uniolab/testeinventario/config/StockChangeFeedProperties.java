@@ -0,0 +1,20 @@
+package com.uniolab.testeinventario.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Settings of the {@link com.uniolab.testeinventario.service.StockChangeFeed}.
+ *
+ * @param enabled          whether committed DepositHasProduct changes are appended to the feed
+ * @param directory        directory of the log segments, shared with the processes reading them
+ * @param segmentSize      size of a segment file; a full segment is closed and a new one started
+ * @param retainedSegments segments kept on disk, older ones are deleted when a new segment starts
+ */
+@ConfigurationProperties(prefix = "inventory.change-feed")
+public record StockChangeFeedProperties(@DefaultValue("false") boolean enabled,
+                                        @DefaultValue("change-feed") String directory,
+                                        @DefaultValue("64MB") DataSize segmentSize,
+                                        @DefaultValue("16") int retainedSegments) {
+}
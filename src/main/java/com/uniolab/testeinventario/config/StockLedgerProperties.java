@@ -0,0 +1,21 @@
+package com.uniolab.testeinventario.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the write-behind {@link com.uniolab.testeinventario.service.StockLedger}.
+ *
+ * @param enabled       creates the ledger bean
+ * @param shards        number of single-writer queues; a (deposit, product) always maps to the same one
+ * @param flushInterval maximum time a movement waits in memory before being written
+ * @param flushSize     number of movements that triggers an early flush of a shard
+ */
+@ConfigurationProperties(prefix = "inventory.ledger")
+public record StockLedgerProperties(@DefaultValue("false") boolean enabled,
+                                    @DefaultValue("4") int shards,
+                                    @DefaultValue("200ms") Duration flushInterval,
+                                    @DefaultValue("500") int flushSize) {
+}
@@ -0,0 +1,28 @@
+package com.uniolab.testeinventario.config;
+
+import com.uniolab.testeinventario.enums.LockingMode;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the {@link com.uniolab.testeinventario.service.StockWriteConcurrency}.
+ *
+ * @param mode             locking of batched DepositHasProduct writes
+ * @param maxAttempts      optimistic attempts of a batch before giving up (OPTIMISTIC) or locking (ADAPTIVE)
+ * @param backoff          base delay before a retry, doubled per attempt and fully jittered
+ * @param hotConflictRate  conflicts per attempt from which ADAPTIVE locks a key pessimistically
+ * @param minSamples       attempts of a key measured before its conflict rate is judged
+ * @param hotPeriod        how long a hot key stays pessimistic before it is measured again
+ * @param maxKeys          keys whose conflict statistics are kept, least recently written dropped first
+ */
+@ConfigurationProperties(prefix = "inventory.locking")
+public record StockLockingProperties(@DefaultValue("ADAPTIVE") LockingMode mode,
+                                     @DefaultValue("5") int maxAttempts,
+                                     @DefaultValue("2ms") Duration backoff,
+                                     @DefaultValue("0.2") double hotConflictRate,
+                                     @DefaultValue("20") int minSamples,
+                                     @DefaultValue("30s") Duration hotPeriod,
+                                     @DefaultValue("10000") int maxKeys) {
+}
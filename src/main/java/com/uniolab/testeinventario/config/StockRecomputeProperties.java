@@ -0,0 +1,19 @@
+package com.uniolab.testeinventario.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings of the {@link com.uniolab.testeinventario.service.StockRecomputeService}.
+ *
+ * @param debounce  delay before a requested recompute runs; further requests for the same key in that window are merged
+ * @param batchSize keys recomputed per transaction
+ * @param threads   parallel workers of a full rebuild
+ */
+@ConfigurationProperties(prefix = "inventory.recompute")
+public record StockRecomputeProperties(@DefaultValue("500ms") Duration debounce,
+                                       @DefaultValue("500") int batchSize,
+                                       @DefaultValue("4") int threads) {
+}
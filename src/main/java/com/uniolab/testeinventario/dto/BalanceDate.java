@@ -0,0 +1,10 @@
+package com.uniolab.testeinventario.dto;
+
+import java.time.LocalDateTime;
+
+public record BalanceDate(Long depositId, Long productId, LocalDateTime date) {
+
+    public StockKey key() {
+        return new StockKey(depositId, productId);
+    }
+}
@@ -0,0 +1,4 @@
+package com.uniolab.testeinventario.dto;
+
+public record CatalogEntry(Long id, String key) {
+}
@@ -0,0 +1,12 @@
+package com.uniolab.testeinventario.dto;
+
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+
+import java.time.LocalDate;
+
+/**
+ * Raw InventoryEntry totals of a deposit grouped by product, day, type and transfer deposit.
+ */
+public record DailyEntryTotal(Long productId, LocalDate date, InventoryEntryType type, Long transferDepositId,
+                              long quantity, long entries) {
+}
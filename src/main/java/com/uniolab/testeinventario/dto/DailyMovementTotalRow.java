@@ -0,0 +1,8 @@
+package com.uniolab.testeinventario.dto;
+
+import com.uniolab.testeinventario.enums.MovementTotalType;
+
+import java.time.LocalDate;
+
+public record DailyMovementTotalRow(LocalDate date, MovementTotalType type, long quantity, long entries) {
+}
@@ -0,0 +1,6 @@
+package com.uniolab.testeinventario.dto;
+
+import java.time.LocalDate;
+
+public record DailyStock(LocalDate date, int soh) {
+}
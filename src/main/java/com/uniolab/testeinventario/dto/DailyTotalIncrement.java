@@ -0,0 +1,12 @@
+package com.uniolab.testeinventario.dto;
+
+import com.uniolab.testeinventario.enums.MovementTotalType;
+
+import java.time.LocalDate;
+
+/**
+ * Quantity and entry count to add to the daily movement total of a (deposit, day, product, type).
+ */
+public record DailyTotalIncrement(Long depositId, Long productId, LocalDate date, MovementTotalType type,
+                                  long quantity, long entries) {
+}
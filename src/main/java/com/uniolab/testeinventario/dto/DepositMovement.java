@@ -0,0 +1,8 @@
+package com.uniolab.testeinventario.dto;
+
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+
+import java.time.LocalDateTime;
+
+public record DepositMovement(Long productId, LocalDateTime date, InventoryEntryType type, int quantity) {
+}
@@ -0,0 +1,4 @@
+package com.uniolab.testeinventario.dto;
+
+public record DepositStockRow(Long productId, String sku, int soh, int reserved, int available) {
+}
@@ -0,0 +1,7 @@
+package com.uniolab.testeinventario.dto;
+
+/**
+ * Current stock of a product in the deposit being forecast; a min of -1 means none.
+ */
+public record ForecastKey(Long productId, int soh, int min) {
+}
@@ -0,0 +1,7 @@
+package com.uniolab.testeinventario.dto;
+
+/**
+ * Quantity of a product dispatched to a deposit and not yet received.
+ */
+public record InTransitRow(Long productId, String sku, long quantity) {
+}
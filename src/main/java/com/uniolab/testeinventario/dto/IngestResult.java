@@ -0,0 +1,23 @@
+package com.uniolab.testeinventario.dto;
+
+import java.time.Duration;
+
+/**
+ * Outcome of one ingestion run.
+ *
+ * @param applied         movements committed
+ * @param failed          movements rejected (unparseable line, unknown key or failed operation)
+ * @param elapsed         wall time from the first line to the last commit
+ * @param readerBlocked   time the reader waited on full lane queues (back-pressure)
+ * @param connectionWait  time lanes waited for a free JDBC connection permit (pool saturation)
+ */
+public record IngestResult(long applied,
+                           long failed,
+                           Duration elapsed,
+                           Duration readerBlocked,
+                           Duration connectionWait) {
+
+    public double throughput() {
+        return elapsed.isZero() ? 0 : applied / (elapsed.toNanos() / 1e9);
+    }
+}
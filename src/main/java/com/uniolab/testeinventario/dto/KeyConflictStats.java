@@ -0,0 +1,13 @@
+package com.uniolab.testeinventario.dto;
+
+/**
+ * Optimistic write attempts and conflicts of a (deposit, product) since it was first measured.
+ *
+ * @param pessimistic whether ADAPTIVE currently locks the key instead
+ */
+public record KeyConflictStats(Long depositId, Long productId, long attempts, long conflicts, boolean pessimistic) {
+
+    public double conflictRate() {
+        return attempts == 0 ? 0 : (double) conflicts / attempts;
+    }
+}
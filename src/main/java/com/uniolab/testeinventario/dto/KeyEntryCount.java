@@ -0,0 +1,8 @@
+package com.uniolab.testeinventario.dto;
+
+public record KeyEntryCount(Long depositId, Long productId, long entries) {
+
+    public StockKey key() {
+        return new StockKey(depositId, productId);
+    }
+}
@@ -0,0 +1,4 @@
+package com.uniolab.testeinventario.dto;
+
+public record ManifestLine(String sku, int quantity) {
+}
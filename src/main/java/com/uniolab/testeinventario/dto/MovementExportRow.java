@@ -0,0 +1,14 @@
+package com.uniolab.testeinventario.dto;
+
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+
+import java.time.LocalDateTime;
+
+public record MovementExportRow(Long id,
+                                InventoryEntryType type,
+                                LocalDateTime date,
+                                LocalDateTime registrationDate,
+                                Long productId,
+                                int quantity,
+                                Long transferDepositId) {
+}
@@ -0,0 +1,21 @@
+package com.uniolab.testeinventario.dto;
+
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+
+import java.time.LocalDateTime;
+
+/**
+ * @param idempotencyKey key of the movement at its sender, a redelivery with the same key is
+ *                       skipped; null when the sender has none
+ */
+public record MovementLine(InventoryEntryType type,
+                           LocalDateTime date,
+                           String sku,
+                           String depositName,
+                           int quantity,
+                           String idempotencyKey) {
+
+    public MovementLine(InventoryEntryType type, LocalDateTime date, String sku, String depositName, int quantity) {
+        this(type, date, sku, depositName, quantity, null);
+    }
+}
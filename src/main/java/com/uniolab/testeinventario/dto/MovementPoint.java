@@ -0,0 +1,8 @@
+package com.uniolab.testeinventario.dto;
+
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+
+import java.time.LocalDateTime;
+
+public record MovementPoint(LocalDateTime date, InventoryEntryType type, int quantity) {
+}
@@ -0,0 +1,12 @@
+package com.uniolab.testeinventario.dto;
+
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+
+import java.time.LocalDateTime;
+
+public record MovementRow(Long id,
+                          LocalDateTime date,
+                          InventoryEntryType type,
+                          int quantity,
+                          Long transferDepositId) {
+}
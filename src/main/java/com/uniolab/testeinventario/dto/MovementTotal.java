@@ -0,0 +1,6 @@
+package com.uniolab.testeinventario.dto;
+
+import com.uniolab.testeinventario.enums.MovementTotalType;
+
+public record MovementTotal(MovementTotalType type, long quantity, long entries) {
+}
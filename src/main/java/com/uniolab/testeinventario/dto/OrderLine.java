@@ -0,0 +1,4 @@
+package com.uniolab.testeinventario.dto;
+
+public record OrderLine(String sku, String depositName, int quantity) {
+}
@@ -0,0 +1,6 @@
+package com.uniolab.testeinventario.dto;
+
+import java.time.LocalDateTime;
+
+public record OutMovement(Long id, LocalDateTime date, Long productId, int quantity) {
+}
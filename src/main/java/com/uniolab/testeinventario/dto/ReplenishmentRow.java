@@ -0,0 +1,32 @@
+package com.uniolab.testeinventario.dto;
+
+/**
+ * Stock levels of a (deposit, product) as seen by replenishment.
+ */
+public record ReplenishmentRow(Long depositId, Long productId, int available, int min, Integer desired) {
+
+    public StockKey key() {
+        return new StockKey(depositId, productId);
+    }
+
+    /**
+     * Level replenishment tops up to: desired, or min when desired is unset or lower.
+     */
+    public int target() {
+        return desired == null ? min : Math.max(desired, min);
+    }
+
+    /**
+     * Suggested quantity to bring the key back to its target.
+     */
+    public int shortage() {
+        return Math.max(0, target() - available);
+    }
+
+    /**
+     * Available stock above the target that can be moved away.
+     */
+    public int surplus() {
+        return Math.max(0, available - target());
+    }
+}
@@ -0,0 +1,8 @@
+package com.uniolab.testeinventario.dto;
+
+public record ReservationRow(Long id, Long depositId, Long productId, int quantity) {
+
+    public StockKey key() {
+        return new StockKey(depositId, productId);
+    }
+}
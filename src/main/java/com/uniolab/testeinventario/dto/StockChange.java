@@ -0,0 +1,20 @@
+package com.uniolab.testeinventario.dto;
+
+import com.uniolab.testeinventario.enums.StockChangeOperation;
+
+/**
+ * A committed DepositHasProduct change read from the stock change feed.
+ *
+ * @param sequence    position in the feed, starting at 1
+ * @param version     row version after the change; changes of one key committed concurrently may
+ *                    reach the feed out of order, the higher version is the newer state
+ * @param delta       change of reserved for RESERVE/RELEASE, of soh for the other operations
+ * @param committedAt epoch milliseconds at which the change was appended after commit
+ */
+public record StockChange(long sequence, StockChangeOperation operation, Long depositId, Long productId, long version,
+                          int delta, int soh, int reserved, int available, long committedAt) {
+
+    public StockKey key() {
+        return new StockKey(depositId, productId);
+    }
+}
@@ -0,0 +1,4 @@
+package com.uniolab.testeinventario.dto;
+
+public record StockKey(Long depositId, Long productId) {
+}
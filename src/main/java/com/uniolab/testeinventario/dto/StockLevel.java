@@ -0,0 +1,12 @@
+package com.uniolab.testeinventario.dto;
+
+public record StockLevel(Long depositId, Long productId, int soh, int reserved, int available) {
+
+    public static StockLevel empty(StockKey key) {
+        return new StockLevel(key.depositId(), key.productId(), 0, 0, 0);
+    }
+
+    public StockKey key() {
+        return new StockKey(depositId, productId);
+    }
+}
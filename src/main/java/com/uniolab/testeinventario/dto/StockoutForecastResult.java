@@ -0,0 +1,11 @@
+package com.uniolab.testeinventario.dto;
+
+/**
+ * Totals of a forecast run.
+ *
+ * @param keys      DepositHasProduct rows projected
+ * @param movements OUT entries of the window read
+ * @param stockouts keys with consumption, written as forecasts
+ */
+public record StockoutForecastResult(int deposits, long keys, long movements, long stockouts) {
+}
@@ -0,0 +1,7 @@
+package com.uniolab.testeinventario.dto;
+
+import java.time.LocalDate;
+
+public record StockoutRow(Long productId, String sku, int soh, int min, double dailyConsumption,
+                          LocalDate minDate, LocalDate stockoutDate) {
+}
@@ -0,0 +1,4 @@
+package com.uniolab.testeinventario.dto;
+
+public record TransferProposal(Long productId, Long sourceDepositId, Long destinationDepositId, int quantity) {
+}
@@ -0,0 +1,7 @@
+package com.uniolab.testeinventario.dto;
+
+/**
+ * Stock levels of a (deposit, product) with the version of the row they were read from.
+ */
+public record VersionedStockLevel(Long depositId, Long productId, int soh, int reserved, int available, long version) {
+}
@@ -0,0 +1,19 @@
+package com.uniolab.testeinventario.enums;
+
+/**
+ * How batched DepositHasProduct writes guard against concurrent writers of the same rows.
+ */
+public enum LockingMode {
+    /**
+     * Locks the rows when reading them, as SELECT ... FOR UPDATE.
+     */
+    PESSIMISTIC,
+    /**
+     * Reads without locks and checks the row version on write, retrying on conflict.
+     */
+    OPTIMISTIC,
+    /**
+     * Optimistic, but pessimistic for the keys whose measured conflict rate is high.
+     */
+    ADAPTIVE
+}
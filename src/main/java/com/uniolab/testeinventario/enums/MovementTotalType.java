@@ -0,0 +1,20 @@
+package com.uniolab.testeinventario.enums;
+
+/**
+ * Movement categories of the daily totals. Transfers are told apart from plain IN/OUT entries
+ * by their transfer deposit; BALANCE entries are not movements and are not totalled.
+ */
+public enum MovementTotalType {
+    IN, OUT, TRANSFER_IN, TRANSFER_OUT;
+
+    /**
+     * @return the category of an entry, null for a BALANCE
+     */
+    public static MovementTotalType of(InventoryEntryType type, boolean transfer) {
+        return switch (type) {
+            case IN -> transfer ? TRANSFER_IN : IN;
+            case OUT -> transfer ? TRANSFER_OUT : OUT;
+            case BALANCE -> null;
+        };
+    }
+}
@@ -0,0 +1,42 @@
+package com.uniolab.testeinventario.enums;
+
+/**
+ * What changed a DepositHasProduct row, as recorded in the stock change feed. The code is the
+ * value stored in the log and must not change once written.
+ */
+public enum StockChangeOperation {
+    IN(1), OUT(2), BALANCE(3), RESERVE(4), RELEASE(5),
+    /**
+     * Several movements and reservations of one batch, coalesced into one row write.
+     */
+    BATCH(6),
+    /**
+     * Stock recomputed from history.
+     */
+    RECOMPUTE(7);
+
+    private static final StockChangeOperation[] BY_CODE = new StockChangeOperation[8];
+
+    static {
+        for (StockChangeOperation operation : values()) {
+            BY_CODE[operation.code] = operation;
+        }
+    }
+
+    private final int code;
+
+    StockChangeOperation(int code) {
+        this.code = code;
+    }
+
+    public int code() {
+        return code;
+    }
+
+    public static StockChangeOperation of(int code) {
+        if (code <= 0 || code >= BY_CODE.length || BY_CODE[code] == null) {
+            throw new IllegalArgumentException("Unknown stock change operation: " + code);
+        }
+        return BY_CODE[code];
+    }
+}
@@ -0,0 +1,64 @@
+package com.uniolab.testeinventario.model;
+
+import com.uniolab.testeinventario.enums.MovementTotalType;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.proxy.HibernateProxy;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Total quantity and number of entries of one movement type for a (deposit, product) on a day.
+ * Maintained in the transaction that writes the InventoryEntry rows; rows exist only for days
+ * with movements of that type.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@RequiredArgsConstructor
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_daily_movement_total_deposit_date_product_type",
+        columnNames = {"deposit_id", "date", "product_id", "type"}),
+        indexes = @Index(name = "ix_daily_movement_total_product_deposit_date", columnList = "product_id, deposit_id, date"))
+public class DailyMovementTotal {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @JoinColumn(name = "deposit_id", referencedColumnName = "id")
+    private Deposit deposit;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @JoinColumn(name = "product_id", referencedColumnName = "id")
+    private Product product;
+
+    private LocalDate date;
+
+    @Enumerated(EnumType.STRING)
+    private MovementTotalType type;
+
+    private long quantity;
+
+    private long entries;
+
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null) return false;
+        Class<?> oEffectiveClass = o instanceof HibernateProxy ? ((HibernateProxy) o).getHibernateLazyInitializer().getPersistentClass() : o.getClass();
+        Class<?> thisEffectiveClass = this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass() : this.getClass();
+        if (thisEffectiveClass != oEffectiveClass) return false;
+        DailyMovementTotal that = (DailyMovementTotal) o;
+        return getId() != null && Objects.equals(getId(), that.getId());
+    }
+
+    @Override
+    public final int hashCode() {
+        return this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass().hashCode() : getClass().hashCode();
+    }
+}
@@ -12,10 +12,11 @@ import java.util.Set;
 @Setter
 @ToString
 @RequiredArgsConstructor
+@Table(indexes = @Index(name = "ux_deposit_name", columnList = "name", unique = true))
 public class Deposit {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
     private Long id;
 
     private String name;
@@ -2,6 +2,7 @@ package com.uniolab.testeinventario.model;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.proxy.HibernateProxy;
 
 import java.util.Objects;
@@ -11,17 +12,22 @@ import java.util.Objects;
 @Setter
 @ToString
 @RequiredArgsConstructor
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_deposit_has_product_deposit_product",
+        columnNames = {"deposit_id", "product_id"}),
+        indexes = @Index(name = "ix_deposit_has_product_deposit_below_min", columnList = "deposit_id, below_min, product_id"))
 public class DepositHasProduct {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
     private Long id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
     @JoinColumn(name = "deposit_id", referencedColumnName = "id")
     private Deposit deposit;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
     @JoinColumn(name = "product_id", referencedColumnName = "id")
     private Product product;
 
@@ -40,6 +46,24 @@ public class DepositHasProduct {
     @Column
     private Integer desired; // Desired quantity
 
+    @Column(nullable = false)
+    private boolean belowMin; // available < min (min -1 means none), kept by every write to find keys to replenish
+
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long version; // Bumped by every write, entity or bulk, so optimistic writers detect each other
+
+    public static boolean isBelowMin(Integer available, Integer min) {
+        return available != null && min != null && min >= 0 && available < min;
+    }
+
+    @PrePersist
+    @PreUpdate
+    void updateBelowMin() {
+        belowMin = isBelowMin(available, min);
+    }
+
     @Override
     public final boolean equals(Object o) {
         if (this == o) return true;
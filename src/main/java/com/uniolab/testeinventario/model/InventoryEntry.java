@@ -14,24 +14,35 @@ import java.util.Objects;
 @Setter
 @ToString
 @RequiredArgsConstructor
+@Table(indexes = {
+        @Index(name = "ix_inventory_entry_product_deposit_type_date", columnList = "product_id, deposit_id, type, date"),
+        @Index(name = "ix_inventory_entry_deposit_id", columnList = "deposit_id, id"),
+        @Index(name = "ix_inventory_entry_deposit_type_date", columnList = "deposit_id, type, date, id"),
+        @Index(name = "ux_inventory_entry_idempotency_key", columnList = "idempotency_key", unique = true)
+})
 public class InventoryEntry {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
     private Long id;
     @Enumerated(EnumType.STRING)
     private InventoryEntryType type;
     private Integer quantity;
     private LocalDateTime date;
     private LocalDateTime registrationDate;
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
     @JoinColumn(name = "deposit_id", referencedColumnName = "id")
     private Deposit deposit;
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
     @JoinColumn(name = "product_id", referencedColumnName = "id")
     private Product product;
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
     @JoinColumn(name = "transfer_deposit_id", referencedColumnName = "id")
     private Deposit transferDeposit;
+    @Column(length = 100)
+    private String idempotencyKey; // set by the sender of the movement, null for movements without one
 
     @Override
     public final boolean equals(Object o) {
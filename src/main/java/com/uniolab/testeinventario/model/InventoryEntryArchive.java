@@ -0,0 +1,54 @@
+package com.uniolab.testeinventario.model;
+
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.proxy.HibernateProxy;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * InventoryEntry moved out of the live table by {@link com.uniolab.testeinventario.service.InventoryArchiveService}.
+ * Rows keep their original id and reference deposits and products by id only, without foreign
+ * keys, behind a single (deposit_id, product_id, date) index: the table is only read by
+ * point-in-time queries of one key.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@RequiredArgsConstructor
+@Table(indexes = @Index(name = "ix_inventory_entry_archive_deposit_product_date", columnList = "deposit_id, product_id, date"))
+public class InventoryEntryArchive {
+    @Id
+    private Long id;
+    @Enumerated(EnumType.STRING)
+    private InventoryEntryType type;
+    private Integer quantity;
+    private LocalDateTime date;
+    private LocalDateTime registrationDate;
+    @Column(name = "deposit_id")
+    private Long depositId;
+    @Column(name = "product_id")
+    private Long productId;
+    @Column(name = "transfer_deposit_id")
+    private Long transferDepositId;
+    private LocalDateTime archivedAt;
+
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null) return false;
+        Class<?> oEffectiveClass = o instanceof HibernateProxy ? ((HibernateProxy) o).getHibernateLazyInitializer().getPersistentClass() : o.getClass();
+        Class<?> thisEffectiveClass = this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass() : this.getClass();
+        if (thisEffectiveClass != oEffectiveClass) return false;
+        InventoryEntryArchive that = (InventoryEntryArchive) o;
+        return getId() != null && Objects.equals(getId(), that.getId());
+    }
+
+    @Override
+    public final int hashCode() {
+        return this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass().hashCode() : getClass().hashCode();
+    }
+}
@@ -12,20 +12,32 @@ import java.util.Objects;
 @Setter
 @ToString
 @RequiredArgsConstructor
+@Table(indexes = {
+        @Index(name = "ux_inventory_reserve_entry_reference", columnList = "reference", unique = true),
+        @Index(name = "ix_inventory_reserve_entry_expires_at", columnList = "expires_at"),
+        @Index(name = "ix_inventory_reserve_entry_order_reference", columnList = "order_reference"),
+        @Index(name = "ix_inventory_reserve_entry_product_deposit_date", columnList = "product_id, deposit_id, date")
+})
 public class InventoryReserveEntry {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
     private Long id;
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
     @JoinColumn(name = "product_id", referencedColumnName = "id")
     private Product product;
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
     @JoinColumn(name = "deposit_id", referencedColumnName = "id")
     private Deposit deposit;
     private Integer quantity;
     private LocalDateTime date;
     private LocalDateTime registrationDate;
+    @Column(nullable = false, updatable = false)
+    private String reference; // Caller or generated id used to release/confirm
+    private LocalDateTime expiresAt; // Released by the sweeper from then on, null = no expiry
+    private String orderReference; // Set on the lines of a multi-line order reservation
 
     @Override
     public final boolean equals(Object o) {
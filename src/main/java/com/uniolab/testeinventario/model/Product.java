@@ -11,9 +11,10 @@ import java.util.Set;
 @Getter
 @Setter
 @RequiredArgsConstructor
+@Table(indexes = @Index(name = "ux_product_sku", columnList = "sku", unique = true))
 public class Product {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
     private Long id;
     private String name;
     private String sku;
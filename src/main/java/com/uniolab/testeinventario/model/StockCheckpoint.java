@@ -0,0 +1,56 @@
+package com.uniolab.testeinventario.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.proxy.HibernateProxy;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Closing stock on hand of a (deposit, product) for a day on which it had movements.
+ * Checkpoints are sparse: a day without movements keeps the closing stock of the previous checkpoint.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@RequiredArgsConstructor
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_stock_checkpoint_deposit_product_date",
+        columnNames = {"deposit_id", "product_id", "date"}))
+public class StockCheckpoint {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @JoinColumn(name = "deposit_id", referencedColumnName = "id")
+    private Deposit deposit;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @JoinColumn(name = "product_id", referencedColumnName = "id")
+    private Product product;
+
+    private LocalDate date;
+
+    private Integer soh;
+
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null) return false;
+        Class<?> oEffectiveClass = o instanceof HibernateProxy ? ((HibernateProxy) o).getHibernateLazyInitializer().getPersistentClass() : o.getClass();
+        Class<?> thisEffectiveClass = this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass() : this.getClass();
+        if (thisEffectiveClass != oEffectiveClass) return false;
+        StockCheckpoint that = (StockCheckpoint) o;
+        return getId() != null && Objects.equals(getId(), that.getId());
+    }
+
+    @Override
+    public final int hashCode() {
+        return this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass().hashCode() : getClass().hashCode();
+    }
+}
@@ -0,0 +1,43 @@
+package com.uniolab.testeinventario.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.proxy.HibernateProxy;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Single row holding the day up to which the last completed checkpoint build wrote the
+ * {@link StockCheckpoint}s of every key. Written only once a build has passed all its keys, so
+ * a build interrupted halfway leaves the previous horizon. Without the row no day counts as
+ * checkpointed and the next build starts over from the first movement.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@RequiredArgsConstructor
+public class StockCheckpointHorizon {
+
+    @Id
+    private Long id;
+
+    private LocalDate date;
+
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null) return false;
+        Class<?> oEffectiveClass = o instanceof HibernateProxy ? ((HibernateProxy) o).getHibernateLazyInitializer().getPersistentClass() : o.getClass();
+        Class<?> thisEffectiveClass = this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass() : this.getClass();
+        if (thisEffectiveClass != oEffectiveClass) return false;
+        StockCheckpointHorizon that = (StockCheckpointHorizon) o;
+        return getId() != null && Objects.equals(getId(), that.getId());
+    }
+
+    @Override
+    public final int hashCode() {
+        return this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass().hashCode() : getClass().hashCode();
+    }
+}
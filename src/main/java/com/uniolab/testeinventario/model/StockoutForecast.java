@@ -0,0 +1,63 @@
+package com.uniolab.testeinventario.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.proxy.HibernateProxy;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Projected stockout of a (deposit, product) that consumed stock in the forecast window, as of
+ * the latest forecast run. Keys without consumption have no row.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@RequiredArgsConstructor
+@Table(indexes = @Index(name = "ix_stockout_forecast_deposit_stockout", columnList = "deposit_id, stockout_date, product_id"))
+public class StockoutForecast {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @JoinColumn(name = "deposit_id", referencedColumnName = "id")
+    private Deposit deposit;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @JoinColumn(name = "product_id", referencedColumnName = "id")
+    private Product product;
+
+    private LocalDate forecastDate; // day the projection starts from
+
+    private int soh;
+
+    private int min;
+
+    private double dailyConsumption;
+
+    private LocalDate minDate; // soh reaches min, null without a min
+
+    private LocalDate stockoutDate; // soh reaches zero
+
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null) return false;
+        Class<?> oEffectiveClass = o instanceof HibernateProxy ? ((HibernateProxy) o).getHibernateLazyInitializer().getPersistentClass() : o.getClass();
+        Class<?> thisEffectiveClass = this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass() : this.getClass();
+        if (thisEffectiveClass != oEffectiveClass) return false;
+        StockoutForecast that = (StockoutForecast) o;
+        return getId() != null && Objects.equals(getId(), that.getId());
+    }
+
+    @Override
+    public final int hashCode() {
+        return this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass().hashCode() : getClass().hashCode();
+    }
+}
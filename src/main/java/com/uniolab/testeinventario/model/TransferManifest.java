@@ -0,0 +1,63 @@
+package com.uniolab.testeinventario.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.proxy.HibernateProxy;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * A multi-SKU transfer between two deposits. Dispatch takes its lines out of the source deposit;
+ * until they are received at the destination they are in transit, counted in neither.
+ */
+@Entity
+@Getter
+@Setter
+@ToString
+@RequiredArgsConstructor
+@Table(indexes = {
+        @Index(name = "ux_transfer_manifest_reference", columnList = "reference", unique = true),
+        @Index(name = "ix_transfer_manifest_destination_received", columnList = "destination_deposit_id, received_at")
+})
+public class TransferManifest {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+
+    @Column(nullable = false, updatable = false)
+    private String reference;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @JoinColumn(name = "source_deposit_id", referencedColumnName = "id")
+    private Deposit sourceDeposit;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @ToString.Exclude
+    @JoinColumn(name = "destination_deposit_id", referencedColumnName = "id")
+    private Deposit destinationDeposit;
+
+    private Integer lineCount;
+
+    private LocalDateTime dispatchedAt;
+
+    private LocalDateTime receivedAt; // null while in transit
+
+    @Override
+    public final boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null) return false;
+        Class<?> oEffectiveClass = o instanceof HibernateProxy ? ((HibernateProxy) o).getHibernateLazyInitializer().getPersistentClass() : o.getClass();
+        Class<?> thisEffectiveClass = this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass() : this.getClass();
+        if (thisEffectiveClass != oEffectiveClass) return false;
+        TransferManifest that = (TransferManifest) o;
+        return getId() != null && Objects.equals(getId(), that.getId());
+    }
+
+    @Override
+    public final int hashCode() {
+        return this instanceof HibernateProxy ? ((HibernateProxy) this).getHibernateLazyInitializer().getPersistentClass().hashCode() : getClass().hashCode();
+    }
+}
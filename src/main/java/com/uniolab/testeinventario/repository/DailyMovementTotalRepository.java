@@ -0,0 +1,38 @@
+package com.uniolab.testeinventario.repository;
+
+import com.uniolab.testeinventario.dto.DailyMovementTotalRow;
+import com.uniolab.testeinventario.dto.MovementTotal;
+import com.uniolab.testeinventario.model.DailyMovementTotal;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface DailyMovementTotalRepository extends JpaRepository<DailyMovementTotal, Long>, DailyMovementTotalRepositoryCustom {
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.MovementTotal(t.type, SUM(t.quantity), SUM(t.entries)) " +
+            "FROM DailyMovementTotal t " +
+            "WHERE t.deposit.id = :depositId AND t.date BETWEEN :from AND :to " +
+            "GROUP BY t.type ORDER BY t.type")
+    List<MovementTotal> sumByDeposit(Long depositId, LocalDate from, LocalDate to);
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.MovementTotal(t.type, SUM(t.quantity), SUM(t.entries)) " +
+            "FROM DailyMovementTotal t " +
+            "WHERE t.product.id = :productId AND t.deposit.id = :depositId AND t.date BETWEEN :from AND :to " +
+            "GROUP BY t.type ORDER BY t.type")
+    List<MovementTotal> sumByKey(Long depositId, Long productId, LocalDate from, LocalDate to);
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.DailyMovementTotalRow(t.date, t.type, t.quantity, t.entries) " +
+            "FROM DailyMovementTotal t " +
+            "WHERE t.product.id = :productId AND t.deposit.id = :depositId AND t.date BETWEEN :from AND :to " +
+            "ORDER BY t.date, t.type")
+    List<DailyMovementTotalRow> findDailyByKey(Long depositId, Long productId, LocalDate from, LocalDate to);
+
+    @Modifying
+    @Query("DELETE FROM DailyMovementTotal t " +
+            "WHERE t.deposit.id = :depositId AND t.product.id IN :productIds AND t.date >= :from AND t.date < :until")
+    int deleteBetween(Long depositId, Collection<Long> productIds, LocalDate from, LocalDate until);
+}
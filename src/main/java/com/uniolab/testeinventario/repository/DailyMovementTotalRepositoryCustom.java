@@ -0,0 +1,19 @@
+package com.uniolab.testeinventario.repository;
+
+import com.uniolab.testeinventario.dto.DailyTotalIncrement;
+
+import java.util.List;
+
+/**
+ * Atomic increments of daily movement totals, each a single
+ * {@code INSERT ... ON DUPLICATE KEY UPDATE} in the caller's transaction that inserts the row
+ * (guarded by its unique key) the first time the (deposit, day, product, type) is touched.
+ */
+public interface DailyMovementTotalRepositoryCustom {
+
+    /**
+     * Applies the increments in the given order, as one JDBC batch. Only their own rows are
+     * locked, so callers pass them in a fixed key order.
+     */
+    void addTotals(List<DailyTotalIncrement> increments);
+}
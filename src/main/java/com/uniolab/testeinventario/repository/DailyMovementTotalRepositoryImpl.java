@@ -0,0 +1,55 @@
+package com.uniolab.testeinventario.repository;
+
+import com.uniolab.testeinventario.dto.DailyTotalIncrement;
+import com.uniolab.testeinventario.model.DailyMovementTotal;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.util.List;
+
+@Transactional
+class DailyMovementTotalRepositoryImpl implements DailyMovementTotalRepositoryCustom {
+
+    // One statement per total in the caller's transaction, as the upserts of DepositHasProduct:
+    // the first write of a total takes no gap lock before inserting and needs no second
+    // connection. A write to an existing row still draws an id from the sequence, left unused.
+    private static final String ADD_TOTAL = "INSERT INTO daily_movement_total " +
+            "(id, deposit_id, product_id, date, type, quantity, entries) VALUES (?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE quantity = quantity + ?, entries = entries + ?";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public void addTotals(List<DailyTotalIncrement> increments) {
+        if (increments.isEmpty()) {
+            return;
+        }
+        long[] ids = new long[increments.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = SequenceIds.next(entityManager, DailyMovementTotal.class);
+        }
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(ADD_TOTAL)) {
+                for (int i = 0; i < ids.length; i++) {
+                    DailyTotalIncrement increment = increments.get(i);
+                    statement.setLong(1, ids[i]);
+                    statement.setLong(2, increment.depositId());
+                    statement.setLong(3, increment.productId());
+                    statement.setDate(4, Date.valueOf(increment.date()));
+                    statement.setString(5, increment.type().name());
+                    statement.setLong(6, increment.quantity());
+                    statement.setLong(7, increment.entries());
+                    statement.setLong(8, increment.quantity());
+                    statement.setLong(9, increment.entries());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        });
+    }
+}
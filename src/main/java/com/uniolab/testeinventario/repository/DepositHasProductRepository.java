@@ -1,12 +1,90 @@
 package com.uniolab.testeinventario.repository;
 
+import com.uniolab.testeinventario.dto.DepositStockRow;
+import com.uniolab.testeinventario.dto.ForecastKey;
+import com.uniolab.testeinventario.dto.ReplenishmentRow;
+import com.uniolab.testeinventario.dto.StockKey;
+import com.uniolab.testeinventario.dto.StockLevel;
+import com.uniolab.testeinventario.dto.VersionedStockLevel;
 import com.uniolab.testeinventario.model.DepositHasProduct;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
-public interface DepositHasProductRepository extends JpaRepository<DepositHasProduct, Long> {
+public interface DepositHasProductRepository extends JpaRepository<DepositHasProduct, Long>, DepositHasProductRepositoryCustom {
   @Query("SELECT dhp FROM DepositHasProduct dhp WHERE dhp.deposit.id = :depositId AND dhp.product.id = :productId")
   Optional<DepositHasProduct> findByDepositIdAndProductId(Long depositId, Long productId);
-}
\ No newline at end of file
+
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("SELECT dhp FROM DepositHasProduct dhp WHERE dhp.deposit.id IN :depositIds AND dhp.product.id IN :productIds")
+  List<DepositHasProduct> findByDepositIdInAndProductIdIn(Collection<Long> depositIds, Collection<Long> productIds);
+
+  /**
+   * Same rows as {@link #findByDepositIdInAndProductIdIn} without locks, for writers that rely
+   * on the version check instead.
+   */
+  @Query("SELECT dhp FROM DepositHasProduct dhp WHERE dhp.deposit.id IN :depositIds AND dhp.product.id IN :productIds")
+  List<DepositHasProduct> readByDepositIdInAndProductIdIn(Collection<Long> depositIds, Collection<Long> productIds);
+
+  @Query("SELECT new com.uniolab.testeinventario.dto.StockKey(dhp.deposit.id, dhp.product.id) FROM DepositHasProduct dhp WHERE dhp.id = :id")
+  Optional<StockKey> findKeyById(Long id);
+
+  @Query("SELECT new com.uniolab.testeinventario.dto.StockLevel(dhp.deposit.id, dhp.product.id, dhp.soh, dhp.reserved, dhp.available) " +
+          "FROM DepositHasProduct dhp WHERE dhp.deposit.id = :depositId AND dhp.product.id IN :productIds")
+  List<StockLevel> findStockLevels(Long depositId, Collection<Long> productIds);
+
+  @Query("SELECT new com.uniolab.testeinventario.dto.VersionedStockLevel(dhp.deposit.id, dhp.product.id, dhp.soh, dhp.reserved, dhp.available, dhp.version) " +
+          "FROM DepositHasProduct dhp WHERE dhp.deposit.id = :depositId AND dhp.product.id = :productId")
+  Optional<VersionedStockLevel> findVersionedStockLevel(Long depositId, Long productId);
+
+  /**
+   * Keyset page of a deposit's stock by product, joined to the product only for its SKU.
+   */
+  @Query("SELECT new com.uniolab.testeinventario.dto.DepositStockRow(p.id, p.sku, dhp.soh, dhp.reserved, dhp.available) " +
+          "FROM DepositHasProduct dhp JOIN dhp.product p " +
+          "WHERE dhp.deposit.id = :depositId AND p.id > :afterProductId ORDER BY p.id")
+  List<DepositStockRow> findDepositStockAfter(Long depositId, Long afterProductId, Limit limit);
+
+  @Query("SELECT new com.uniolab.testeinventario.dto.ForecastKey(dhp.product.id, dhp.soh, COALESCE(dhp.min, -1)) " +
+          "FROM DepositHasProduct dhp WHERE dhp.deposit.id = :depositId AND dhp.product.id > :afterProductId ORDER BY dhp.product.id")
+  List<ForecastKey> findForecastKeysAfter(Long depositId, Long afterProductId, Limit limit);
+
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("SELECT dhp FROM DepositHasProduct dhp WHERE dhp.deposit.id = :depositId AND dhp.product.id = :productId")
+  Optional<DepositHasProduct> lockByDepositIdAndProductId(Long depositId, Long productId);
+
+  @Query("SELECT DISTINCT dhp.deposit.id FROM DepositHasProduct dhp")
+  List<Long> findDepositIds();
+
+  @Query("SELECT dhp.product.id FROM DepositHasProduct dhp WHERE dhp.deposit.id = :depositId")
+  List<Long> findProductIds(Long depositId);
+
+  /**
+   * Keyset page of a deposit's keys flagged below min. Ordering by the full
+   * ix_deposit_has_product_deposit_below_min key lets the index satisfy the ORDER BY, so a
+   * page reads only flagged rows however large the deposit is.
+   */
+  @Query("SELECT new com.uniolab.testeinventario.dto.ReplenishmentRow(dhp.deposit.id, dhp.product.id, dhp.available, dhp.min, dhp.desired) " +
+          "FROM DepositHasProduct dhp " +
+          "WHERE dhp.deposit.id = :depositId AND dhp.belowMin = true AND dhp.product.id > :afterProductId " +
+          "ORDER BY dhp.deposit.id, dhp.belowMin, dhp.product.id")
+  List<ReplenishmentRow> findBelowMinAfter(Long depositId, Long afterProductId, Limit limit);
+
+  @Query("SELECT new com.uniolab.testeinventario.dto.ReplenishmentRow(dhp.deposit.id, dhp.product.id, dhp.available, dhp.min, dhp.desired) " +
+          "FROM DepositHasProduct dhp WHERE dhp.deposit.id = :depositId AND dhp.product.id = :productId")
+  Optional<ReplenishmentRow> findReplenishmentRow(Long depositId, Long productId);
+
+  /**
+   * Keys of the products holding more available stock than their desired level.
+   */
+  @Query("SELECT new com.uniolab.testeinventario.dto.ReplenishmentRow(dhp.deposit.id, dhp.product.id, dhp.available, dhp.min, dhp.desired) " +
+          "FROM DepositHasProduct dhp " +
+          "WHERE dhp.product.id IN :productIds AND dhp.min >= 0 AND dhp.desired IS NOT NULL AND dhp.available > dhp.desired")
+  List<ReplenishmentRow> findSurplus(Collection<Long> productIds);
+}
@@ -0,0 +1,42 @@
+package com.uniolab.testeinventario.repository;
+
+import com.uniolab.testeinventario.dto.StockKey;
+import com.uniolab.testeinventario.model.DepositHasProduct;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Atomic stock updates on DepositHasProduct. Each method is a single statement in the caller's
+ * transaction: {@code INSERT ... ON DUPLICATE KEY UPDATE col = col + :delta}, inserting the row
+ * (guarded by the unique (deposit_id, product_id) constraint) the first time a key is touched.
+ */
+public interface DepositHasProductRepositoryCustom {
+
+    void applySohDelta(Long depositId, Long productId, int quantity);
+
+    void applyReservedDelta(Long depositId, Long productId, int quantity);
+
+    /**
+     * Reserves the quantity only if that much is available, in one conditional update.
+     *
+     * @return false, leaving the row untouched, if the key has no row or not enough available stock
+     */
+    boolean reserveIfAvailable(Long depositId, Long productId, int quantity);
+
+    void setSoh(Long depositId, Long productId, int quantity);
+
+    void setStock(Long depositId, Long productId, int soh, int reserved);
+
+    /**
+     * Sets the replenishment levels; a min of -1 disables replenishment of the key.
+     */
+    void setLevels(Long depositId, Long productId, int min, Integer desired);
+
+    /**
+     * The rows of exactly these keys, in deposit/product order. Locked, they are locked in that
+     * order, so writers of overlapping key sets cannot deadlock; unlocked, for writers that rely
+     * on the version check instead.
+     */
+    List<DepositHasProduct> findByKeys(Collection<StockKey> keys, boolean lock);
+}
@@ -0,0 +1,137 @@
+package com.uniolab.testeinventario.repository;
+
+import com.uniolab.testeinventario.dto.StockKey;
+import com.uniolab.testeinventario.model.DepositHasProduct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.query.NativeQuery;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+@Transactional
+class DepositHasProductRepositoryImpl implements DepositHasProductRepositoryCustom {
+
+    // "below_min" and "available" are assigned first so the statement reads the old soh/reserved
+    // both under standard SQL semantics and under MySQL's left-to-right evaluation of SET clauses.
+    // entity writes of InventoryManager#applyBatch check the version, so bulk updates must bump it
+    private static final String RESERVE_IF_AVAILABLE = "UPDATE deposit_has_product " +
+            "SET version = version + 1, " + belowMin("soh - reserved - :quantity", "min") + ", " +
+            "available = soh - reserved - :quantity, reserved = reserved + :quantity " +
+            "WHERE deposit_id = :depositId AND product_id = :productId AND available >= :quantity";
+
+    // The other writes are upserts: the row a key gets on its first write, or on a duplicate key
+    // the update below. One statement in the caller's transaction, so the first write of a key
+    // takes no gap lock before inserting and needs no second connection. A write to an existing
+    // row still draws an id from the sequence, which is then left unused.
+    private static final String UPSERT = "INSERT INTO deposit_has_product " +
+            "(id, deposit_id, product_id, soh, reserved, available, min, desired, below_min, version) " +
+            "VALUES (:id, :depositId, :productId, :soh, :reserved, :available, :min, :desired, :belowMin, 0) " +
+            "ON DUPLICATE KEY UPDATE version = version + 1, ";
+
+    private static final String ADD_SOH = UPSERT + belowMin("soh + :delta - reserved", "min") + ", " +
+            "available = soh + :delta - reserved, soh = soh + :delta";
+
+    private static final String ADD_RESERVED = UPSERT + belowMin("soh - reserved - :delta", "min") + ", " +
+            "available = soh - reserved - :delta, reserved = reserved + :delta";
+
+    private static final String SET_SOH = UPSERT + belowMin(":soh - reserved", "min") + ", " +
+            "available = :soh - reserved, soh = :soh";
+
+    private static final String SET_STOCK = UPSERT + belowMin(":soh - :reserved", "min") + ", " +
+            "soh = :soh, reserved = :reserved, available = :soh - :reserved";
+
+    private static final String SET_LEVELS = UPSERT + belowMin("available", ":min") + ", " +
+            "min = :min, desired = :desired";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public void applySohDelta(Long depositId, Long productId, int quantity) {
+        upsert(ADD_SOH, depositId, productId, quantity, 0, -1, null).setParameter("delta", quantity).executeUpdate();
+    }
+
+    @Override
+    public void applyReservedDelta(Long depositId, Long productId, int quantity) {
+        upsert(ADD_RESERVED, depositId, productId, 0, quantity, -1, null).setParameter("delta", quantity).executeUpdate();
+    }
+
+    @Override
+    public boolean reserveIfAvailable(Long depositId, Long productId, int quantity) {
+        return entityManager.createNativeQuery(RESERVE_IF_AVAILABLE).unwrap(NativeQuery.class)
+                .addSynchronizedEntityClass(DepositHasProduct.class)
+                .setParameter("depositId", depositId)
+                .setParameter("productId", productId)
+                .setParameter("quantity", quantity)
+                .executeUpdate() > 0;
+    }
+
+    @Override
+    public void setSoh(Long depositId, Long productId, int quantity) {
+        upsert(SET_SOH, depositId, productId, quantity, 0, -1, null).executeUpdate();
+    }
+
+    @Override
+    public void setStock(Long depositId, Long productId, int soh, int reserved) {
+        upsert(SET_STOCK, depositId, productId, soh, reserved, -1, null).executeUpdate();
+    }
+
+    @Override
+    public void setLevels(Long depositId, Long productId, int min, Integer desired) {
+        upsert(SET_LEVELS, depositId, productId, 0, 0, min, desired).executeUpdate();
+    }
+
+    @Override
+    public List<DepositHasProduct> findByKeys(Collection<StockKey> keys, boolean lock) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+        // a row value list matches the keys themselves, where IN lists of deposits and products
+        // would lock their cross product; the scan of the unique index in key order locks in order
+        List<StockKey> list = List.copyOf(keys);
+        String values = IntStream.range(0, list.size()).mapToObj(i -> "(:d" + i + ", :p" + i + ")")
+                .collect(Collectors.joining(", "));
+        TypedQuery<DepositHasProduct> query = entityManager.createQuery("SELECT dhp FROM DepositHasProduct dhp " +
+                "WHERE (dhp.deposit.id, dhp.product.id) IN (" + values + ") " +
+                "ORDER BY dhp.deposit.id, dhp.product.id", DepositHasProduct.class);
+        for (int i = 0; i < list.size(); i++) {
+            query.setParameter("d" + i, list.get(i).depositId());
+            query.setParameter("p" + i, list.get(i).productId());
+        }
+        if (lock) {
+            query.setLockMode(LockModeType.PESSIMISTIC_WRITE);
+        }
+        return query.getResultList();
+    }
+
+    /**
+     * Binds the row inserted for a key seen for the first time.
+     */
+    private NativeQuery<?> upsert(String sql, Long depositId, Long productId, int soh, int reserved, int min, Integer desired) {
+        return entityManager.createNativeQuery(sql).unwrap(NativeQuery.class)
+                .addSynchronizedEntityClass(DepositHasProduct.class)
+                .setParameter("id", SequenceIds.next(entityManager, DepositHasProduct.class))
+                .setParameter("depositId", depositId)
+                .setParameter("productId", productId)
+                .setParameter("soh", soh)
+                .setParameter("reserved", reserved)
+                .setParameter("available", soh - reserved)
+                .setParameter("min", min)
+                .setParameter("desired", desired, Integer.class)
+                .setParameter("belowMin", DepositHasProduct.isBelowMin(soh - reserved, min));
+    }
+
+    /**
+     * Keeps the replenishment flag in the statement that changes available or min, see
+     * {@link DepositHasProduct#isBelowMin}.
+     */
+    private static String belowMin(String available, String min) {
+        return "below_min = CASE WHEN " + min + " >= 0 AND " + available + " < " + min + " THEN true ELSE false END";
+    }
+}
@@ -1,12 +1,26 @@
 package com.uniolab.testeinventario.repository;
 
+import com.uniolab.testeinventario.dto.CatalogEntry;
 import com.uniolab.testeinventario.model.Deposit;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface DepositRepository extends JpaRepository<Deposit, Long> {
     Optional<Deposit> findByName(String depositName);
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.CatalogEntry(d.id, d.name) FROM Deposit d WHERE d.id > :afterId ORDER BY d.id")
+    List<CatalogEntry> findCatalogEntriesAfter(Long afterId, Limit limit);
+
+    @Query("SELECT d.id FROM Deposit d ORDER BY d.id")
+    List<Long> findIds();
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.CatalogEntry(d.id, d.name) FROM Deposit d WHERE d.id IN :ids")
+    List<CatalogEntry> findCatalogEntries(Collection<Long> ids);
 }
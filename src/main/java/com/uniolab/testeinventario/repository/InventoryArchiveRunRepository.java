@@ -0,0 +1,26 @@
+package com.uniolab.testeinventario.repository;
+
+import com.uniolab.testeinventario.model.InventoryArchiveRun;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface InventoryArchiveRunRepository extends JpaRepository<InventoryArchiveRun, Long> {
+
+    @Query("SELECT MAX(r.cutoff) FROM InventoryArchiveRun r")
+    Optional<LocalDateTime> findLastCutoff();
+
+    /**
+     * The latest run, read with a shared lock: a locking read sees the latest committed run
+     * even in a REPEATABLE READ transaction whose snapshot is older.
+     */
+    @Lock(LockModeType.PESSIMISTIC_READ)
+    @Query("SELECT r FROM InventoryArchiveRun r ORDER BY r.cutoff DESC")
+    List<InventoryArchiveRun> lockLast(Limit limit);
+}
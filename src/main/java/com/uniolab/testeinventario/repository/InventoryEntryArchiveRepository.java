@@ -0,0 +1,60 @@
+package com.uniolab.testeinventario.repository;
+
+import com.uniolab.testeinventario.dto.MovementPoint;
+import com.uniolab.testeinventario.dto.StockKey;
+import com.uniolab.testeinventario.model.InventoryEntryArchive;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Archived history, with the point-in-time queries of {@link InventoryEntryRepository}.
+ */
+public interface InventoryEntryArchiveRepository extends JpaRepository<InventoryEntryArchive, Long> {
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.MovementPoint(iea.date, iea.type, iea.quantity) FROM InventoryEntryArchive iea " +
+            "WHERE iea.depositId = :depositId AND iea.productId = :productId AND iea.type = 'BALANCE' AND iea.date <= :date " +
+            "ORDER BY iea.date DESC, iea.id DESC")
+    List<MovementPoint> findBalancesUpTo(Long depositId, Long productId, LocalDateTime date, Limit limit);
+
+    @Query("SELECT COALESCE(SUM(CASE WHEN iea.type = 'IN' THEN iea.quantity ELSE -iea.quantity END), 0) FROM InventoryEntryArchive iea " +
+            "WHERE iea.depositId = :depositId AND iea.productId = :productId AND iea.type IN ('IN', 'OUT') " +
+            "AND iea.date > :after AND iea.date <= :upTo")
+    long sumMovementsAfter(Long depositId, Long productId, LocalDateTime after, LocalDateTime upTo);
+
+    @Query("SELECT COALESCE(SUM(CASE WHEN iea.type = 'IN' THEN iea.quantity ELSE -iea.quantity END), 0) FROM InventoryEntryArchive iea " +
+            "WHERE iea.depositId = :depositId AND iea.productId = :productId AND iea.type IN ('IN', 'OUT') " +
+            "AND iea.date >= :from AND iea.date <= :upTo")
+    long sumMovementsFrom(Long depositId, Long productId, LocalDateTime from, LocalDateTime upTo);
+
+    /**
+     * Movements of a key in the replay order of {@link InventoryEntryRepository#findMovementsBetween}.
+     */
+    @Query("SELECT new com.uniolab.testeinventario.dto.MovementPoint(iea.date, iea.type, iea.quantity) FROM InventoryEntryArchive iea " +
+            "WHERE iea.depositId = :depositId AND iea.productId = :productId AND iea.date >= :from AND iea.date < :until " +
+            "ORDER BY iea.date, CASE WHEN iea.type = 'BALANCE' THEN 1 ELSE 0 END, iea.id")
+    List<MovementPoint> findMovementsBetween(Long depositId, Long productId, LocalDateTime from, LocalDateTime until);
+
+    @Query("SELECT DISTINCT new com.uniolab.testeinventario.dto.StockKey(iea.depositId, iea.productId) FROM InventoryEntryArchive iea " +
+            "WHERE iea.date >= :from AND iea.date < :until")
+    List<StockKey> findKeysWithMovementsBetween(LocalDateTime from, LocalDateTime until);
+
+    @Query("SELECT MIN(iea.date) FROM InventoryEntryArchive iea")
+    Optional<LocalDateTime> findFirstDate();
+
+    /**
+     * Copies the entries of a key dated before {@code cutoff} up to {@code lastId} with one
+     * INSERT ... SELECT, without loading them.
+     */
+    @Modifying
+    @Query("INSERT INTO InventoryEntryArchive (id, type, quantity, date, registrationDate, depositId, productId, transferDepositId, archivedAt) " +
+            "SELECT ie.id, ie.type, ie.quantity, ie.date, ie.registrationDate, ie.deposit.id, ie.product.id, ie.transferDeposit.id, :archivedAt " +
+            "FROM InventoryEntry ie " +
+            "WHERE ie.deposit.id = :depositId AND ie.product.id = :productId AND ie.date < :cutoff AND ie.id <= :lastId")
+    int copyBefore(Long depositId, Long productId, LocalDateTime cutoff, Long lastId, LocalDateTime archivedAt);
+}
@@ -1,35 +1,190 @@
 package com.uniolab.testeinventario.repository;
 
+import com.uniolab.testeinventario.dto.BalanceDate;
+import com.uniolab.testeinventario.dto.DailyEntryTotal;
+import com.uniolab.testeinventario.dto.DepositMovement;
+import com.uniolab.testeinventario.dto.KeyEntryCount;
+import com.uniolab.testeinventario.dto.MovementExportRow;
+import com.uniolab.testeinventario.dto.MovementPoint;
+import com.uniolab.testeinventario.dto.MovementRow;
+import com.uniolab.testeinventario.dto.OutMovement;
+import com.uniolab.testeinventario.dto.StockKey;
 import com.uniolab.testeinventario.enums.InventoryEntryType;
 import com.uniolab.testeinventario.model.Deposit;
 import com.uniolab.testeinventario.model.InventoryEntry;
 import com.uniolab.testeinventario.model.Product;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
-import java.util.Set;
 
 public interface InventoryEntryRepository extends JpaRepository<InventoryEntry, Long> {
-    @Query("FROM InventoryEntry " +
-            "WHERE product = :product AND deposit = :deposit " +
-            "AND date >= :date AND type = :inventoryEntryType")
-    Set<InventoryEntry> findFirstByProductAndDepositAndDateAfterEqualAndType(Product product,
-                                                                        Deposit deposit,
-                                                                        LocalDateTime date,
-                                                                        InventoryEntryType inventoryEntryType);
-
-    @Query("FROM InventoryEntry " +
-            "WHERE product = :product AND deposit = :deposit " +
-            "AND date > :date AND type = :inventoryEntryType")
-    Set<InventoryEntry> findFirstByProductAndDepositAndDateAfterAndType(Product product,
-                                                                             Deposit deposit,
-                                                                             LocalDateTime date,
-                                                                             InventoryEntryType inventoryEntryType);
+    boolean existsByProductIdAndDepositIdAndTypeAndDateGreaterThanEqual(Long productId,
+                                                                       Long depositId,
+                                                                       InventoryEntryType type,
+                                                                       LocalDateTime date);
+
+    boolean existsByProductIdAndDepositIdAndTypeAndDateGreaterThan(Long productId,
+                                                                  Long depositId,
+                                                                  InventoryEntryType type,
+                                                                  LocalDateTime date);
+
+    boolean existsByProductIdAndDepositIdAndTypeInAndDateGreaterThan(Long productId,
+                                                                     Long depositId,
+                                                                     Collection<InventoryEntryType> types,
+                                                                     LocalDateTime date);
+
+    boolean existsByProductIdAndDepositIdAndTypeAndDate(Long productId,
+                                                        Long depositId,
+                                                        InventoryEntryType type,
+                                                        LocalDateTime date);
 
     @Query("SELECT COUNT(ie) FROM InventoryEntry ie " +
             "WHERE ie.product = :product AND ie.deposit = :deposit " +
             "AND ie.date = :date AND ie.type = 'BALANCE'")
     int countBalancesInDate(Product product, Deposit deposit,LocalDateTime date);
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.BalanceDate(ie.deposit.id, ie.product.id, MAX(ie.date)) " +
+            "FROM InventoryEntry ie " +
+            "WHERE ie.deposit.id IN :depositIds AND ie.product.id IN :productIds AND ie.type = 'BALANCE' " +
+            "GROUP BY ie.deposit.id, ie.product.id")
+    List<BalanceDate> findLatestBalanceDates(Collection<Long> depositIds, Collection<Long> productIds);
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.MovementPoint(ie.date, ie.type, ie.quantity) FROM InventoryEntry ie " +
+            "WHERE ie.product.id = :productId AND ie.deposit.id = :depositId AND ie.type = 'BALANCE' AND ie.date <= :date " +
+            "ORDER BY ie.date DESC, ie.id DESC")
+    List<MovementPoint> findBalancesUpTo(Long depositId, Long productId, LocalDateTime date, Limit limit);
+
+    @Query("SELECT COALESCE(SUM(CASE WHEN ie.type = 'IN' THEN ie.quantity ELSE -ie.quantity END), 0) FROM InventoryEntry ie " +
+            "WHERE ie.product.id = :productId AND ie.deposit.id = :depositId AND ie.type IN ('IN', 'OUT') " +
+            "AND ie.date > :after AND ie.date <= :upTo")
+    long sumMovementsAfter(Long depositId, Long productId, LocalDateTime after, LocalDateTime upTo);
+
+    @Query("SELECT COALESCE(SUM(CASE WHEN ie.type = 'IN' THEN ie.quantity ELSE -ie.quantity END), 0) FROM InventoryEntry ie " +
+            "WHERE ie.product.id = :productId AND ie.deposit.id = :depositId AND ie.type IN ('IN', 'OUT') " +
+            "AND ie.date >= :from AND ie.date <= :upTo")
+    long sumMovementsFrom(Long depositId, Long productId, LocalDateTime from, LocalDateTime upTo);
+
+    /**
+     * Movements of a key in replay order: by date, a BALANCE after the IN/OUT of the same instant
+     * (the balance overrides them), then by insertion.
+     */
+    @Query("SELECT new com.uniolab.testeinventario.dto.MovementPoint(ie.date, ie.type, ie.quantity) FROM InventoryEntry ie " +
+            "WHERE ie.product.id = :productId AND ie.deposit.id = :depositId AND ie.date >= :from AND ie.date < :until " +
+            "ORDER BY ie.date, CASE WHEN ie.type = 'BALANCE' THEN 1 ELSE 0 END, ie.id")
+    List<MovementPoint> findMovementsBetween(Long depositId, Long productId, LocalDateTime from, LocalDateTime until);
+
+    @Query("SELECT DISTINCT new com.uniolab.testeinventario.dto.StockKey(ie.deposit.id, ie.product.id) FROM InventoryEntry ie " +
+            "WHERE ie.date >= :from AND ie.date < :until")
+    List<StockKey> findKeysWithMovementsBetween(LocalDateTime from, LocalDateTime until);
+
+    @Query("SELECT MIN(ie.date) FROM InventoryEntry ie")
+    Optional<LocalDateTime> findFirstDate();
+
+    @Query("SELECT DISTINCT ie.deposit.id FROM InventoryEntry ie")
+    List<Long> findDepositIds();
+
+    @Query("SELECT DISTINCT ie.product.id FROM InventoryEntry ie WHERE ie.deposit.id = :depositId")
+    List<Long> findProductIds(Long depositId);
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.DepositMovement(ie.product.id, ie.date, ie.type, ie.quantity) FROM InventoryEntry ie " +
+            "WHERE ie.deposit.id = :depositId AND ie.product.id IN :productIds " +
+            "ORDER BY ie.product.id, ie.date, CASE WHEN ie.type = 'BALANCE' THEN 1 ELSE 0 END, ie.id")
+    List<DepositMovement> findDepositMovements(Long depositId, Collection<Long> productIds);
+
+    /**
+     * Daily IN/OUT totals of some products of a deposit, through the product/deposit index.
+     */
+    @Query("SELECT new com.uniolab.testeinventario.dto.DailyEntryTotal(ie.product.id, CAST(ie.date AS LocalDate), ie.type, ie.transferDeposit.id, SUM(ie.quantity), COUNT(ie)) " +
+            "FROM InventoryEntry ie " +
+            "WHERE ie.deposit.id = :depositId AND ie.product.id IN :productIds AND ie.type IN ('IN', 'OUT') " +
+            "AND ie.date >= :from AND ie.date < :until " +
+            "GROUP BY ie.product.id, CAST(ie.date AS LocalDate), ie.type, ie.transferDeposit.id")
+    List<DailyEntryTotal> sumDaily(Long depositId, Collection<Long> productIds, LocalDateTime from, LocalDateTime until);
+
+    /**
+     * Keyset page of a deposit's history in id order, as flat rows without joins: no entity or
+     * persistence context state is kept between pages. Ordering by the full
+     * ix_inventory_entry_deposit_id key lets the index satisfy the ORDER BY without a sort.
+     */
+    @Query("SELECT new com.uniolab.testeinventario.dto.MovementExportRow(ie.id, ie.type, ie.date, ie.registrationDate, ie.product.id, ie.quantity, ie.transferDeposit.id) " +
+            "FROM InventoryEntry ie " +
+            "WHERE ie.deposit.id = :depositId AND ie.id > :afterId AND ie.date >= :from AND ie.date < :until " +
+            "ORDER BY ie.deposit.id, ie.id")
+    List<MovementExportRow> findDepositExportRowsAfter(Long depositId, LocalDateTime from, LocalDateTime until,
+                                                       Long afterId, Limit limit);
+
+    /**
+     * Keyset page of a deposit's OUT entries that are not transfers, dated before {@code until}
+     * and after ({@code afterDate}, {@code afterId}); the first page starts at the window's first
+     * day and id 0. Ordering by the full ix_inventory_entry_deposit_type_date key lets the index
+     * range of the window satisfy the ORDER BY, so a page reads only the window's OUT entries
+     * however long the deposit's history is.
+     */
+    @Query("SELECT new com.uniolab.testeinventario.dto.OutMovement(ie.id, ie.date, ie.product.id, ie.quantity) " +
+            "FROM InventoryEntry ie " +
+            "WHERE ie.deposit.id = :depositId AND ie.type = 'OUT' AND ie.date >= :afterDate AND ie.date < :until " +
+            "AND (ie.date > :afterDate OR ie.id > :afterId) AND ie.transferDeposit.id IS NULL " +
+            "ORDER BY ie.deposit.id, ie.type, ie.date, ie.id")
+    List<OutMovement> findOutMovementsAfter(Long depositId, LocalDateTime until, LocalDateTime afterDate, Long afterId, Limit limit);
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.MovementExportRow(ie.id, ie.type, ie.date, ie.registrationDate, ie.product.id, ie.quantity, ie.transferDeposit.id) " +
+            "FROM InventoryEntry ie " +
+            "WHERE ie.deposit.id = :depositId AND ie.product.id = :productId AND ie.id > :afterId " +
+            "AND ie.date >= :from AND ie.date < :until " +
+            "ORDER BY ie.id")
+    List<MovementExportRow> findKeyExportRowsAfter(Long depositId, Long productId, LocalDateTime from, LocalDateTime until,
+                                                   Long afterId, Limit limit);
+
+    /**
+     * Keyset page of the movements of one key, with only the columns a movement listing shows.
+     */
+    @Query("SELECT new com.uniolab.testeinventario.dto.MovementRow(ie.id, ie.date, ie.type, ie.quantity, ie.transferDeposit.id) " +
+            "FROM InventoryEntry ie " +
+            "WHERE ie.product.id = :productId AND ie.deposit.id = :depositId AND ie.id > :afterId " +
+            "AND ie.date >= :from AND ie.date < :until " +
+            "ORDER BY ie.id")
+    List<MovementRow> findMovementRowsAfter(Long depositId, Long productId, LocalDateTime from, LocalDateTime until,
+                                            Long afterId, Limit limit);
+
+    /**
+     * Keys with entries dated before {@code cutoff}, in deposit/product order.
+     */
+    @Query("SELECT new com.uniolab.testeinventario.dto.KeyEntryCount(ie.deposit.id, ie.product.id, COUNT(ie)) FROM InventoryEntry ie " +
+            "WHERE ie.date < :cutoff GROUP BY ie.deposit.id, ie.product.id ORDER BY ie.deposit.id, ie.product.id")
+    List<KeyEntryCount> countKeysBefore(LocalDateTime cutoff);
+
+    /**
+     * Id of the {@code skip + 1}-th entry of a key dated before {@code cutoff}, in id order.
+     */
+    @Query("SELECT ie.id FROM InventoryEntry ie " +
+            "WHERE ie.deposit.id = :depositId AND ie.product.id = :productId AND ie.date < :cutoff " +
+            "ORDER BY ie.id OFFSET :skip ROWS FETCH FIRST 1 ROWS ONLY")
+    Optional<Long> findIdBefore(Long depositId, Long productId, LocalDateTime cutoff, int skip);
+
+    @Query("SELECT MAX(ie.id) FROM InventoryEntry ie " +
+            "WHERE ie.deposit.id = :depositId AND ie.product.id = :productId AND ie.date < :cutoff")
+    Optional<Long> findLastIdBefore(Long depositId, Long productId, LocalDateTime cutoff);
+
+    @Modifying
+    @Query("DELETE FROM InventoryEntry ie " +
+            "WHERE ie.deposit.id = :depositId AND ie.product.id = :productId AND ie.date < :cutoff AND ie.id <= :lastId")
+    int deleteBefore(Long depositId, Long productId, LocalDateTime cutoff, Long lastId);
+
+    Optional<InventoryEntry> findByIdempotencyKey(String idempotencyKey);
+
+    @Query("SELECT ie.idempotencyKey FROM InventoryEntry ie WHERE ie.idempotencyKey IN :idempotencyKeys")
+    List<String> findStoredIdempotencyKeys(Collection<String> idempotencyKeys);
+
+    /**
+     * Keyset page of the stored idempotency keys, read from ux_inventory_entry_idempotency_key
+     * alone.
+     */
+    @Query("SELECT ie.idempotencyKey FROM InventoryEntry ie WHERE ie.idempotencyKey > :afterKey ORDER BY ie.idempotencyKey")
+    List<String> findIdempotencyKeysAfter(String afterKey, Limit limit);
 }
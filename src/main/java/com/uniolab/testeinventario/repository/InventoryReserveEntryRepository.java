@@ -1,14 +1,52 @@
 package com.uniolab.testeinventario.repository;
 
-import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.dto.ProductQuantity;
+import com.uniolab.testeinventario.dto.ReservationRow;
 import com.uniolab.testeinventario.model.InventoryReserveEntry;
-import com.uniolab.testeinventario.model.Product;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 public interface InventoryReserveEntryRepository extends JpaRepository<InventoryReserveEntry, Long> {
+    @Query("SELECT new com.uniolab.testeinventario.dto.ReservationRow(ire.id, ire.deposit.id, ire.product.id, ire.quantity) " +
+            "FROM InventoryReserveEntry ire WHERE ire.reference = :reference")
+    Optional<ReservationRow> findRowByReference(String reference);
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.ReservationRow(ire.id, ire.deposit.id, ire.product.id, ire.quantity) " +
+            "FROM InventoryReserveEntry ire WHERE ire.orderReference = :orderReference ORDER BY ire.id")
+    List<ReservationRow> findRowsByOrderReference(String orderReference);
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.ReservationRow(ire.id, ire.deposit.id, ire.product.id, ire.quantity) " +
+            "FROM InventoryReserveEntry ire " +
+            "WHERE ire.product.id = :productId AND ire.deposit.id = :depositId AND ire.date = :date AND ire.quantity = :quantity " +
+            "ORDER BY ire.id")
+    List<ReservationRow> findRows(Long depositId, Long productId, LocalDateTime date, int quantity, Limit limit);
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.ReservationRow(ire.id, ire.deposit.id, ire.product.id, ire.quantity) " +
+            "FROM InventoryReserveEntry ire WHERE ire.expiresAt <= :now ORDER BY ire.expiresAt")
+    List<ReservationRow> findExpired(LocalDateTime now, Limit limit);
+
+    /**
+     * Single-statement delete, returning how many of the rows still existed.
+     */
     @Modifying
-    void deleteByDateAndProductAndDepositAndQuantity(LocalDateTime localDateTime, Product product, Deposit deposit, int quantity);
+    @Query("DELETE FROM InventoryReserveEntry ire WHERE ire.id IN :ids")
+    int deleteRows(Collection<Long> ids);
+
+    @Query("SELECT COALESCE(SUM(ire.quantity), 0) FROM InventoryReserveEntry ire " +
+            "WHERE ire.deposit.id = :depositId AND ire.product.id = :productId")
+    long sumReserved(Long depositId, Long productId);
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.ProductQuantity(ire.product.id, SUM(ire.quantity)) FROM InventoryReserveEntry ire " +
+            "WHERE ire.deposit.id = :depositId AND ire.product.id IN :productIds GROUP BY ire.product.id")
+    List<ProductQuantity> sumReservedByProduct(Long depositId, Collection<Long> productIds);
+
+    @Query("SELECT DISTINCT ire.product.id FROM InventoryReserveEntry ire WHERE ire.deposit.id = :depositId")
+    List<Long> findProductIds(Long depositId);
 }
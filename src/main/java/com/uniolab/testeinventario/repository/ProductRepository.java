@@ -1,12 +1,23 @@
 package com.uniolab.testeinventario.repository;
 
+import com.uniolab.testeinventario.dto.CatalogEntry;
 import com.uniolab.testeinventario.model.Product;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface ProductRepository extends JpaRepository<Product, Long> {
     Optional<Product> findBySku(String sku);
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.CatalogEntry(p.id, p.sku) FROM Product p WHERE p.id > :afterId ORDER BY p.id")
+    List<CatalogEntry> findCatalogEntriesAfter(Long afterId, Limit limit);
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.CatalogEntry(p.id, p.sku) FROM Product p WHERE p.id IN :ids")
+    List<CatalogEntry> findCatalogEntries(Collection<Long> ids);
 }
@@ -0,0 +1,23 @@
+package com.uniolab.testeinventario.repository;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+
+/**
+ * Ids for native inserts, drawn from the entity's sequence through the same pooled generator
+ * as Hibernate's own inserts, so both never hand out the same id.
+ */
+final class SequenceIds {
+
+    private SequenceIds() {
+    }
+
+    static Long next(EntityManager entityManager, Class<?> entityClass) {
+        SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        BeforeExecutionGenerator generator = (BeforeExecutionGenerator) session.getFactory().getMappingMetamodel()
+                .getEntityDescriptor(entityClass).getGenerator();
+        return (Long) generator.generate(session, null, null, EventType.INSERT);
+    }
+}
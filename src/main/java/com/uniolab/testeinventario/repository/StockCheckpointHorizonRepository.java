@@ -0,0 +1,7 @@
+package com.uniolab.testeinventario.repository;
+
+import com.uniolab.testeinventario.model.StockCheckpointHorizon;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface StockCheckpointHorizonRepository extends JpaRepository<StockCheckpointHorizon, Long> {
+}
@@ -0,0 +1,28 @@
+package com.uniolab.testeinventario.repository;
+
+import com.uniolab.testeinventario.dto.DailyStock;
+import com.uniolab.testeinventario.model.StockCheckpoint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface StockCheckpointRepository extends JpaRepository<StockCheckpoint, Long> {
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.DailyStock(sc.date, sc.soh) FROM StockCheckpoint sc " +
+            "WHERE sc.deposit.id = :depositId AND sc.product.id = :productId AND sc.date < :date " +
+            "ORDER BY sc.date DESC")
+    List<DailyStock> findBefore(Long depositId, Long productId, LocalDate date, Limit limit);
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.DailyStock(sc.date, sc.soh) FROM StockCheckpoint sc " +
+            "WHERE sc.deposit.id = :depositId AND sc.product.id = :productId AND sc.date BETWEEN :from AND :to " +
+            "ORDER BY sc.date")
+    List<DailyStock> findBetween(Long depositId, Long productId, LocalDate from, LocalDate to);
+
+    @Modifying
+    @Query("DELETE FROM StockCheckpoint sc WHERE sc.deposit.id = :depositId AND sc.product.id = :productId AND sc.date >= :date")
+    int deleteFrom(Long depositId, Long productId, LocalDate date);
+}
@@ -0,0 +1,27 @@
+package com.uniolab.testeinventario.repository;
+
+import com.uniolab.testeinventario.dto.StockoutRow;
+import com.uniolab.testeinventario.model.StockoutForecast;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface StockoutForecastRepository extends JpaRepository<StockoutForecast, Long> {
+
+    @Modifying
+    @Query("DELETE FROM StockoutForecast f WHERE f.deposit.id = :depositId")
+    int deleteByDepositId(Long depositId);
+
+    /**
+     * Keys of the deposit projected to run out before {@code until}, soonest first.
+     */
+    @Query("SELECT new com.uniolab.testeinventario.dto.StockoutRow(p.id, p.sku, f.soh, f.min, f.dailyConsumption, f.minDate, f.stockoutDate) " +
+            "FROM StockoutForecast f JOIN f.product p " +
+            "WHERE f.deposit.id = :depositId AND f.stockoutDate < :until " +
+            "ORDER BY f.stockoutDate, p.id")
+    List<StockoutRow> findStockoutsBefore(Long depositId, LocalDate until, Limit limit);
+}
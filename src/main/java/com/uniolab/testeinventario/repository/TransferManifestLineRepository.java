@@ -0,0 +1,22 @@
+package com.uniolab.testeinventario.repository;
+
+import com.uniolab.testeinventario.dto.InTransitRow;
+import com.uniolab.testeinventario.dto.ProductQuantity;
+import com.uniolab.testeinventario.model.TransferManifestLine;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface TransferManifestLineRepository extends JpaRepository<TransferManifestLine, Long> {
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.ProductQuantity(tml.product.id, tml.quantity) " +
+            "FROM TransferManifestLine tml WHERE tml.manifest.id = :manifestId ORDER BY tml.id")
+    List<ProductQuantity> findQuantities(Long manifestId);
+
+    @Query("SELECT new com.uniolab.testeinventario.dto.InTransitRow(p.id, p.sku, SUM(tml.quantity)) " +
+            "FROM TransferManifestLine tml JOIN tml.manifest tm JOIN tml.product p " +
+            "WHERE tm.destinationDeposit.id = :depositId AND tm.receivedAt IS NULL " +
+            "GROUP BY p.id, p.sku ORDER BY p.sku")
+    List<InTransitRow> sumInTransitTo(Long depositId);
+}
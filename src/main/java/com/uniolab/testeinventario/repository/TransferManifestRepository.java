@@ -0,0 +1,23 @@
+package com.uniolab.testeinventario.repository;
+
+import com.uniolab.testeinventario.model.TransferManifest;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface TransferManifestRepository extends JpaRepository<TransferManifest, Long> {
+
+    boolean existsByReference(String reference);
+
+    Optional<TransferManifest> findByReference(String reference);
+
+    /**
+     * Marks a manifest received, returning 0 when it already was (e.g. by a concurrent receipt).
+     */
+    @Modifying
+    @Query("UPDATE TransferManifest tm SET tm.receivedAt = :receivedAt WHERE tm.id = :id AND tm.receivedAt IS NULL")
+    int markReceived(Long id, LocalDateTime receivedAt);
+}
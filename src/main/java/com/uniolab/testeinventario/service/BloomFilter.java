@@ -0,0 +1,97 @@
+package com.uniolab.testeinventario.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Bloom filter of strings over a {@code long[]} bit set: {@link #mightContain} never misses a
+ * key that was {@link #put}, and holds a key never put with about the false positive rate it
+ * was sized for, as long as no more keys than expected are put.
+ * <p>
+ * A key sets {@code hashes} bits, derived from one 64-bit hash of its chars by double hashing.
+ * Bits are set atomically, so puts and reads may run from any thread; a read racing with the
+ * put of the same key may miss it.
+ */
+final class BloomFilter {
+
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int MAX_WORDS = Integer.MAX_VALUE - 8;
+
+    private final long[] words;
+    private final long bits;
+    private final int hashes;
+
+    BloomFilter(long expectedKeys, double falsePositiveRate) {
+        if (expectedKeys <= 0 || !(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("Invalid Bloom filter size: " + expectedKeys + " keys at " + falsePositiveRate);
+        }
+        double optimalBits = -expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        this.words = new long[(int) Math.min(MAX_WORDS, Math.max(1, (long) Math.ceil(optimalBits / 64)))];
+        this.bits = (long) words.length * 64;
+        this.hashes = Math.max(1, (int) Math.round((double) bits / expectedKeys * Math.log(2)));
+    }
+
+    void put(String key) {
+        long hash = hash(key);
+        long step = step(hash);
+        for (int i = 0; i < hashes; i++) {
+            long bit = index(hash + i * step);
+            WORDS.getAndBitwiseOr(words, (int) (bit >>> 6), 1L << bit);
+        }
+    }
+
+    boolean mightContain(String key) {
+        long hash = hash(key);
+        long step = step(hash);
+        for (int i = 0; i < hashes; i++) {
+            long bit = index(hash + i * step);
+            if (((long) WORDS.getAcquire(words, (int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the false positive rate expected with {@code keys} keys put
+     */
+    double falsePositiveRate(long keys) {
+        return Math.pow(1 - Math.exp(-(double) hashes * keys / bits), hashes);
+    }
+
+    long sizeBytes() {
+        return (long) words.length * Long.BYTES;
+    }
+
+    int hashes() {
+        return hashes;
+    }
+
+    /**
+     * Maps a hash onto [0, bits) by multiplication instead of a division per probe.
+     */
+    private long index(long hash) {
+        return Math.multiplyHigh(hash >>> 1, bits << 1);
+    }
+
+    /**
+     * FNV-1a over the chars, then the MurmurHash3 finalizer to spread its low-entropy bits.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long step(long hash) {
+        return mix(hash + 0x9e3779b97f4a7c15L) | 1;
+    }
+
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
@@ -0,0 +1,111 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.config.CatalogProperties;
+import com.uniolab.testeinventario.dto.CatalogEntry;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.repository.DepositRepository;
+import com.uniolab.testeinventario.repository.ProductRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BiFunction;
+
+/**
+ * Resolves SKUs and deposit names to ids from memory.
+ * <p>
+ * Both catalogs are loaded at startup in id order and kept in sync by
+ * {@link ProductService#create} and {@link DepositService#create}; a key created elsewhere
+ * is looked up once in the database and then remembered. Lookups return detached
+ * instances carrying only the id and the key, which is all InventoryManager needs to
+ * reference them, so resolving a movement costs no query. Without
+ * {@code inventory.catalog.preload} the catalogs start empty and fill up as keys are used.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CatalogLookup {
+
+    private static final int LOAD_PAGE_SIZE = 10_000;
+
+    private final ProductRepository productRepository;
+    private final DepositRepository depositRepository;
+    private final CatalogProperties properties;
+
+    private final StringIdIndex productIds = new StringIdIndex();
+    private final StringIdIndex depositIds = new StringIdIndex();
+
+    @PostConstruct
+    void load() {
+        if (!properties.preload()) {
+            return;
+        }
+        long start = System.nanoTime();
+        load(productIds, productRepository::findCatalogEntriesAfter);
+        load(depositIds, depositRepository::findCatalogEntriesAfter);
+        log.info("Catalog lookup loaded {} products and {} deposits in {} ms ({} KB)",
+                productIds.size(), depositIds.size(), (System.nanoTime() - start) / 1_000_000,
+                (productIds.footprintBytes() + depositIds.footprintBytes()) / 1024);
+    }
+
+    public Optional<Product> findProduct(String sku) {
+        long id = productIds.get(sku);
+        if (id < 0) {
+            Optional<Product> product = productRepository.findBySku(sku);
+            product.ifPresent(this::register);
+            return product;
+        }
+        Product product = new Product();
+        product.setId(id);
+        product.setSku(sku);
+        return Optional.of(product);
+    }
+
+    public Optional<Deposit> findDeposit(String name) {
+        long id = depositIds.get(name);
+        if (id < 0) {
+            Optional<Deposit> deposit = depositRepository.findByName(name);
+            deposit.ifPresent(this::register);
+            return deposit;
+        }
+        Deposit deposit = new Deposit();
+        deposit.setId(id);
+        deposit.setName(name);
+        return Optional.of(deposit);
+    }
+
+    public void register(Product product) {
+        productIds.put(product.getSku(), product.getId());
+    }
+
+    public void register(Deposit deposit) {
+        depositIds.put(deposit.getName(), deposit.getId());
+    }
+
+    public int productCount() {
+        return productIds.size();
+    }
+
+    public long footprintBytes() {
+        return productIds.footprintBytes() + depositIds.footprintBytes();
+    }
+
+    private static void load(StringIdIndex index, BiFunction<Long, Limit, List<CatalogEntry>> page) {
+        long afterId = 0;
+        List<CatalogEntry> entries;
+        do {
+            entries = page.apply(afterId, Limit.of(LOAD_PAGE_SIZE));
+            for (CatalogEntry entry : entries) {
+                if (entry.key() != null) {
+                    index.put(entry.key(), entry.id());
+                }
+                afterId = entry.id();
+            }
+        } while (entries.size() == LOAD_PAGE_SIZE);
+    }
+}
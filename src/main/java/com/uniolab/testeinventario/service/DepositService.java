@@ -10,9 +10,12 @@ import org.springframework.stereotype.Service;
 public class DepositService {
 
     private final DepositRepository depositRepository;
+    private final CatalogLookup catalogLookup;
 
     public Deposit create(Deposit deposit) {
-        return depositRepository.save(deposit);
+        Deposit saved = depositRepository.save(deposit);
+        catalogLookup.register(saved);
+        return saved;
     }
 
 }
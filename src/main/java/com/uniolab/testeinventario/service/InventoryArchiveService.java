@@ -0,0 +1,161 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.config.ArchiveProperties;
+import com.uniolab.testeinventario.dto.KeyEntryCount;
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+import com.uniolab.testeinventario.model.InventoryArchiveRun;
+import com.uniolab.testeinventario.model.InventoryEntry;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import com.uniolab.testeinventario.repository.DepositRepository;
+import com.uniolab.testeinventario.repository.InventoryArchiveRunRepository;
+import com.uniolab.testeinventario.repository.InventoryEntryArchiveRepository;
+import com.uniolab.testeinventario.repository.InventoryEntryRepository;
+import com.uniolab.testeinventario.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Keeps InventoryEntry small by moving old history to InventoryEntryArchive.
+ * <p>
+ * A run first closes the period before its cutoff (see {@link StockHistoryService#checkNotArchived}),
+ * then archives the keys with entries before it in transactions of {@code batch-size} entries:
+ * small keys share a transaction, large ones span several. For each key the DepositHasProduct
+ * row is locked like a live write would, a BALANCE holding the stock at the cutoff is written at
+ * the cutoff, and the older entries are copied and deleted with one statement each. The
+ * balance rules of {@link InventoryManager} and full replays then start from that BALANCE,
+ * while point-in-time queries before the cutoff read the archive too. Batches are separated by
+ * a pause, so live writes never wait long behind a run.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class InventoryArchiveService {
+
+    private final InventoryEntryRepository inventoryEntryRepository;
+    private final InventoryEntryArchiveRepository inventoryEntryArchiveRepository;
+    private final InventoryArchiveRunRepository inventoryArchiveRunRepository;
+    private final DepositHasProductRepository depositHasProductRepository;
+    private final DepositRepository depositRepository;
+    private final ProductRepository productRepository;
+    private final StockHistoryService stockHistoryService;
+    private final ArchiveProperties properties;
+    private final PlatformTransactionManager transactionManager;
+
+    @Scheduled(cron = "${inventory.archive.cron:-}")
+    public void archive() throws InterruptedException {
+        archive(LocalDate.now().minus(properties.horizon()));
+    }
+
+    /**
+     * Archives the entries dated before the start of {@code before}.
+     *
+     * @return number of entries archived
+     */
+    public synchronized long archive(LocalDate before) throws InterruptedException {
+        LocalDateTime cutoff = before.atStartOfDay();
+        LocalDateTime archivedBefore = inventoryArchiveRunRepository.findLastCutoff().orElse(null);
+        if (archivedBefore != null && cutoff.isBefore(archivedBefore)) {
+            throw new IllegalArgumentException("Entries before " + archivedBefore + " are already archived");
+        }
+
+        InventoryArchiveRun run = new InventoryArchiveRun();
+        run.setCutoff(cutoff);
+        run.setStartedAt(LocalDateTime.now());
+        inventoryArchiveRunRepository.save(run);
+        stockHistoryService.archiveBefore(cutoff);
+
+        List<KeyEntryCount> keys = inventoryEntryRepository.countKeysBefore(cutoff);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        List<Slice> batch = new ArrayList<>();
+        int batchEntries = 0;
+        long archived = 0;
+        for (KeyEntryCount key : keys) {
+            boolean first = true;
+            for (long left = key.entries(); left > 0; ) {
+                int size = (int) Math.min(left, properties.batchSize() - batchEntries);
+                left -= size;
+                batch.add(new Slice(key, size, first, left == 0));
+                first = false;
+                batchEntries += size;
+                if (batchEntries == properties.batchSize()) {
+                    archived += transaction.execute(status -> archive(batch, cutoff));
+                    batch.clear();
+                    batchEntries = 0;
+                    if (!properties.pause().isZero()) {
+                        Thread.sleep(properties.pause().toMillis());
+                    }
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            archived += transaction.execute(status -> archive(batch, cutoff));
+        }
+
+        run.setFinishedAt(LocalDateTime.now());
+        run.setKeyCount(keys.size());
+        run.setEntryCount(archived);
+        inventoryArchiveRunRepository.save(run);
+
+        log.info("Archived {} inventory entries of {} keys before {}", archived, keys.size(), cutoff);
+        return archived;
+    }
+
+    /**
+     * Moves the oldest entries of each slice's key, after writing the checkpoint BALANCE with its
+     * first slice. Queries stay exact between the slices of a key: each moves atomically and
+     * reads merge both tables.
+     */
+    private long archive(List<Slice> slices, LocalDateTime cutoff) {
+        LocalDateTime now = LocalDateTime.now();
+        List<InventoryEntry> checkpoints = new ArrayList<>();
+        long archived = 0;
+        for (Slice slice : slices) {
+            KeyEntryCount key = slice.key();
+            depositHasProductRepository.lockByDepositIdAndProductId(key.depositId(), key.productId());
+            if (slice.first() && !inventoryEntryRepository.existsByProductIdAndDepositIdAndTypeAndDate(key.productId(),
+                    key.depositId(), InventoryEntryType.BALANCE, cutoff)) {
+                checkpoints.add(checkpoint(key, cutoff, stockHistoryService.stockAt(key.depositId(), key.productId(), cutoff), now));
+            }
+            // the slice ends at the id of its last entry, or takes all that is left of the key
+            Optional<Long> lastId = slice.last()
+                    ? inventoryEntryRepository.findLastIdBefore(key.depositId(), key.productId(), cutoff)
+                    : inventoryEntryRepository.findIdBefore(key.depositId(), key.productId(), cutoff, slice.entries() - 1);
+            if (lastId.isEmpty()) {
+                continue;
+            }
+            int copied = inventoryEntryArchiveRepository.copyBefore(key.depositId(), key.productId(), cutoff, lastId.get(), now);
+            int deleted = inventoryEntryRepository.deleteBefore(key.depositId(), key.productId(), cutoff, lastId.get());
+            if (copied != deleted) {
+                throw new IllegalStateException("Archive of deposit " + key.depositId() + ", product " + key.productId() +
+                        " copied " + copied + " entries but deleted " + deleted);
+            }
+            archived += deleted;
+        }
+        inventoryEntryRepository.saveAll(checkpoints);
+        return archived;
+    }
+
+    private InventoryEntry checkpoint(KeyEntryCount key, LocalDateTime cutoff, int soh, LocalDateTime now) {
+        InventoryEntry balance = new InventoryEntry();
+        balance.setType(InventoryEntryType.BALANCE);
+        balance.setDate(cutoff);
+        balance.setProduct(productRepository.getReferenceById(key.productId()));
+        balance.setDeposit(depositRepository.getReferenceById(key.depositId()));
+        balance.setQuantity(soh);
+        balance.setRegistrationDate(now);
+        return balance;
+    }
+
+    private record Slice(KeyEntryCount key, int entries, boolean first, boolean last) {
+    }
+}
@@ -1,134 +1,580 @@
 package com.uniolab.testeinventario.service;
 
+import com.uniolab.testeinventario.config.ReservationProperties;
+import com.uniolab.testeinventario.dto.BalanceDate;
+import com.uniolab.testeinventario.dto.MovementLine;
+import com.uniolab.testeinventario.dto.OrderLine;
+import com.uniolab.testeinventario.dto.ReservationRow;
+import com.uniolab.testeinventario.dto.StockKey;
+import com.uniolab.testeinventario.dto.VersionedStockLevel;
 import com.uniolab.testeinventario.enums.InventoryEntryType;
+import com.uniolab.testeinventario.enums.StockChangeOperation;
 import com.uniolab.testeinventario.model.*;
 import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import com.uniolab.testeinventario.repository.DepositRepository;
 import com.uniolab.testeinventario.repository.InventoryEntryRepository;
 import com.uniolab.testeinventario.repository.InventoryReserveEntryRepository;
+import com.uniolab.testeinventario.repository.ProductRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Set;
+import java.util.*;
+import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class InventoryManager {
 
+    // lock order of multi-key updates
+    private static final Comparator<StockKey> KEY_ORDER =
+            Comparator.comparing(StockKey::depositId).thenComparing(StockKey::productId);
+
     private final InventoryEntryRepository inventoryEntryRepository;
     private final DepositHasProductRepository depositHasProductRepository;
     private final InventoryReserveEntryRepository inventoryReserveEntryRepository;
+    private final DepositRepository depositRepository;
+    private final ProductRepository productRepository;
+    private final CatalogLookup catalogLookup;
+    private final StockCache stockCache;
+    private final StockHistoryService stockHistoryService;
+    private final MovementTotalService movementTotalService;
+    private final LowWatermarkMonitor lowWatermarkMonitor;
+    private final StockRecomputeService stockRecomputeService;
+    private final ReservationProperties reservationProperties;
+    private final StockWriteConcurrency stockWriteConcurrency;
+    private final StockChangeFeed stockChangeFeed;
+    private final MovementIdempotency movementIdempotency;
+    private final TransactionTemplate transactionTemplate;
 
+    @Transactional
     public InventoryEntry add(LocalDateTime date, Product product, Deposit deposit, int quantity) {
+        return move(date, product, deposit, quantity, InventoryEntryType.IN, null);
+    }
 
-        InventoryEntry entry = createInventoryEntry(date, product, deposit, quantity, InventoryEntryType.IN);
-        InventoryEntry result = inventoryEntryRepository.save(entry);
-        log.info("Inventory entry created: {}", result);
+    /**
+     * Adds stock once per idempotency key: a redelivery returns the entry stored under the key
+     * and changes nothing. See {@link #applyOnce}.
+     */
+    public InventoryEntry add(LocalDateTime date, Product product, Deposit deposit, int quantity, String idempotencyKey) {
+        return applyOnce(idempotencyKey, () -> move(date, product, deposit, quantity, InventoryEntryType.IN, idempotencyKey));
+    }
 
-        if (!hasBalanceEntryAfter(date, product, deposit)) {
-            updateDepositHasProduct(deposit, product, quantity);
-        }
+    @Transactional
+    public InventoryEntry remove(LocalDateTime date, Product product, Deposit deposit, int quantity) {
+        return move(date, product, deposit, quantity, InventoryEntryType.OUT, null);
+    }
 
-        return result;
+    /**
+     * Removes stock once per idempotency key, see {@link #add(LocalDateTime, Product, Deposit, int, String)}.
+     */
+    public InventoryEntry remove(LocalDateTime date, Product product, Deposit deposit, int quantity, String idempotencyKey) {
+        return applyOnce(idempotencyKey, () -> move(date, product, deposit, quantity, InventoryEntryType.OUT, idempotencyKey));
     }
 
-    public InventoryEntry remove(LocalDateTime date, Product product, Deposit deposit, int quantity) {
+    @Transactional
+    public InventoryEntry balance(LocalDateTime date, Product product, Deposit deposit, int quantity) {
+        return balanceEntry(date, product, deposit, quantity, null);
+    }
 
-        InventoryEntry entry = createInventoryEntry(date, product, deposit, quantity, InventoryEntryType.OUT);
-        InventoryEntry result = inventoryEntryRepository.save(entry);
-        log.info("Inventory entry created: {}", result);
+    /**
+     * Sets the stock once per idempotency key, see {@link #add(LocalDateTime, Product, Deposit, int, String)}.
+     */
+    public InventoryEntry balance(LocalDateTime date, Product product, Deposit deposit, int quantity, String idempotencyKey) {
+        return applyOnce(idempotencyKey, () -> balanceEntry(date, product, deposit, quantity, idempotencyKey));
+    }
 
+    /**
+     * Runs a movement carrying an idempotency key in its own transaction, unless the key is
+     * already stored: the stored entry is returned instead. The same key committed
+     * concurrently is rejected by the unique index at commit and the entry it stored returned.
+     * Called within a transaction the movement joins it, and such a rejection fails it. Without
+     * a key the movement is simply run.
+     */
+    private InventoryEntry applyOnce(String idempotencyKey, Supplier<InventoryEntry> movement) {
+        if (idempotencyKey == null) {
+            return transactionTemplate.execute(status -> movement.get());
+        }
+        try {
+            return transactionTemplate.execute(status -> movementIdempotency.findEntry(idempotencyKey).orElseGet(movement));
+        } catch (DataIntegrityViolationException e) {
+            return movementIdempotency.findStoredEntry(idempotencyKey).orElseThrow(() -> e);
+        }
+    }
+
+    private InventoryEntry move(LocalDateTime date, Product product, Deposit deposit, int quantity,
+                                InventoryEntryType type, String idempotencyKey) {
+
+        // the stock row is written before the entry and its daily total, as applyBatch locks them
         if (!hasBalanceEntryAfter(date, product, deposit)) {
-            updateDepositHasProduct(deposit, product, -quantity);
+            updateDepositHasProduct(deposit, product, type == InventoryEntryType.IN ? quantity : -quantity);
         }
 
+        InventoryEntry entry = createInventoryEntry(date, product, deposit, quantity, type);
+        InventoryEntry result = saveEntry(entry, idempotencyKey);
+        logEntry(result);
+
         return result;
     }
 
-    public InventoryEntry balance(LocalDateTime date, Product product, Deposit deposit, int quantity) {
+    private InventoryEntry balanceEntry(LocalDateTime date, Product product, Deposit deposit, int quantity,
+                                        String idempotencyKey) {
         LocalDateTime balanceDate = date.toLocalDate().atStartOfDay();
 
         InventoryEntry entry = createInventoryEntry(balanceDate, product, deposit, quantity, InventoryEntryType.BALANCE);
-        InventoryEntry result = inventoryEntryRepository.save(entry);
+        InventoryEntry result = saveEntry(entry, idempotencyKey);
 
         if (!hasBalanceEntryAfterStrict(balanceDate, product, deposit)) {
             setDepositHasProduct(deposit, product, quantity);
+            // a back-dated balance must be followed by the movements already recorded after it
+            if (hasMovementAfter(balanceDate, product, deposit)) {
+                stockRecomputeService.requestAfterCommit(deposit.getId(), product.getId());
+            }
         }
 
         return result;
     }
 
 
+    /**
+     * Moves stock between two deposits as an OUT and an IN entry. Both stock rows are written
+     * first, then both entries, each in deposit/product order: opposite transfers between the
+     * same deposits would otherwise lock the rows and daily totals in opposite orders and deadlock.
+     */
+    @Transactional
     public void transfer(LocalDateTime date, Product product, Deposit sourceDeposit, Deposit destinationDeposit, int quantity) {
-        // Create OUT entry for source deposit
-        InventoryEntry outEntry = createInventoryEntry(date, product, sourceDeposit, quantity, InventoryEntryType.OUT, destinationDeposit);
-        InventoryEntry savedOutEntry = inventoryEntryRepository.save(outEntry);
-        log.info("Inventory OUT entry created: {}", savedOutEntry);
-
-        if (!hasBalanceEntryAfter(date, product, sourceDeposit)) {
-            updateDepositHasProduct(sourceDeposit, product, -quantity);
+        List<InventoryEntry> entries = new ArrayList<>(List.of(
+                createInventoryEntry(date, product, sourceDeposit, quantity, InventoryEntryType.OUT, destinationDeposit),
+                createInventoryEntry(date, product, destinationDeposit, quantity, InventoryEntryType.IN, sourceDeposit)));
+        entries.sort(Comparator.comparing(entry -> new StockKey(entry.getDeposit().getId(), product.getId()), KEY_ORDER));
+
+        for (InventoryEntry entry : entries) {
+            if (!hasBalanceEntryAfter(date, product, entry.getDeposit())) {
+                updateDepositHasProduct(entry.getDeposit(), product,
+                        entry.getType() == InventoryEntryType.IN ? quantity : -quantity);
+            }
         }
-
-        // Create IN entry for destination deposit
-        InventoryEntry inEntry = createInventoryEntry(date, product, destinationDeposit, quantity, InventoryEntryType.IN, sourceDeposit);
-        InventoryEntry savedInEntry = inventoryEntryRepository.save(inEntry);
-        log.info("Inventory IN entry created: {}", savedInEntry);
-
-        if (!hasBalanceEntryAfter(date, product, destinationDeposit)) {
-            updateDepositHasProduct(destinationDeposit, product, quantity);
+        for (InventoryEntry entry : entries) {
+            logEntry(saveEntry(entry));
         }
     }
 
-    public void addReserve(LocalDateTime date, Product product, Deposit deposit, int quantity) {
+    @Transactional
+    public InventoryReserveEntry addReserve(LocalDateTime date, Product product, Deposit deposit, int quantity) {
+        return reserve(date, product, deposit, quantity, null, reservationProperties.defaultTtl());
+    }
 
-        InventoryReserveEntry reserveEntry = new InventoryReserveEntry();
-        reserveEntry.setDate(date);
-        reserveEntry.setProduct(product);
-        reserveEntry.setDeposit(deposit);
-        reserveEntry.setQuantity(quantity);
-        reserveEntry.setRegistrationDate(LocalDateTime.now());
+    /**
+     * Reserves stock under a reference that later releases or confirms it through the unique
+     * reference index.
+     *
+     * @param reference caller supplied reference (e.g. an order line), generated when null
+     * @param ttl       lifetime after which {@link ReservationSweeper} releases it, null for none
+     */
+    @Transactional
+    public InventoryReserveEntry reserve(LocalDateTime date, Product product, Deposit deposit, int quantity,
+                                         String reference, Duration ttl) {
+
+        InventoryReserveEntry reserveEntry = createInventoryReserveEntry(date, product, deposit, quantity);
+        if (reference != null) {
+            reserveEntry.setReference(reference);
+        }
+        reserveEntry.setExpiresAt(ttl == null ? null : reserveEntry.getRegistrationDate().plus(ttl));
         inventoryReserveEntryRepository.save(reserveEntry);
 
-        log.info("Inventory reserve entry created: {}", reserveEntry);
+        log.debug("Inventory reserve entry created: id {}, reference {}, deposit {}, product {}, {}",
+                reserveEntry.getId(), reserveEntry.getReference(), deposit.getId(), product.getId(), quantity);
 
         //update deposit has product
-        DepositHasProduct dhp = depositHasProductRepository.findByDepositIdAndProductId(deposit.getId(), product.getId())
-                .orElse(createInitialDepositHasProduct(deposit, product));
+        depositHasProductRepository.applyReservedDelta(deposit.getId(), product.getId(), quantity);
+        stockCache.evictAfterCommit(deposit.getId(), product.getId());
+        stockChangeFeed.publishAfterCommit(StockChangeOperation.RESERVE, deposit.getId(), product.getId(), quantity);
+        lowWatermarkMonitor.check(deposit.getId(), product.getId());
 
-        dhp.setReserved(dhp.getReserved() + quantity);
-        dhp.setAvailable(dhp.getSoh() - dhp.getReserved());
+        log.debug("DepositHasProduct reserved updated: deposit {}, product {}, {}", deposit.getId(), product.getId(), quantity);
+        return reserveEntry;
+    }
 
-        depositHasProductRepository.save(dhp);
+    /**
+     * Releases one reservation matching date and quantity. Prefer {@link #releaseReserve(String)}.
+     */
+    @Transactional
+    public void removeReserve(LocalDateTime localDateTime, Product product, Deposit deposit, int quantity) {
+        ReservationRow row = inventoryReserveEntryRepository
+                .findRows(deposit.getId(), product.getId(), localDateTime, quantity, Limit.of(1))
+                .stream().findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Reservation not found: " + localDateTime));
+        release(row);
+    }
 
-        log.info("DepositHasProduct updated: {}", dhp);
+    @Transactional
+    public void releaseReserve(String reference) {
+        release(findReservation(reference));
     }
 
+    /**
+     * Turns a reservation into the OUT movement it was holding stock for.
+     */
     @Transactional
-    public void removeReserve(LocalDateTime localDateTime, Product product, Deposit deposit, int quantity) {
+    public InventoryEntry confirmReserve(String reference, LocalDateTime date) {
+        ReservationRow row = findReservation(reference);
+        release(row);
 
-        inventoryReserveEntryRepository.deleteByDateAndProductAndDepositAndQuantity(localDateTime, product, deposit, quantity);
+        return remove(date, productRepository.getReferenceById(row.productId()),
+                depositRepository.getReferenceById(row.depositId()), row.quantity());
+    }
 
-        //update deposit has product
-        DepositHasProduct dhp = depositHasProductRepository.findByDepositIdAndProductId(deposit.getId(), product.getId())
-                .orElse(createInitialDepositHasProduct(deposit, product));
+    /**
+     * Releases up to {@code limit} reservations expired at {@code now}, with one reserved update
+     * per (deposit, product) in deposit/product order.
+     *
+     * @return number of released reservations
+     * @throws ConcurrencyFailureException if some of them were released concurrently; nothing is
+     *                                     applied and the batch can simply be retried
+     */
+    @Transactional
+    public int expireReservations(LocalDateTime now, int limit) {
+        List<ReservationRow> expired = inventoryReserveEntryRepository.findExpired(now, Limit.of(limit));
+        if (expired.isEmpty()) {
+            return 0;
+        }
+        releaseAll(expired);
 
-        dhp.setReserved(dhp.getReserved() - quantity);
-        dhp.setAvailable(dhp.getSoh() - dhp.getReserved());
+        log.debug("Expired {} reservations", expired.size());
+        return expired.size();
+    }
+
+    /**
+     * Reserves every line of an order or none of them. Quantities are summed per
+     * (deposit, product) and reserved with one conditional update per key
+     * ({@code available >= quantity}), in deposit/product order so concurrent orders lock shared
+     * rows in the same order and cannot deadlock. The first key without enough available stock
+     * rolls the whole order back. The line reservations are then inserted as one JDBC batch,
+     * referenced {@code orderReference/lineNumber}.
+     *
+     * @throws IllegalStateException if a line lacks available stock
+     */
+    @Transactional
+    public List<InventoryReserveEntry> reserveOrder(String orderReference, LocalDateTime date, List<OrderLine> lines, Duration ttl) {
+        if (lines.isEmpty()) {
+            throw new IllegalArgumentException("Order has no lines: " + orderReference);
+        }
 
-        depositHasProductRepository.save(dhp);
+        List<InventoryReserveEntry> reserves = new ArrayList<>(lines.size());
+        Map<StockKey, Integer> quantities = new TreeMap<>(KEY_ORDER);
+        Map<StockKey, OrderLine> keyLines = new HashMap<>();
+        for (int i = 0; i < lines.size(); i++) {
+            OrderLine line = lines.get(i);
+            if (line.quantity() <= 0) {
+                throw new IllegalArgumentException("Invalid quantity for sku " + line.sku() + ": " + line.quantity());
+            }
+            Product product = catalogLookup.findProduct(line.sku())
+                    .orElseThrow(() -> new IllegalArgumentException("Product not found: " + line.sku()));
+            Deposit deposit = catalogLookup.findDeposit(line.depositName())
+                    .orElseThrow(() -> new IllegalArgumentException("Deposit not found: " + line.depositName()));
+
+            InventoryReserveEntry reserve = createInventoryReserveEntry(date, product, deposit, line.quantity());
+            reserve.setReference(orderReference + "/" + (i + 1));
+            reserve.setOrderReference(orderReference);
+            reserve.setExpiresAt(ttl == null ? null : reserve.getRegistrationDate().plus(ttl));
+            reserves.add(reserve);
+
+            StockKey key = new StockKey(deposit.getId(), product.getId());
+            quantities.merge(key, line.quantity(), Integer::sum);
+            keyLines.putIfAbsent(key, line);
+        }
 
-        log.info("DepositHasProduct updated: {}", dhp);
+        quantities.forEach((key, quantity) -> {
+            if (!depositHasProductRepository.reserveIfAvailable(key.depositId(), key.productId(), quantity)) {
+                OrderLine line = keyLines.get(key);
+                throw new IllegalStateException("Insufficient available stock for order " + orderReference +
+                        ": sku " + line.sku() + " in deposit " + line.depositName() + " needs " + quantity);
+            }
+            stockCache.evictAfterCommit(key.depositId(), key.productId());
+            stockChangeFeed.publishAfterCommit(StockChangeOperation.RESERVE, key.depositId(), key.productId(), quantity);
+            lowWatermarkMonitor.check(key.depositId(), key.productId());
+        });
+        inventoryReserveEntryRepository.saveAll(reserves);
+
+        log.debug("Order {} reserved: {} lines over {} DepositHasProduct rows", orderReference, lines.size(), quantities.size());
+        return reserves;
+    }
 
-        log.info("Inventory reserve entry removed: {}", localDateTime);
+    /**
+     * Releases every remaining line of an order.
+     *
+     * @return number of released lines
+     */
+    @Transactional
+    public int releaseOrder(String orderReference) {
+        return releaseOrderLines(orderReference).size();
+    }
+
+    /**
+     * Turns the remaining lines of an order into OUT movements, applied as one batch.
+     */
+    @Transactional
+    public List<InventoryEntry> confirmOrder(String orderReference, LocalDateTime date) {
+        List<InventoryEntry> entries = new ArrayList<>();
+        for (ReservationRow row : releaseOrderLines(orderReference)) {
+            entries.add(createInventoryEntry(date, productRepository.getReferenceById(row.productId()),
+                    depositRepository.getReferenceById(row.depositId()), row.quantity(), InventoryEntryType.OUT));
+        }
+        applyBatch(entries, List.of());
+        return entries;
+    }
+
+    /**
+     * Applies a batch of IN/OUT/BALANCE movements in a single transaction.
+     * SKUs and deposit names are resolved in memory through {@link CatalogLookup}; the latest
+     * BALANCE of each (deposit, product) and the current DepositHasProduct rows are loaded
+     * once for the whole batch, so the per-line cost is
+     * only the batched insert of its InventoryEntry. Lines are applied in the given order
+     * with the same balance rules as {@link #add}, {@link #remove} and {@link #balance}.
+     * <p>
+     * A line whose idempotency key is already stored, or repeats an earlier line of the batch,
+     * is skipped; the keys are checked with {@link MovementIdempotency#findStored}, one query at
+     * most. The same key committed concurrently fails the batch on the unique index.
+     *
+     * @return number of movements applied
+     */
+    public int importBatch(List<MovementLine> lines) {
+        if (lines.isEmpty()) {
+            return 0;
+        }
+
+        Set<String> known = new HashSet<>(movementIdempotency.findStored(lines.stream()
+                .map(MovementLine::idempotencyKey).filter(Objects::nonNull).toList()));
+        List<InventoryEntry> entries = new ArrayList<>(lines.size());
+        for (MovementLine line : lines) {
+            String idempotencyKey = line.idempotencyKey();
+            // stored before, or repeated in the batch
+            if (idempotencyKey != null && !known.add(idempotencyKey)) {
+                continue;
+            }
+            Product product = catalogLookup.findProduct(line.sku())
+                    .orElseThrow(() -> new IllegalArgumentException("Product not found: " + line.sku()));
+            Deposit deposit = catalogLookup.findDeposit(line.depositName())
+                    .orElseThrow(() -> new IllegalArgumentException("Deposit not found: " + line.depositName()));
+            LocalDateTime date = line.type() == InventoryEntryType.BALANCE
+                    ? line.date().toLocalDate().atStartOfDay()
+                    : line.date();
+            InventoryEntry entry = createInventoryEntry(date, product, deposit, line.quantity(), line.type());
+            if (idempotencyKey != null) {
+                entry.setIdempotencyKey(idempotencyKey);
+                movementIdempotency.register(idempotencyKey);
+            }
+            entries.add(entry);
+        }
+        if (entries.size() < lines.size()) {
+            log.debug("Skipped {} movements already stored under their idempotency key", lines.size() - entries.size());
+        }
+
+        return applyBatch(entries, List.of());
+    }
+
+    /**
+     * Persists already resolved InventoryEntry and InventoryReserveEntry rows in one transaction,
+     * coalescing all deltas of a (deposit, product) into a single DepositHasProduct write.
+     * Entries are applied in list order with the balance rules of {@link #add}, {@link #remove}
+     * and {@link #balance}; reserves are applied afterwards. Keys that received a BALANCE are
+     * handed to {@link StockRecomputeService} after commit, as stored movements dated after the
+     * balance may predate this batch.
+     * <p>
+     * The DepositHasProduct rows are read with or without locks as {@link StockWriteConcurrency}
+     * decides; a transaction that lost an optimistic version check is rolled back and the whole
+     * batch applied again. Called within a transaction, the batch joins it and locks its rows.
+     */
+    public int applyBatch(List<InventoryEntry> entries, List<InventoryReserveEntry> reserves) {
+        if (entries.isEmpty() && reserves.isEmpty()) {
+            return 0;
+        }
+
+        Set<StockKey> keys = new TreeSet<>(KEY_ORDER);
+        entries.forEach(entry -> keys.add(new StockKey(entry.getDeposit().getId(), entry.getProduct().getId())));
+        reserves.forEach(reserve -> keys.add(new StockKey(reserve.getDeposit().getId(), reserve.getProduct().getId())));
+
+        return stockWriteConcurrency.execute(keys, pessimistic -> transactionTemplate.execute(status -> {
+            // ids drawn by a rolled back attempt must not be reused
+            entries.forEach(entry -> entry.setId(null));
+            reserves.forEach(reserve -> reserve.setId(null));
+            return applyBatch(entries, reserves, keys, pessimistic);
+        }));
+    }
+
+    private int applyBatch(List<InventoryEntry> entries, List<InventoryReserveEntry> reserves, Set<StockKey> keys, boolean lock) {
+        Set<Long> depositIds = new HashSet<>();
+        Set<Long> productIds = new HashSet<>();
+        keys.forEach(key -> {
+            depositIds.add(key.depositId());
+            productIds.add(key.productId());
+        });
+
+        stockHistoryService.checkNotArchived(entries);
+
+        Map<StockKey, LocalDateTime> latestBalances = new HashMap<>();
+        if (!entries.isEmpty()) {
+            for (BalanceDate balanceDate : inventoryEntryRepository.findLatestBalanceDates(depositIds, productIds)) {
+                latestBalances.put(balanceDate.key(), balanceDate.date());
+            }
+        }
+
+        Map<StockKey, DepositHasProduct> stock = new HashMap<>();
+        for (DepositHasProduct dhp : depositHasProductRepository.findByKeys(keys, lock)) {
+            stock.put(new StockKey(dhp.getDeposit().getId(), dhp.getProduct().getId()), dhp);
+        }
+
+        Map<StockKey, DepositHasProduct> touched = new LinkedHashMap<>();
+        Map<StockKey, Integer> previousSoh = new HashMap<>();
+        Set<StockKey> balanced = new HashSet<>();
+        for (InventoryEntry entry : entries) {
+            StockKey key = new StockKey(entry.getDeposit().getId(), entry.getProduct().getId());
+            LocalDateTime latestBalance = latestBalances.get(key);
+
+            if (entry.getType() == InventoryEntryType.BALANCE) {
+                if (latestBalance == null || !latestBalance.isAfter(entry.getDate())) {
+                    DepositHasProduct dhp = stock.computeIfAbsent(key,
+                            k -> createInitialDepositHasProduct(entry.getDeposit(), entry.getProduct()));
+                    previousSoh.putIfAbsent(key, dhp.getSoh());
+                    dhp.setSoh(entry.getQuantity());
+                    dhp.setAvailable(entry.getQuantity() - dhp.getReserved());
+                    touched.put(key, dhp);
+                    balanced.add(key);
+                    latestBalances.put(key, entry.getDate());
+                }
+            } else if (latestBalance == null || latestBalance.isBefore(entry.getDate())) {
+                int quantity = entry.getType() == InventoryEntryType.IN ? entry.getQuantity() : -entry.getQuantity();
+                DepositHasProduct dhp = stock.computeIfAbsent(key,
+                        k -> createInitialDepositHasProduct(entry.getDeposit(), entry.getProduct()));
+                previousSoh.putIfAbsent(key, dhp.getSoh());
+                dhp.setSoh(dhp.getSoh() + quantity);
+                dhp.setAvailable(dhp.getSoh() - dhp.getReserved());
+                touched.put(key, dhp);
+            }
+        }
+
+        for (InventoryReserveEntry reserve : reserves) {
+            StockKey key = new StockKey(reserve.getDeposit().getId(), reserve.getProduct().getId());
+            DepositHasProduct dhp = stock.computeIfAbsent(key,
+                    k -> createInitialDepositHasProduct(reserve.getDeposit(), reserve.getProduct()));
+            previousSoh.putIfAbsent(key, dhp.getSoh());
+            dhp.setReserved(dhp.getReserved() + reserve.getQuantity());
+            dhp.setAvailable(dhp.getSoh() - dhp.getReserved());
+            touched.put(key, dhp);
+        }
+
+        // stock rows first: an unlocked read fails its version check before anything else is
+        // written, and daily totals are locked after the stock rows as by the single-key methods
+        depositHasProductRepository.saveAllAndFlush(touched.values());
+        inventoryEntryRepository.saveAll(entries);
+        stockHistoryService.onEntriesWritten(entries);
+        movementTotalService.onEntriesWritten(entries);
+        inventoryReserveEntryRepository.saveAll(reserves);
+        touched.keySet().forEach(key -> stockCache.evictAfterCommit(key.depositId(), key.productId()));
+        touched.forEach((key, dhp) -> stockChangeFeed.publishAfterCommit(StockChangeOperation.BATCH, dhp,
+                dhp.getSoh() - previousSoh.get(key)));
+        touched.values().forEach(lowWatermarkMonitor::check);
+        balanced.forEach(key -> stockRecomputeService.requestAfterCommit(key.depositId(), key.productId()));
+
+        log.debug("Applied {} inventory entries and {} reserves, {} DepositHasProduct rows updated",
+                entries.size(), reserves.size(), touched.size());
+        return entries.size() + reserves.size();
+    }
+
+    private List<ReservationRow> releaseOrderLines(String orderReference) {
+        List<ReservationRow> rows = inventoryReserveEntryRepository.findRowsByOrderReference(orderReference);
+        if (rows.isEmpty()) {
+            throw new IllegalArgumentException("Order not found: " + orderReference);
+        }
+        releaseAll(rows);
+        return rows;
+    }
+
+    /**
+     * Deletes the reservations in one statement, then gives their quantities back with one
+     * reserved update per (deposit, product) in deposit/product order.
+     *
+     * @throws ConcurrencyFailureException if some of them were released concurrently; nothing is
+     *                                     applied and the caller can simply retry
+     */
+    private void releaseAll(List<ReservationRow> rows) {
+        List<Long> ids = rows.stream().map(ReservationRow::id).toList();
+        if (inventoryReserveEntryRepository.deleteRows(ids) != ids.size()) {
+            throw new ConcurrencyFailureException("Reservations released concurrently");
+        }
+
+        Map<StockKey, Integer> released = new TreeMap<>(KEY_ORDER);
+        rows.forEach(row -> released.merge(row.key(), row.quantity(), Integer::sum));
+        released.forEach((key, quantity) -> {
+            depositHasProductRepository.applyReservedDelta(key.depositId(), key.productId(), -quantity);
+            stockCache.evictAfterCommit(key.depositId(), key.productId());
+            stockChangeFeed.publishAfterCommit(StockChangeOperation.RELEASE, key.depositId(), key.productId(), -quantity);
+        });
+    }
+
+    private ReservationRow findReservation(String reference) {
+        return inventoryReserveEntryRepository.findRowByReference(reference)
+                .orElseThrow(() -> new IllegalArgumentException("Reservation not found: " + reference));
+    }
+
+    /**
+     * Deletes the reservation and gives its quantity back. The delete count guards against a
+     * concurrent release or expiry of the same row: only the transaction that deleted it
+     * adjusts reserved.
+     */
+    private void release(ReservationRow row) {
+        if (inventoryReserveEntryRepository.deleteRows(List.of(row.id())) == 0) {
+            throw new IllegalArgumentException("Reservation already released: " + row.id());
+        }
+        depositHasProductRepository.applyReservedDelta(row.depositId(), row.productId(), -row.quantity());
+        stockCache.evictAfterCommit(row.depositId(), row.productId());
+        stockChangeFeed.publishAfterCommit(StockChangeOperation.RELEASE, row.depositId(), row.productId(), -row.quantity());
+
+        log.debug("Inventory reserve entry {} released: deposit {}, product {}, {}",
+                row.id(), row.depositId(), row.productId(), -row.quantity());
+    }
+
+    /**
+     * Per-movement trace at debug level. Logs ids only: the entity's toString would build the
+     * full Deposit/Product graph on every movement.
+     */
+    private void logEntry(InventoryEntry entry) {
+        log.debug("Inventory entry created: id {}, {} {} at {}, deposit {}, product {}", entry.getId(), entry.getType(),
+                entry.getQuantity(), entry.getDate(), entry.getDeposit().getId(), entry.getProduct().getId());
+    }
+
+    private InventoryEntry saveEntry(InventoryEntry entry) {
+        return saveEntry(entry, null);
+    }
+
+    private InventoryEntry saveEntry(InventoryEntry entry, String idempotencyKey) {
+        stockHistoryService.checkNotArchived(List.of(entry));
+        if (idempotencyKey != null) {
+            entry.setIdempotencyKey(idempotencyKey);
+            movementIdempotency.register(idempotencyKey);
+        }
+        InventoryEntry saved = inventoryEntryRepository.save(entry);
+        stockHistoryService.onEntriesWritten(List.of(saved));
+        movementTotalService.onEntriesWritten(List.of(saved));
+        return saved;
     }
 
     private boolean hasBalanceEntryAfterStrict(LocalDateTime date, Product product, Deposit deposit) {
-        Set<InventoryEntry> balances = inventoryEntryRepository
-                .findFirstByProductAndDepositAndDateAfterAndType(product, deposit, date, InventoryEntryType.BALANCE);
-        return balances != null && !balances.isEmpty();
+        return inventoryEntryRepository.existsByProductIdAndDepositIdAndTypeAndDateGreaterThan(
+                product.getId(), deposit.getId(), InventoryEntryType.BALANCE, date);
+    }
+
+    private boolean hasMovementAfter(LocalDateTime date, Product product, Deposit deposit) {
+        return inventoryEntryRepository.existsByProductIdAndDepositIdAndTypeInAndDateGreaterThan(
+                product.getId(), deposit.getId(), List.of(InventoryEntryType.IN, InventoryEntryType.OUT), date);
     }
 
     private DepositHasProduct createInitialDepositHasProduct(Deposit deposit, Product product) {
@@ -142,9 +588,22 @@ public class InventoryManager {
         return dhp;
     }
 
-    private InventoryEntry createInventoryEntry(LocalDateTime date, Product product,
-                                                Deposit deposit, int quantity,
-                                                InventoryEntryType type) {
+    InventoryReserveEntry createInventoryReserveEntry(LocalDateTime date, Product product, Deposit deposit, int quantity) {
+        InventoryReserveEntry reserveEntry = new InventoryReserveEntry();
+        reserveEntry.setDate(date);
+        reserveEntry.setProduct(product);
+        reserveEntry.setDeposit(deposit);
+        reserveEntry.setQuantity(quantity);
+        reserveEntry.setRegistrationDate(LocalDateTime.now());
+        reserveEntry.setReference(UUID.randomUUID().toString());
+        Duration ttl = reservationProperties.defaultTtl();
+        reserveEntry.setExpiresAt(ttl == null ? null : reserveEntry.getRegistrationDate().plus(ttl));
+        return reserveEntry;
+    }
+
+    InventoryEntry createInventoryEntry(LocalDateTime date, Product product,
+                                        Deposit deposit, int quantity,
+                                        InventoryEntryType type) {
         InventoryEntry entry = new InventoryEntry();
         entry.setType(type);
         entry.setDate(date);
@@ -171,26 +630,29 @@ public class InventoryManager {
     }
 
     private boolean hasBalanceEntryAfter(LocalDateTime date, Product product, Deposit deposit) {
-        Set<InventoryEntry> balances = inventoryEntryRepository
-                .findFirstByProductAndDepositAndDateAfterEqualAndType(product, deposit, date, InventoryEntryType.BALANCE);
-        return balances != null && !balances.isEmpty();
+        return inventoryEntryRepository.existsByProductIdAndDepositIdAndTypeAndDateGreaterThanEqual(
+                product.getId(), deposit.getId(), InventoryEntryType.BALANCE, date);
     }
 
     private void updateDepositHasProduct(Deposit deposit, Product product, int quantity) {
-        DepositHasProduct dhp = depositHasProductRepository.findByDepositIdAndProductId(deposit.getId(), product.getId())
-                .orElse(createInitialDepositHasProduct(deposit, product));
-        dhp.setSoh(dhp.getSoh() + quantity);
-        dhp.setAvailable(dhp.getSoh() - dhp.getReserved());
-        depositHasProductRepository.save(dhp);
-        log.info("DepositHasProduct updated: {}", dhp);
+        depositHasProductRepository.applySohDelta(deposit.getId(), product.getId(), quantity);
+        stockCache.evictAfterCommit(deposit.getId(), product.getId());
+        stockChangeFeed.publishAfterCommit(quantity < 0 ? StockChangeOperation.OUT : StockChangeOperation.IN,
+                deposit.getId(), product.getId(), quantity);
+        if (quantity < 0) {
+            lowWatermarkMonitor.check(deposit.getId(), product.getId());
+        }
+        log.debug("DepositHasProduct soh updated: deposit {}, product {}, {}", deposit.getId(), product.getId(), quantity);
     }
 
     private void setDepositHasProduct(Deposit deposit, Product product, int quantity) {
-        DepositHasProduct dhp = depositHasProductRepository.findByDepositIdAndProductId(deposit.getId(), product.getId())
-                .orElse(createInitialDepositHasProduct(deposit, product));
-        dhp.setSoh(quantity);
-        dhp.setAvailable(quantity);
-        depositHasProductRepository.save(dhp);
+        // the previous soh is only read for the change feed
+        int previousSoh = !stockChangeFeed.isEnabled() ? 0 : depositHasProductRepository
+                .findVersionedStockLevel(deposit.getId(), product.getId()).map(VersionedStockLevel::soh).orElse(0);
+        depositHasProductRepository.setSoh(deposit.getId(), product.getId(), quantity);
+        stockCache.evictAfterCommit(deposit.getId(), product.getId());
+        stockChangeFeed.publishAfterCommit(StockChangeOperation.BALANCE, deposit.getId(), product.getId(), quantity - previousSoh);
+        lowWatermarkMonitor.check(deposit.getId(), product.getId());
     }
 
 
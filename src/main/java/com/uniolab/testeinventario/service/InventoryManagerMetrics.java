@@ -0,0 +1,49 @@
+package com.uniolab.testeinventario.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times every public {@link InventoryManager} operation as {@code inventory.operation}, tagged
+ * with the operation, its outcome ({@code success}/{@code error}) and the exception type. The
+ * timer count is the per-operation/outcome counter.
+ * <p>
+ * Runs outside the transaction advice, so commit time and commit failures are included.
+ * Calls between InventoryManager methods (importBatch to applyBatch) are not proxied and are
+ * counted once, under the outer operation.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class InventoryManagerMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    @Around("execution(public * com.uniolab.testeinventario.service.InventoryManager.*(..))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
+        String exception = "none";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            outcome = "error";
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("inventory.operation")
+                    .tag("operation", joinPoint.getSignature().getName())
+                    .tag("outcome", outcome)
+                    .tag("exception", exception)
+                    .register(meterRegistry));
+        }
+    }
+}
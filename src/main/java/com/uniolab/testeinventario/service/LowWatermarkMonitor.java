@@ -0,0 +1,101 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.config.ReplenishmentProperties;
+import com.uniolab.testeinventario.dto.ReplenishmentRow;
+import com.uniolab.testeinventario.dto.StockKey;
+import com.uniolab.testeinventario.model.DepositHasProduct;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Low-watermark mode of replenishment ({@code inventory.replenishment.low-watermark=true}).
+ * <p>
+ * {@link InventoryManager} reports every write that lowers the available stock of a key; when
+ * the key ends below its min, the key is raised as an alert once the transaction commits,
+ * without waiting for a {@link ReplenishmentService#scan}. Alerts are kept per key until taken,
+ * so a key that keeps falling is alerted once with its latest levels.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LowWatermarkMonitor implements MeterBinder {
+
+    private final DepositHasProductRepository depositHasProductRepository;
+    private final ReplenishmentProperties properties;
+
+    private final Map<StockKey, ReplenishmentRow> alerts = new ConcurrentHashMap<>();
+
+    /**
+     * After an atomic update of the key, in the writing transaction.
+     */
+    public void check(Long depositId, Long productId) {
+        if (properties.lowWatermark()) {
+            depositHasProductRepository.findReplenishmentRow(depositId, productId)
+                    .filter(row -> DepositHasProduct.isBelowMin(row.available(), row.min()))
+                    .ifPresent(this::alertAfterCommit);
+        }
+    }
+
+    /**
+     * After a change of a managed row, in the writing transaction.
+     */
+    public void check(DepositHasProduct dhp) {
+        if (properties.lowWatermark() && DepositHasProduct.isBelowMin(dhp.getAvailable(), dhp.getMin())) {
+            alertAfterCommit(new ReplenishmentRow(dhp.getDeposit().getId(), dhp.getProduct().getId(),
+                    dhp.getAvailable(), dhp.getMin(), dhp.getDesired()));
+        }
+    }
+
+    public List<ReplenishmentRow> alerts() {
+        List<ReplenishmentRow> result = new ArrayList<>(alerts.values());
+        result.sort(Comparator.comparing(ReplenishmentRow::depositId).thenComparing(ReplenishmentRow::productId));
+        return result;
+    }
+
+    /**
+     * Returns and clears the current alerts.
+     */
+    public List<ReplenishmentRow> take() {
+        List<ReplenishmentRow> result = alerts();
+        result.forEach(row -> alerts.remove(row.key(), row));
+        return result;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("inventory.replenishment.alerts", alerts, Map::size).register(registry);
+    }
+
+    private void alertAfterCommit(ReplenishmentRow row) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    alert(row);
+                }
+            });
+        } else {
+            alert(row);
+        }
+    }
+
+    private void alert(ReplenishmentRow row) {
+        if (alerts.put(row.key(), row) == null) {
+            log.info("Deposit {} product {} below min: available {}, min {}, suggested {}",
+                    row.depositId(), row.productId(), row.available(), row.min(), row.shortage());
+        }
+    }
+}
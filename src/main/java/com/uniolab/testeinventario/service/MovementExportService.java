@@ -0,0 +1,192 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.config.ReplicaRead;
+import com.uniolab.testeinventario.dto.CatalogEntry;
+import com.uniolab.testeinventario.dto.MovementExportRow;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.repository.DepositRepository;
+import com.uniolab.testeinventario.repository.InventoryEntryRepository;
+import com.uniolab.testeinventario.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams the InventoryEntry history of a deposit to CSV.
+ * <p>
+ * Rows are read in keyset pages of {@link #PAGE_SIZE} ordered by id, as flat projections without
+ * the Deposit/Product joins, each page in its own short read, so memory stays constant and no
+ * long-running cursor holds the connection. SKUs and transfer deposit names are resolved once per
+ * page for the ids it references, through a bounded id-to-name map. Lines are {@code id;type;date;registrationDate;sku;depositName;quantity;transferDepositName}
+ * with dates as {@code dd/MM/yyyy HH:mm:ss}. Text fields holding the separator, a double quote or
+ * a line break are quoted as in RFC 4180, inner quotes doubled. Files ending in {@code .gz} are
+ * gzip compressed.
+ */
+@Service
+@ReplicaRead
+@RequiredArgsConstructor
+@Slf4j
+public class MovementExportService {
+
+    static final int PAGE_SIZE = 5_000;
+    private static final int MAX_NAMES = 100_000;
+
+    private static final String HEADER = "id;type;date;registrationDate;sku;depositName;quantity;transferDepositName";
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+    private static final LocalDateTime BEGINNING = LocalDateTime.of(1000, 1, 1, 0, 0);
+    private static final LocalDateTime END_OF_TIME = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    private final InventoryEntryRepository inventoryEntryRepository;
+    private final ProductRepository productRepository;
+    private final DepositRepository depositRepository;
+    private final CatalogLookup catalogLookup;
+
+    /**
+     * Exports to a file, gzip compressed when its name ends in {@code .gz}.
+     *
+     * @return number of exported entries
+     */
+    public long exportToFile(Path file, String depositName, String sku, LocalDateTime from, LocalDateTime until) throws IOException {
+        try (OutputStream out = open(file);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024)) {
+            return export(writer, depositName, sku, from, until);
+        }
+    }
+
+    /**
+     * Writes the entries of the deposit, optionally restricted to one SKU and to
+     * {@code [from, until)}; null bounds are open.
+     *
+     * @return number of exported entries
+     */
+    public long export(Writer writer, String depositName, String sku, LocalDateTime from, LocalDateTime until) throws IOException {
+        Deposit deposit = catalogLookup.findDeposit(depositName)
+                .orElseThrow(() -> new IllegalArgumentException("Deposit not found: " + depositName));
+        Long productId = null;
+        if (sku != null) {
+            Product product = catalogLookup.findProduct(sku)
+                    .orElseThrow(() -> new IllegalArgumentException("Product not found: " + sku));
+            productId = product.getId();
+        }
+        LocalDateTime lower = from == null ? BEGINNING : from;
+        LocalDateTime upper = until == null ? END_OF_TIME : until;
+
+        writer.write(HEADER);
+        writer.write('\n');
+
+        Map<Long, String> skus = new HashMap<>();
+        Map<Long, String> depositNames = new HashMap<>();
+        long exported = 0;
+        long afterId = 0;
+        List<MovementExportRow> page;
+        do {
+            page = productId == null
+                    ? inventoryEntryRepository.findDepositExportRowsAfter(deposit.getId(), lower, upper, afterId, Limit.of(PAGE_SIZE))
+                    : inventoryEntryRepository.findKeyExportRowsAfter(deposit.getId(), productId, lower, upper, afterId, Limit.of(PAGE_SIZE));
+            resolveNames(page, skus, depositNames);
+            for (MovementExportRow row : page) {
+                write(writer, row, skus.get(row.productId()), depositName,
+                        row.transferDepositId() == null ? null : depositNames.get(row.transferDepositId()));
+            }
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).id();
+                exported += page.size();
+            }
+        } while (page.size() == PAGE_SIZE);
+        writer.flush();
+
+        log.info("Exported {} inventory entries of deposit {}", exported, depositName);
+        return exported;
+    }
+
+    private void resolveNames(List<MovementExportRow> page, Map<Long, String> skus, Map<Long, String> depositNames) {
+        if (skus.size() > MAX_NAMES) {
+            skus.clear();
+        }
+        if (depositNames.size() > MAX_NAMES) {
+            depositNames.clear();
+        }
+        Set<Long> missingProducts = new HashSet<>();
+        Set<Long> missingDeposits = new HashSet<>();
+        for (MovementExportRow row : page) {
+            if (!skus.containsKey(row.productId())) {
+                missingProducts.add(row.productId());
+            }
+            if (row.transferDepositId() != null && !depositNames.containsKey(row.transferDepositId())) {
+                missingDeposits.add(row.transferDepositId());
+            }
+        }
+        if (!missingProducts.isEmpty()) {
+            for (CatalogEntry entry : productRepository.findCatalogEntries(missingProducts)) {
+                skus.put(entry.id(), entry.key());
+            }
+        }
+        if (!missingDeposits.isEmpty()) {
+            for (CatalogEntry entry : depositRepository.findCatalogEntries(missingDeposits)) {
+                depositNames.put(entry.id(), entry.key());
+            }
+        }
+    }
+
+    private static OutputStream open(Path file) throws IOException {
+        OutputStream out = Files.newOutputStream(file);
+        return file.getFileName().toString().endsWith(".gz") ? new GZIPOutputStream(out, 64 * 1024) : out;
+    }
+
+    private static void write(Writer writer, MovementExportRow row, String sku, String depositName,
+                              String transferDepositName) throws IOException {
+        writer.write(Long.toString(row.id()));
+        writer.write(';');
+        writer.write(row.type().name());
+        writer.write(';');
+        writer.write(DATE_FORMATTER.format(row.date()));
+        writer.write(';');
+        if (row.registrationDate() != null) {
+            writer.write(DATE_FORMATTER.format(row.registrationDate()));
+        }
+        writer.write(';');
+        writeText(writer, sku);
+        writer.write(';');
+        writeText(writer, depositName);
+        writer.write(';');
+        writer.write(Integer.toString(row.quantity()));
+        writer.write(';');
+        writeText(writer, transferDepositName);
+        writer.write('\n');
+    }
+
+    /**
+     * Writes the field quoted if it holds a separator, a quote or a line break, and empty for null.
+     */
+    private static void writeText(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        if (value.indexOf(';') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,186 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.config.IdempotencyProperties;
+import com.uniolab.testeinventario.model.InventoryEntry;
+import com.uniolab.testeinventario.repository.InventoryEntryRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tells movements redelivered under the same idempotency key apart from new ones without a
+ * query per movement.
+ * <p>
+ * The keys stored on InventoryEntry are unique (ux_inventory_entry_idempotency_key). Every key
+ * stored is also put in a {@link BloomFilter}, loaded from the index at startup: a key the
+ * filter does not hold is new and is inserted without a lookup; only the keys it may hold, the
+ * redeliveries and about {@code false-positive-rate} of the new keys, are looked up. The index
+ * stays the guarantee: a key the filter misses, stored concurrently or by another instance, is
+ * rejected by it, and {@link InventoryManager} then answers with the entry stored for it.
+ * <p>
+ * Without {@code preload} a filter would only hold the keys stored since startup and prove
+ * nothing, so none is allocated and every key is looked up.
+ * <p>
+ * Keys of archived entries leave the index with them, so only redeliveries within the
+ * InventoryEntry retention are recognized.
+ */
+@Component
+@Slf4j
+public class MovementIdempotency implements MeterBinder {
+
+    static final int MAX_KEY_LENGTH = 100;
+
+    private final InventoryEntryRepository inventoryEntryRepository;
+    private final IdempotencyProperties properties;
+    private final BloomFilter filter; // null without preload
+
+    private final LongAdder keys = new LongAdder();
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+
+    public MovementIdempotency(InventoryEntryRepository inventoryEntryRepository, IdempotencyProperties properties) {
+        this.inventoryEntryRepository = inventoryEntryRepository;
+        this.properties = properties;
+        this.filter = properties.preload() ? new BloomFilter(properties.expectedKeys(), properties.falsePositiveRate()) : null;
+    }
+
+    /**
+     * Runs once the context is refreshed rather than at construction, so building the context
+     * alone does not need the database. Keys stored meanwhile are put by the writers.
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    void load() {
+        if (!properties.preload()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long loaded = 0;
+        String afterKey = "";
+        List<String> page;
+        do {
+            page = inventoryEntryRepository.findIdempotencyKeysAfter(afterKey, Limit.of(properties.pageSize()));
+            page.forEach(this::register);
+            loaded += page.size();
+            if (!page.isEmpty()) {
+                afterKey = page.get(page.size() - 1);
+            }
+        } while (page.size() == properties.pageSize());
+        log.info("Idempotency filter loaded {} keys in {} ms ({} KB, expected false positive rate {})",
+                loaded, (System.nanoTime() - start) / 1_000_000, filter.sizeBytes() / 1024,
+                String.format("%.4f", falsePositiveRate()));
+        if (loaded > properties.expectedKeys()) {
+            log.warn("Idempotency filter holds {} keys, sized for {}: raise inventory.idempotency.expected-keys",
+                    loaded, properties.expectedKeys());
+        }
+    }
+
+    /**
+     * The entry stored under the key, looked up only when the filter may hold it.
+     */
+    public Optional<InventoryEntry> findEntry(String key) {
+        checkKey(key);
+        checks.increment();
+        if (!mightBeStored(key)) {
+            return Optional.empty();
+        }
+        return findStoredEntry(key);
+    }
+
+    /**
+     * The entry stored under the key, looked up whatever the filter holds: after the index
+     * rejected the key.
+     */
+    public Optional<InventoryEntry> findStoredEntry(String key) {
+        lookups.increment();
+        Optional<InventoryEntry> entry = inventoryEntryRepository.findByIdempotencyKey(key);
+        entry.ifPresent(found -> duplicates.increment());
+        return entry;
+    }
+
+    /**
+     * The keys already stored, with one query for those the filter may hold and none if it
+     * holds none of them.
+     */
+    public Set<String> findStored(Collection<String> candidates) {
+        List<String> possible = new ArrayList<>();
+        for (String key : candidates) {
+            checkKey(key);
+            checks.increment();
+            if (mightBeStored(key)) {
+                possible.add(key);
+            }
+        }
+        if (possible.isEmpty()) {
+            return Set.of();
+        }
+        lookups.add(possible.size());
+        Set<String> stored = new HashSet<>(inventoryEntryRepository.findStoredIdempotencyKeys(possible));
+        duplicates.add(stored.size());
+        return stored;
+    }
+
+    /**
+     * Puts a key being stored in the filter. Done before the insert commits so a redelivery
+     * arriving right after the commit is looked up; a rolled back key only costs a lookup.
+     */
+    public void register(String key) {
+        if (filter != null) {
+            filter.put(key);
+            keys.increment();
+        }
+    }
+
+    /**
+     * Whether the key may be stored: only the filter proves it is not.
+     */
+    private boolean mightBeStored(String key) {
+        return filter == null || filter.mightContain(key);
+    }
+
+    public double falsePositiveRate() {
+        // without a filter every new key is looked up
+        return filter == null ? 1 : filter.falsePositiveRate(keys.sum());
+    }
+
+    public long checks() {
+        return checks.sum();
+    }
+
+    public long lookups() {
+        return lookups.sum();
+    }
+
+    public long duplicates() {
+        return duplicates.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("inventory.idempotency.keys", keys, LongAdder::sum).register(registry);
+        Gauge.builder("inventory.idempotency.false-positive-rate", this, MovementIdempotency::falsePositiveRate).register(registry);
+        FunctionCounter.builder("inventory.idempotency.checks", this, MovementIdempotency::checks).register(registry);
+        FunctionCounter.builder("inventory.idempotency.lookups", this, MovementIdempotency::lookups).register(registry);
+        FunctionCounter.builder("inventory.idempotency.duplicates", this, MovementIdempotency::duplicates).register(registry);
+    }
+
+    private static void checkKey(String key) {
+        if (key == null || key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Invalid idempotency key: " + key);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.dto.MovementLine;
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams movements from a CSV source and hands them to {@link InventoryManager#importBatch}
+ * in fixed-size chunks, each chunk in its own transaction.
+ * <p>
+ * Expected line format (optional header, {@code #} comments allowed):
+ * {@code type;date;sku;depositName;quantity[;idempotencyKey]} with the date as
+ * {@code dd/MM/yyyy HH:mm:ss}. A line with the key of a stored movement is skipped.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MovementImportService {
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+
+    private final InventoryManager inventoryManager;
+
+    public int importCsv(Reader source, int batchSize) throws IOException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+
+        BufferedReader reader = source instanceof BufferedReader br ? br : new BufferedReader(source);
+        List<MovementLine> batch = new ArrayList<>(batchSize);
+        int imported = 0;
+        int lineNumber = 0;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || line.startsWith("#") || (lineNumber == 1 && line.toLowerCase().startsWith("type"))) {
+                continue;
+            }
+            batch.add(parse(line, lineNumber));
+            if (batch.size() == batchSize) {
+                imported += inventoryManager.importBatch(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            imported += inventoryManager.importBatch(batch);
+        }
+
+        log.info("Imported {} inventory entries", imported);
+        return imported;
+    }
+
+    static MovementLine parse(String line, int lineNumber) {
+        String[] fields = line.split(";");
+        if (fields.length != 5 && fields.length != 6) {
+            throw new IllegalArgumentException("Invalid movement at line " + lineNumber + ": " + line);
+        }
+        try {
+            return new MovementLine(
+                    InventoryEntryType.valueOf(fields[0].trim().toUpperCase()),
+                    LocalDateTime.parse(fields[1].trim(), DATE_FORMATTER),
+                    fields[2].trim(),
+                    fields[3].trim(),
+                    Integer.parseInt(fields[4].trim()),
+                    fields.length == 6 && !fields[5].isBlank() ? fields[5].trim() : null);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid movement at line " + lineNumber + ": " + line, e);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.config.IngestProperties;
+import com.uniolab.testeinventario.dto.IngestResult;
+import com.uniolab.testeinventario.dto.MovementLine;
+import com.uniolab.testeinventario.dto.StockKey;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.Product;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchService;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Pushes movements from a stream (a file, stdin) or a watched directory through
+ * {@link InventoryManager} concurrently, one transaction per movement like the shell commands.
+ * <p>
+ * Each movement is routed by (deposit, product) to one of a fixed number of lanes, a worker
+ * thread fed by a bounded queue, so movements of the same key are applied in submission order
+ * while different keys proceed in parallel. When a lane queue is full the reader blocks, so a
+ * fast source never buffers more than {@code lanes * queueCapacity} movements. Transactions of
+ * all ingestions share one semaphore sized to half the primary JDBC pool: a movement runs on a
+ * single connection, but its insert may fetch the next block of sequence ids on a second one,
+ * so the pool is never oversubscribed however many lanes are configured.
+ * <p>
+ * Lines use the {@link MovementImportService} format; an invalid line is counted and skipped
+ * instead of aborting the stream. A movement redelivered under a stored idempotency key is
+ * counted as applied and changes nothing.
+ */
+@Service
+@Slf4j
+public class MovementIngestService {
+
+    private static final Resolved END = new Resolved(null, null, null);
+
+    private final InventoryManager inventoryManager;
+    private final CatalogLookup catalogLookup;
+    private final IngestProperties properties;
+    private final Semaphore connections;
+    private final int defaultLanes;
+    private volatile Thread watcher;
+
+    public MovementIngestService(InventoryManager inventoryManager, CatalogLookup catalogLookup,
+                                 IngestProperties properties, DataSource dataSource) {
+        if (properties.lanes() < 0 || properties.queueCapacity() <= 0) {
+            throw new IllegalArgumentException("inventory.ingest.lanes must not be negative and queue-capacity must be positive");
+        }
+        this.inventoryManager = inventoryManager;
+        this.catalogLookup = catalogLookup;
+        this.properties = properties;
+
+        int permits = Math.max(1, primaryPoolSize(dataSource) / 2);
+        this.connections = new Semaphore(permits, true);
+        this.defaultLanes = properties.lanes() > 0 ? properties.lanes() : permits;
+    }
+
+    public int defaultLanes() {
+        return defaultLanes;
+    }
+
+    /**
+     * Size of the pool writes are taken from, also behind the replica routing proxies.
+     */
+    private static int primaryPoolSize(DataSource dataSource) {
+        try {
+            if (dataSource.isWrapperFor(HikariDataSource.class)) {
+                return dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+            }
+        } catch (SQLException e) {
+            log.warn("Could not read the JDBC pool size, assuming 10 connections", e);
+        }
+        return 10;
+    }
+
+    public IngestResult ingest(Reader source) throws IOException {
+        return ingest(source, defaultLanes);
+    }
+
+    /**
+     * Reads movements until the end of {@code source} and returns once all of them are applied.
+     * If the calling thread is interrupted, reading stops and the movements already read are
+     * still applied.
+     */
+    public IngestResult ingest(Reader source, int lanes) throws IOException {
+        if (lanes <= 0) {
+            throw new IllegalArgumentException("Lanes must be positive");
+        }
+
+        Ingestion ingestion = new Ingestion(lanes);
+        BufferedReader reader = source instanceof BufferedReader br ? br : new BufferedReader(source);
+        try {
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || line.startsWith("#") || (lineNumber == 1 && line.toLowerCase().startsWith("type"))) {
+                    continue;
+                }
+                if (!ingestion.submit(line, lineNumber)) {
+                    break;
+                }
+            }
+        } finally {
+            ingestion.finish();
+        }
+        return ingestion.result();
+    }
+
+    /**
+     * Starts ingesting every {@code *.csv} file that appears in {@code directory}, oldest name
+     * first, one file at a time. A processed file is renamed to {@code .done}; producers should
+     * write under another name and rename to {@code .csv} when complete.
+     */
+    public synchronized void watch(Path directory) throws IOException {
+        if (watcher != null) {
+            throw new IllegalStateException("Already watching a directory");
+        }
+        if (!Files.isDirectory(directory)) {
+            throw new IllegalArgumentException("Not a directory: " + directory);
+        }
+        WatchService watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+        Thread thread = new Thread(() -> watchLoop(directory, watchService), "movement-watcher");
+        thread.setDaemon(true);
+        watcher = thread;
+        thread.start();
+        log.info("Watching {} for movement files", directory);
+    }
+
+    /**
+     * @return whether a watcher was running
+     */
+    @PreDestroy
+    public synchronized boolean stopWatching() throws InterruptedException {
+        Thread thread = watcher;
+        if (thread == null) {
+            return false;
+        }
+        thread.interrupt();
+        thread.join();
+        watcher = null;
+        return true;
+    }
+
+    private void watchLoop(Path directory, WatchService watchService) {
+        try (watchService) {
+            while (!Thread.currentThread().isInterrupted()) {
+                ingestFiles(directory);
+                // the timeout also covers overflowed or missed events
+                var key = watchService.poll(properties.pollInterval().toMillis(), TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("Stopped watching {}", directory, e);
+        }
+    }
+
+    private void ingestFiles(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(file -> file.getFileName().toString().endsWith(".csv")).sorted().toList();
+        }
+        for (Path file : files) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            IngestResult result;
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                result = ingest(reader);
+            }
+            // an interrupted file was only partly read; it must not be picked up again as is
+            String suffix = Thread.currentThread().isInterrupted() ? ".partial" : ".done";
+            Files.move(file, file.resolveSibling(file.getFileName() + suffix));
+            log.info("Ingested {}: {} applied, {} failed in {} ms", file.getFileName(), result.applied(),
+                    result.failed(), result.elapsed().toMillis());
+        }
+    }
+
+    private record Resolved(MovementLine line, Product product, Deposit deposit) {
+    }
+
+    private class Ingestion {
+
+        private final List<BlockingQueue<Resolved>> queues;
+        private final List<Thread> workers;
+        private final AtomicLong applied = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong connectionWaitNanos = new AtomicLong();
+        private final long start = System.nanoTime();
+        private long readerBlockedNanos;
+        private long elapsedNanos;
+
+        Ingestion(int lanes) {
+            queues = new ArrayList<>(lanes);
+            workers = new ArrayList<>(lanes);
+            for (int i = 0; i < lanes; i++) {
+                BlockingQueue<Resolved> queue = new ArrayBlockingQueue<>(properties.queueCapacity());
+                Thread worker = new Thread(() -> drain(queue), "movement-ingest-" + i);
+                worker.setDaemon(true);
+                queues.add(queue);
+                workers.add(worker);
+                worker.start();
+            }
+        }
+
+        /**
+         * @return false once the reader is interrupted
+         */
+        boolean submit(String line, int lineNumber) {
+            Resolved movement;
+            try {
+                movement = resolve(MovementImportService.parse(line, lineNumber));
+            } catch (IllegalArgumentException e) {
+                log.warn("Skipped movement: {}", e.getMessage());
+                failed.incrementAndGet();
+                return true;
+            }
+
+            StockKey key = new StockKey(movement.deposit().getId(), movement.product().getId());
+            BlockingQueue<Resolved> queue = queues.get(Math.floorMod(key.hashCode(), queues.size()));
+            if (queue.offer(movement)) {
+                return true;
+            }
+            long blockedAt = System.nanoTime();
+            try {
+                queue.put(movement);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                readerBlockedNanos += System.nanoTime() - blockedAt;
+            }
+        }
+
+        void finish() {
+            for (BlockingQueue<Resolved> queue : queues) {
+                putUninterruptibly(queue);
+            }
+            for (Thread worker : workers) {
+                joinUninterruptibly(worker);
+            }
+            elapsedNanos = System.nanoTime() - start;
+        }
+
+        IngestResult result() {
+            return new IngestResult(applied.get(), failed.get(), Duration.ofNanos(elapsedNanos),
+                    Duration.ofNanos(readerBlockedNanos), Duration.ofNanos(connectionWaitNanos.get()));
+        }
+
+        private Resolved resolve(MovementLine line) {
+            Optional<Product> product = catalogLookup.findProduct(line.sku());
+            Optional<Deposit> deposit = catalogLookup.findDeposit(line.depositName());
+            if (product.isEmpty() || deposit.isEmpty()) {
+                throw new IllegalArgumentException("Unknown product or deposit: " + line.sku() + " / " + line.depositName());
+            }
+            return new Resolved(line, product.get(), deposit.get());
+        }
+
+        private void drain(BlockingQueue<Resolved> queue) {
+            while (true) {
+                Resolved movement;
+                try {
+                    movement = queue.take();
+                } catch (InterruptedException e) {
+                    // only finish() ends a lane, so that queued movements are never dropped
+                    continue;
+                }
+                if (movement == END) {
+                    return;
+                }
+                apply(movement);
+            }
+        }
+
+        private void apply(Resolved movement) {
+            long waitStart = System.nanoTime();
+            connections.acquireUninterruptibly();
+            connectionWaitNanos.addAndGet(System.nanoTime() - waitStart);
+            try {
+                MovementLine line = movement.line();
+                switch (line.type()) {
+                    case IN -> inventoryManager.add(line.date(), movement.product(), movement.deposit(), line.quantity(), line.idempotencyKey());
+                    case OUT -> inventoryManager.remove(line.date(), movement.product(), movement.deposit(), line.quantity(), line.idempotencyKey());
+                    case BALANCE -> inventoryManager.balance(line.date(), movement.product(), movement.deposit(), line.quantity(), line.idempotencyKey());
+                    default -> throw new IllegalArgumentException("Unsupported movement type: " + line.type());
+                }
+                applied.incrementAndGet();
+            } catch (RuntimeException e) {
+                log.warn("Movement {} failed", movement.line(), e);
+                failed.incrementAndGet();
+            } finally {
+                connections.release();
+            }
+        }
+
+        private void putUninterruptibly(BlockingQueue<Resolved> queue) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    queue.put(END);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void joinUninterruptibly(Thread worker) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    worker.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
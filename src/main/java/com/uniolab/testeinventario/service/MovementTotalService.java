@@ -0,0 +1,189 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.config.MovementTotalProperties;
+import com.uniolab.testeinventario.config.ReplicaRead;
+import com.uniolab.testeinventario.dto.DailyEntryTotal;
+import com.uniolab.testeinventario.dto.DailyMovementTotalRow;
+import com.uniolab.testeinventario.dto.DailyTotalIncrement;
+import com.uniolab.testeinventario.dto.MovementTotal;
+import com.uniolab.testeinventario.enums.MovementTotalType;
+import com.uniolab.testeinventario.model.DailyMovementTotal;
+import com.uniolab.testeinventario.model.InventoryEntry;
+import com.uniolab.testeinventario.repository.DailyMovementTotalRepository;
+import com.uniolab.testeinventario.repository.DepositRepository;
+import com.uniolab.testeinventario.repository.InventoryEntryRepository;
+import com.uniolab.testeinventario.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Daily IN/OUT/transfer totals per (deposit, product), for reporting without scanning
+ * InventoryEntry.
+ * <p>
+ * {@link InventoryManager} reports every written entry through {@link #onEntriesWritten} in the
+ * writing transaction, so the totals commit with the entries. Each (deposit, day, product, type)
+ * of a write is incremented with one atomic upsert, all of them in key order as one JDBC batch,
+ * which locks exactly those rows. The totals of a (deposit, product) are only written by
+ * transactions that also write its DepositHasProduct row, so they add no lock contention of
+ * their own.
+ * {@link #backfill} rebuilds them from existing history.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class MovementTotalService {
+
+    private static final Comparator<TotalKey> KEY_ORDER = Comparator.comparing(TotalKey::depositId)
+            .thenComparing(TotalKey::date)
+            .thenComparing(TotalKey::productId)
+            .thenComparing(TotalKey::type);
+
+    private final DailyMovementTotalRepository dailyMovementTotalRepository;
+    private final InventoryEntryRepository inventoryEntryRepository;
+    private final DepositRepository depositRepository;
+    private final ProductRepository productRepository;
+    private final MovementTotalProperties properties;
+    private final StockHistoryService stockHistoryService;
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Adds the entries to their daily totals. Must run in the transaction that wrote them.
+     */
+    public void onEntriesWritten(Collection<InventoryEntry> entries) {
+        Map<TotalKey, long[]> totals = new TreeMap<>(KEY_ORDER);
+        for (InventoryEntry entry : entries) {
+            MovementTotalType type = MovementTotalType.of(entry.getType(), entry.getTransferDeposit() != null);
+            if (type != null) {
+                TotalKey key = new TotalKey(entry.getDeposit().getId(), entry.getProduct().getId(), entry.getDate().toLocalDate(), type);
+                long[] total = totals.computeIfAbsent(key, k -> new long[2]);
+                total[0] += entry.getQuantity();
+                total[1]++;
+            }
+        }
+
+        List<DailyTotalIncrement> increments = new ArrayList<>(totals.size());
+        totals.forEach((key, total) -> increments.add(new DailyTotalIncrement(key.depositId(), key.productId(),
+                key.date(), key.type(), total[0], total[1])));
+        dailyMovementTotalRepository.addTotals(increments);
+    }
+
+    /**
+     * Totals per movement type of a deposit, or of one of its products, over [from, to].
+     */
+    @ReplicaRead
+    public List<MovementTotal> totals(Long depositId, Long productId, LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Invalid date range");
+        }
+        return productId == null
+                ? dailyMovementTotalRepository.sumByDeposit(depositId, from, to)
+                : dailyMovementTotalRepository.sumByKey(depositId, productId, from, to);
+    }
+
+    @ReplicaRead
+    public List<DailyMovementTotalRow> dailyTotals(Long depositId, Long productId, LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Invalid date range");
+        }
+        return dailyMovementTotalRepository.findDailyByKey(depositId, productId, from, to);
+    }
+
+    /**
+     * Rebuilds the totals of [from, until) from InventoryEntry, deposits in parallel and each
+     * deposit in chunks of products, one transaction per chunk. Meant for history: entries
+     * written into a chunk while it is being rebuilt may be counted twice or missed, so a
+     * backfill should end before the days still receiving movements. Archived days are never
+     * rebuilt: their totals were final before their entries left InventoryEntry.
+     *
+     * @param from  first day, null for the start of history
+     * @param until first day not rebuilt, null for today
+     * @return number of totals written
+     */
+    public int backfill(LocalDate from, LocalDate until) throws InterruptedException {
+        LocalDate requested = from != null ? from
+                : inventoryEntryRepository.findFirstDate().map(LocalDateTime::toLocalDate).orElse(null);
+        LocalDateTime archivedBefore = stockHistoryService.archivedBefore();
+        LocalDate first = requested != null && archivedBefore != null && requested.isBefore(archivedBefore.toLocalDate())
+                ? archivedBefore.toLocalDate()
+                : requested;
+        LocalDate end = until != null ? until : LocalDate.now();
+        if (first == null || !first.isBefore(end)) {
+            return 0;
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, properties.backfillThreads()));
+        AtomicInteger written = new AtomicInteger();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Long depositId : new TreeSet<>(inventoryEntryRepository.findDepositIds())) {
+                futures.add(workers.submit(() -> written.addAndGet(backfillDeposit(depositId, first, end))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Movement totals backfill failed", e.getCause());
+        } finally {
+            workers.shutdown();
+        }
+
+        log.info("Movement totals backfilled from {} until {}: {} rows", first, end, written.get());
+        return written.get();
+    }
+
+    private int backfillDeposit(Long depositId, LocalDate from, LocalDate until) {
+        List<Long> productIds = new ArrayList<>(inventoryEntryRepository.findProductIds(depositId));
+        Collections.sort(productIds);
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        int written = 0;
+        for (int i = 0; i < productIds.size(); i += properties.chunkProducts()) {
+            List<Long> chunk = productIds.subList(i, Math.min(i + properties.chunkProducts(), productIds.size()));
+            written += transaction.execute(status -> backfillChunk(depositId, chunk, from, until));
+        }
+        return written;
+    }
+
+    private int backfillChunk(Long depositId, List<Long> productIds, LocalDate from, LocalDate until) {
+        dailyMovementTotalRepository.deleteBetween(depositId, productIds, from, until);
+
+        Map<TotalKey, long[]> totals = new HashMap<>();
+        for (DailyEntryTotal row : inventoryEntryRepository.sumDaily(depositId, productIds, from.atStartOfDay(), until.atStartOfDay())) {
+            MovementTotalType type = MovementTotalType.of(row.type(), row.transferDepositId() != null);
+            long[] total = totals.computeIfAbsent(new TotalKey(depositId, row.productId(), row.date(), type), k -> new long[2]);
+            total[0] += row.quantity();
+            total[1] += row.entries();
+        }
+
+        List<DailyMovementTotal> rows = new ArrayList<>(totals.size());
+        totals.forEach((key, total) -> rows.add(total(key, total[0], total[1])));
+        dailyMovementTotalRepository.saveAll(rows);
+        return rows.size();
+    }
+
+    private DailyMovementTotal total(TotalKey key, long quantity, long entries) {
+        DailyMovementTotal total = new DailyMovementTotal();
+        total.setDeposit(depositRepository.getReferenceById(key.depositId()));
+        total.setProduct(productRepository.getReferenceById(key.productId()));
+        total.setDate(key.date());
+        total.setType(key.type());
+        total.setQuantity(quantity);
+        total.setEntries(entries);
+        return total;
+    }
+
+    private record TotalKey(Long depositId, Long productId, LocalDate date, MovementTotalType type) {
+    }
+}
@@ -10,8 +10,11 @@ import org.springframework.stereotype.Service;
 public class ProductService {
 
     private final ProductRepository productRepository;
+    private final CatalogLookup catalogLookup;
 
     public Product create(Product productOne) {
-        return productRepository.save(productOne);
+        Product saved = productRepository.save(productOne);
+        catalogLookup.register(saved);
+        return saved;
     }
 }
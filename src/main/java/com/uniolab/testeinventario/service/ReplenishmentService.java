@@ -0,0 +1,152 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.config.ReplenishmentProperties;
+import com.uniolab.testeinventario.dto.ReplenishmentRow;
+import com.uniolab.testeinventario.dto.TransferProposal;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import com.uniolab.testeinventario.repository.DepositRepository;
+import com.uniolab.testeinventario.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds the (deposit, product) keys whose available stock fell below their min and proposes
+ * how to top them up to their desired level.
+ * <p>
+ * Every write to DepositHasProduct keeps its {@code belowMin} flag, so a scan never evaluates
+ * {@code available < min} row by row: it pages through the flagged keys of each deposit on
+ * the (deposit_id, below_min, product_id) index, deposits in parallel. The cost of a scan is
+ * the number of keys to replenish, not the size of the table. Shortages can be covered by
+ * transfers from deposits holding more than their desired level of the same product.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReplenishmentService {
+
+    private static final int SURPLUS_CHUNK_SIZE = 500;
+
+    private final DepositHasProductRepository depositHasProductRepository;
+    private final DepositRepository depositRepository;
+    private final ProductRepository productRepository;
+    private final InventoryManager inventoryManager;
+    private final ReplenishmentProperties properties;
+
+    public void setLevels(Long depositId, Long productId, int min, Integer desired) {
+        if (desired != null && desired < min) {
+            throw new IllegalArgumentException("Desired quantity must not be lower than min");
+        }
+        depositHasProductRepository.setLevels(depositId, productId, min, desired);
+    }
+
+    /**
+     * Keys below min, in deposit and product order.
+     *
+     * @param depositId deposit to scan, null for all of them
+     */
+    public List<ReplenishmentRow> scan(Long depositId) throws InterruptedException {
+        List<Long> depositIds = depositId != null ? List.of(depositId) : depositRepository.findIds();
+
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, Math.min(properties.threads(), depositIds.size())));
+        List<ReplenishmentRow> result = new ArrayList<>();
+        try {
+            List<Future<List<ReplenishmentRow>>> futures = new ArrayList<>();
+            for (Long id : depositIds) {
+                futures.add(workers.submit(() -> scanDeposit(id)));
+            }
+            for (Future<List<ReplenishmentRow>> future : futures) {
+                result.addAll(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Replenishment scan failed", e.getCause());
+        } finally {
+            workers.shutdown();
+        }
+
+        log.info("Replenishment scan of {} deposits: {} keys below min", depositIds.size(), result.size());
+        return result;
+    }
+
+    /**
+     * Covers shortages from the surplus of other deposits, per product: the largest shortages
+     * first, each from the deposits with the largest surplus. A deposit never gives more than
+     * its surplus, so no transfer drops the source to its own target.
+     */
+    public List<TransferProposal> proposeTransfers(List<ReplenishmentRow> shortages) {
+        Map<Long, List<ReplenishmentRow>> shortagesByProduct = new TreeMap<>();
+        shortages.forEach(row -> shortagesByProduct.computeIfAbsent(row.productId(), id -> new ArrayList<>()).add(row));
+
+        List<Long> productIds = new ArrayList<>(shortagesByProduct.keySet());
+        List<TransferProposal> proposals = new ArrayList<>();
+        for (int i = 0; i < productIds.size(); i += SURPLUS_CHUNK_SIZE) {
+            Map<Long, List<ReplenishmentRow>> surplusByProduct = new HashMap<>();
+            for (ReplenishmentRow row : depositHasProductRepository.findSurplus(productIds.subList(i, Math.min(i + SURPLUS_CHUNK_SIZE, productIds.size())))) {
+                if (row.surplus() > 0) {
+                    surplusByProduct.computeIfAbsent(row.productId(), id -> new ArrayList<>()).add(row);
+                }
+            }
+            surplusByProduct.forEach((productId, sources) ->
+                    proposals.addAll(allocate(productId, shortagesByProduct.get(productId), sources)));
+        }
+        return proposals;
+    }
+
+    /**
+     * Executes the proposals through {@link InventoryManager#transfer}, each in its own
+     * transaction.
+     *
+     * @return number of transfers executed
+     */
+    public int executeTransfers(List<TransferProposal> proposals, LocalDateTime date) {
+        for (TransferProposal proposal : proposals) {
+            inventoryManager.transfer(date, productRepository.getReferenceById(proposal.productId()),
+                    depositRepository.getReferenceById(proposal.sourceDepositId()),
+                    depositRepository.getReferenceById(proposal.destinationDepositId()), proposal.quantity());
+        }
+        return proposals.size();
+    }
+
+    private List<ReplenishmentRow> scanDeposit(Long depositId) {
+        List<ReplenishmentRow> rows = new ArrayList<>();
+        long afterProductId = 0;
+        while (true) {
+            List<ReplenishmentRow> page = depositHasProductRepository.findBelowMinAfter(depositId, afterProductId, Limit.of(properties.pageSize()));
+            rows.addAll(page);
+            if (page.size() < properties.pageSize()) {
+                return rows;
+            }
+            afterProductId = page.get(page.size() - 1).productId();
+        }
+    }
+
+    private static List<TransferProposal> allocate(Long productId, List<ReplenishmentRow> shortages, List<ReplenishmentRow> sources) {
+        List<ReplenishmentRow> needs = new ArrayList<>(shortages);
+        needs.sort(Comparator.comparingInt(ReplenishmentRow::shortage).reversed());
+        List<ReplenishmentRow> givers = new ArrayList<>(sources);
+        givers.sort(Comparator.comparingInt(ReplenishmentRow::surplus).reversed());
+
+        List<TransferProposal> proposals = new ArrayList<>();
+        int[] left = givers.stream().mapToInt(ReplenishmentRow::surplus).toArray();
+        for (ReplenishmentRow need : needs) {
+            int missing = need.shortage();
+            for (int g = 0; g < givers.size() && missing > 0; g++) {
+                int quantity = Math.min(missing, left[g]);
+                if (quantity > 0) {
+                    proposals.add(new TransferProposal(productId, givers.get(g).depositId(), need.depositId(), quantity));
+                    left[g] -= quantity;
+                    missing -= quantity;
+                }
+            }
+        }
+        return proposals;
+    }
+}
@@ -0,0 +1,62 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.config.ReservationProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+
+/**
+ * Periodically releases reservations whose TTL elapsed, in batches of
+ * {@code inventory.reservation.sweep-batch-size}, each batch one transaction of
+ * {@link InventoryManager#expireReservations}. Expired rows are found through the
+ * {@code expires_at} index, so a sweep with nothing to do is a single index probe.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReservationSweeper {
+
+    private static final int MAX_CONFLICT_RETRIES = 3;
+
+    private final InventoryManager inventoryManager;
+    private final ReservationProperties properties;
+
+    @Scheduled(fixedDelayString = "${inventory.reservation.sweep-interval:PT30S}")
+    public void sweep() {
+        int expired = sweep(LocalDateTime.now());
+        if (expired > 0) {
+            log.info("Released {} expired reservations", expired);
+        }
+    }
+
+    /**
+     * Releases every reservation expired at {@code now}.
+     *
+     * @return number of released reservations
+     */
+    public int sweep(LocalDateTime now) {
+        int total = 0;
+        int conflicts = 0;
+        while (true) {
+            int released;
+            try {
+                released = inventoryManager.expireReservations(now, properties.sweepBatchSize());
+            } catch (ConcurrencyFailureException e) {
+                // a reservation of the batch was released meanwhile; the retry no longer sees it
+                if (++conflicts > MAX_CONFLICT_RETRIES) {
+                    log.warn("Reservation sweep stopped after {} conflicting batches", conflicts);
+                    return total;
+                }
+                continue;
+            }
+            total += released;
+            if (released < properties.sweepBatchSize()) {
+                return total;
+            }
+        }
+    }
+}
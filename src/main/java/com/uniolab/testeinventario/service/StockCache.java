@@ -0,0 +1,165 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.config.StockCacheProperties;
+import com.uniolab.testeinventario.dto.StockKey;
+import com.uniolab.testeinventario.dto.StockLevel;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, read-through LRU cache of soh/reserved/available per (deposit, product).
+ * <p>
+ * Writers do not patch cached values; {@link InventoryManager} evicts a key once the
+ * transaction that changed it commits, and the next read loads the committed row. A load
+ * that raced with an eviction of the same key is not cached, so a stale row can never
+ * outlive the write that replaced it.
+ */
+@Component
+public class StockCache implements MeterBinder {
+
+    private static final int STRIPES = 1024;
+
+    private final DepositHasProductRepository depositHasProductRepository;
+    private final Map<StockKey, StockLevel> levels;
+    private final AtomicLongArray evictionStamps = new AtomicLongArray(STRIPES);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public StockCache(DepositHasProductRepository depositHasProductRepository, StockCacheProperties properties) {
+        this.depositHasProductRepository = depositHasProductRepository;
+        int maxSize = properties.maxSize();
+        this.levels = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<StockKey, StockLevel> eldest) {
+                if (size() > maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public StockLevel get(Long depositId, Long productId) {
+        return getAll(depositId, List.of(productId)).get(productId);
+    }
+
+    /**
+     * Stock levels of many products of one deposit, loading every miss in a single query.
+     * Products without a DepositHasProduct row are reported with zero stock.
+     */
+    public Map<Long, StockLevel> getAll(Long depositId, Collection<Long> productIds) {
+        Map<Long, StockLevel> result = new LinkedHashMap<>();
+        Map<Long, Long> missing = new HashMap<>();
+
+        synchronized (levels) {
+            for (Long productId : productIds) {
+                StockKey key = new StockKey(depositId, productId);
+                StockLevel level = levels.get(key);
+                if (level != null) {
+                    result.put(productId, level);
+                } else {
+                    missing.put(productId, evictionStamps.get(stripe(key)));
+                }
+            }
+        }
+        hits.add(result.size());
+        misses.add(missing.size());
+
+        if (!missing.isEmpty()) {
+            Map<Long, StockLevel> loaded = new HashMap<>();
+            for (StockLevel level : depositHasProductRepository.findStockLevels(depositId, missing.keySet())) {
+                loaded.put(level.productId(), level);
+            }
+            synchronized (levels) {
+                missing.forEach((productId, stamp) -> {
+                    StockKey key = new StockKey(depositId, productId);
+                    StockLevel level = loaded.getOrDefault(productId, StockLevel.empty(key));
+                    if (evictionStamps.get(stripe(key)) == stamp) {
+                        levels.put(key, level);
+                    }
+                    result.put(productId, level);
+                });
+            }
+        }
+
+        Map<Long, StockLevel> ordered = new LinkedHashMap<>();
+        productIds.forEach(productId -> ordered.put(productId, result.get(productId)));
+        return ordered;
+    }
+
+    /**
+     * Evicts the key when the current transaction commits, or right away without one.
+     */
+    public void evictAfterCommit(Long depositId, Long productId) {
+        StockKey key = new StockKey(depositId, productId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(key);
+                }
+            });
+        } else {
+            evict(key);
+        }
+    }
+
+    public void evict(StockKey key) {
+        synchronized (levels) {
+            evictionStamps.incrementAndGet(stripe(key));
+            levels.remove(key);
+        }
+    }
+
+    public void clear() {
+        synchronized (levels) {
+            for (int i = 0; i < STRIPES; i++) {
+                evictionStamps.incrementAndGet(i);
+            }
+            levels.clear();
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        synchronized (levels) {
+            return levels.size();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("inventory.stock-cache.size", this, StockCache::size).register(registry);
+        FunctionCounter.builder("inventory.stock-cache.requests", this, StockCache::hits).tag("result", "hit").register(registry);
+        FunctionCounter.builder("inventory.stock-cache.requests", this, StockCache::misses).tag("result", "miss").register(registry);
+        FunctionCounter.builder("inventory.stock-cache.evictions", this, StockCache::evictions).register(registry);
+    }
+
+    private static int stripe(StockKey key) {
+        return Math.floorMod(key.hashCode(), STRIPES);
+    }
+}
@@ -0,0 +1,202 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.config.StockChangeFeedProperties;
+import com.uniolab.testeinventario.dto.VersionedStockLevel;
+import com.uniolab.testeinventario.enums.StockChangeOperation;
+import com.uniolab.testeinventario.model.DepositHasProduct;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Publishes every committed DepositHasProduct change to an append-only {@link StockChangeLog}
+ * on local disk, so downstream systems tail it with a {@link StockChangeReader} instead of
+ * polling the table.
+ * <p>
+ * Writers report each change with the row's new soh/reserved/available and version. The
+ * changes of a transaction are held until it commits and then appended together; a rolled
+ * back transaction appends nothing. Two transactions changing the same key append in the
+ * order their commits are processed, which may differ from the order they committed in: the
+ * row version tells the newer state apart.
+ * <p>
+ * A change whose transaction committed while the process died before appending it is lost;
+ * a consumer that must not miss one can reconcile against the table.
+ */
+@Component
+@Slf4j
+public class StockChangeFeed implements MeterBinder {
+
+    private final DepositHasProductRepository depositHasProductRepository;
+    private final StockChangeFeedProperties properties;
+    private final StockChangeLog changeLog;
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public StockChangeFeed(DepositHasProductRepository depositHasProductRepository, StockChangeFeedProperties properties) {
+        this.depositHasProductRepository = depositHasProductRepository;
+        this.properties = properties;
+        if (!properties.enabled()) {
+            this.changeLog = null;
+            return;
+        }
+        try {
+            this.changeLog = new StockChangeLog(directory(), properties.segmentSize().toBytes(), properties.retainedSegments());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open change feed in " + properties.directory(), e);
+        }
+        log.info("Stock change feed in {}, next sequence {}", directory(), changeLog.nextSequence());
+    }
+
+    public boolean isEnabled() {
+        return changeLog != null;
+    }
+
+    /**
+     * Publishes the change of a row written by a bulk update, reading its new levels back.
+     */
+    public void publishAfterCommit(StockChangeOperation operation, Long depositId, Long productId, int delta) {
+        if (!isEnabled()) {
+            return;
+        }
+        VersionedStockLevel level = depositHasProductRepository.findVersionedStockLevel(depositId, productId)
+                .orElseThrow(() -> new IllegalStateException(
+                        "DepositHasProduct not found for deposit " + depositId + " and product " + productId));
+        publishAfterCommit(new Change(operation, depositId, productId, level.version(), delta,
+                level.soh(), level.reserved(), level.available()));
+    }
+
+    /**
+     * Publishes the change of a row written as an entity; it must be flushed, so its version is
+     * the one written.
+     */
+    public void publishAfterCommit(StockChangeOperation operation, DepositHasProduct dhp, int delta) {
+        if (!isEnabled()) {
+            return;
+        }
+        publishAfterCommit(new Change(operation, dhp.getDeposit().getId(), dhp.getProduct().getId(), dhp.getVersion(), delta,
+                dhp.getSoh(), dhp.getReserved(), dhp.getAvailable()));
+    }
+
+    /**
+     * Reads the feed of this process from a sequence, 1 for the oldest retained record.
+     */
+    public StockChangeReader reader(long fromSequence) {
+        if (!isEnabled()) {
+            throw new IllegalStateException("Stock change feed is disabled, see inventory.change-feed.enabled");
+        }
+        return new StockChangeReader(directory(), fromSequence);
+    }
+
+    /**
+     * @return the sequence the next change will get
+     */
+    public long nextSequence() {
+        return isEnabled() ? changeLog.nextSequence() : 0;
+    }
+
+    public long appended() {
+        return appended.sum();
+    }
+
+    public long failures() {
+        return failures.sum();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (isEnabled()) {
+            changeLog.close();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("inventory.change-feed.records", this, StockChangeFeed::appended).register(registry);
+        FunctionCounter.builder("inventory.change-feed.failures", this, StockChangeFeed::failures).register(registry);
+    }
+
+    /**
+     * Adds the change to the ones of the current transaction, appended all at once when it
+     * commits, or appends it right away without one. The list is bound as a transaction
+     * resource, unbound while the transaction is suspended.
+     */
+    @SuppressWarnings("unchecked")
+    private void publishAfterCommit(Change change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            append(List.of(change));
+            return;
+        }
+        List<Change> pending = (List<Change>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            List<Change> changes = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, changes);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void suspend() {
+                    TransactionSynchronizationManager.unbindResource(StockChangeFeed.this);
+                }
+
+                @Override
+                public void resume() {
+                    TransactionSynchronizationManager.bindResource(StockChangeFeed.this, changes);
+                }
+
+                @Override
+                public void afterCommit() {
+                    append(changes);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(StockChangeFeed.this);
+                }
+            });
+            pending = changes;
+        }
+        pending.add(change);
+    }
+
+    /**
+     * The transaction is already committed: a failure is logged and counted, not thrown.
+     */
+    private void append(List<Change> changes) {
+        long committedAt = System.currentTimeMillis();
+        int written = 0;
+        try {
+            synchronized (changeLog) {
+                for (Change change : changes) {
+                    changeLog.append(change.operation(), change.depositId(), change.productId(), change.version(),
+                            change.delta(), change.soh(), change.reserved(), change.available(), committedAt);
+                    written++;
+                }
+            }
+        } catch (RuntimeException e) {
+            failures.add(changes.size() - written);
+            log.error("Cannot append {} committed stock changes to the change feed", changes.size() - written, e);
+        } finally {
+            appended.add(written);
+        }
+    }
+
+    private Path directory() {
+        return Path.of(properties.directory());
+    }
+
+    private record Change(StockChangeOperation operation, Long depositId, Long productId, long version, int delta,
+                          int soh, int reserved, int available) {
+    }
+}
@@ -0,0 +1,191 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.enums.StockChangeOperation;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of stock changes in memory-mapped segment files.
+ * <p>
+ * Records have a fixed size of {@value #RECORD_SIZE} bytes, little-endian:
+ * <pre>
+ *  0 long sequence      8 long depositId    16 long productId    24 long version
+ * 32 long committedAt  40 int operation    44 int delta         48 int soh
+ * 52 int reserved      56 int available    60 unused
+ * </pre>
+ * A segment is named after the sequence of its first record, so the record of any sequence is
+ * found by its file name and offset alone. The sequence is written last, with release
+ * semantics: a reader that finds the sequence it expects (acquire) sees the whole record, and
+ * a record cut short by a crash is found empty and written again on restart.
+ * <p>
+ * Writes go to the page cache: records survive the process, not the machine.
+ */
+final class StockChangeLog implements AutoCloseable {
+
+    static final int RECORD_SIZE = 64;
+    static final int SEQUENCE = 0;
+    static final int DEPOSIT_ID = 8;
+    static final int PRODUCT_ID = 16;
+    static final int VERSION = 24;
+    static final int COMMITTED_AT = 32;
+    static final int OPERATION = 40;
+    static final int DELTA = 44;
+    static final int SOH = 48;
+    static final int RESERVED = 52;
+    static final int AVAILABLE = 56;
+
+    static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ORDER);
+
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int retainedSegments;
+
+    private MappedByteBuffer segment;
+    private long segmentStart;
+    private long next;
+
+    StockChangeLog(Path directory, long segmentSize, int retainedSegments) throws IOException {
+        if (segmentSize < RECORD_SIZE || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid change feed segment size: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentBytes = (int) (segmentSize / RECORD_SIZE * RECORD_SIZE);
+        this.retainedSegments = Math.max(1, retainedSegments);
+        Files.createDirectories(directory);
+
+        List<Long> segments = segments(directory);
+        if (segments.isEmpty()) {
+            startSegment(1);
+        } else {
+            resume(segments.get(segments.size() - 1));
+        }
+    }
+
+    /**
+     * @return the sequence of the appended record
+     */
+    synchronized long append(StockChangeOperation operation, long depositId, long productId, long version,
+                             int delta, int soh, int reserved, int available, long committedAt) {
+        if (segment == null) {
+            throw new IllegalStateException("Stock change log is closed");
+        }
+        int offset = (int) (next - segmentStart) * RECORD_SIZE;
+        if (offset == segment.capacity()) {
+            startSegment(next);
+            offset = 0;
+        }
+        segment.putLong(offset + DEPOSIT_ID, depositId);
+        segment.putLong(offset + PRODUCT_ID, productId);
+        segment.putLong(offset + VERSION, version);
+        segment.putLong(offset + COMMITTED_AT, committedAt);
+        segment.putInt(offset + OPERATION, operation.code());
+        segment.putInt(offset + DELTA, delta);
+        segment.putInt(offset + SOH, soh);
+        segment.putInt(offset + RESERVED, reserved);
+        segment.putInt(offset + AVAILABLE, available);
+        LONG.setRelease(segment, offset + SEQUENCE, next);
+        return next++;
+    }
+
+    /**
+     * @return the sequence the next record will get
+     */
+    synchronized long nextSequence() {
+        return next;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+    }
+
+    /**
+     * @return first sequences of the segments in the directory, in order
+     */
+    static List<Long> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    static Path segmentPath(Path directory, long start) {
+        return directory.resolve(String.format("%020d%s", start, SUFFIX));
+    }
+
+    static MappedByteBuffer map(Path file, FileChannel.MapMode mode) throws IOException {
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[]{StandardOpenOption.READ}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE};
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            MappedByteBuffer buffer = channel.map(mode, 0, channel.size());
+            buffer.order(ORDER);
+            return buffer;
+        }
+    }
+
+    /**
+     * Continues after the last complete record of the newest segment.
+     */
+    private void resume(long start) throws IOException {
+        segment = map(segmentPath(directory, start), FileChannel.MapMode.READ_WRITE);
+        segmentStart = start;
+        next = start;
+        for (int offset = 0; offset < segment.capacity(); offset += RECORD_SIZE) {
+            if ((long) LONG.getAcquire(segment, offset + SEQUENCE) != next) {
+                break;
+            }
+            next++;
+        }
+    }
+
+    /**
+     * Creates the segment at its full size under a temporary name, so readers never map a
+     * partial file, and deletes the segments beyond the retained count.
+     */
+    private void startSegment(long start) {
+        try {
+            Path file = segmentPath(directory, start);
+            Path temporary = directory.resolve(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel.position(segmentBytes - 1L);
+                channel.write(ByteBuffer.wrap(new byte[1]));
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+
+            segment = map(file, FileChannel.MapMode.READ_WRITE);
+            segmentStart = start;
+            next = start;
+
+            List<Long> segments = segments(directory);
+            for (int i = 0; i < segments.size() - retainedSegments; i++) {
+                Files.deleteIfExists(segmentPath(directory, segments.get(i)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start change feed segment " + start + " in " + directory, e);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.uniolab.testeinventario.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.uniolab.testeinventario.service.StockChangeLog.*;
+
+/**
+ * Tails the stock change log from a sequence, e.g. the {@link #position()} a consumer saved
+ * after its last poll. Segments are mapped read-only and records handed out as a view over the
+ * mapping, without copying them. Needs only the log directory, so it also works in a process
+ * other than the writer's. Not thread-safe: one reader per consumer thread.
+ */
+public final class StockChangeReader {
+
+    private final Path directory;
+    private final StockChangeRecord record = new StockChangeRecord();
+
+    private MappedByteBuffer segment;
+    private long segmentStart;
+    private long next;
+
+    public StockChangeReader(Path directory, long fromSequence) {
+        if (fromSequence < 1) {
+            throw new IllegalArgumentException("Invalid change feed sequence: " + fromSequence);
+        }
+        this.directory = directory;
+        this.next = fromSequence;
+    }
+
+    /**
+     * @return the sequence of the next record to read; a consumer resumes from it
+     */
+    public long position() {
+        return next;
+    }
+
+    /**
+     * Hands the records committed since the last poll to the consumer, up to {@code max}. The
+     * record passed is reused and only valid during the call.
+     *
+     * @return number of records read, 0 if none is there yet
+     * @throws IllegalStateException if the position is older than the retained segments
+     */
+    public int poll(Consumer<StockChangeRecord> consumer, int max) {
+        int read = 0;
+        while (read < max) {
+            if (segment == null || (next - segmentStart) * RECORD_SIZE == segment.capacity()) {
+                if (!openSegment()) {
+                    break;
+                }
+            }
+            int offset = (int) (next - segmentStart) * RECORD_SIZE;
+            if ((long) LONG.getAcquire(segment, offset + SEQUENCE) != next) {
+                break;
+            }
+            consumer.accept(record.wrap(segment, offset));
+            next++;
+            read++;
+        }
+        return read;
+    }
+
+    /**
+     * Maps the segment holding the next sequence.
+     *
+     * @return false if the writer has not started it yet
+     */
+    private boolean openSegment() {
+        try {
+            List<Long> segments = StockChangeLog.segments(directory);
+            Long start = null;
+            for (Long candidate : segments) {
+                if (candidate <= next) {
+                    start = candidate;
+                }
+            }
+            if (start == null) {
+                if (!segments.isEmpty()) {
+                    throw new IllegalStateException("Change feed sequence " + next +
+                            " is no longer retained, the oldest is " + segments.get(0));
+                }
+                return false;
+            }
+            if (segment != null && start == segmentStart) {
+                return false;
+            }
+            MappedByteBuffer mapped = StockChangeLog.map(segmentPath(directory, start), FileChannel.MapMode.READ_ONLY);
+            if ((next - start) * RECORD_SIZE >= mapped.capacity()) {
+                return false;
+            }
+            segment = mapped;
+            segmentStart = start;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open change feed segment in " + directory, e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.dto.StockChange;
+import com.uniolab.testeinventario.enums.StockChangeOperation;
+
+import java.nio.ByteBuffer;
+
+import static com.uniolab.testeinventario.service.StockChangeLog.*;
+
+/**
+ * View of one record of the stock change log, reading its fields straight from the mapped
+ * segment. {@link StockChangeReader} reuses the same view for every record it hands out, so it
+ * is only valid during the callback; {@link #copy()} keeps a record beyond it.
+ */
+public final class StockChangeRecord {
+
+    private ByteBuffer buffer;
+    private int offset;
+
+    StockChangeRecord wrap(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    public long sequence() {
+        return buffer.getLong(offset + SEQUENCE);
+    }
+
+    public StockChangeOperation operation() {
+        return StockChangeOperation.of(buffer.getInt(offset + OPERATION));
+    }
+
+    public long depositId() {
+        return buffer.getLong(offset + DEPOSIT_ID);
+    }
+
+    public long productId() {
+        return buffer.getLong(offset + PRODUCT_ID);
+    }
+
+    public long version() {
+        return buffer.getLong(offset + VERSION);
+    }
+
+    public int delta() {
+        return buffer.getInt(offset + DELTA);
+    }
+
+    public int soh() {
+        return buffer.getInt(offset + SOH);
+    }
+
+    public int reserved() {
+        return buffer.getInt(offset + RESERVED);
+    }
+
+    public int available() {
+        return buffer.getInt(offset + AVAILABLE);
+    }
+
+    public long committedAt() {
+        return buffer.getLong(offset + COMMITTED_AT);
+    }
+
+    public StockChange copy() {
+        return new StockChange(sequence(), operation(), depositId(), productId(), version(),
+                delta(), soh(), reserved(), available(), committedAt());
+    }
+}
@@ -0,0 +1,388 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.config.ReplicaRead;
+import com.uniolab.testeinventario.dto.DailyStock;
+import com.uniolab.testeinventario.dto.MovementPoint;
+import com.uniolab.testeinventario.dto.StockKey;
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.InventoryArchiveRun;
+import com.uniolab.testeinventario.model.InventoryEntry;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.model.StockCheckpoint;
+import com.uniolab.testeinventario.model.StockCheckpointHorizon;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import com.uniolab.testeinventario.repository.DepositRepository;
+import com.uniolab.testeinventario.repository.InventoryArchiveRunRepository;
+import com.uniolab.testeinventario.repository.InventoryEntryArchiveRepository;
+import com.uniolab.testeinventario.repository.InventoryEntryRepository;
+import com.uniolab.testeinventario.repository.ProductRepository;
+import com.uniolab.testeinventario.repository.StockCheckpointHorizonRepository;
+import com.uniolab.testeinventario.repository.StockCheckpointRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Point-in-time stock on hand, computed from InventoryEntry history.
+ * <p>
+ * The stock at an instant is the latest BALANCE at or before it plus the IN/OUT entries after
+ * that balance. To bound the replay, the service keeps sparse daily {@link StockCheckpoint}s
+ * (closing stock of every day with movements) up to a global horizon, so a query starts from
+ * the latest checkpoint or balance and scans at most one day of movements. Checkpoints are
+ * extended daily by {@link #buildCheckpoints()}, which persists the horizon as a
+ * {@link StockCheckpointHorizon} once every key is built; an entry written at or before the last day a
+ * build has reached rebuilds the checkpoints of its key from the entry's day on. Both rebuilds
+ * of a key lock its DepositHasProduct row first, so a build and a writer of the same key do
+ * not interleave.
+ * <p>
+ * History dated before the archive cutoff lives in InventoryEntryArchive (see
+ * {@link InventoryArchiveService}); queries reaching before the cutoff read both tables. From
+ * the cutoff on, every archived key starts from a BALANCE at the cutoff in the live table, so
+ * later queries never touch the archive. Movements dated in the archived period are rejected.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StockHistoryService {
+
+    private static final long HORIZON_ID = 1;
+
+    private static final LocalDateTime HISTORY_START = LocalDateTime.of(1000, 1, 1, 0, 0);
+
+    // a BALANCE after the IN/OUT of the same instant, as in InventoryEntryRepository#findMovementsBetween
+    private static final Comparator<MovementPoint> REPLAY_ORDER = Comparator.comparing(MovementPoint::date)
+            .thenComparing(movement -> movement.type() == InventoryEntryType.BALANCE);
+
+    private final InventoryEntryRepository inventoryEntryRepository;
+    private final StockCheckpointRepository stockCheckpointRepository;
+    private final StockCheckpointHorizonRepository stockCheckpointHorizonRepository;
+    private final InventoryEntryArchiveRepository inventoryEntryArchiveRepository;
+    private final InventoryArchiveRunRepository inventoryArchiveRunRepository;
+    private final DepositHasProductRepository depositHasProductRepository;
+    private final DepositRepository depositRepository;
+    private final ProductRepository productRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    /**
+     * Last day whose closing stock is checkpointed for every key, null before the first build.
+     */
+    private volatile LocalDate horizon;
+
+    /**
+     * Last day a build has written checkpoints for, published before the build reads any key:
+     * the horizon once the build completes, and until then the day it is extending them to.
+     */
+    private volatile LocalDate builtUpTo;
+
+    /**
+     * Entries dated before this instant are archived, null before the first archival.
+     */
+    private volatile LocalDateTime archivedBefore;
+
+    /**
+     * Runs once the context is refreshed rather than at construction, so building the context
+     * alone (AOT processing, the class data sharing training run) does not need the database.
+     */
+    @EventListener(ContextRefreshedEvent.class)
+    void loadHorizon() {
+        // not the latest checkpoint: an interrupted build leaves checkpoints past the horizon for some keys only
+        horizon = stockCheckpointHorizonRepository.findById(HORIZON_ID).map(StockCheckpointHorizon::getDate).orElse(null);
+        builtUpTo = horizon;
+        archivedBefore = inventoryArchiveRunRepository.findLastCutoff().orElse(null);
+    }
+
+    @ReplicaRead
+    public int stockAt(Long depositId, Long productId, LocalDateTime at) {
+        boolean archived = reachesArchive(at);
+        List<DailyStock> checkpoint = stockCheckpointRepository.findBefore(depositId, productId, at.toLocalDate(), Limit.of(1));
+        MovementPoint balance = latestBalance(depositId, productId, at, archived);
+
+        LocalDateTime checkpointEnd = checkpoint.isEmpty() ? null : checkpoint.get(0).date().plusDays(1).atStartOfDay();
+        if (balance != null && (checkpointEnd == null || !balance.date().isBefore(checkpointEnd))) {
+            return balance.quantity() + (int) sumMovementsAfter(depositId, productId, balance.date(), at, archived);
+        }
+        if (checkpointEnd != null) {
+            return checkpoint.get(0).soh() + (int) sumMovementsFrom(depositId, productId, checkpointEnd, at, archived);
+        }
+        return (int) sumMovementsFrom(depositId, productId, HISTORY_START, at, archived);
+    }
+
+    /**
+     * Closing stock of every day in [from, to], from one starting point, the checkpoints of the
+     * range and a single scan of the movements after the horizon.
+     */
+    @ReplicaRead
+    public List<DailyStock> dailyStock(Long depositId, Long productId, LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Invalid date range");
+        }
+        int soh = stockAt(depositId, productId, from.atStartOfDay().minusNanos(1));
+
+        LocalDate checkpointed = horizon;
+        Map<LocalDate, Integer> checkpoints = new HashMap<>();
+        if (checkpointed != null && !checkpointed.isBefore(from)) {
+            LocalDate last = checkpointed.isBefore(to) ? checkpointed : to;
+            stockCheckpointRepository.findBetween(depositId, productId, from, last)
+                    .forEach(daily -> checkpoints.put(daily.date(), daily.soh()));
+        }
+
+        LocalDate replayFrom = checkpointed == null || checkpointed.isBefore(from) ? from : checkpointed.plusDays(1);
+        Iterator<MovementPoint> movements = replayFrom.isAfter(to)
+                ? Collections.emptyIterator()
+                : movementsBetween(depositId, productId, replayFrom.atStartOfDay(), to.plusDays(1).atStartOfDay()).iterator();
+        MovementPoint next = movements.hasNext() ? movements.next() : null;
+
+        List<DailyStock> result = new ArrayList<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            if (day.isBefore(replayFrom)) {
+                soh = checkpoints.getOrDefault(day, soh);
+            } else {
+                LocalDateTime dayEnd = day.plusDays(1).atStartOfDay();
+                while (next != null && next.date().isBefore(dayEnd)) {
+                    soh = apply(soh, next);
+                    next = movements.hasNext() ? movements.next() : null;
+                }
+            }
+            result.add(new DailyStock(day, soh));
+        }
+        return result;
+    }
+
+    /**
+     * Keeps checkpoints exact when entries are written at or before the last checkpointed day
+     * (late data). Must run in the transaction that wrote the entries. Checked again before
+     * commit, as a build started meanwhile may already have passed their keys.
+     */
+    public void onEntriesWritten(Collection<InventoryEntry> entries) {
+        LocalDate checked = builtUpTo;
+        rebuildCheckpointed(entries, checked);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<InventoryEntry> written = List.copyOf(entries);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    LocalDate reached = builtUpTo;
+                    if (reached != null && (checked == null || reached.isAfter(checked))) {
+                        rebuildCheckpointed(written, reached);
+                    }
+                }
+            });
+        }
+    }
+
+    @Scheduled(cron = "${inventory.history.checkpoint-cron:0 30 0 * * *}")
+    public void buildCheckpoints() {
+        buildCheckpoints(LocalDate.now().minusDays(1));
+    }
+
+    /**
+     * Extends the checkpoints of every key with movements after the current horizon up to {@code upTo}.
+     */
+    public synchronized int buildCheckpoints(LocalDate upTo) {
+        LocalDate start = horizon != null ? horizon.plusDays(1) : firstDate();
+        if (start == null || start.isAfter(upTo)) {
+            return 0;
+        }
+        // from here on writers keep the keys built below exact, see onEntriesWritten
+        if (builtUpTo == null || builtUpTo.isBefore(upTo)) {
+            builtUpTo = upTo;
+        }
+
+        Set<StockKey> keys = new LinkedHashSet<>(inventoryEntryRepository.findKeysWithMovementsBetween(start.atStartOfDay(), upTo.plusDays(1).atStartOfDay()));
+        if (reachesArchive(start.atStartOfDay())) {
+            keys.addAll(inventoryEntryArchiveRepository.findKeysWithMovementsBetween(start.atStartOfDay(), upTo.plusDays(1).atStartOfDay()));
+        }
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        for (StockKey key : keys) {
+            transaction.executeWithoutResult(status -> rebuild(key, start, upTo));
+        }
+        StockCheckpointHorizon completed = new StockCheckpointHorizon();
+        completed.setId(HORIZON_ID);
+        completed.setDate(upTo);
+        stockCheckpointHorizonRepository.save(completed);
+        horizon = upTo;
+
+        log.info("Stock checkpoints built up to {} for {} keys", upTo, keys.size());
+        return keys.size();
+    }
+
+    public LocalDate horizon() {
+        return horizon;
+    }
+
+    public LocalDateTime archivedBefore() {
+        return archivedBefore;
+    }
+
+    /**
+     * Rejects entries dated in the archived period. IN/OUT at the cutoff itself are rejected as
+     * well: the BALANCE left at the cutoff would override them. Checked first against the cutoff
+     * known to this instance, then before commit against the last persisted run, as a run of any
+     * instance committed meanwhile may already have archived their keys.
+     */
+    public void checkNotArchived(Collection<InventoryEntry> entries) {
+        checkNotArchived(entries, archivedBefore);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            List<InventoryEntry> written = List.copyOf(entries);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    checkNotArchived(written, lastArchiveCutoff());
+                }
+            });
+        }
+    }
+
+    /**
+     * Cutoff of the latest archive run committed by any instance, also remembered as this
+     * instance's.
+     */
+    private LocalDateTime lastArchiveCutoff() {
+        LocalDateTime cutoff = inventoryArchiveRunRepository.lockLast(Limit.of(1)).stream()
+                .map(InventoryArchiveRun::getCutoff).findFirst().orElse(null);
+        LocalDateTime known = archivedBefore;
+        if (cutoff != null && (known == null || cutoff.isAfter(known))) {
+            archivedBefore = cutoff;
+        }
+        return cutoff;
+    }
+
+    /**
+     * Closes the period before {@code cutoff}, before {@link InventoryArchiveService} moves it.
+     */
+    void archiveBefore(LocalDateTime cutoff) {
+        archivedBefore = cutoff;
+    }
+
+    /**
+     * Rebuilds, up to {@code upTo}, the checkpoints of the keys with entries dated at or before it.
+     */
+    private void rebuildCheckpointed(Collection<InventoryEntry> entries, LocalDate upTo) {
+        if (upTo == null) {
+            return;
+        }
+        // in lock order, see rebuild
+        Map<StockKey, LocalDate> rebuildFrom = new TreeMap<>(Comparator.comparing(StockKey::depositId).thenComparing(StockKey::productId));
+        for (InventoryEntry entry : entries) {
+            LocalDate day = entry.getDate().toLocalDate();
+            if (!day.isAfter(upTo)) {
+                rebuildFrom.merge(new StockKey(entry.getDeposit().getId(), entry.getProduct().getId()), day,
+                        (a, b) -> a.isBefore(b) ? a : b);
+            }
+        }
+        rebuildFrom.forEach((key, day) -> rebuild(key, day, upTo));
+    }
+
+    private void rebuild(StockKey key, LocalDate fromDay, LocalDate upTo) {
+        // serializes with the writers of the key, which hold it until their entries commit
+        depositHasProductRepository.lockByDepositIdAndProductId(key.depositId(), key.productId());
+        stockCheckpointRepository.deleteFrom(key.depositId(), key.productId(), fromDay);
+
+        List<DailyStock> previous = stockCheckpointRepository.findBefore(key.depositId(), key.productId(), fromDay, Limit.of(1));
+        LocalDate replayFrom = previous.isEmpty() ? HISTORY_START.toLocalDate() : previous.get(0).date().plusDays(1);
+        int soh = previous.isEmpty() ? 0 : previous.get(0).soh();
+
+        Deposit deposit = depositRepository.getReferenceById(key.depositId());
+        Product product = productRepository.getReferenceById(key.productId());
+
+        List<StockCheckpoint> checkpoints = new ArrayList<>();
+        LocalDate day = null;
+        for (MovementPoint movement : movementsBetween(key.depositId(), key.productId(),
+                replayFrom.atStartOfDay(), upTo.plusDays(1).atStartOfDay())) {
+            LocalDate movementDay = movement.date().toLocalDate();
+            if (day != null && !day.equals(movementDay)) {
+                checkpoints.add(checkpoint(deposit, product, day, soh));
+            }
+            day = movementDay;
+            soh = apply(soh, movement);
+        }
+        if (day != null) {
+            checkpoints.add(checkpoint(deposit, product, day, soh));
+        }
+        stockCheckpointRepository.saveAll(checkpoints);
+    }
+
+    private static void checkNotArchived(Collection<InventoryEntry> entries, LocalDateTime cutoff) {
+        if (cutoff == null) {
+            return;
+        }
+        for (InventoryEntry entry : entries) {
+            if (entry.getType() == InventoryEntryType.BALANCE ? entry.getDate().isBefore(cutoff) : !entry.getDate().isAfter(cutoff)) {
+                throw new IllegalArgumentException("Movements up to " + cutoff + " are archived: " + entry.getDate());
+            }
+        }
+    }
+
+    private boolean reachesArchive(LocalDateTime date) {
+        LocalDateTime cutoff = archivedBefore;
+        return cutoff != null && date.isBefore(cutoff);
+    }
+
+    private LocalDate firstDate() {
+        Optional<LocalDateTime> live = inventoryEntryRepository.findFirstDate();
+        Optional<LocalDateTime> archived = archivedBefore == null ? Optional.empty() : inventoryEntryArchiveRepository.findFirstDate();
+        return Stream.of(live, archived).flatMap(Optional::stream).min(Comparator.naturalOrder())
+                .map(LocalDateTime::toLocalDate).orElse(null);
+    }
+
+    private MovementPoint latestBalance(Long depositId, Long productId, LocalDateTime at, boolean archived) {
+        List<MovementPoint> balances = new ArrayList<>(inventoryEntryRepository.findBalancesUpTo(depositId, productId, at, Limit.of(1)));
+        if (archived) {
+            balances.addAll(inventoryEntryArchiveRepository.findBalancesUpTo(depositId, productId, at, Limit.of(1)));
+        }
+        return balances.stream().max(Comparator.comparing(MovementPoint::date)).orElse(null);
+    }
+
+    private long sumMovementsAfter(Long depositId, Long productId, LocalDateTime after, LocalDateTime upTo, boolean archived) {
+        long sum = inventoryEntryRepository.sumMovementsAfter(depositId, productId, after, upTo);
+        return archived ? sum + inventoryEntryArchiveRepository.sumMovementsAfter(depositId, productId, after, upTo) : sum;
+    }
+
+    private long sumMovementsFrom(Long depositId, Long productId, LocalDateTime from, LocalDateTime upTo, boolean archived) {
+        long sum = inventoryEntryRepository.sumMovementsFrom(depositId, productId, from, upTo);
+        return archived ? sum + inventoryEntryArchiveRepository.sumMovementsFrom(depositId, productId, from, upTo) : sum;
+    }
+
+    private List<MovementPoint> movementsBetween(Long depositId, Long productId, LocalDateTime from, LocalDateTime until) {
+        List<MovementPoint> live = inventoryEntryRepository.findMovementsBetween(depositId, productId, from, until);
+        if (!reachesArchive(from)) {
+            return live;
+        }
+        List<MovementPoint> movements = new ArrayList<>(inventoryEntryArchiveRepository.findMovementsBetween(depositId, productId, from, until));
+        movements.addAll(live);
+        // both parts are sorted and archived rows predate live ones, so the stable sort is one pass
+        movements.sort(REPLAY_ORDER);
+        return movements;
+    }
+
+    private static StockCheckpoint checkpoint(Deposit deposit, Product product, LocalDate day, int soh) {
+        StockCheckpoint checkpoint = new StockCheckpoint();
+        checkpoint.setDeposit(deposit);
+        checkpoint.setProduct(product);
+        checkpoint.setDate(day);
+        checkpoint.setSoh(soh);
+        return checkpoint;
+    }
+
+    private static int apply(int soh, MovementPoint movement) {
+        return switch (movement.type()) {
+            case BALANCE -> movement.quantity();
+            case IN -> soh + movement.quantity();
+            case OUT -> soh - movement.quantity();
+        };
+    }
+}
@@ -0,0 +1,225 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.config.StockLedgerProperties;
+import com.uniolab.testeinventario.dto.StockKey;
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.InventoryEntry;
+import com.uniolab.testeinventario.model.InventoryReserveEntry;
+import com.uniolab.testeinventario.model.Product;
+import jakarta.annotation.PreDestroy;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind front end for {@link InventoryManager}.
+ * <p>
+ * Movements are routed by (deposit, product) to one of a fixed number of shards. Each shard
+ * is drained by a single thread, so a key is only ever written by one thread and callers
+ * never wait on DepositHasProduct row locks. A shard flushes when it holds
+ * {@code flushSize} movements or {@code flushInterval} has elapsed, through
+ * {@link InventoryManager#applyBatch}, which writes the InventoryEntry/InventoryReserveEntry
+ * rows and one coalesced DepositHasProduct update per key in the same transaction.
+ * <p>
+ * Because rows and totals commit together, the persisted totals always match the persisted
+ * entries and a restart needs no replay. A movement is acknowledged (its future completes)
+ * only after its flush commits; movements still in memory are drained on shutdown. Each shard
+ * stops accepting movements under its own lock before its last drain, so a movement is either
+ * drained or rejected; one left queued by a shard that did not finish in time fails instead of
+ * never completing.
+ */
+@Service
+@ConditionalOnProperty(prefix = "inventory.ledger", name = "enabled", havingValue = "true")
+@Slf4j
+public class StockLedger implements MeterBinder {
+
+    private final InventoryManager inventoryManager;
+    private final StockLedgerProperties properties;
+    private final List<Shard> shards;
+
+    public StockLedger(InventoryManager inventoryManager, StockLedgerProperties properties) {
+        if (properties.shards() <= 0 || properties.flushSize() <= 0) {
+            throw new IllegalArgumentException("inventory.ledger.shards and flush-size must be positive");
+        }
+        this.inventoryManager = inventoryManager;
+        this.properties = properties;
+        this.shards = new ArrayList<>(properties.shards());
+        for (int i = 0; i < properties.shards(); i++) {
+            Shard shard = new Shard();
+            Thread thread = new Thread(shard::run, "stock-ledger-" + i);
+            thread.setDaemon(true);
+            shard.thread = thread;
+            shards.add(shard);
+            thread.start();
+        }
+    }
+
+    public CompletableFuture<Void> add(LocalDateTime date, Product product, Deposit deposit, int quantity) {
+        return submit(inventoryManager.createInventoryEntry(date, product, deposit, quantity, InventoryEntryType.IN), null);
+    }
+
+    public CompletableFuture<Void> remove(LocalDateTime date, Product product, Deposit deposit, int quantity) {
+        return submit(inventoryManager.createInventoryEntry(date, product, deposit, quantity, InventoryEntryType.OUT), null);
+    }
+
+    /**
+     * @return completes with the reservation reference once it is committed
+     */
+    public CompletableFuture<String> addReserve(LocalDateTime date, Product product, Deposit deposit, int quantity) {
+        InventoryReserveEntry reserve = inventoryManager.createInventoryReserveEntry(date, product, deposit, quantity);
+        return submit(null, reserve).thenApply(done -> reserve.getReference());
+    }
+
+    /**
+     * Movements accepted but not yet committed, across all shards.
+     */
+    public int pending() {
+        return shards.stream().mapToInt(shard -> shard.queue.size() + shard.inFlight).sum();
+    }
+
+    private CompletableFuture<Void> submit(InventoryEntry entry, InventoryReserveEntry reserve) {
+        Deposit deposit = entry != null ? entry.getDeposit() : reserve.getDeposit();
+        Product product = entry != null ? entry.getProduct() : reserve.getProduct();
+        StockKey key = new StockKey(deposit.getId(), product.getId());
+
+        Movement movement = new Movement(entry, reserve, new CompletableFuture<>());
+        if (!shards.get(Math.floorMod(key.hashCode(), shards.size())).offer(movement)) {
+            throw new IllegalStateException("Stock ledger is shut down");
+        }
+        return movement.done();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        shards.forEach(Shard::stop);
+        int unflushed = 0;
+        for (Shard shard : shards) {
+            shard.thread.join(properties.flushInterval().toMillis() * 10 + 10_000);
+            unflushed += shard.failQueued();
+        }
+        log.info("Stock ledger stopped, {} movements left unflushed", unflushed);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("inventory.ledger.pending", this, StockLedger::pending).register(registry);
+    }
+
+    private record Movement(InventoryEntry entry, InventoryReserveEntry reserve, CompletableFuture<Void> done) {
+    }
+
+    private class Shard {
+
+        private final BlockingQueue<Movement> queue = new LinkedBlockingQueue<>();
+        private volatile boolean stopped;
+        private volatile int inFlight;
+        private Thread thread;
+
+        synchronized boolean offer(Movement movement) {
+            if (stopped) {
+                return false;
+            }
+            queue.add(movement);
+            return true;
+        }
+
+        synchronized void stop() {
+            stopped = true;
+        }
+
+        /**
+         * Fails the movements still queued, once the shard no longer accepts any.
+         *
+         * @return number of movements failed
+         */
+        int failQueued() {
+            List<Movement> left = new ArrayList<>();
+            queue.drainTo(left);
+            left.forEach(movement -> movement.done().completeExceptionally(new IllegalStateException("Stock ledger is shut down")));
+            return left.size();
+        }
+
+        void run() {
+            long intervalNanos = properties.flushInterval().toNanos();
+            List<Movement> batch = new ArrayList<>(properties.flushSize());
+            long deadline = System.nanoTime() + intervalNanos;
+
+            try {
+                while (!stopped || !queue.isEmpty() || !batch.isEmpty()) {
+                    Movement movement = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (movement != null) {
+                        batch.add(movement);
+                        queue.drainTo(batch, properties.flushSize() - batch.size());
+                        inFlight = batch.size();
+                    }
+
+                    if (batch.size() >= properties.flushSize() || System.nanoTime() >= deadline || stopped) {
+                        flush(batch);
+                        batch.clear();
+                        deadline = System.nanoTime() + intervalNanos;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // this shard only: the movements it has not committed are failed
+                Thread.currentThread().interrupt();
+                stop();
+                inFlight = 0;
+                batch.forEach(movement -> movement.done().completeExceptionally(new IllegalStateException("Stock ledger is shut down")));
+                failQueued();
+            }
+        }
+
+        private void flush(List<Movement> batch) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                apply(batch);
+                // no longer pending once acknowledged
+                inFlight = 0;
+                batch.forEach(movement -> movement.done().complete(null));
+            } catch (RuntimeException e) {
+                // one bad movement must not reject the rest of the group: retry them one by one
+                log.warn("Stock ledger flush of {} movements failed, retrying individually", batch.size(), e);
+                for (Movement movement : batch) {
+                    try {
+                        apply(List.of(movement));
+                        inFlight--;
+                        movement.done().complete(null);
+                    } catch (RuntimeException single) {
+                        inFlight--;
+                        movement.done().completeExceptionally(single);
+                    }
+                }
+            }
+        }
+
+        private void apply(List<Movement> batch) {
+            List<InventoryEntry> entries = new ArrayList<>(batch.size());
+            List<InventoryReserveEntry> reserves = new ArrayList<>();
+            for (Movement movement : batch) {
+                // ids drawn by a rolled back attempt must not be reused
+                if (movement.entry() != null) {
+                    movement.entry().setId(null);
+                    entries.add(movement.entry());
+                } else {
+                    movement.reserve().setId(null);
+                    reserves.add(movement.reserve());
+                }
+            }
+            inventoryManager.applyBatch(entries, reserves);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.config.ReplicaRead;
+import com.uniolab.testeinventario.dto.DepositStockRow;
+import com.uniolab.testeinventario.dto.MovementRow;
+import com.uniolab.testeinventario.dto.StockLevel;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import com.uniolab.testeinventario.repository.InventoryEntryRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read side of the inventory. Every answer is a projection of the columns it shows, loaded
+ * by one query per page: no entity, and so no Deposit or Product association, is loaded to
+ * serve a read.
+ */
+@Service
+@RequiredArgsConstructor
+public class StockQueryService {
+
+    private static final LocalDateTime BEGINNING = LocalDateTime.of(1000, 1, 1, 0, 0);
+    private static final LocalDateTime END_OF_TIME = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    private final CatalogLookup catalogLookup;
+    private final StockCache stockCache;
+    private final InventoryEntryRepository inventoryEntryRepository;
+    private final DepositHasProductRepository depositHasProductRepository;
+
+    /**
+     * Stock levels of many SKUs in one deposit, keyed by SKU in the requested order.
+     * SKUs and the deposit are resolved from memory, cached keys are answered from memory
+     * and all misses are loaded with a single query.
+     */
+    public Map<String, StockLevel> availability(String depositName, Collection<String> skus) {
+        Deposit deposit = catalogLookup.findDeposit(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
+        Map<String, Long> productIds = new LinkedHashMap<>();
+        for (String sku : skus) {
+            Product product = catalogLookup.findProduct(sku).orElseThrow(() -> new IllegalArgumentException("Product not found: " + sku));
+            productIds.put(sku, product.getId());
+        }
+
+        Map<Long, StockLevel> levels = stockCache.getAll(deposit.getId(), productIds.values());
+
+        Map<String, StockLevel> result = new LinkedHashMap<>();
+        productIds.forEach((sku, productId) -> result.put(sku, levels.get(productId)));
+        return result;
+    }
+
+    /**
+     * Movements of a SKU in a deposit in registration order, one keyset page at a time.
+     *
+     * @param from    inclusive, null for no lower bound
+     * @param until   exclusive, null for no upper bound
+     * @param afterId id of the last movement of the previous page, 0 for the first page
+     */
+    @ReplicaRead
+    public List<MovementRow> movements(String depositName, String sku, LocalDateTime from, LocalDateTime until,
+                                       long afterId, int limit) {
+        Deposit deposit = catalogLookup.findDeposit(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
+        Product product = catalogLookup.findProduct(sku).orElseThrow(() -> new IllegalArgumentException("Product not found"));
+        return inventoryEntryRepository.findMovementRowsAfter(deposit.getId(), product.getId(),
+                from == null ? BEGINNING : from, until == null ? END_OF_TIME : until, afterId, Limit.of(limit));
+    }
+
+    /**
+     * Stock of every product of a deposit in product order, one keyset page at a time.
+     *
+     * @param afterProductId product id of the last row of the previous page, 0 for the first page
+     */
+    @ReplicaRead
+    public List<DepositStockRow> depositStock(String depositName, long afterProductId, int limit) {
+        Deposit deposit = catalogLookup.findDeposit(depositName).orElseThrow(() -> new IllegalArgumentException("Deposit not found"));
+        return depositHasProductRepository.findDepositStockAfter(deposit.getId(), afterProductId, Limit.of(limit));
+    }
+}
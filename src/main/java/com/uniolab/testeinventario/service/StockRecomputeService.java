@@ -0,0 +1,254 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.config.StockRecomputeProperties;
+import com.uniolab.testeinventario.dto.DepositMovement;
+import com.uniolab.testeinventario.dto.ProductQuantity;
+import com.uniolab.testeinventario.dto.StockKey;
+import com.uniolab.testeinventario.enums.StockChangeOperation;
+import com.uniolab.testeinventario.model.DepositHasProduct;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import com.uniolab.testeinventario.repository.InventoryEntryRepository;
+import com.uniolab.testeinventario.repository.InventoryReserveEntryRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recomputes DepositHasProduct soh/reserved/available from history.
+ * <p>
+ * The live path applies each movement as a delta, which cannot repair totals when data
+ * arrives late (e.g. a BALANCE dated before movements already applied). Such writes call
+ * {@link #requestAfterCommit}; requests are debounced and the keys collected in the window
+ * are recomputed in batches, each key replaying only the movements after its latest
+ * balance or checkpoint (see {@link StockHistoryService#stockAt}). The DepositHasProduct
+ * row is written first, creating it if missing, which locks it before the history is read;
+ * the transactions are READ COMMITTED, so the history read after the lock includes every
+ * movement committed before it, and movements committed later are applied on top of the result.
+ * <p>
+ * {@link #rebuildAll()} recomputes every key for disaster recovery, one deposit per worker,
+ * replaying full histories in product chunks.
+ */
+@Service
+@Slf4j
+public class StockRecomputeService implements MeterBinder {
+
+    private static final LocalDateTime END_OF_TIME = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    private final InventoryEntryRepository inventoryEntryRepository;
+    private final InventoryReserveEntryRepository inventoryReserveEntryRepository;
+    private final DepositHasProductRepository depositHasProductRepository;
+    private final StockHistoryService stockHistoryService;
+    private final StockCache stockCache;
+    private final StockChangeFeed stockChangeFeed;
+    private final StockRecomputeProperties properties;
+    private final TransactionTemplate transaction;
+
+    private final Set<StockKey> pending = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stock-recompute");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public StockRecomputeService(InventoryEntryRepository inventoryEntryRepository,
+                                 InventoryReserveEntryRepository inventoryReserveEntryRepository,
+                                 DepositHasProductRepository depositHasProductRepository,
+                                 StockHistoryService stockHistoryService,
+                                 StockCache stockCache,
+                                 StockChangeFeed stockChangeFeed,
+                                 StockRecomputeProperties properties,
+                                 PlatformTransactionManager transactionManager) {
+        this.inventoryEntryRepository = inventoryEntryRepository;
+        this.inventoryReserveEntryRepository = inventoryReserveEntryRepository;
+        this.depositHasProductRepository = depositHasProductRepository;
+        this.stockHistoryService = stockHistoryService;
+        this.stockCache = stockCache;
+        this.stockChangeFeed = stockChangeFeed;
+        this.properties = properties;
+        this.transaction = new TransactionTemplate(transactionManager);
+        // a snapshot older than the row locks would miss the movements committed before them
+        this.transaction.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+    }
+
+    /**
+     * Schedules a recompute of the key once the current transaction commits.
+     */
+    public void requestAfterCommit(Long depositId, Long productId) {
+        StockKey key = new StockKey(depositId, productId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    request(key);
+                }
+            });
+        } else {
+            request(key);
+        }
+    }
+
+    public int pending() {
+        return pending.size();
+    }
+
+    /**
+     * Recomputes the given keys now, {@code batchSize} keys per transaction.
+     */
+    public void recompute(Collection<StockKey> keys) {
+        List<StockKey> ordered = new ArrayList<>(keys);
+        // fixed lock order across concurrent recomputes
+        ordered.sort(Comparator.comparing(StockKey::depositId).thenComparing(StockKey::productId));
+        for (int from = 0; from < ordered.size(); from += properties.batchSize()) {
+            List<StockKey> batch = ordered.subList(from, Math.min(from + properties.batchSize(), ordered.size()));
+            transaction.executeWithoutResult(status -> batch.forEach(this::recomputeKey));
+        }
+    }
+
+    /**
+     * Recomputes every (deposit, product) from its full history, deposits in parallel.
+     *
+     * @return number of keys rebuilt
+     */
+    public int rebuildAll() throws InterruptedException {
+        Set<Long> depositIds = new TreeSet<>(inventoryEntryRepository.findDepositIds());
+        depositIds.addAll(depositHasProductRepository.findDepositIds());
+
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, properties.threads()));
+        AtomicInteger rebuilt = new AtomicInteger();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Long depositId : depositIds) {
+                futures.add(workers.submit(() -> rebuilt.addAndGet(rebuildDeposit(depositId))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Stock rebuild failed", e.getCause());
+        } finally {
+            workers.shutdown();
+        }
+        stockCache.clear();
+        return rebuilt.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("inventory.recompute.pending", this, StockRecomputeService::pending).register(registry);
+    }
+
+    private void request(StockKey key) {
+        pending.add(key);
+        if (drainScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(this::drain, properties.debounce().toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        List<StockKey> keys = new ArrayList<>(pending);
+        // removed before reading history: a request arriving during the recompute schedules another run
+        pending.removeAll(keys);
+        try {
+            recompute(keys);
+            log.debug("Recomputed {} stock keys", keys.size());
+        } catch (RuntimeException e) {
+            log.error("Stock recompute of {} keys failed, retrying on next request", keys.size(), e);
+            keys.forEach(this::request);
+        }
+    }
+
+    private void recomputeKey(StockKey key) {
+        lock(key.depositId(), key.productId());
+        int previousSoh = depositHasProductRepository.lockByDepositIdAndProductId(key.depositId(), key.productId())
+                .map(DepositHasProduct::getSoh).orElse(0);
+        int soh = stockHistoryService.stockAt(key.depositId(), key.productId(), END_OF_TIME);
+        int reserved = (int) inventoryReserveEntryRepository.sumReserved(key.depositId(), key.productId());
+        depositHasProductRepository.setStock(key.depositId(), key.productId(), soh, reserved);
+        stockCache.evictAfterCommit(key.depositId(), key.productId());
+        stockChangeFeed.publishAfterCommit(StockChangeOperation.RECOMPUTE, key.depositId(), key.productId(), soh - previousSoh);
+    }
+
+    private int rebuildDeposit(Long depositId) {
+        Set<Long> productIds = new TreeSet<>(inventoryEntryRepository.findProductIds(depositId));
+        productIds.addAll(inventoryReserveEntryRepository.findProductIds(depositId));
+        productIds.addAll(depositHasProductRepository.findProductIds(depositId));
+
+        List<Long> ordered = new ArrayList<>(productIds);
+        for (int from = 0; from < ordered.size(); from += properties.batchSize()) {
+            List<Long> chunk = ordered.subList(from, Math.min(from + properties.batchSize(), ordered.size()));
+            transaction.executeWithoutResult(status -> rebuildChunk(depositId, chunk));
+        }
+        return ordered.size();
+    }
+
+    private void rebuildChunk(Long depositId, List<Long> productIds) {
+        productIds.forEach(productId -> lock(depositId, productId));
+        Map<Long, DepositHasProduct> stock = new HashMap<>();
+        for (DepositHasProduct dhp : depositHasProductRepository.findByDepositIdInAndProductIdIn(List.of(depositId), productIds)) {
+            stock.put(dhp.getProduct().getId(), dhp);
+        }
+
+        Map<Long, Integer> soh = new HashMap<>();
+        for (DepositMovement movement : inventoryEntryRepository.findDepositMovements(depositId, productIds)) {
+            int current = soh.getOrDefault(movement.productId(), 0);
+            soh.put(movement.productId(), switch (movement.type()) {
+                case BALANCE -> movement.quantity();
+                case IN -> current + movement.quantity();
+                case OUT -> current - movement.quantity();
+            });
+        }
+        Map<Long, Integer> reserved = new HashMap<>();
+        for (ProductQuantity sum : inventoryReserveEntryRepository.sumReservedByProduct(depositId, productIds)) {
+            reserved.put(sum.productId(), (int) sum.quantity());
+        }
+
+        List<DepositHasProduct> changed = new ArrayList<>();
+        Map<Long, Integer> previousSoh = new HashMap<>();
+        for (Long productId : productIds) {
+            DepositHasProduct dhp = stock.get(productId);
+            int newSoh = soh.getOrDefault(productId, 0);
+            int newReserved = reserved.getOrDefault(productId, 0);
+            if (dhp.getSoh() != newSoh || dhp.getReserved() != newReserved
+                    || dhp.getAvailable() != newSoh - newReserved) {
+                previousSoh.put(productId, dhp.getSoh());
+                dhp.setSoh(newSoh);
+                dhp.setReserved(newReserved);
+                dhp.setAvailable(newSoh - newReserved);
+                changed.add(dhp);
+            }
+        }
+        // flushed for the versions published to the change feed
+        depositHasProductRepository.saveAllAndFlush(changed);
+        changed.forEach(dhp -> stockChangeFeed.publishAfterCommit(StockChangeOperation.RECOMPUTE, dhp,
+                dhp.getSoh() - previousSoh.get(dhp.getProduct().getId())));
+    }
+
+    /**
+     * Locks the key's row with a no-op write, inserting it if missing, so a movement of a key
+     * without a row cannot commit between the history read and the write of its result.
+     */
+    private void lock(Long depositId, Long productId) {
+        depositHasProductRepository.applySohDelta(depositId, productId, 0);
+    }
+}
@@ -0,0 +1,251 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.config.StockLockingProperties;
+import com.uniolab.testeinventario.dto.KeyConflictStats;
+import com.uniolab.testeinventario.dto.StockKey;
+import com.uniolab.testeinventario.enums.LockingMode;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Chooses how a batched DepositHasProduct write guards its rows, see {@link LockingMode}.
+ * <p>
+ * Most keys are cold: two batches rarely write the same row at the same time, so reading the
+ * rows without locks and letting the version check catch the rare conflict keeps writers of
+ * different keys from queueing on each other. A conflicting attempt is rolled back and retried
+ * after a jittered, exponentially growing pause. Conflicts are measured per key; in ADAPTIVE
+ * mode a key whose conflict rate reaches {@code hotConflictRate} is locked pessimistically for
+ * {@code hotPeriod}, where retries would cost more than waiting for the lock, and is measured
+ * again afterwards.
+ * <p>
+ * Single-key movements do not go through here: they are one atomic
+ * {@code UPDATE ... SET soh = soh + :delta}, which cannot lose a concurrent write.
+ */
+@Component
+@Slf4j
+public class StockWriteConcurrency implements MeterBinder {
+
+    private final DepositHasProductRepository depositHasProductRepository;
+    private final StockLockingProperties properties;
+    private final Map<StockKey, KeyStats> stats;
+
+    private volatile LockingMode mode;
+
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    public StockWriteConcurrency(DepositHasProductRepository depositHasProductRepository, StockLockingProperties properties) {
+        this.depositHasProductRepository = depositHasProductRepository;
+        this.properties = properties;
+        this.mode = properties.mode();
+        int maxKeys = properties.maxKeys();
+        this.stats = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<StockKey, KeyStats> eldest) {
+                return size() > maxKeys;
+            }
+        };
+    }
+
+    /**
+     * Runs a write of the given keys. {@code attempt} receives whether to lock the rows when
+     * reading them and must run in its own transaction, so a conflicting attempt can be rolled
+     * back and run again; it is run once, pessimistically, when a transaction is already active.
+     *
+     * @throws ConcurrencyFailureException in OPTIMISTIC mode, when every attempt conflicted
+     */
+    public <T> T execute(Collection<StockKey> keys, Function<Boolean, T> attempt) {
+        LockingMode current = mode;
+        if (current == LockingMode.PESSIMISTIC || TransactionSynchronizationManager.isActualTransactionActive()
+                || (current == LockingMode.ADAPTIVE && anyHot(keys))) {
+            return attempt.apply(true);
+        }
+
+        for (int attempts = 1; ; attempts++) {
+            try {
+                T result = attempt.apply(false);
+                record(keys, false, null);
+                return result;
+            } catch (ConcurrencyFailureException e) {
+                conflicts.increment();
+                record(keys, true, conflictingKey(e));
+                if (attempts >= properties.maxAttempts()) {
+                    if (current == LockingMode.OPTIMISTIC) {
+                        throw e;
+                    }
+                    fallbacks.increment();
+                    log.debug("Write of {} keys conflicted {} times, locking its rows", keys.size(), attempts);
+                    return attempt.apply(true);
+                }
+                retries.increment();
+                pause(attempts, e);
+            }
+        }
+    }
+
+    public LockingMode mode() {
+        return mode;
+    }
+
+    public void setMode(LockingMode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Keys with at least one conflict, most conflicting first.
+     */
+    public List<KeyConflictStats> conflictStats() {
+        long now = System.nanoTime();
+        List<KeyConflictStats> result = new ArrayList<>();
+        synchronized (stats) {
+            stats.forEach((key, keyStats) -> {
+                if (keyStats.totalConflicts > 0) {
+                    result.add(new KeyConflictStats(key.depositId(), key.productId(), keyStats.totalAttempts,
+                            keyStats.totalConflicts, keyStats.isHot(now)));
+                }
+            });
+        }
+        result.sort(Comparator.comparingLong(KeyConflictStats::conflicts).reversed());
+        return result;
+    }
+
+    public long conflicts() {
+        return conflicts.sum();
+    }
+
+    public long retries() {
+        return retries.sum();
+    }
+
+    public long fallbacks() {
+        return fallbacks.sum();
+    }
+
+    public void resetStats() {
+        synchronized (stats) {
+            stats.clear();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("inventory.locking.conflicts", this, StockWriteConcurrency::conflicts)
+                .description("Optimistic DepositHasProduct writes rolled back by a concurrent write").register(registry);
+        FunctionCounter.builder("inventory.locking.retries", this, StockWriteConcurrency::retries).register(registry);
+        FunctionCounter.builder("inventory.locking.fallbacks", this, StockWriteConcurrency::fallbacks)
+                .description("Writes that locked their rows after exhausting the optimistic attempts").register(registry);
+        Gauge.builder("inventory.locking.hot.keys", this, StockWriteConcurrency::hotKeys).register(registry);
+    }
+
+    private long hotKeys() {
+        long now = System.nanoTime();
+        synchronized (stats) {
+            return stats.values().stream().filter(keyStats -> keyStats.isHot(now)).count();
+        }
+    }
+
+    private boolean anyHot(Collection<StockKey> keys) {
+        long now = System.nanoTime();
+        synchronized (stats) {
+            for (StockKey key : keys) {
+                KeyStats keyStats = stats.get(key);
+                if (keyStats != null && keyStats.isHot(now)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts an attempt for every key and, on conflict, a conflict for the key whose row failed
+     * the version check, or for all of them when the failure does not name the row.
+     */
+    private void record(Collection<StockKey> keys, boolean conflict, StockKey conflicting) {
+        boolean chargeAll = conflict && (conflicting == null || !keys.contains(conflicting));
+        long now = System.nanoTime();
+        synchronized (stats) {
+            for (StockKey key : keys) {
+                KeyStats keyStats = stats.computeIfAbsent(key, k -> new KeyStats());
+                if (keyStats.record(chargeAll || (conflict && key.equals(conflicting)), now, properties)) {
+                    log.info("Key deposit {} product {} is hot, locking it pessimistically for {}",
+                            key.depositId(), key.productId(), properties.hotPeriod());
+                }
+            }
+        }
+    }
+
+    private StockKey conflictingKey(ConcurrencyFailureException e) {
+        if (e instanceof ObjectOptimisticLockingFailureException optimistic && optimistic.getIdentifier() instanceof Long id) {
+            return depositHasProductRepository.findKeyById(id).orElse(null);
+        }
+        return null;
+    }
+
+    private void pause(int attempts, ConcurrencyFailureException e) {
+        long ceiling = properties.backoff().toNanos() << Math.min(attempts - 1, 10);
+        try {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    /**
+     * Totals since the key was first measured, plus the current window of at least
+     * {@code minSamples} attempts on which the conflict rate is judged.
+     */
+    private static final class KeyStats {
+        long totalAttempts;
+        long totalConflicts;
+        long attempts;
+        long conflicts;
+        // nanoTime has an arbitrary origin: hotUntil only means something once the key turned hot
+        boolean turnedHot;
+        long hotUntil;
+
+        boolean isHot(long now) {
+            return turnedHot && hotUntil - now > 0;
+        }
+
+        /**
+         * @return whether this attempt turned the key hot
+         */
+        boolean record(boolean conflict, long now, StockLockingProperties properties) {
+            totalAttempts++;
+            attempts++;
+            if (conflict) {
+                totalConflicts++;
+                conflicts++;
+            }
+            if (attempts < properties.minSamples()) {
+                return false;
+            }
+            boolean overRate = (double) conflicts / attempts >= properties.hotConflictRate();
+            attempts = 0;
+            conflicts = 0;
+            if (overRate && !isHot(now)) {
+                turnedHot = true;
+                hotUntil = now + properties.hotPeriod().toNanos();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.config.ForecastProperties;
+import com.uniolab.testeinventario.config.ReplicaRead;
+import com.uniolab.testeinventario.config.ReplicaReads;
+import com.uniolab.testeinventario.dto.ForecastKey;
+import com.uniolab.testeinventario.dto.OutMovement;
+import com.uniolab.testeinventario.dto.StockoutForecastResult;
+import com.uniolab.testeinventario.dto.StockoutRow;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.StockoutForecast;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import com.uniolab.testeinventario.repository.DepositRepository;
+import com.uniolab.testeinventario.repository.InventoryEntryRepository;
+import com.uniolab.testeinventario.repository.ProductRepository;
+import com.uniolab.testeinventario.repository.StockoutForecastRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Projects when each (deposit, product) runs out of stock at its recent consumption rate.
+ * <p>
+ * A run forecasts the deposits as fork/join tasks, {@code parallelism} at a time. A task loads
+ * the deposit's keys into primitive columns sorted by product id (soh, min and consumed
+ * quantity, about 24 bytes per key), then streams the deposit's OUT entries of the window once,
+ * in keyset pages of flat rows, adding each quantity to its key found by binary search.
+ * Transfers out are not consumption and are left out. The daily consumption is the consumed
+ * quantity over the days of the window; soh is projected down to min and to zero from it.
+ * <p>
+ * No per-key query is issued and only the columns of the deposits being forecast are held, so
+ * the heap needed grows with the largest deposits, not with the history. Each deposit's
+ * forecasts replace the previous ones in a single transaction, so its listing is never
+ * incomplete. The keys and history are read from the replica when there is one (see
+ * {@link ReplicaRead}).
+ */
+@Service
+@Slf4j
+public class StockoutForecastService {
+
+    private static final LocalDate LAST_DATE = LocalDate.of(9999, 12, 31);
+
+    private final DepositHasProductRepository depositHasProductRepository;
+    private final InventoryEntryRepository inventoryEntryRepository;
+    private final DepositRepository depositRepository;
+    private final ProductRepository productRepository;
+    private final StockoutForecastRepository stockoutForecastRepository;
+    private final ForecastProperties properties;
+    private final TransactionTemplate transaction;
+
+    public StockoutForecastService(DepositHasProductRepository depositHasProductRepository,
+                                   InventoryEntryRepository inventoryEntryRepository,
+                                   DepositRepository depositRepository,
+                                   ProductRepository productRepository,
+                                   StockoutForecastRepository stockoutForecastRepository,
+                                   ForecastProperties properties,
+                                   PlatformTransactionManager transactionManager) {
+        this.depositHasProductRepository = depositHasProductRepository;
+        this.inventoryEntryRepository = inventoryEntryRepository;
+        this.depositRepository = depositRepository;
+        this.productRepository = productRepository;
+        this.stockoutForecastRepository = stockoutForecastRepository;
+        this.properties = properties;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(cron = "${inventory.forecast.cron:-}")
+    public void forecast() {
+        forecast(LocalDate.now());
+    }
+
+    /**
+     * Forecasts every key from the start of {@code date}, with the consumption of the window
+     * before it.
+     */
+    public synchronized StockoutForecastResult forecast(LocalDate date) {
+        LocalDateTime until = date.atStartOfDay();
+        LocalDateTime from = date.minus(properties.window()).atStartOfDay();
+        long days = ChronoUnit.DAYS.between(from, until);
+        if (days <= 0) {
+            throw new IllegalArgumentException("Invalid forecast window: " + properties.window());
+        }
+
+        Totals totals = new Totals();
+        List<DepositForecast> tasks = new ArrayList<>();
+        for (Long depositId : depositHasProductRepository.findDepositIds()) {
+            tasks.add(new DepositForecast(depositId, date, from, until, days, totals));
+        }
+        // tasks block on the database: a pool of their own, sized to the deposits run at once
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, properties.parallelism()));
+        try {
+            pool.submit(() -> ForkJoinTask.invokeAll(tasks)).join();
+        } finally {
+            pool.shutdown();
+        }
+
+        StockoutForecastResult result = new StockoutForecastResult(tasks.size(), totals.keys.sum(),
+                totals.movements.sum(), totals.stockouts.sum());
+        log.info("Stockout forecast for {}: {} stockouts over {} keys of {} deposits, {} OUT entries read",
+                date, result.stockouts(), result.keys(), result.deposits(), result.movements());
+        return result;
+    }
+
+    /**
+     * Keys of the deposit projected by the latest run to run out before {@code until}, soonest first.
+     */
+    @ReplicaRead
+    public List<StockoutRow> stockouts(Deposit deposit, LocalDate until, int limit) {
+        return stockoutForecastRepository.findStockoutsBefore(deposit.getId(), until, Limit.of(limit));
+    }
+
+    /**
+     * First day soh is at or below {@code level} when {@code daily} is consumed per day.
+     */
+    static LocalDate reachDate(LocalDate date, int soh, int level, double daily) {
+        if (soh <= level) {
+            return date;
+        }
+        double days = Math.floor((soh - level) / daily);
+        return days >= ChronoUnit.DAYS.between(date, LAST_DATE) ? LAST_DATE : date.plusDays((long) days);
+    }
+
+    private final class DepositForecast extends RecursiveAction {
+
+        private final Long depositId;
+        private final LocalDate date;
+        private final LocalDateTime from;
+        private final LocalDateTime until;
+        private final long days;
+        private final Totals totals;
+
+        private DepositForecast(Long depositId, LocalDate date, LocalDateTime from, LocalDateTime until, long days, Totals totals) {
+            this.depositId = depositId;
+            this.date = date;
+            this.from = from;
+            this.until = until;
+            this.days = days;
+            this.totals = totals;
+        }
+
+        @Override
+        protected void compute() {
+            Columns columns = loadKeys();
+            totals.keys.add(columns.size);
+            totals.movements.add(addConsumption(columns));
+            totals.stockouts.add(write(columns));
+        }
+
+        private Columns loadKeys() {
+            Columns columns = new Columns();
+            long afterProductId = 0;
+            List<ForecastKey> page;
+            do {
+                long after = afterProductId;
+                page = ReplicaReads.call(() -> depositHasProductRepository.findForecastKeysAfter(depositId, after, Limit.of(properties.pageSize())));
+                for (ForecastKey key : page) {
+                    columns.add(key.productId(), key.soh(), key.min());
+                }
+                if (!page.isEmpty()) {
+                    afterProductId = page.get(page.size() - 1).productId();
+                }
+            } while (page.size() == properties.pageSize());
+            return columns;
+        }
+
+        /**
+         * @return number of OUT entries read
+         */
+        private long addConsumption(Columns columns) {
+            long read = 0;
+            LocalDateTime afterDate = from;
+            long afterId = 0;
+            List<OutMovement> page;
+            do {
+                LocalDateTime date = afterDate;
+                long id = afterId;
+                page = ReplicaReads.call(() -> inventoryEntryRepository.findOutMovementsAfter(depositId, until, date, id, Limit.of(properties.pageSize())));
+                for (OutMovement movement : page) {
+                    int index = columns.indexOf(movement.productId());
+                    if (index >= 0) {
+                        columns.consumed[index] += movement.quantity();
+                    }
+                }
+                if (!page.isEmpty()) {
+                    OutMovement last = page.get(page.size() - 1);
+                    afterDate = last.date();
+                    afterId = last.id();
+                    read += page.size();
+                }
+            } while (page.size() == properties.pageSize());
+            return read;
+        }
+
+        /**
+         * Replaces the deposit's forecasts in one transaction, flushed every {@code batch-size} rows.
+         *
+         * @return number of forecasts written
+         */
+        private long write(Columns columns) {
+            return transaction.execute(status -> {
+                Deposit deposit = depositRepository.getReferenceById(depositId);
+                stockoutForecastRepository.deleteByDepositId(depositId);
+
+                long written = 0;
+                List<StockoutForecast> batch = new ArrayList<>(properties.batchSize());
+                for (int i = 0; i < columns.size; i++) {
+                    if (columns.consumed[i] <= 0) {
+                        continue;
+                    }
+                    batch.add(forecast(deposit, columns, i));
+                    if (batch.size() == properties.batchSize()) {
+                        stockoutForecastRepository.saveAllAndFlush(batch);
+                        written += batch.size();
+                        batch.clear();
+                    }
+                }
+                stockoutForecastRepository.saveAllAndFlush(batch);
+                return written + batch.size();
+            });
+        }
+
+        private StockoutForecast forecast(Deposit deposit, Columns columns, int index) {
+            double daily = (double) columns.consumed[index] / days;
+            int soh = columns.soh[index];
+            int min = columns.min[index];
+
+            StockoutForecast forecast = new StockoutForecast();
+            forecast.setDeposit(deposit);
+            forecast.setProduct(productRepository.getReferenceById(columns.productIds[index]));
+            forecast.setForecastDate(date);
+            forecast.setSoh(soh);
+            forecast.setMin(min);
+            forecast.setDailyConsumption(daily);
+            forecast.setMinDate(min < 0 ? null : reachDate(date, soh, min, daily));
+            forecast.setStockoutDate(reachDate(date, soh, 0, daily));
+            return forecast;
+        }
+    }
+
+    /**
+     * Keys of one deposit as parallel primitive arrays, in ascending product id order.
+     */
+    private static final class Columns {
+
+        private long[] productIds = new long[1024];
+        private int[] soh = new int[1024];
+        private int[] min = new int[1024];
+        private long[] consumed = new long[1024];
+        private int size;
+
+        private void add(long productId, int keySoh, int keyMin) {
+            if (size == productIds.length) {
+                int capacity = size * 2;
+                productIds = Arrays.copyOf(productIds, capacity);
+                soh = Arrays.copyOf(soh, capacity);
+                min = Arrays.copyOf(min, capacity);
+                consumed = Arrays.copyOf(consumed, capacity);
+            }
+            productIds[size] = productId;
+            soh[size] = keySoh;
+            min[size] = keyMin;
+            size++;
+        }
+
+        private int indexOf(long productId) {
+            return Arrays.binarySearch(productIds, 0, size, productId);
+        }
+    }
+
+    private static final class Totals {
+        private final LongAdder keys = new LongAdder();
+        private final LongAdder movements = new LongAdder();
+        private final LongAdder stockouts = new LongAdder();
+    }
+}
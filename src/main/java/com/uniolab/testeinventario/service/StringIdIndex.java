@@ -0,0 +1,153 @@
+package com.uniolab.testeinventario.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Memory-compact map from a string key to a long id.
+ * <p>
+ * Keys are stored back to back as UTF-8 in a single byte arena and located through an
+ * open-addressing table of int slots, so an entry costs its key bytes plus about 24 bytes,
+ * instead of the String, Long and node objects of a {@code HashMap<String, Long>}.
+ * Entries can be added or re-pointed but not removed.
+ */
+class StringIdIndex {
+
+    private static final int EMPTY = -1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private byte[] arena = new byte[1 << 12];
+    private int arenaSize;
+    private int[] offsets = new int[1 << 8];
+    private long[] ids = new long[1 << 8];
+    private int size;
+    private int[] slots = newSlots(1 << 9);
+
+    /**
+     * @return the id of the key, or -1 when it is unknown
+     */
+    long get(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.readLock().lock();
+        try {
+            int entry = slots[find(bytes, hash(bytes))];
+            return entry == EMPTY ? -1 : ids[entry];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void put(String key, long id) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.writeLock().lock();
+        try {
+            int hash = hash(bytes);
+            int slot = find(bytes, hash);
+            if (slots[slot] != EMPTY) {
+                ids[slots[slot]] = id;
+                return;
+            }
+            if ((size + 1) * 2 > slots.length) {
+                rehash(slots.length * 2);
+                slot = find(bytes, hash);
+            }
+            append(bytes, id);
+            slots[slot] = size - 1;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bytes held by the backing arrays, the memory cost of the index excluding object headers.
+     */
+    long footprintBytes() {
+        lock.readLock().lock();
+        try {
+            return arena.length + 4L * offsets.length + 8L * ids.length + 4L * slots.length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int find(byte[] key, int hash) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != EMPTY && !keyEquals(slots[slot], key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean keyEquals(int entry, byte[] key) {
+        int start = offsets[entry];
+        int end = entry + 1 < size ? offsets[entry + 1] : arenaSize;
+        return Arrays.equals(arena, start, end, key, 0, key.length);
+    }
+
+    private void append(byte[] key, long id) {
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        if (arenaSize + key.length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + key.length));
+        }
+        System.arraycopy(key, 0, arena, arenaSize, key.length);
+        offsets[size] = arenaSize;
+        ids[size] = id;
+        arenaSize += key.length;
+        size++;
+    }
+
+    private void rehash(int capacity) {
+        int[] rehashed = newSlots(capacity);
+        int mask = capacity - 1;
+        for (int entry = 0; entry < size; entry++) {
+            int start = offsets[entry];
+            int end = entry + 1 < size ? offsets[entry + 1] : arenaSize;
+            int slot = hash(arena, start, end) & mask;
+            while (rehashed[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = entry;
+        }
+        slots = rehashed;
+    }
+
+    private static int hash(byte[] key) {
+        return hash(key, 0, key.length);
+    }
+
+    private static int hash(byte[] bytes, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + bytes[i];
+        }
+        // murmur3 finalizer: the table is indexed with a power-of-two mask and sequential
+        // SKUs would otherwise cluster into long probe runs
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    private static int[] newSlots(int capacity) {
+        int[] slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        return slots;
+    }
+}
@@ -0,0 +1,147 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.dto.InTransitRow;
+import com.uniolab.testeinventario.dto.ManifestLine;
+import com.uniolab.testeinventario.dto.ProductQuantity;
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.InventoryEntry;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.model.TransferManifest;
+import com.uniolab.testeinventario.model.TransferManifestLine;
+import com.uniolab.testeinventario.repository.ProductRepository;
+import com.uniolab.testeinventario.repository.TransferManifestLineRepository;
+import com.uniolab.testeinventario.repository.TransferManifestRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves many SKUs between two deposits as a {@link TransferManifest}, in two steps.
+ * {@link #dispatch} takes every line out of the source deposit as a transfer OUT entry;
+ * {@link #receive} puts them into the destination as transfer IN entries. In between the
+ * quantities are in transit ({@link #inTransit}), counted in neither deposit.
+ * <p>
+ * Each step is one transaction and writes its entries and DepositHasProduct rows through
+ * {@link InventoryManager#applyBatch}: the rows of all lines are read and locked with one query
+ * and every insert and update goes out in JDBC batches, so a manifest costs a few statements
+ * per batch rather than several round trips per line as {@link InventoryManager#transfer} does.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TransferManifestService {
+
+    private final TransferManifestRepository transferManifestRepository;
+    private final TransferManifestLineRepository transferManifestLineRepository;
+    private final InventoryManager inventoryManager;
+    private final CatalogLookup catalogLookup;
+    private final ProductRepository productRepository;
+
+    /**
+     * Records the manifest and removes its lines from the source deposit. Lines of the same SKU
+     * are merged.
+     */
+    @Transactional
+    public TransferManifest dispatch(String reference, LocalDateTime date, Deposit source, Deposit destination,
+                                     List<ManifestLine> lines) {
+        if (lines.isEmpty()) {
+            throw new IllegalArgumentException("Manifest has no lines: " + reference);
+        }
+        if (source.getId().equals(destination.getId())) {
+            throw new IllegalArgumentException("Manifest " + reference + " has the same source and destination");
+        }
+        if (transferManifestRepository.existsByReference(reference)) {
+            throw new IllegalArgumentException("Manifest already exists: " + reference);
+        }
+
+        Map<Long, Product> products = new LinkedHashMap<>();
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (ManifestLine line : lines) {
+            if (line.quantity() <= 0) {
+                throw new IllegalArgumentException("Invalid quantity for sku " + line.sku() + ": " + line.quantity());
+            }
+            Product product = catalogLookup.findProduct(line.sku())
+                    .orElseThrow(() -> new IllegalArgumentException("Product not found: " + line.sku()));
+            products.putIfAbsent(product.getId(), product);
+            quantities.merge(product.getId(), line.quantity(), Integer::sum);
+        }
+
+        TransferManifest manifest = new TransferManifest();
+        manifest.setReference(reference);
+        manifest.setSourceDeposit(source);
+        manifest.setDestinationDeposit(destination);
+        manifest.setLineCount(quantities.size());
+        manifest.setDispatchedAt(date);
+        transferManifestRepository.save(manifest);
+
+        List<TransferManifestLine> manifestLines = new ArrayList<>(quantities.size());
+        List<InventoryEntry> entries = new ArrayList<>(quantities.size());
+        quantities.forEach((productId, quantity) -> {
+            Product product = products.get(productId);
+            TransferManifestLine manifestLine = new TransferManifestLine();
+            manifestLine.setManifest(manifest);
+            manifestLine.setProduct(product);
+            manifestLine.setQuantity(quantity);
+            manifestLines.add(manifestLine);
+            entries.add(transferEntry(date, product, source, quantity, InventoryEntryType.OUT, destination));
+        });
+        transferManifestLineRepository.saveAll(manifestLines);
+        inventoryManager.applyBatch(entries, List.of());
+
+        log.debug("Manifest {} dispatched: {} lines from deposit {} to deposit {}",
+                reference, manifestLines.size(), source.getId(), destination.getId());
+        return manifest;
+    }
+
+    /**
+     * Puts every line of a dispatched manifest into its destination deposit.
+     *
+     * @return the IN entries written
+     * @throws IllegalStateException if the manifest was already received
+     */
+    @Transactional
+    public List<InventoryEntry> receive(String reference, LocalDateTime date) {
+        TransferManifest manifest = transferManifestRepository.findByReference(reference)
+                .orElseThrow(() -> new IllegalArgumentException("Manifest not found: " + reference));
+        if (date.isBefore(manifest.getDispatchedAt())) {
+            throw new IllegalArgumentException("Manifest " + reference + " was dispatched at " + manifest.getDispatchedAt());
+        }
+        // only the transaction that marks it received writes the entries
+        if (transferManifestRepository.markReceived(manifest.getId(), date) == 0) {
+            throw new IllegalStateException("Manifest already received: " + reference);
+        }
+
+        Deposit source = manifest.getSourceDeposit();
+        Deposit destination = manifest.getDestinationDeposit();
+        List<InventoryEntry> entries = new ArrayList<>(manifest.getLineCount());
+        for (ProductQuantity line : transferManifestLineRepository.findQuantities(manifest.getId())) {
+            entries.add(transferEntry(date, productRepository.getReferenceById(line.productId()), destination, (int) line.quantity(), InventoryEntryType.IN, source));
+        }
+        inventoryManager.applyBatch(entries, List.of());
+
+        log.debug("Manifest {} received: {} lines into deposit {}", reference, entries.size(), destination.getId());
+        return entries;
+    }
+
+    /**
+     * Quantities dispatched to the deposit and not yet received, by SKU.
+     */
+    public List<InTransitRow> inTransit(Deposit destination) {
+        return transferManifestLineRepository.sumInTransitTo(destination.getId());
+    }
+
+    private InventoryEntry transferEntry(LocalDateTime date, Product product, Deposit deposit, int quantity,
+                                         InventoryEntryType type, Deposit transferDeposit) {
+        InventoryEntry entry = inventoryManager.createInventoryEntry(date, product, deposit, quantity, type);
+        entry.setTransferDeposit(transferDeposit);
+        return entry;
+    }
+}
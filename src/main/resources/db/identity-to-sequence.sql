@@ -0,0 +1,25 @@
+-- MySQL, once, before the first start of a version with sequence ids on a database created with
+-- IDENTITY ids (AUTO_INCREMENT). Hibernate emulates each sequence with a <table>_seq table whose
+-- next_val starts at 1, so new ids would collide with the existing rows: this seeds every sequence
+-- above the table's largest id. It is safe to run again while the application is stopped.
+-- mysql inventario < src/main/resources/db/identity-to-sequence.sql
+
+CREATE TABLE IF NOT EXISTS product_seq (next_val BIGINT);
+DELETE FROM product_seq;
+INSERT INTO product_seq (next_val) SELECT COALESCE(MAX(id), 0) + 51 FROM product;
+
+CREATE TABLE IF NOT EXISTS deposit_seq (next_val BIGINT);
+DELETE FROM deposit_seq;
+INSERT INTO deposit_seq (next_val) SELECT COALESCE(MAX(id), 0) + 51 FROM deposit;
+
+CREATE TABLE IF NOT EXISTS deposit_has_product_seq (next_val BIGINT);
+DELETE FROM deposit_has_product_seq;
+INSERT INTO deposit_has_product_seq (next_val) SELECT COALESCE(MAX(id), 0) + 51 FROM deposit_has_product;
+
+CREATE TABLE IF NOT EXISTS inventory_entry_seq (next_val BIGINT);
+DELETE FROM inventory_entry_seq;
+INSERT INTO inventory_entry_seq (next_val) SELECT COALESCE(MAX(id), 0) + 51 FROM inventory_entry;
+
+CREATE TABLE IF NOT EXISTS inventory_reserve_entry_seq (next_val BIGINT);
+DELETE FROM inventory_reserve_entry_seq;
+INSERT INTO inventory_reserve_entry_seq (next_val) SELECT COALESCE(MAX(id), 0) + 51 FROM inventory_reserve_entry;
@@ -0,0 +1,44 @@
+package com.uniolab.testeinventario;
+
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.service.DepositService;
+import com.uniolab.testeinventario.service.ProductService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Catalog entities shared by the tests and the JMH suite, with random SKUs and deposit names so
+ * that runs on the same database never collide. The static factories return them unsaved; the
+ * bean creates them through the services.
+ */
+@Component
+@RequiredArgsConstructor
+public class InventoryFixtures {
+
+    private final ProductService productService;
+    private final DepositService depositService;
+
+    public Product newProduct() {
+        return productService.create(product());
+    }
+
+    public Deposit newDeposit() {
+        return depositService.create(deposit());
+    }
+
+    public static Product product() {
+        Product product = new Product();
+        product.setName("Produto");
+        product.setSku(UUID.randomUUID().toString());
+        return product;
+    }
+
+    public static Deposit deposit() {
+        Deposit deposit = new Deposit();
+        deposit.setName(UUID.randomUUID().toString());
+        return deposit;
+    }
+}
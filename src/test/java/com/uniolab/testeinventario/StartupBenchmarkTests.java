@@ -0,0 +1,153 @@
+package com.uniolab.testeinventario;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Starts the application as a separate JVM running one command, the way scripts do, and reports
+ * the time until the command prints its result and the peak resident memory up to then.
+ * <p>
+ * Without a fast-start build only the classpath variants run; {@code mvn -Pfast-start package}
+ * first adds the packaged ones (AOT-processed context, class data sharing archive).
+ */
+@Slf4j
+class StartupBenchmarkTests {
+
+    private static final String MAIN = TesteInventarioApplication.class.getName();
+    private static final String[] COMMAND = {"availability", "--depositName", "Teste", "--skus", "123"};
+    private static final String RESULT = "sku;soh;reserved;available";
+
+    /**
+     * Settings of a command run before the cli profile: eager context, schema validated,
+     * scheduler and catalog cache started.
+     */
+    private static final List<String> BEFORE = List.of("-Dspring.main.lazy-initialization=false",
+            "-Dspring.data.jpa.repositories.bootstrap-mode=default", "-Dspring.jpa.hibernate.ddl-auto=validate",
+            "-Dinventory.scheduling.enabled=true", "-Dinventory.catalog.preload=true", "-Dspring.main.banner-mode=console");
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    @Tag("benchmark")
+    void timeToFirstCommand() throws Exception {
+        int runs = Integer.getInteger("benchmark.startup.runs", 3);
+        Path cds = Path.of(System.getProperty("benchmark.startup.cds-dir", "target/cds"));
+        String url = "jdbc:h2:file:" + dir.resolve("inventario") + ";MODE=MySQL";
+
+        String classpath = System.getProperty("java.class.path");
+        run(classpath, List.of("-Dspring.datasource.url=" + url, "-Dspring.jpa.hibernate.ddl-auto=create"),
+                "Database initialized", "init-bd");
+
+        List<String> database = List.of("-Dspring.datasource.url=" + url);
+        measure("classpath, before", classpath, concat(database, BEFORE), runs);
+        measure("classpath, cli profile", classpath, database, runs);
+
+        Path jar;
+        try (var files = Files.list(cds)) {
+            jar = files.filter(file -> file.toString().endsWith(".jar")).findFirst().orElse(null);
+        } catch (IOException e) {
+            jar = null;
+        }
+        if (jar == null) {
+            log.info(String.format("startup: no fast-start build in %s, run mvn -Pfast-start package for the packaged variants", cds));
+            return;
+        }
+        // the packaged application does not include the test database driver
+        String packaged = jar + System.getProperty("path.separator") + h2Jar();
+        List<String> aot = List.of("-Dspring.aot.enabled=true");
+        List<String> archive = List.of("-XX:SharedArchiveFile=" + cds.resolve("application.jsa"), "-Xlog:cds=error");
+        measure("jar, before", packaged, concat(database, BEFORE), runs);
+        measure("jar, cli profile", packaged, database, runs);
+        measure("jar, cli profile + AOT", packaged, concat(database, aot), runs);
+        measure("jar, cli profile + AOT + CDS", packaged, concat(database, aot, archive), runs);
+        measure("jar, cli profile + AOT + CDS + C1 only", packaged,
+                concat(database, aot, archive, List.of("-XX:TieredStopAtLevel=1")), runs);
+    }
+
+    private void measure(String variant, String classpath, List<String> options, int runs) throws Exception {
+        run(classpath, options, RESULT, COMMAND); // warms the OS file cache
+        long[] millis = new long[runs];
+        long[] peakKb = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long[] result = run(classpath, options, RESULT, COMMAND);
+            millis[i] = result[0];
+            peakKb[i] = result[1];
+        }
+        Arrays.sort(millis);
+        Arrays.sort(peakKb);
+        log.info(String.format("startup: %-40s time to first command %6d ms (min %d, max %d), peak RSS %4d MB",
+                variant, millis[runs / 2], millis[0], millis[runs - 1], peakKb[runs / 2] / 1024));
+    }
+
+    /**
+     * @return milliseconds until {@code expected} was printed and the peak RSS in KB up to then
+     */
+    private long[] run(String classpath, List<String> options, String expected, String... args)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(options);
+        command.addAll(List.of("-cp", classpath, MAIN));
+        command.addAll(List.of(args));
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        List<String> output = new ArrayList<>();
+        long millis = -1;
+        long peakKb = -1;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.add(line);
+                if (millis < 0 && line.startsWith(expected)) {
+                    millis = (System.nanoTime() - start) / 1_000_000;
+                    peakKb = peakRssKb(process.pid());
+                }
+            }
+        }
+        boolean exited = process.waitFor(1, TimeUnit.MINUTES);
+        if (!exited) {
+            process.destroyForcibly();
+        }
+        assertThat(millis).as("%s%n%s", command, String.join("\n", output)).isNotNegative();
+        assertThat(exited && process.exitValue() == 0).as("%s exited", command).isTrue();
+        return new long[]{millis, peakKb};
+    }
+
+    private static long peakRssKb(long pid) {
+        try {
+            return Files.readAllLines(Path.of("/proc", Long.toString(pid), "status")).stream()
+                    .filter(line -> line.startsWith("VmHWM:"))
+                    .mapToLong(line -> Long.parseLong(line.replaceAll("\\D", "")))
+                    .findFirst().orElse(-1);
+        } catch (IOException e) {
+            return -1; // not on Linux
+        }
+    }
+
+    private static String h2Jar() throws URISyntaxException {
+        return Path.of(org.h2.Driver.class.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+    }
+
+    @SafeVarargs
+    private static List<String> concat(List<String>... lists) {
+        return Arrays.stream(lists).flatMap(List::stream).toList();
+    }
+}
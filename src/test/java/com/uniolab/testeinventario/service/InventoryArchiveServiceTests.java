@@ -0,0 +1,203 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.dto.DailyStock;
+import com.uniolab.testeinventario.dto.StockKey;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.DepositHasProduct;
+import com.uniolab.testeinventario.model.InventoryArchiveRun;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import com.uniolab.testeinventario.repository.InventoryArchiveRunRepository;
+import com.uniolab.testeinventario.repository.InventoryEntryArchiveRepository;
+import com.uniolab.testeinventario.repository.InventoryEntryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = "inventory.archive.pause=0s")
+@Slf4j
+class InventoryArchiveServiceTests {
+
+    @Autowired
+    private InventoryArchiveService inventoryArchiveService;
+    @Autowired
+    private StockHistoryService stockHistoryService;
+    @Autowired
+    private StockRecomputeService stockRecomputeService;
+    @Autowired
+    private InventoryManager inventoryManager;
+    @Autowired
+    private DepositHasProductRepository depositHasProductRepository;
+    @Autowired
+    private InventoryEntryRepository inventoryEntryRepository;
+    @Autowired
+    private InventoryEntryArchiveRepository inventoryEntryArchiveRepository;
+    @Autowired
+    private InventoryArchiveRunRepository inventoryArchiveRunRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private InventoryFixtures fixtures;
+
+    @Test
+    void archivedHistoryKeepsStockAndPointInTimeAnswers() throws InterruptedException {
+        Product product = fixtures.newProduct();
+        Deposit north = fixtures.newDeposit();
+        Deposit south = fixtures.newDeposit();
+        inventoryManager.add(LocalDateTime.of(2022, 1, 10, 9, 0), product, north, 10);
+        inventoryManager.remove(LocalDateTime.of(2022, 2, 1, 9, 0), product, north, 3);
+        inventoryManager.transfer(LocalDateTime.of(2022, 2, 1, 10, 0), product, north, south, 2);
+        inventoryManager.balance(LocalDateTime.of(2022, 3, 1, 12, 0), product, north, 20);
+        inventoryManager.add(LocalDateTime.of(2022, 3, 5, 9, 0), product, north, 5);
+        inventoryManager.add(LocalDateTime.of(2022, 6, 10, 9, 0), product, north, 1);
+        stockHistoryService.buildCheckpoints(LocalDate.of(2022, 2, 15));
+
+        List<LocalDateTime> instants = List.of(LocalDateTime.of(2022, 1, 15, 0, 0), LocalDateTime.of(2022, 2, 1, 9, 30),
+                LocalDateTime.of(2022, 2, 2, 0, 0), LocalDateTime.of(2022, 3, 2, 0, 0), LocalDateTime.of(2022, 3, 6, 0, 0),
+                LocalDateTime.of(2022, 5, 1, 0, 0), LocalDateTime.of(2022, 6, 11, 0, 0));
+        List<Integer> expected = List.of(10, 7, 5, 20, 25, 25, 26);
+        assertThat(stockAt(north, product, instants)).isEqualTo(expected);
+        List<DailyStock> curve = curve(north, product);
+
+        assertThat(inventoryArchiveService.archive(LocalDate.of(2022, 4, 1))).isEqualTo(6);
+
+        // north keeps the checkpoint BALANCE and the June movement live, south only its checkpoint
+        assertThat(inventoryEntryArchiveRepository.count()).isEqualTo(6);
+        assertThat(inventoryEntryRepository.findMovementsBetween(north.getId(), product.getId(),
+                LocalDateTime.of(2000, 1, 1, 0, 0), LocalDateTime.of(2030, 1, 1, 0, 0))).hasSize(2);
+        assertThat(stockAt(north, product, instants)).isEqualTo(expected);
+        assertThat(curve(north, product)).isEqualTo(curve);
+        assertThat(stockHistoryService.stockAt(south.getId(), product.getId(), LocalDateTime.of(2022, 2, 1, 10, 0))).isEqualTo(2);
+
+        // replays from history start at the checkpoint
+        stockRecomputeService.recompute(List.of(new StockKey(north.getId(), product.getId()), new StockKey(south.getId(), product.getId())));
+        assertThat(stock(product, north).getSoh()).isEqualTo(26);
+        assertThat(stock(product, south).getSoh()).isEqualTo(2);
+
+        // the archived period is closed
+        assertThatThrownBy(() -> inventoryManager.add(LocalDateTime.of(2022, 3, 20, 9, 0), product, north, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> inventoryManager.add(LocalDateTime.of(2022, 4, 1, 0, 0), product, north, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> inventoryArchiveService.archive(LocalDate.of(2022, 3, 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+        inventoryManager.add(LocalDateTime.of(2022, 4, 1, 9, 0), product, north, 4);
+        assertThat(stock(product, north).getSoh()).isEqualTo(30);
+        assertThat(stockHistoryService.stockAt(north.getId(), product.getId(), LocalDateTime.of(2022, 5, 1, 0, 0))).isEqualTo(29);
+
+        // a period closed by another instance is closed here too
+        InventoryArchiveRun run = new InventoryArchiveRun();
+        run.setCutoff(LocalDateTime.of(2022, 5, 1, 0, 0));
+        run.setStartedAt(LocalDateTime.now());
+        inventoryArchiveRunRepository.save(run);
+        assertThatThrownBy(() -> inventoryManager.add(LocalDateTime.of(2022, 4, 20, 9, 0), product, north, 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(stock(product, north).getSoh()).isEqualTo(30);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void movementLatencyWithArchivedHistory() throws Exception {
+        int keys = Integer.getInteger("benchmark.archive.keys", 200);
+        int entriesPerKey = Integer.getInteger("benchmark.archive.entries-per-key", 10_000);
+        int movements = Integer.getInteger("benchmark.archive.movements", 3_000);
+
+        Deposit deposit = fixtures.newDeposit();
+        List<Product> products = new ArrayList<>();
+        LocalDateTime start = LocalDateTime.of(2023, 1, 1, 0, 0);
+        for (int i = 0; i < keys; i++) {
+            Product product = fixtures.newProduct();
+            products.add(product);
+            inventoryManager.add(start, product, deposit, 1_000_000);
+            // one entry every 30 minutes from 2023 on
+            jdbcTemplate.update("INSERT INTO inventory_entry (id, type, quantity, date, registration_date, deposit_id, product_id) " +
+                            "SELECT CAST(? AS BIGINT) + x, CASE WHEN MOD(x, 3) = 0 THEN 'OUT' ELSE 'IN' END, 1 + MOD(x, 5), " +
+                            "DATEADD(MINUTE, x * 30, CAST(? AS TIMESTAMP)), CURRENT_TIMESTAMP, ?, ? FROM SYSTEM_RANGE(1, ?)",
+                    4_000_000_000L + (long) i * entriesPerKey, start, deposit.getId(), product.getId(), entriesPerKey);
+        }
+        long history = (long) keys * entriesPerKey;
+        // live movements from the day after the seeded history
+        LocalDateTime live = start.plusMinutes(30L * entriesPerKey).toLocalDate().plusDays(1).atTime(9, 0);
+        movementLatencies(products, deposit, live, movements); // warm-up
+
+        long[] before = movementLatencies(products, deposit, live, movements);
+
+        // live writes while the history is archived
+        AtomicBoolean archiving = new AtomicBoolean(true);
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        Future<long[]> during = writer.submit(() -> {
+            List<Long> latencies = new ArrayList<>();
+            Random random = new Random(7);
+            while (archiving.get()) {
+                long t0 = System.nanoTime();
+                inventoryManager.add(live, products.get(random.nextInt(products.size())), deposit, 1);
+                latencies.add(System.nanoTime() - t0);
+            }
+            return latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        });
+        long begin = System.nanoTime();
+        long archived = inventoryArchiveService.archive(live.toLocalDate());
+        double archiveSeconds = (System.nanoTime() - begin) / 1e9;
+        archiving.set(false);
+        long[] concurrent = during.get();
+        writer.shutdown();
+
+        long[] after = movementLatencies(products, deposit, live.plusDays(1), movements);
+
+        log.info(String.format("archive: %d history entries over %d keys, %d archived in %.2f s (%.0f entries/s)",
+                history, keys, archived, archiveSeconds, archived / archiveSeconds));
+        log.info(String.format("archive: add() latency with %d live entries p50 %.3f ms p99 %.3f ms; during archival p50 %.3f ms p99 %.3f ms " +
+                        "(%d movements); after archival p50 %.3f ms p99 %.3f ms",
+                history, percentile(before, 0.5), percentile(before, 0.99), percentile(concurrent, 0.5), percentile(concurrent, 0.99),
+                concurrent.length, percentile(after, 0.5), percentile(after, 0.99)));
+        assertThat(archived).isEqualTo(history + keys);
+    }
+
+    private long[] movementLatencies(List<Product> products, Deposit deposit, LocalDateTime date, int movements) {
+        Random random = new Random(42);
+        long[] latencies = new long[movements];
+        for (int i = 0; i < movements; i++) {
+            Product product = products.get(random.nextInt(products.size()));
+            long t0 = System.nanoTime();
+            if (i % 4 == 3) {
+                inventoryManager.remove(date, product, deposit, 1);
+            } else {
+                inventoryManager.add(date, product, deposit, 2);
+            }
+            latencies[i] = System.nanoTime() - t0;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))] / 1e6;
+    }
+
+    private List<Integer> stockAt(Deposit deposit, Product product, List<LocalDateTime> instants) {
+        return instants.stream().map(at -> stockHistoryService.stockAt(deposit.getId(), product.getId(), at)).toList();
+    }
+
+    private List<DailyStock> curve(Deposit deposit, Product product) {
+        return stockHistoryService.dailyStock(deposit.getId(), product.getId(), LocalDate.of(2022, 1, 9), LocalDate.of(2022, 6, 12));
+    }
+
+    private DepositHasProduct stock(Product product, Deposit deposit) {
+        return depositHasProductRepository.findByDepositIdAndProductId(deposit.getId(), product.getId()).orElseThrow();
+    }
+}
@@ -0,0 +1,162 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// file backed so the synthetic history of the benchmark lives on disk rather than in the heap being measured
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:file:./target/h2/export-${random.uuid};MODE=MySQL")
+@Slf4j
+class MovementExportServiceTests {
+
+    @Autowired
+    private MovementExportService movementExportService;
+    @Autowired
+    private InventoryManager inventoryManager;
+    @Autowired
+    private ProductService productService;
+    @Autowired
+    private DepositService depositService;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private InventoryFixtures fixtures;
+
+    @Test
+    void exportsFilteredHistoryAsCsv() throws Exception {
+        Product product = fixtures.newProduct();
+        Product other = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        Deposit destination = fixtures.newDeposit();
+        inventoryManager.add(LocalDateTime.of(2022, 5, 1, 9, 0), product, deposit, 10);
+        inventoryManager.add(LocalDateTime.of(2022, 5, 1, 9, 30), other, deposit, 4);
+        inventoryManager.transfer(LocalDateTime.of(2022, 5, 2, 9, 0), product, deposit, destination, 3);
+        inventoryManager.remove(LocalDateTime.of(2022, 6, 1, 9, 0), product, deposit, 1);
+
+        StringWriter all = new StringWriter();
+        assertThat(movementExportService.export(all, deposit.getName(), null, null, null)).isEqualTo(4);
+
+        StringWriter may = new StringWriter();
+        movementExportService.export(may, deposit.getName(), product.getSku(),
+                LocalDateTime.of(2022, 5, 1, 0, 0), LocalDateTime.of(2022, 6, 1, 0, 0));
+        List<String> lines = may.toString().lines().toList();
+        assertThat(lines).hasSize(3);
+        assertThat(lines.get(0)).startsWith("id;type;date");
+        assertThat(lines.get(1)).contains(";IN;01/05/2022 09:00:00;")
+                .endsWith(";" + product.getSku() + ";" + deposit.getName() + ";10;");
+        assertThat(lines.get(2)).contains(";OUT;02/05/2022 09:00:00;").endsWith(";3;" + destination.getName());
+    }
+
+    @Test
+    void quotesTextFieldsHoldingSeparatorsOrQuotes() throws Exception {
+        Product product = new Product();
+        product.setName("Produto");
+        product.setSku("sku;\"" + UUID.randomUUID() + "\"");
+        product = productService.create(product);
+        Deposit deposit = new Deposit();
+        deposit.setName("Depósito \"A\"\n" + UUID.randomUUID());
+        deposit = depositService.create(deposit);
+        inventoryManager.add(LocalDateTime.of(2022, 5, 1, 9, 0), product, deposit, 10);
+
+        StringWriter csv = new StringWriter();
+        movementExportService.export(csv, deposit.getName(), null, null, null);
+        assertThat(csv.toString()).endsWith(";\"" + product.getSku().replace("\"", "\"\"") + "\";\""
+                + deposit.getName().replace("\"", "\"\"") + "\";10;\n");
+    }
+
+    @Test
+    void productWithoutSkuIsExportedWithAnEmptyField() throws Exception {
+        Product product = new Product();
+        product.setName("Produto");
+        product = productRepository.save(product);
+        Product other = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        inventoryManager.add(LocalDateTime.of(2022, 5, 1, 9, 0), product, deposit, 10);
+        inventoryManager.add(LocalDateTime.of(2022, 5, 1, 10, 0), other, deposit, 5);
+
+        StringWriter csv = new StringWriter();
+        assertThat(movementExportService.export(csv, deposit.getName(), null, null, null)).isEqualTo(2);
+        List<String> lines = csv.toString().lines().toList();
+        assertThat(lines).hasSize(3);
+        assertThat(lines.get(1)).endsWith(";;" + deposit.getName() + ";10;");
+        assertThat(lines.get(2)).endsWith(";" + other.getSku() + ";" + deposit.getName() + ";5;");
+    }
+
+    /**
+     * Meant to run with a small heap, e.g.
+     * {@code mvn test -Pbenchmark -Dtest=MovementExportServiceTests -DargLine=-Xmx128m}.
+     * Rows are generated in SQL into the file backed database so that only the export itself
+     * touches the Java heap.
+     */
+    @Test
+    @Tag("benchmark")
+    void exportsMillionsOfRowsWithConstantMemory(@TempDir Path dir) throws Exception {
+        int rows = Integer.getInteger("benchmark.export.rows", 2_000_000);
+        Product product = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        jdbcTemplate.update("INSERT INTO inventory_entry (id, type, quantity, date, registration_date, deposit_id, product_id) " +
+                        "SELECT 1000000000 + x, CASE WHEN MOD(x, 3) = 0 THEN 'OUT' ELSE 'IN' END, 1, " +
+                        "DATEADD(SECOND, x, TIMESTAMP '2020-01-01 00:00:00'), CURRENT_TIMESTAMP, ?, ? FROM SYSTEM_RANGE(1, ?)",
+                deposit.getId(), product.getId(), rows);
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long baseline = memory.getHeapMemoryUsage().getUsed();
+        AtomicLong peak = new AtomicLong(baseline);
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                peak.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.start();
+
+        Path file = dir.resolve("history.csv.gz");
+        long start = System.nanoTime();
+        long exported = movementExportService.exportToFile(file, deposit.getName(), null, null, null);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        sampler.interrupt();
+        sampler.join();
+
+        long lines;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            lines = reader.lines().count();
+        }
+        log.info(String.format("export-inventory-entries: %d rows in %.2f s (%.0f rows/s), %.1f MB gzip, max heap %d MB, peak heap above baseline %d MB",
+                exported, seconds, exported / seconds, Files.size(file) / 1e6,
+                Runtime.getRuntime().maxMemory() >> 20, (peak.get() - baseline) >> 20));
+        assertThat(exported).isEqualTo(rows);
+        assertThat(lines).isEqualTo(rows + 1);
+    }
+}
@@ -0,0 +1,215 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.config.IdempotencyProperties;
+import com.uniolab.testeinventario.dto.MovementLine;
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.DepositHasProduct;
+import com.uniolab.testeinventario.model.InventoryEntry;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import com.uniolab.testeinventario.repository.InventoryEntryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.StringReader;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+        "inventory.scheduling.enabled=false",
+        "inventory.idempotency.expected-keys=${benchmark.idempotency.keys:50000000}"
+})
+@Slf4j
+class MovementIdempotencyTests {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 9, 2, 8, 0);
+
+    @Autowired
+    private InventoryManager inventoryManager;
+    @Autowired
+    private MovementIdempotency movementIdempotency;
+    @Autowired
+    private MovementImportService movementImportService;
+    @Autowired
+    private InventoryEntryRepository inventoryEntryRepository;
+    @Autowired
+    private DepositHasProductRepository depositHasProductRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private InventoryFixtures fixtures;
+
+    @Test
+    void redeliveredMovementsAreAppliedOnce() {
+        Product product = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        String in = UUID.randomUUID().toString();
+        String out = UUID.randomUUID().toString();
+
+        long lookups = movementIdempotency.lookups();
+        InventoryEntry added = inventoryManager.add(DATE, product, deposit, 10, in);
+        InventoryEntry removed = inventoryManager.remove(DATE, product, deposit, 3, out);
+        // new keys are inserted without a lookup (unless a false positive)
+        assertThat(movementIdempotency.lookups() - lookups).isLessThanOrEqualTo(1);
+
+        assertThat(inventoryManager.add(DATE, product, deposit, 10, in).getId()).isEqualTo(added.getId());
+        assertThat(inventoryManager.remove(DATE, product, deposit, 3, out).getId()).isEqualTo(removed.getId());
+        assertThat(stock(product, deposit).getSoh()).isEqualTo(7);
+
+        // movements without a key are never deduplicated
+        inventoryManager.add(DATE, product, deposit, 10);
+        inventoryManager.add(DATE, product, deposit, 10, null);
+        assertThat(stock(product, deposit).getSoh()).isEqualTo(27);
+        assertThatThrownBy(() -> inventoryManager.add(DATE, product, deposit, 1, "x".repeat(101)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void keyStoredOutsideTheFilterIsCaughtByTheUniqueIndex() {
+        Product product = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        inventoryManager.add(DATE, product, deposit, 10);
+        // stored as by another instance: this filter does not hold the key
+        String key = UUID.randomUUID().toString();
+        InventoryEntry stored = inventoryManager.createInventoryEntry(DATE, product, deposit, 5, InventoryEntryType.IN);
+        stored.setIdempotencyKey(key);
+        inventoryEntryRepository.save(stored);
+
+        assertThat(inventoryManager.add(DATE, product, deposit, 5, key).getId()).isEqualTo(stored.getId());
+        assertThat(stock(product, deposit).getSoh()).isEqualTo(10);
+    }
+
+    @Test
+    void filterNotPreloadedLooksEveryKeyUp() {
+        Product product = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        String key = UUID.randomUUID().toString();
+        InventoryEntry stored = inventoryManager.createInventoryEntry(DATE, product, deposit, 5, InventoryEntryType.IN);
+        stored.setIdempotencyKey(key);
+        inventoryEntryRepository.save(stored);
+
+        // as started by the CLI: keys stored before are not in the filter
+        MovementIdempotency notPreloaded = new MovementIdempotency(inventoryEntryRepository,
+                new IdempotencyProperties(false, 1_000, 0.01, 100));
+        notPreloaded.load();
+        assertThat(notPreloaded.findStored(List.of(key, UUID.randomUUID().toString()))).containsExactly(key);
+        assertThat(notPreloaded.findEntry(key)).map(InventoryEntry::getId).contains(stored.getId());
+        assertThat(notPreloaded.lookups()).isEqualTo(3);
+        // keys stored from now on are looked up as well, without a filter to put them in
+        notPreloaded.register(UUID.randomUUID().toString());
+        assertThat(notPreloaded.findStored(List.of(UUID.randomUUID().toString()))).isEmpty();
+        assertThat(notPreloaded.lookups()).isEqualTo(4);
+        assertThat(notPreloaded.falsePositiveRate()).isEqualTo(1);
+    }
+
+    @Test
+    void batchesSkipStoredAndRepeatedKeys() throws Exception {
+        Product product = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        String first = UUID.randomUUID().toString();
+        String second = UUID.randomUUID().toString();
+        inventoryManager.add(DATE, product, deposit, 10, first);
+
+        int applied = inventoryManager.importBatch(List.of(
+                new MovementLine(InventoryEntryType.IN, DATE, product.getSku(), deposit.getName(), 10, first),
+                new MovementLine(InventoryEntryType.OUT, DATE, product.getSku(), deposit.getName(), 2, second),
+                new MovementLine(InventoryEntryType.OUT, DATE, product.getSku(), deposit.getName(), 2, second),
+                new MovementLine(InventoryEntryType.IN, DATE, product.getSku(), deposit.getName(), 1)));
+        assertThat(applied).isEqualTo(2);
+        assertThat(stock(product, deposit).getSoh()).isEqualTo(9);
+
+        String csv = "IN;02/09/2024 09:00:00;" + product.getSku() + ";" + deposit.getName() + ";4;" + second + "\n" +
+                "IN;02/09/2024 09:00:00;" + product.getSku() + ";" + deposit.getName() + ";4;erp-" + second + "\n";
+        assertThat(movementImportService.importCsv(new StringReader(csv), 10)).isEqualTo(1);
+        assertThat(stock(product, deposit).getSoh()).isEqualTo(13);
+    }
+
+    @Test
+    void filterHoldsEveryKeyPutAndFewOthers() {
+        BloomFilter filter = new BloomFilter(100_000, 0.01);
+        for (int i = 0; i < 100_000; i++) {
+            filter.put("erp-" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            assertThat(filter.mightContain("erp-" + i)).isTrue();
+            if (filter.mightContain("new-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertThat(filter.hashes()).isEqualTo(7);
+        assertThat(falsePositives / 100_000.0).isLessThan(0.015);
+        assertThat(filter.falsePositiveRate(100_000)).isBetween(0.009, 0.011);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void overheadAtFiftyMillionKeys() {
+        int keys = Integer.getInteger("benchmark.idempotency.keys", 50_000_000);
+        int chunk = Integer.getInteger("benchmark.idempotency.chunk", 1_000_000);
+        int movements = Integer.getInteger("benchmark.idempotency.movements", 5_000);
+
+        // stored keys in the unique index, as left by earlier deliveries, then loaded as at startup
+        Product stored = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        long t0 = System.nanoTime();
+        for (int from = 0; from < keys; from += chunk) {
+            jdbcTemplate.update("INSERT INTO inventory_entry (id, type, quantity, date, registration_date, deposit_id, product_id, idempotency_key) " +
+                            "SELECT CAST(? AS BIGINT) + x, 'IN', 1, CAST(? AS TIMESTAMP), CURRENT_TIMESTAMP, ?, ?, CONCAT('erp-', x) " +
+                            "FROM SYSTEM_RANGE(?, ?)",
+                    6_000_000_000L, DATE, deposit.getId(), stored.getId(), from, Math.min(keys, from + chunk) - 1);
+        }
+        double seedSeconds = (System.nanoTime() - t0) / 1e9;
+        long t1 = System.nanoTime();
+        movementIdempotency.load();
+        double loadSeconds = (System.nanoTime() - t1) / 1e9;
+        log.info(String.format("idempotency: %,d keys stored in %.0f s, loaded into the filter in %.1f s",
+                keys, seedSeconds, loadSeconds));
+
+        // end to end: the same movements without a key, with a new key and redelivered
+        Product product = fixtures.newProduct();
+        for (int i = 0; i < 500; i++) { // warm-up
+            inventoryManager.add(DATE, product, deposit, 1);
+            inventoryManager.add(DATE, product, deposit, 1, UUID.randomUUID().toString());
+        }
+        long t2 = System.nanoTime();
+        for (int i = 0; i < movements; i++) {
+            inventoryManager.add(DATE, product, deposit, 1);
+        }
+        double plain = (System.nanoTime() - t2) / 1e3 / movements;
+        long lookups = movementIdempotency.lookups();
+        long t3 = System.nanoTime();
+        for (int i = 0; i < movements; i++) {
+            inventoryManager.add(DATE, product, deposit, 1, UUID.randomUUID().toString());
+        }
+        double keyed = (System.nanoTime() - t3) / 1e3 / movements;
+        long newLookups = movementIdempotency.lookups() - lookups;
+        Random random = new Random(42);
+        long t4 = System.nanoTime();
+        for (int i = 0; i < movements; i++) {
+            inventoryManager.add(DATE, product, deposit, 1, "erp-" + random.nextInt(keys));
+        }
+        double redelivered = (System.nanoTime() - t4) / 1e3 / movements;
+
+        log.info(String.format("idempotency: with %,d stored keys, add %.0f us without a key, %.0f us with a new key (%+.0f us, " +
+                        "%d lookups for %,d new keys), %.0f us redelivered",
+                keys, plain, keyed, keyed - plain, newLookups, movements, redelivered));
+        // the filter is sized for the stored keys, the movements above add to its rate
+        assertThat((double) newLookups / movements).isLessThan(Math.max(0.015, 1.5 * movementIdempotency.falsePositiveRate()));
+    }
+
+    private DepositHasProduct stock(Product product, Deposit deposit) {
+        return depositHasProductRepository.findByDepositIdAndProductId(deposit.getId(), product.getId()).orElseThrow();
+    }
+}
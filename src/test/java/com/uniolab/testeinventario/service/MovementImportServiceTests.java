@@ -0,0 +1,89 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.DepositHasProduct;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.StringReader;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Slf4j
+class MovementImportServiceTests {
+
+    @Autowired
+    private MovementImportService movementImportService;
+    @Autowired
+    private InventoryManager inventoryManager;
+    @Autowired
+    private DepositHasProductRepository depositHasProductRepository;
+    @Autowired
+    private InventoryFixtures fixtures;
+
+    @Test
+    void importMatchesSingleMovementPath() throws Exception {
+        Product product = fixtures.newProduct();
+        Deposit bulkDeposit = fixtures.newDeposit();
+        Deposit singleDeposit = fixtures.newDeposit();
+
+        String csv = """
+                type;date;sku;depositName;quantity
+                IN;01/01/2024 10:00:00;%1$s;%2$s;10
+                OUT;02/01/2024 10:00:00;%1$s;%2$s;3
+                BALANCE;05/01/2024 15:00:00;%1$s;%2$s;20
+                IN;04/01/2024 10:00:00;%1$s;%2$s;100
+                OUT;05/01/2024 00:00:00;%1$s;%2$s;100
+                IN;06/01/2024 10:00:00;%1$s;%2$s;5
+                BALANCE;03/01/2024 10:00:00;%1$s;%2$s;1000
+                """.formatted(product.getSku(), bulkDeposit.getName());
+
+        assertThat(movementImportService.importCsv(new StringReader(csv), 2)).isEqualTo(7);
+
+        inventoryManager.add(LocalDateTime.of(2024, 1, 1, 10, 0), product, singleDeposit, 10);
+        inventoryManager.remove(LocalDateTime.of(2024, 1, 2, 10, 0), product, singleDeposit, 3);
+        inventoryManager.balance(LocalDateTime.of(2024, 1, 5, 15, 0), product, singleDeposit, 20);
+        inventoryManager.add(LocalDateTime.of(2024, 1, 4, 10, 0), product, singleDeposit, 100);
+        inventoryManager.remove(LocalDateTime.of(2024, 1, 5, 0, 0), product, singleDeposit, 100);
+        inventoryManager.add(LocalDateTime.of(2024, 1, 6, 10, 0), product, singleDeposit, 5);
+        inventoryManager.balance(LocalDateTime.of(2024, 1, 3, 10, 0), product, singleDeposit, 1000);
+
+        DepositHasProduct bulk = depositHasProductRepository.findByDepositIdAndProductId(bulkDeposit.getId(), product.getId()).orElseThrow();
+        DepositHasProduct single = depositHasProductRepository.findByDepositIdAndProductId(singleDeposit.getId(), product.getId()).orElseThrow();
+        assertThat(bulk.getSoh()).isEqualTo(25).isEqualTo(single.getSoh());
+        assertThat(bulk.getAvailable()).isEqualTo(single.getAvailable());
+    }
+
+    @Test
+    @Tag("benchmark")
+    void importThroughput() throws Exception {
+        int rows = Integer.getInteger("benchmark.import.rows", 100_000);
+        int keys = 100;
+        Deposit deposit = fixtures.newDeposit();
+        String[] skus = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            skus[i] = fixtures.newProduct().getSku();
+        }
+
+        StringBuilder csv = new StringBuilder(rows * 48);
+        for (int i = 0; i < rows; i++) {
+            csv.append(i % 3 == 0 ? "OUT" : "IN").append(";01/02/2024 10:00:00;")
+                    .append(skus[i % keys]).append(';').append(deposit.getName()).append(";1\n");
+        }
+
+        long start = System.nanoTime();
+        int imported = movementImportService.importCsv(new StringReader(csv.toString()), MovementImportService.DEFAULT_BATCH_SIZE);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        log.info(String.format("import-inventory-entries: %d rows in %.2f s (%.0f rows/s)", imported, seconds, imported / seconds));
+        assertThat(imported).isEqualTo(rows);
+    }
+}
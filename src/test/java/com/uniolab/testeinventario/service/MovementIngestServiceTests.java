@@ -0,0 +1,181 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.dto.IngestResult;
+import com.uniolab.testeinventario.dto.MovementExportRow;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.DepositHasProduct;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import com.uniolab.testeinventario.repository.InventoryEntryRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+
+import javax.sql.DataSource;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "inventory.ingest.queue-capacity=8")
+@Slf4j
+class MovementIngestServiceTests {
+
+    @Autowired
+    private MovementIngestService movementIngestService;
+    @Autowired
+    private InventoryManager inventoryManager;
+    @Autowired
+    private DepositHasProductRepository depositHasProductRepository;
+    @Autowired
+    private InventoryEntryRepository inventoryEntryRepository;
+    @Autowired
+    private InventoryFixtures fixtures;
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    void keepsSubmissionOrderPerKey(@TempDir Path directory) throws Exception {
+        Deposit deposit = fixtures.newDeposit();
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            products.add(fixtures.newProduct());
+        }
+
+        // interleaved keys, quantities 1..40 per key in submission order
+        StringBuilder csv = new StringBuilder("type;date;sku;depositName;quantity\n");
+        for (int q = 1; q <= 40; q++) {
+            for (Product product : products) {
+                csv.append("IN;01/03/2024 10:00:00;").append(product.getSku()).append(';').append(deposit.getName()).append(';').append(q).append('\n');
+            }
+        }
+        csv.append("IN;01/03/2024 10:00:00;unknown-sku;").append(deposit.getName()).append(";1\n");
+
+        IngestResult result = movementIngestService.ingest(new StringReader(csv.toString()), 3);
+
+        assertThat(result.applied()).isEqualTo(240);
+        assertThat(result.failed()).isEqualTo(1);
+        for (Product product : products) {
+            List<MovementExportRow> rows = inventoryEntryRepository.findKeyExportRowsAfter(deposit.getId(), product.getId(),
+                    LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2025, 1, 1, 0, 0), 0L, Limit.of(100));
+            assertThat(rows).extracting(MovementExportRow::quantity)
+                    .containsExactlyElementsOf(IntStream.rangeClosed(1, 40).boxed().toList());
+            assertThat(soh(product, deposit)).isEqualTo(820);
+        }
+
+        // a file dropped in a watched directory is ingested and marked done
+        Product watched = fixtures.newProduct();
+        Files.writeString(directory.resolve("batch.tmp"), "OUT;02/03/2024 10:00:00;" + watched.getSku() + ";" + deposit.getName() + ";3\n");
+        movementIngestService.watch(directory);
+        try {
+            Files.move(directory.resolve("batch.tmp"), directory.resolve("batch.csv"));
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (!Files.exists(directory.resolve("batch.csv.done")) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+        } finally {
+            movementIngestService.stopWatching();
+        }
+        assertThat(soh(watched, deposit)).isEqualTo(-3);
+    }
+
+    @Test
+    void firstMovementsOfNewKeysNeverExhaustThePool() throws Exception {
+        HikariDataSource pool = dataSource.unwrap(HikariDataSource.class);
+        Deposit deposit = fixtures.newDeposit();
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            products.add(fixtures.newProduct());
+        }
+
+        // every movement creates its DepositHasProduct row; more lanes than connection permits
+        IngestResult result = movementIngestService.ingest(new StringReader(csv(products.size(), products, deposit)),
+                movementIngestService.defaultLanes() * 4);
+
+        assertThat(result.applied()).isEqualTo(products.size());
+        assertThat(result.failed()).isZero();
+        assertThat(pool.getHikariPoolMXBean().getThreadsAwaitingConnection()).isZero();
+        for (Product product : products) {
+            assertThat(soh(product, deposit)).isIn(-1, 2);
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void ingestionThroughput() throws Exception {
+        int movements = Integer.getInteger("benchmark.ingest.movements", 20_000);
+        int keys = Integer.getInteger("benchmark.ingest.keys", 500);
+
+        Deposit deposit = fixtures.newDeposit();
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < keys; i++) {
+            products.add(fixtures.newProduct());
+        }
+
+        // warm-up, also creates the DepositHasProduct rows
+        movementIngestService.ingest(new StringReader(csv(movements, products, deposit)), 1);
+
+        // keys without a DepositHasProduct row yet: each movement inserts one
+        List<Product> newKeys = new ArrayList<>();
+        for (int i = 0; i < movements; i++) {
+            newKeys.add(fixtures.newProduct());
+        }
+        IngestResult first = movementIngestService.ingest(new StringReader(csv(movements, newKeys, deposit)),
+                movementIngestService.defaultLanes());
+        log.info(String.format("ingest: %d lanes, %d movements on new keys in %.2f s (%.0f movements/s), connection wait %d ms",
+                movementIngestService.defaultLanes(), first.applied(), first.elapsed().toNanos() / 1e9, first.throughput(),
+                first.connectionWait().toMillis()));
+        assertThat(first.failed()).isZero();
+
+        // shell path: one command, one transaction, one thread
+        LocalDateTime date = LocalDateTime.of(2024, 3, 1, 10, 0);
+        long begin = System.nanoTime();
+        for (int i = 0; i < movements; i++) {
+            Product product = products.get(i % keys);
+            if (i % 4 == 3) {
+                inventoryManager.remove(date, product, deposit, 1);
+            } else {
+                inventoryManager.add(date, product, deposit, 2);
+            }
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        log.info(String.format("ingest: single-threaded shell path %d movements in %.2f s (%.0f movements/s)",
+                movements, seconds, movements / seconds));
+
+        // lanes * 4 oversubscribes the connection permits: the extra lanes only wait
+        int lanes = movementIngestService.defaultLanes();
+        for (int laneCount : new int[]{1, lanes, lanes * 4}) {
+            IngestResult result = movementIngestService.ingest(new StringReader(csv(movements, products, deposit)), laneCount);
+            log.info(String.format("ingest: %d lanes, %d movements in %.2f s (%.0f movements/s), reader blocked %d ms, connection wait %d ms",
+                    laneCount, result.applied(), result.elapsed().toNanos() / 1e9, result.throughput(),
+                    result.readerBlocked().toMillis(), result.connectionWait().toMillis()));
+            assertThat(result.failed()).isZero();
+        }
+    }
+
+    private String csv(int movements, List<Product> products, Deposit deposit) {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < movements; i++) {
+            csv.append(i % 4 == 3 ? "OUT" : "IN").append(";01/03/2024 10:00:00;")
+                    .append(products.get(i % products.size()).getSku()).append(';').append(deposit.getName())
+                    .append(';').append(i % 4 == 3 ? 1 : 2).append('\n');
+        }
+        return csv.toString();
+    }
+
+    private int soh(Product product, Deposit deposit) {
+        return depositHasProductRepository.findByDepositIdAndProductId(deposit.getId(), product.getId())
+                .map(DepositHasProduct::getSoh).orElseThrow();
+    }
+}
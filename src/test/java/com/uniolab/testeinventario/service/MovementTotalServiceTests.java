@@ -0,0 +1,142 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.dto.DailyMovementTotalRow;
+import com.uniolab.testeinventario.dto.MovementLine;
+import com.uniolab.testeinventario.dto.MovementTotal;
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+import com.uniolab.testeinventario.enums.MovementTotalType;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.Product;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@Slf4j
+class MovementTotalServiceTests {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 4, 1, 10, 0);
+
+    @Autowired
+    private MovementTotalService movementTotalService;
+    @Autowired
+    private InventoryManager inventoryManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private InventoryFixtures fixtures;
+
+    @Test
+    void totalsFollowWritesAndMatchBackfill() throws InterruptedException {
+        Product product = fixtures.newProduct();
+        Deposit north = fixtures.newDeposit();
+        Deposit south = fixtures.newDeposit();
+
+        inventoryManager.add(DATE, product, north, 10);
+        inventoryManager.add(DATE.plusHours(2), product, north, 5);
+        inventoryManager.remove(DATE.plusDays(1), product, north, 3);
+        inventoryManager.transfer(DATE.plusDays(1), product, north, south, 4);
+        inventoryManager.balance(DATE.plusDays(2), product, north, 100);
+
+        // many groups in one write: one upsert each, sent as one JDBC batch
+        List<MovementLine> lines = new ArrayList<>();
+        for (int day = 0; day < 12; day++) {
+            lines.add(new MovementLine(InventoryEntryType.IN, DATE.plusDays(day), product.getSku(), north.getName(), 1));
+        }
+        lines.add(new MovementLine(InventoryEntryType.IN, DATE, product.getSku(), north.getName(), 2));
+        inventoryManager.importBatch(lines);
+
+        LocalDate from = DATE.toLocalDate();
+        LocalDate to = from.plusDays(30);
+        List<MovementTotal> expected = List.of(
+                new MovementTotal(MovementTotalType.IN, 10 + 5 + 12 + 2, 2 + 12 + 1),
+                new MovementTotal(MovementTotalType.OUT, 3, 1),
+                new MovementTotal(MovementTotalType.TRANSFER_OUT, 4, 1));
+        assertThat(movementTotalService.totals(north.getId(), null, from, to)).containsExactlyElementsOf(expected);
+        assertThat(movementTotalService.totals(south.getId(), product.getId(), from, to))
+                .containsExactly(new MovementTotal(MovementTotalType.TRANSFER_IN, 4, 1));
+        assertThat(movementTotalService.dailyTotals(north.getId(), product.getId(), from, from.plusDays(1))).containsExactly(
+                new DailyMovementTotalRow(from, MovementTotalType.IN, 18, 4),
+                new DailyMovementTotalRow(from.plusDays(1), MovementTotalType.IN, 1, 1),
+                new DailyMovementTotalRow(from.plusDays(1), MovementTotalType.OUT, 3, 1),
+                new DailyMovementTotalRow(from.plusDays(1), MovementTotalType.TRANSFER_OUT, 4, 1));
+
+        // rebuilding from history gives the same totals
+        movementTotalService.backfill(from, to);
+        assertThat(movementTotalService.totals(north.getId(), null, from, to)).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void yearRangeQueryTiming() throws InterruptedException {
+        int products = Integer.getInteger("benchmark.totals.products", 50);
+        int entriesPerProduct = Integer.getInteger("benchmark.totals.entries-per-product", 20_000);
+
+        Deposit deposit = fixtures.newDeposit();
+        Deposit other = fixtures.newDeposit();
+        LocalDateTime start = LocalDateTime.of(2023, 1, 1, 0, 0);
+        List<Long> productIds = new ArrayList<>();
+        for (int i = 0; i < products; i++) {
+            productIds.add(fixtures.newProduct().getId());
+            // one entry per product every 30 minutes: 20,000 entries span about 14 months
+            jdbcTemplate.update("INSERT INTO inventory_entry (id, type, quantity, date, registration_date, deposit_id, product_id, transfer_deposit_id) " +
+                            "SELECT CAST(? AS BIGINT) + x, CASE WHEN MOD(x, 3) = 0 THEN 'OUT' ELSE 'IN' END, 1 + MOD(x, 5), " +
+                            "DATEADD(MINUTE, x * 30, CAST(? AS TIMESTAMP)), CURRENT_TIMESTAMP, ?, ?, " +
+                            "CASE WHEN MOD(x, 10) = 0 THEN CAST(? AS BIGINT) END FROM SYSTEM_RANGE(1, ?)",
+                    2_000_000_000L + (long) i * entriesPerProduct, start, deposit.getId(), productIds.get(i),
+                    other.getId(), entriesPerProduct);
+        }
+
+        long begin = System.nanoTime();
+        int rows = movementTotalService.backfill(null, null);
+        double backfillSeconds = (System.nanoTime() - begin) / 1e9;
+
+        // a different range on every run: H2 would otherwise serve a repeated query from its result cache
+        List<MovementTotal> totals = null;
+        long aggregateNanos = Long.MAX_VALUE;
+        long rawNanos = Long.MAX_VALUE;
+        long keyAggregateNanos = Long.MAX_VALUE;
+        long keyRawNanos = Long.MAX_VALUE;
+        for (int run = 0; run < 5; run++) {
+            LocalDate from = LocalDate.of(2023, 1, 2).plusDays(run);
+            LocalDate to = from.plusYears(1).minusDays(1);
+            long t0 = System.nanoTime();
+            totals = movementTotalService.totals(deposit.getId(), null, from, to);
+            long t1 = System.nanoTime();
+            jdbcTemplate.queryForList("SELECT type, transfer_deposit_id IS NULL, SUM(quantity), COUNT(*) FROM inventory_entry " +
+                            "WHERE deposit_id = ? AND date >= ? AND date < ? GROUP BY type, transfer_deposit_id IS NULL",
+                    deposit.getId(), from.atStartOfDay(), to.plusDays(1).atStartOfDay());
+            long t2 = System.nanoTime();
+            movementTotalService.totals(deposit.getId(), productIds.get(run), from, to);
+            long t3 = System.nanoTime();
+            jdbcTemplate.queryForList("SELECT type, transfer_deposit_id IS NULL, SUM(quantity), COUNT(*) FROM inventory_entry " +
+                            "WHERE product_id = ? AND deposit_id = ? AND type IN ('IN', 'OUT') AND date >= ? AND date < ? " +
+                            "GROUP BY type, transfer_deposit_id IS NULL",
+                    productIds.get(run), deposit.getId(), from.atStartOfDay(), to.plusDays(1).atStartOfDay());
+            long t4 = System.nanoTime();
+            aggregateNanos = Math.min(aggregateNanos, t1 - t0);
+            rawNanos = Math.min(rawNanos, t2 - t1);
+            keyAggregateNanos = Math.min(keyAggregateNanos, t3 - t2);
+            keyRawNanos = Math.min(keyRawNanos, t4 - t3);
+        }
+
+        log.info(String.format("movement-totals: backfill of %d entries into %d daily totals in %.2f s; " +
+                        "one year for a deposit: %.2f ms from totals vs %.2f ms GROUP BY over InventoryEntry; " +
+                        "for one product: %.2f ms vs %.2f ms",
+                (long) products * entriesPerProduct, rows, backfillSeconds, aggregateNanos / 1e6, rawNanos / 1e6,
+                keyAggregateNanos / 1e6, keyRawNanos / 1e6));
+        assertThat(totals).extracting(MovementTotal::type)
+                .containsExactly(MovementTotalType.IN, MovementTotalType.OUT, MovementTotalType.TRANSFER_IN, MovementTotalType.TRANSFER_OUT);
+    }
+}
@@ -0,0 +1,161 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.dto.OrderLine;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.DepositHasProduct;
+import com.uniolab.testeinventario.model.InventoryReserveEntry;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import com.uniolab.testeinventario.repository.InventoryReserveEntryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@Slf4j
+class OrderReservationTests {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 6, 1, 10, 0);
+
+    @Autowired
+    private InventoryManager inventoryManager;
+    @Autowired
+    private DepositHasProductRepository depositHasProductRepository;
+    @Autowired
+    private InventoryReserveEntryRepository inventoryReserveEntryRepository;
+    @Autowired
+    private InventoryFixtures fixtures;
+
+    @Test
+    void reservesReleasesAndConfirmsAllLines() {
+        Product first = fixtures.newProduct();
+        Product second = fixtures.newProduct();
+        Deposit north = fixtures.newDeposit();
+        Deposit south = fixtures.newDeposit();
+        inventoryManager.add(DATE, first, north, 20);
+        inventoryManager.add(DATE, second, north, 20);
+        inventoryManager.add(DATE, first, south, 20);
+
+        String order = "order-" + UUID.randomUUID();
+        List<InventoryReserveEntry> reserves = inventoryManager.reserveOrder(order, DATE, List.of(
+                new OrderLine(first.getSku(), north.getName(), 5),
+                new OrderLine(second.getSku(), north.getName(), 3),
+                new OrderLine(first.getSku(), south.getName(), 4),
+                new OrderLine(first.getSku(), north.getName(), 2)), Duration.ofMinutes(15));
+
+        assertThat(reserves).extracting(InventoryReserveEntry::getReference)
+                .containsExactly(order + "/1", order + "/2", order + "/3", order + "/4");
+        assertStock(first, north, 20, 7);
+        assertStock(second, north, 20, 3);
+        assertStock(first, south, 20, 4);
+
+        assertThat(inventoryManager.releaseOrder(order)).isEqualTo(4);
+        assertStock(first, north, 20, 0);
+        assertThatThrownBy(() -> inventoryManager.releaseOrder(order)).isInstanceOf(IllegalArgumentException.class);
+
+        String confirmed = "order-" + UUID.randomUUID();
+        inventoryManager.reserveOrder(confirmed, DATE, List.of(
+                new OrderLine(first.getSku(), north.getName(), 6),
+                new OrderLine(first.getSku(), south.getName(), 1)), null);
+        assertThat(inventoryManager.confirmOrder(confirmed, DATE.plusHours(1))).hasSize(2);
+        assertStock(first, north, 14, 0);
+        assertStock(first, south, 19, 0);
+    }
+
+    @Test
+    void insufficientLineRejectsWholeOrder() {
+        Product first = fixtures.newProduct();
+        Product second = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        inventoryManager.add(DATE, first, deposit, 10);
+        inventoryManager.add(DATE, second, deposit, 10);
+        inventoryManager.addReserve(DATE, second, deposit, 6);
+
+        String order = "order-" + UUID.randomUUID();
+        assertThatThrownBy(() -> inventoryManager.reserveOrder(order, DATE, List.of(
+                new OrderLine(first.getSku(), deposit.getName(), 8),
+                new OrderLine(second.getSku(), deposit.getName(), 5)), null))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining(second.getSku());
+
+        assertStock(first, deposit, 10, 0);
+        assertStock(second, deposit, 10, 6);
+        assertThat(inventoryReserveEntryRepository.findRowsByOrderReference(order)).isEmpty();
+    }
+
+    @Test
+    @Tag("benchmark")
+    void concurrentOrderLatency() throws Exception {
+        int orders = Integer.getInteger("benchmark.order.orders", 400);
+        int linesPerOrder = Integer.getInteger("benchmark.order.lines", 50);
+        int products = Integer.getInteger("benchmark.order.products", 500);
+        int threads = Integer.getInteger("benchmark.order.threads", 4);
+
+        Deposit deposit = fixtures.newDeposit();
+        List<String> skus = new ArrayList<>();
+        for (int i = 0; i < products; i++) {
+            Product product = fixtures.newProduct();
+            inventoryManager.add(DATE, product, deposit, 1_000_000);
+            skus.add(product.getSku());
+        }
+
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        long begin = System.nanoTime();
+        for (int o = 0; o < orders; o++) {
+            futures.add(executor.submit(() -> {
+                List<OrderLine> lines = new ArrayList<>(linesPerOrder);
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int l = 0; l < linesPerOrder; l++) {
+                    lines.add(new OrderLine(skus.get(random.nextInt(products)), deposit.getName(), 1 + random.nextInt(5)));
+                }
+                long start = System.nanoTime();
+                try {
+                    inventoryManager.reserveOrder("order-" + UUID.randomUUID(), DATE, lines, null);
+                } catch (IllegalStateException e) {
+                    rejected.incrementAndGet();
+                }
+                latencies.add(System.nanoTime() - start);
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        executor.shutdown();
+
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        log.info(String.format("reserve-order: %d orders x %d lines on %d threads in %.2f s (%.0f orders/s), p50 %.2f ms, p99 %.2f ms, %d rejected",
+                orders, linesPerOrder, threads, seconds, orders / seconds,
+                sorted.get(sorted.size() / 2) / 1e6, sorted.get((int) (sorted.size() * 0.99)) / 1e6, rejected.get()));
+        assertThat(rejected.get()).isZero();
+    }
+
+    private void assertStock(Product product, Deposit deposit, int soh, int reserved) {
+        DepositHasProduct dhp = depositHasProductRepository.findByDepositIdAndProductId(deposit.getId(), product.getId()).orElseThrow();
+        assertThat(dhp.getSoh()).isEqualTo(soh);
+        assertThat(dhp.getReserved()).isEqualTo(reserved);
+        assertThat(dhp.getAvailable()).isEqualTo(soh - reserved);
+    }
+}
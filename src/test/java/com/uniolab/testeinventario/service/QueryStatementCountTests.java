@@ -0,0 +1,133 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.dto.DepositStockRow;
+import com.uniolab.testeinventario.dto.MovementLine;
+import com.uniolab.testeinventario.dto.MovementRow;
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import com.uniolab.testeinventario.repository.InventoryEntryRepository;
+import com.uniolab.testeinventario.repository.InventoryReserveEntryRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Counts the JDBC statements each operation prepares, so an association loaded eagerly or
+ * row by row (N+1) fails the build instead of slowing production down.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "inventory.scheduling.enabled=false"
+})
+class QueryStatementCountTests {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 8, 1, 10, 0);
+
+    @Autowired
+    private StockQueryService stockQueryService;
+    @Autowired
+    private InventoryManager inventoryManager;
+    @Autowired
+    private DepositHasProductRepository depositHasProductRepository;
+    @Autowired
+    private InventoryEntryRepository inventoryEntryRepository;
+    @Autowired
+    private InventoryReserveEntryRepository inventoryReserveEntryRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private InventoryFixtures fixtures;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void statistics() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void readsTakeOneStatement() {
+        Deposit deposit = fixtures.newDeposit();
+        Deposit other = fixtures.newDeposit();
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Product product = fixtures.newProduct();
+            products.add(product);
+            inventoryManager.add(DATE, product, deposit, 10 + i);
+        }
+        Product product = products.get(0);
+        inventoryManager.transfer(DATE.plusHours(1), product, deposit, other, 3);
+        Long reserveId = inventoryManager.addReserve(DATE.plusHours(2), product, deposit, 2).getId();
+
+        List<MovementRow> movements = new ArrayList<>();
+        assertThat(statements(() -> movements.addAll(
+                stockQueryService.movements(deposit.getName(), product.getSku(), null, null, 0, 100)))).isEqualTo(1);
+        assertThat(movements).extracting(MovementRow::type, MovementRow::quantity, MovementRow::transferDepositId)
+                .containsExactly(
+                        tuple(InventoryEntryType.IN, 10, null),
+                        tuple(InventoryEntryType.OUT, 3, other.getId()));
+
+        List<DepositStockRow> stock = new ArrayList<>();
+        assertThat(statements(() -> stock.addAll(stockQueryService.depositStock(deposit.getName(), 0, 100)))).isEqualTo(1);
+        assertThat(stock).extracting(DepositStockRow::sku).containsExactlyElementsOf(products.stream().map(Product::getSku).toList());
+        assertThat(stock.get(0)).extracting(DepositStockRow::soh, DepositStockRow::reserved, DepositStockRow::available)
+                .containsExactly(7, 2, 5);
+
+        assertThat(statements(() -> stockQueryService.availability(deposit.getName(),
+                products.stream().map(Product::getSku).toList()))).isEqualTo(1);
+
+        // entities load without their deposit and product
+        assertThat(statements(() -> inventoryEntryRepository.findById(movements.get(1).id()).orElseThrow())).isEqualTo(1);
+        assertThat(statements(() -> inventoryReserveEntryRepository.findById(reserveId).orElseThrow())).isEqualTo(1);
+        assertThat(statements(() -> transactionTemplate.execute(status ->
+                depositHasProductRepository.lockByDepositIdAndProductId(deposit.getId(), product.getId()).orElseThrow()))).isEqualTo(1);
+    }
+
+    @Test
+    void batchStatementsDoNotGrowWithLines() {
+        Deposit deposit = fixtures.newDeposit();
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            Product product = fixtures.newProduct();
+            products.add(product);
+            inventoryManager.add(DATE, product, deposit, 100);
+        }
+
+        inventoryManager.importBatch(lines(products, deposit)); // warm-up
+        long few = statements(() -> inventoryManager.importBatch(lines(products.subList(0, 4), deposit)));
+        long many = statements(() -> inventoryManager.importBatch(lines(products, deposit)));
+        // ten times the lines, the same statements but for at most one more fetch of the entry and
+        // daily total sequences
+        assertThat(many).isLessThanOrEqualTo(few + 2);
+    }
+
+    private long statements(Supplier<?> operation) {
+        statistics.clear();
+        operation.get();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private static List<MovementLine> lines(List<Product> products, Deposit deposit) {
+        return products.stream()
+                .map(product -> new MovementLine(InventoryEntryType.OUT, DATE.plusHours(1), product.getSku(), deposit.getName(), 1))
+                .toList();
+    }
+}
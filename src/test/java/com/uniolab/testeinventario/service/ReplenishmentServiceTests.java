@@ -0,0 +1,130 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.dto.MovementLine;
+import com.uniolab.testeinventario.dto.ReplenishmentRow;
+import com.uniolab.testeinventario.dto.TransferProposal;
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.DepositHasProduct;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest(properties = "inventory.replenishment.low-watermark=true")
+@Slf4j
+class ReplenishmentServiceTests {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 7, 1, 10, 0);
+
+    @Autowired
+    private ReplenishmentService replenishmentService;
+    @Autowired
+    private LowWatermarkMonitor lowWatermarkMonitor;
+    @Autowired
+    private InventoryManager inventoryManager;
+    @Autowired
+    private DepositHasProductRepository depositHasProductRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private InventoryFixtures fixtures;
+
+    @Test
+    void flagsScansAndTransfersFromSurplus() throws InterruptedException {
+        Deposit store = fixtures.newDeposit();
+        Deposit warehouse = fixtures.newDeposit();
+        Product first = fixtures.newProduct();
+        Product second = fixtures.newProduct();
+        Product third = fixtures.newProduct();
+
+        inventoryManager.add(DATE, first, store, 20);
+        inventoryManager.add(DATE, second, store, 20);
+        inventoryManager.add(DATE, third, store, 20);
+        inventoryManager.add(DATE, first, warehouse, 100);
+        replenishmentService.setLevels(store.getId(), first.getId(), 10, 30);
+        replenishmentService.setLevels(store.getId(), second.getId(), 10, 15);
+        replenishmentService.setLevels(store.getId(), third.getId(), 5, null);
+        replenishmentService.setLevels(warehouse.getId(), first.getId(), 20, 60);
+        lowWatermarkMonitor.take();
+
+        // the movements that cross min flag their keys and raise alerts
+        inventoryManager.remove(DATE.plusHours(1), first, store, 15);
+        inventoryManager.addReserve(DATE.plusHours(1), second, store, 12);
+        inventoryManager.importBatch(List.of(new MovementLine(InventoryEntryType.OUT, DATE.plusHours(2), third.getSku(), store.getName(), 16)));
+        assertThat(lowWatermarkMonitor.take()).extracting(ReplenishmentRow::productId)
+                .containsExactly(first.getId(), second.getId(), third.getId());
+
+        List<ReplenishmentRow> shortages = replenishmentService.scan(store.getId());
+        assertThat(shortages).extracting(ReplenishmentRow::productId, ReplenishmentRow::shortage)
+                .containsExactly(
+                        tuple(first.getId(), 25),
+                        tuple(second.getId(), 7),
+                        tuple(third.getId(), 1));
+
+        // the warehouse holds 40 above its desired level of the first product
+        List<TransferProposal> proposals = replenishmentService.proposeTransfers(shortages);
+        assertThat(proposals).containsExactly(new TransferProposal(first.getId(), warehouse.getId(), store.getId(), 25));
+        replenishmentService.executeTransfers(proposals, DATE.plusHours(3));
+
+        assertThat(stock(first, store).isBelowMin()).isFalse();
+        assertThat(stock(first, store).getAvailable()).isEqualTo(30);
+        assertThat(stock(first, warehouse).getAvailable()).isEqualTo(75);
+        assertThat(replenishmentService.scan(store.getId())).extracting(ReplenishmentRow::productId)
+                .containsExactly(second.getId(), third.getId());
+
+        // raising stock or dropping the level clears the flag
+        inventoryManager.balance(DATE.plusDays(1), third, store, 50);
+        replenishmentService.setLevels(store.getId(), second.getId(), -1, null);
+        assertThat(replenishmentService.scan(store.getId())).isEmpty();
+    }
+
+    @Test
+    @Tag("benchmark")
+    void scanTiming() throws InterruptedException {
+        int deposits = Integer.getInteger("benchmark.replenishment.deposits", 20);
+        int productsPerDeposit = Integer.getInteger("benchmark.replenishment.products", 50_000);
+        int belowEvery = Integer.getInteger("benchmark.replenishment.below-every", 100);
+
+        long firstProduct = 3_000_000_000L;
+        jdbcTemplate.update("INSERT INTO product (id, name, sku) SELECT CAST(? AS BIGINT) + x, 'Produto', " +
+                "CONCAT('bench-', CAST(? AS BIGINT) + x) FROM SYSTEM_RANGE(1, ?)", firstProduct, firstProduct, productsPerDeposit);
+        for (int d = 0; d < deposits; d++) {
+            Deposit deposit = fixtures.newDeposit();
+            // one key in belowEvery has available under min
+            jdbcTemplate.update("INSERT INTO deposit_has_product (id, deposit_id, product_id, soh, reserved, available, min, desired, below_min) " +
+                            "SELECT CAST(? AS BIGINT) + x, ?, CAST(? AS BIGINT) + x, A, 0, A, 10, 50, A < 10 " +
+                            "FROM (SELECT x, CASE WHEN MOD(x, ?) = 0 THEN 3 ELSE 40 END A FROM SYSTEM_RANGE(1, ?))",
+                    firstProduct + (long) d * productsPerDeposit, deposit.getId(), firstProduct, belowEvery, productsPerDeposit);
+        }
+        long rows = (long) deposits * productsPerDeposit;
+        replenishmentService.scan(null); // warm-up
+
+        long begin = System.nanoTime();
+        int found = replenishmentService.scan(null).size();
+        double scanMillis = (System.nanoTime() - begin) / 1e6;
+
+        begin = System.nanoTime();
+        Long fullScan = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM deposit_has_product WHERE min >= 0 AND available < min", Long.class);
+        double fullScanMillis = (System.nanoTime() - begin) / 1e6;
+
+        log.info(String.format("replenishment-scan: %d rows over %d deposits, %d below min: flagged index scan %.0f ms, " +
+                "full table predicate %.0f ms", rows, deposits, found, scanMillis, fullScanMillis));
+        assertThat((long) found).isEqualTo(fullScan);
+    }
+
+    private DepositHasProduct stock(Product product, Deposit deposit) {
+        return depositHasProductRepository.findByDepositIdAndProductId(deposit.getId(), product.getId()).orElseThrow();
+    }
+}
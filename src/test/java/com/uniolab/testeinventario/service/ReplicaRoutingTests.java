@@ -0,0 +1,210 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.config.ReplicaMonitor;
+import com.uniolab.testeinventario.config.ReplicaReads;
+import com.uniolab.testeinventario.dto.DepositStockRow;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.Product;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two embedded databases, the replica one kept in sync by copying the primary with
+ * {@link #replicate()}. The replica url only opens an existing database, so after a shutdown
+ * it is down until the test creates it again.
+ */
+@SpringBootTest(properties = {
+        "inventory.scheduling.enabled=false",
+        "spring.datasource.hikari.maximum-pool-size=4",
+        "inventory.replica.enabled=true",
+        "inventory.replica.url=" + ReplicaRoutingTests.REPLICA_URL + ";IFEXISTS=TRUE",
+        "inventory.replica.maximum-pool-size=2",
+        "inventory.replica.connection-timeout=1s",
+        "inventory.replica.check-interval=1h"
+})
+class ReplicaRoutingTests {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:replica-routing-tests;MODE=MySQL;DB_CLOSE_DELAY=-1";
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 9, 2, 8, 0);
+
+    static {
+        createReplica();
+    }
+
+    @Autowired
+    private StockQueryService stockQueryService;
+    @Autowired
+    private InventoryManager inventoryManager;
+    @Autowired
+    private ReplicaMonitor replicaMonitor;
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private HikariDataSource primaryDataSource;
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private HikariDataSource replicaDataSource;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private InventoryFixtures fixtures;
+    @Autowired
+    private MovementIngestService movementIngestService;
+
+    private final JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL));
+
+    @Test
+    void replicaReadsFollowTheReplicaWhileUsable() {
+        Product product = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        inventoryManager.add(DATE, product, deposit, 10);
+        replicate();
+        assertThat(replicaMonitor.check()).isTrue();
+
+        inventoryManager.add(DATE, product, deposit, 5);
+        assertThat(soh(deposit)).isEqualTo(10);
+        // not marked as replica read, or joining a write
+        assertThat(stockQueryService.availability(deposit.getName(), List.of(product.getSku())).get(product.getSku()).soh()).isEqualTo(15);
+        assertThat(new TransactionTemplate(transactionManager).<Integer>execute(status -> soh(deposit))).isEqualTo(15);
+
+        replica.update("UPDATE replica_heartbeat SET beat_millis = ? WHERE id = 1", System.currentTimeMillis() - 60_000);
+        assertThat(replicaMonitor.check()).isFalse();
+        assertThat(replicaMonitor.lagMillis()).isGreaterThanOrEqualTo(60_000);
+        assertThat(soh(deposit)).isEqualTo(15);
+
+        replicate();
+        assertThat(replicaMonitor.check()).isTrue();
+        assertThat(soh(deposit)).isEqualTo(15);
+    }
+
+    @Test
+    void replicaDownFallsBackToThePrimary() {
+        Product product = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        inventoryManager.add(DATE, product, deposit, 10);
+        replicate();
+        assertThat(replicaMonitor.check()).isTrue();
+        inventoryManager.add(DATE, product, deposit, 1);
+        long fallbacks = replicaMonitor.fallbacks();
+
+        replica.execute("SHUTDOWN");
+        replicaDataSource.getHikariPoolMXBean().softEvictConnections();
+        // the monitor has not noticed yet: the failed connection makes it check
+        assertThat(replicaMonitor.isUsable()).isTrue();
+        assertThat(soh(deposit)).isEqualTo(11);
+        assertThat(replicaMonitor.isUsable()).isFalse();
+        assertThat(replicaMonitor.fallbacks()).isEqualTo(fallbacks + 1);
+        assertThat(soh(deposit)).isEqualTo(11);
+
+        createReplica();
+        replicate();
+        inventoryManager.add(DATE, product, deposit, 1);
+        assertThat(replicaMonitor.check()).isTrue();
+        assertThat(soh(deposit)).isEqualTo(11);
+    }
+
+    @Test
+    void ingestionIsSizedToThePrimaryPool() {
+        // two connections per lane, behind the routing proxies
+        assertThat(movementIngestService.defaultLanes()).isEqualTo(primaryDataSource.getMaximumPoolSize() / 2);
+    }
+
+    @Test
+    void writesAreUnaffectedWhileReportsSaturateTheReplica() throws Exception {
+        Product product = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        inventoryManager.add(DATE, product, deposit, 10);
+        replicate();
+        assertThat(replicaMonitor.check()).isTrue();
+
+        // twice as many reports as replica connections, each holding its connection until released
+        int reports = replicaDataSource.getMaximumPoolSize() * 2;
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        CountDownLatch started = new CountDownLatch(replicaDataSource.getMaximumPoolSize());
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(reports);
+        List<Future<Integer>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < reports; i++) {
+                results.add(executor.submit(() -> ReplicaReads.call(() -> readOnly.execute(status -> {
+                    int soh = soh(deposit);
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return soh;
+                }))));
+            }
+            assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(replicaDataSource.getHikariPoolMXBean().getActiveConnections()).isEqualTo(replicaDataSource.getMaximumPoolSize());
+            assertThat(replicaDataSource.getHikariPoolMXBean().getThreadsAwaitingConnection()).isPositive();
+
+            for (int i = 0; i < 50; i++) {
+                inventoryManager.add(DATE, product, deposit, 1);
+            }
+            assertThat(primaryDataSource.getHikariPoolMXBean().getThreadsAwaitingConnection()).isZero();
+            assertThat(primaryDataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+            assertThat(stockQueryService.availability(deposit.getName(), List.of(product.getSku())).get(product.getSku()).soh()).isEqualTo(60);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        // the reports waiting for a replica connection were not moved to the primary: they got
+        // one once released, or timed out
+        for (Future<Integer> result : results) {
+            try {
+                assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo(10);
+            } catch (ExecutionException e) {
+                assertThat(e).rootCause().isInstanceOf(SQLTransientConnectionException.class).hasMessageStartingWith("replica");
+            }
+        }
+    }
+
+    private int soh(Deposit deposit) {
+        List<DepositStockRow> rows = stockQueryService.depositStock(deposit.getName(), 0, 10);
+        return rows.get(0).soh();
+    }
+
+    /**
+     * Replaces the replica with a copy of the primary, heartbeat included.
+     */
+    private void replicate() {
+        List<String> script = new JdbcTemplate(primaryDataSource).queryForList("SCRIPT", String.class);
+        replica.execute("DROP ALL OBJECTS");
+        script.stream().filter(statement -> !statement.startsWith("--")).forEach(replica::execute);
+    }
+
+    private static void createReplica() {
+        try (Connection connection = DriverManager.getConnection(REPLICA_URL)) {
+            connection.isValid(1);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
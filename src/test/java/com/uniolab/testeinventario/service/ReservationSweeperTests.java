@@ -0,0 +1,70 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.DepositHasProduct;
+import com.uniolab.testeinventario.model.InventoryReserveEntry;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = "inventory.reservation.sweep-batch-size=2")
+class ReservationSweeperTests {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 5, 1, 10, 0);
+
+    @Autowired
+    private ReservationSweeper reservationSweeper;
+    @Autowired
+    private InventoryManager inventoryManager;
+    @Autowired
+    private DepositHasProductRepository depositHasProductRepository;
+    @Autowired
+    private InventoryFixtures fixtures;
+
+    @Test
+    void releaseConfirmAndExpireByReference() {
+        Product first = fixtures.newProduct();
+        Product second = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        inventoryManager.add(DATE, first, deposit, 50);
+        inventoryManager.add(DATE, second, deposit, 50);
+
+        InventoryReserveEntry released = inventoryManager.reserve(DATE, first, deposit, 5, "order-" + UUID.randomUUID(), null);
+        InventoryReserveEntry confirmed = inventoryManager.reserve(DATE, first, deposit, 7, null, Duration.ofHours(1));
+        assertThat(confirmed.getReference()).isNotBlank();
+        for (int i = 0; i < 3; i++) {
+            inventoryManager.reserve(DATE, first, deposit, 1, null, Duration.ofMinutes(5));
+            inventoryManager.reserve(DATE, second, deposit, 2, null, Duration.ofMinutes(5));
+        }
+        InventoryReserveEntry kept = inventoryManager.reserve(DATE, second, deposit, 4, null, null);
+
+        inventoryManager.releaseReserve(released.getReference());
+        assertThatThrownBy(() -> inventoryManager.releaseReserve(released.getReference()))
+                .isInstanceOf(IllegalArgumentException.class);
+        inventoryManager.confirmReserve(confirmed.getReference(), DATE.plusHours(1));
+
+        // 6 expired reservations in batches of 2; the confirmed one is gone and the one without TTL stays
+        assertThat(reservationSweeper.sweep(LocalDateTime.now().plusMinutes(10))).isEqualTo(6);
+        assertThat(reservationSweeper.sweep(LocalDateTime.now().plusDays(1))).isZero();
+
+        assertStock(first, deposit, 43, 0);
+        assertStock(second, deposit, 50, kept.getQuantity());
+    }
+
+    private void assertStock(Product product, Deposit deposit, int soh, int reserved) {
+        DepositHasProduct dhp = depositHasProductRepository.findByDepositIdAndProductId(deposit.getId(), product.getId()).orElseThrow();
+        assertThat(dhp.getSoh()).isEqualTo(soh);
+        assertThat(dhp.getReserved()).isEqualTo(reserved);
+        assertThat(dhp.getAvailable()).isEqualTo(soh - reserved);
+    }
+}
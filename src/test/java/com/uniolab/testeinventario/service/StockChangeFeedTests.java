@@ -0,0 +1,228 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.dto.MovementLine;
+import com.uniolab.testeinventario.dto.OrderLine;
+import com.uniolab.testeinventario.dto.StockChange;
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+import com.uniolab.testeinventario.enums.StockChangeOperation;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.DepositHasProduct;
+import com.uniolab.testeinventario.model.InventoryReserveEntry;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest(properties = {
+        "inventory.scheduling.enabled=false",
+        "inventory.change-feed.enabled=true",
+        "inventory.change-feed.directory=target/change-feed-tests/${random.uuid}",
+        "inventory.change-feed.segment-size=4KB"
+})
+@Slf4j
+class StockChangeFeedTests {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 9, 2, 8, 0);
+
+    @Autowired
+    private StockChangeFeed stockChangeFeed;
+    @Autowired
+    private InventoryManager inventoryManager;
+    @Autowired
+    private DepositHasProductRepository depositHasProductRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private InventoryFixtures fixtures;
+
+    @TempDir
+    private Path dir;
+
+    @Test
+    void committedChangesCarryTheNewLevels() {
+        Product product = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        StockChangeReader reader = stockChangeFeed.reader(stockChangeFeed.nextSequence());
+
+        inventoryManager.add(DATE, product, deposit, 10);
+        InventoryReserveEntry reserve = inventoryManager.reserve(DATE, product, deposit, 3, null, null);
+        inventoryManager.remove(DATE.plusHours(1), product, deposit, 2);
+        inventoryManager.balance(DATE.plusDays(1), product, deposit, 20);
+        inventoryManager.releaseReserve(reserve.getReference());
+
+        List<StockChange> changes = read(reader);
+        assertThat(changes).extracting(StockChange::operation, StockChange::delta, StockChange::soh,
+                        StockChange::reserved, StockChange::available)
+                .containsExactly(
+                        tuple(StockChangeOperation.IN, 10, 10, 0, 10),
+                        tuple(StockChangeOperation.RESERVE, 3, 10, 3, 7),
+                        tuple(StockChangeOperation.OUT, -2, 8, 3, 5),
+                        tuple(StockChangeOperation.BALANCE, 12, 20, 3, 17),
+                        tuple(StockChangeOperation.RELEASE, -3, 20, 0, 20));
+        assertThat(changes).allSatisfy(change -> assertThat(change.key()).isEqualTo(changes.get(0).key()));
+        assertThat(changes).extracting(StockChange::version).isSorted().doesNotHaveDuplicates();
+        assertThat(changes.get(changes.size() - 1).version()).isEqualTo(stock(product, deposit).getVersion());
+        assertThat(reader.position()).isEqualTo(stockChangeFeed.nextSequence());
+    }
+
+    @Test
+    void changesAppearOnlyAfterCommit() {
+        Product product = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        inventoryManager.add(DATE, product, deposit, 5);
+        StockChangeReader reader = stockChangeFeed.reader(stockChangeFeed.nextSequence());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            inventoryManager.add(DATE, product, deposit, 1);
+            inventoryManager.remove(DATE, product, deposit, 4);
+            assertThat(read(reader)).isEmpty();
+        });
+        assertThat(read(reader)).extracting(StockChange::operation, StockChange::soh)
+                .containsExactly(tuple(StockChangeOperation.IN, 6), tuple(StockChangeOperation.OUT, 2));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            inventoryManager.add(DATE, product, deposit, 1);
+            status.setRollbackOnly();
+        });
+        assertThatThrownBy(() -> inventoryManager.reserveOrder("order-" + UUID.randomUUID(), DATE, List.of(
+                new OrderLine(product.getSku(), deposit.getName(), 1),
+                new OrderLine(fixtures.newProduct().getSku(), deposit.getName(), 1)), null))
+                .isInstanceOf(IllegalStateException.class);
+        assertThat(read(reader)).isEmpty();
+    }
+
+    @Test
+    void batchPublishesOneChangePerRow() {
+        Product first = fixtures.newProduct();
+        Product second = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        inventoryManager.add(DATE, first, deposit, 4);
+        StockChangeReader reader = stockChangeFeed.reader(stockChangeFeed.nextSequence());
+
+        inventoryManager.importBatch(List.of(
+                new MovementLine(InventoryEntryType.IN, DATE, first.getSku(), deposit.getName(), 3),
+                new MovementLine(InventoryEntryType.IN, DATE, second.getSku(), deposit.getName(), 5),
+                new MovementLine(InventoryEntryType.OUT, DATE, first.getSku(), deposit.getName(), 1)));
+
+        assertThat(read(reader)).extracting(StockChange::operation, StockChange::productId, StockChange::delta, StockChange::soh)
+                .containsExactlyInAnyOrder(
+                        tuple(StockChangeOperation.BATCH, first.getId(), 2, 6),
+                        tuple(StockChangeOperation.BATCH, second.getId(), 5, 5));
+    }
+
+    @Test
+    void logRotatesSegmentsAndResumesAfterRestart() throws Exception {
+        int perSegment = 4096 / StockChangeLog.RECORD_SIZE;
+        try (StockChangeLog changeLog = new StockChangeLog(dir, 4096, 2)) {
+            for (int i = 0; i < perSegment * 3 + 5; i++) {
+                changeLog.append(StockChangeOperation.IN, 1, i, i, 1, i, 0, i, 0);
+            }
+        }
+        assertThat(StockChangeLog.segments(dir)).containsExactly(perSegment * 2L + 1, perSegment * 3L + 1);
+        assertThatThrownBy(() -> new StockChangeReader(dir, 1).poll(change -> { }, 1))
+                .isInstanceOf(IllegalStateException.class);
+
+        try (StockChangeLog changeLog = new StockChangeLog(dir, 4096, 2)) {
+            assertThat(changeLog.nextSequence()).isEqualTo(perSegment * 3L + 6);
+            changeLog.append(StockChangeOperation.OUT, 1, 99, 99, -1, 0, 0, 0, 0);
+        }
+
+        StockChangeReader reader = new StockChangeReader(dir, perSegment * 2L + 1);
+        List<StockChange> changes = new ArrayList<>();
+        while (reader.poll(change -> changes.add(change.copy()), 10) > 0) {
+            // drains both segments in pages of 10
+        }
+        assertThat(changes).hasSize(perSegment + 6);
+        assertThat(changes).extracting(StockChange::sequence)
+                .containsExactlyElementsOf(LongStream.range(perSegment * 2L + 1, perSegment * 3L + 7).boxed().toList());
+        assertThat(changes.get(changes.size() - 1).operation()).isEqualTo(StockChangeOperation.OUT);
+        assertThat(reader.poll(change -> { }, 10)).isZero();
+    }
+
+    @Test
+    @Tag("benchmark")
+    void appendThroughputAndTailLatency() throws Exception {
+        int records = Integer.getInteger("benchmark.change-feed.records", 2_000_000);
+        int samples = Integer.getInteger("benchmark.change-feed.samples", 20_000);
+
+        try (StockChangeLog changeLog = new StockChangeLog(dir.resolve("throughput"), 64L << 20, 4)) {
+            for (int i = 0; i < 100_000; i++) { // warm-up
+                changeLog.append(StockChangeOperation.IN, 1, i, i, 1, i, 0, i, 0);
+            }
+            long t0 = System.nanoTime();
+            for (int i = 0; i < records; i++) {
+                changeLog.append(StockChangeOperation.IN, 1, i, i, 1, i, 0, i, 0);
+            }
+            double seconds = (System.nanoTime() - t0) / 1e9;
+
+            StockChangeReader reader = new StockChangeReader(dir.resolve("throughput"), 1);
+            long[] sum = new long[1];
+            long t1 = System.nanoTime();
+            while (reader.poll(change -> sum[0] += change.soh(), 10_000) > 0) {
+                // reads every record
+            }
+            double readSeconds = (System.nanoTime() - t1) / 1e9;
+            log.info(String.format("change feed: append %,.0f records/s (%.0f MB/s), read %,.0f records/s",
+                    records / seconds, records * (double) StockChangeLog.RECORD_SIZE / seconds / (1 << 20),
+                    (reader.position() - 1) / readSeconds));
+        }
+
+        // the version field carries the append time of each record, read by a tailing thread
+        Path tail = dir.resolve("tail");
+        long[] latencies = new long[samples];
+        try (StockChangeLog changeLog = new StockChangeLog(tail, 64L << 20, 4)) {
+            AtomicBoolean done = new AtomicBoolean();
+            int[] received = new int[1];
+            Thread consumer = new Thread(() -> {
+                StockChangeReader reader = new StockChangeReader(tail, 1);
+                while (received[0] < samples && !done.get()) {
+                    if (reader.poll(change -> latencies[received[0]++] = System.nanoTime() - change.version(), 100) == 0) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            consumer.start();
+            for (int i = 0; i < samples; i++) {
+                changeLog.append(StockChangeOperation.IN, 1, i, System.nanoTime(), 1, i, 0, i, 0);
+                LockSupport.parkNanos(20_000);
+            }
+            consumer.join(60_000);
+            done.set(true);
+            assertThat(received[0]).isEqualTo(samples);
+        }
+        Arrays.sort(latencies);
+        log.info(String.format("change feed: tail latency p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us",
+                latencies[samples / 2] / 1e3, latencies[samples * 99 / 100] / 1e3,
+                latencies[samples * 999 / 1000] / 1e3, latencies[samples - 1] / 1e3));
+    }
+
+    private static List<StockChange> read(StockChangeReader reader) {
+        List<StockChange> changes = new ArrayList<>();
+        reader.poll(change -> changes.add(change.copy()), 1_000);
+        return changes;
+    }
+
+    private DepositHasProduct stock(Product product, Deposit deposit) {
+        return depositHasProductRepository.findByDepositIdAndProductId(deposit.getId(), product.getId()).orElseThrow();
+    }
+}
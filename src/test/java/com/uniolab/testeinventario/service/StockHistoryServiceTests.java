@@ -0,0 +1,137 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.dto.DailyStock;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.model.StockCheckpoint;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import com.uniolab.testeinventario.repository.StockCheckpointRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class StockHistoryServiceTests {
+
+    @Autowired
+    private StockHistoryService stockHistoryService;
+    @Autowired
+    private InventoryManager inventoryManager;
+    @Autowired
+    private DepositHasProductRepository depositHasProductRepository;
+    @Autowired
+    private StockCheckpointRepository stockCheckpointRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private InventoryFixtures fixtures;
+
+    @Test
+    void stockAtAndDailyCurveWithCheckpointsAndLateData() {
+        Product product = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        inventoryManager.add(LocalDateTime.of(2020, 6, 1, 9, 0), product, deposit, 10);
+        inventoryManager.remove(LocalDateTime.of(2020, 6, 2, 9, 0), product, deposit, 4);
+        inventoryManager.balance(LocalDateTime.of(2020, 6, 4, 12, 0), product, deposit, 50);
+        inventoryManager.add(LocalDateTime.of(2020, 6, 4, 0, 0), product, deposit, 1000);
+        inventoryManager.add(LocalDateTime.of(2020, 6, 5, 9, 0), product, deposit, 5);
+
+        List<Integer> expected = List.of(10, 6, 6, 50, 55, 55);
+        assertThat(curve(product, deposit)).isEqualTo(expected);
+
+        stockHistoryService.buildCheckpoints(LocalDate.of(2020, 6, 5));
+        assertThat(curve(product, deposit)).isEqualTo(expected);
+        assertThat(stockHistoryService.stockAt(deposit.getId(), product.getId(), LocalDateTime.of(2020, 6, 2, 8, 0))).isEqualTo(10);
+        assertThat(stockHistoryService.stockAt(deposit.getId(), product.getId(), LocalDateTime.of(2020, 6, 5, 9, 0))).isEqualTo(55);
+
+        // late movement before the horizon rebuilds the checkpoints of its key
+        inventoryManager.add(LocalDateTime.of(2020, 6, 3, 9, 0), product, deposit, 2);
+        assertThat(curve(product, deposit)).containsExactly(10, 6, 8, 50, 55, 55);
+        assertThat(stockHistoryService.stockAt(deposit.getId(), product.getId(), LocalDateTime.of(2020, 6, 6, 0, 0))).isEqualTo(55);
+    }
+
+    @Test
+    void entryWrittenDuringABuildKeepsTheCheckpointsOfItsKey() throws Exception {
+        Product product = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        Deposit busy = fixtures.newDeposit();
+        inventoryManager.add(LocalDateTime.of(2021, 3, 1, 9, 0), product, deposit, 10);
+        inventoryManager.add(LocalDateTime.of(2021, 3, 1, 9, 0), product, busy, 1);
+
+        // a writer of the other key holds its row, so the build stops there until released
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<?> writer = executor.submit(() -> transactionTemplate.executeWithoutResult(status -> {
+            depositHasProductRepository.lockByDepositIdAndProductId(busy.getId(), product.getId());
+            locked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        locked.await();
+        Future<Integer> build = executor.submit(() -> stockHistoryService.buildCheckpoints(LocalDate.of(2021, 3, 5)));
+        Thread.sleep(300);
+
+        // dated after the last completed build, before the day the running one extends to
+        inventoryManager.add(LocalDateTime.of(2021, 3, 2, 9, 0), product, deposit, 5);
+        release.countDown();
+        writer.get();
+        build.get();
+        executor.shutdown();
+
+        assertThat(stockHistoryService.dailyStock(deposit.getId(), product.getId(), LocalDate.of(2021, 3, 1), LocalDate.of(2021, 3, 5))
+                .stream().map(DailyStock::soh).toList()).containsExactly(10, 15, 15, 15, 15);
+    }
+
+    @Test
+    void buildInterruptedBeforeRestartKeepsThePreviousHorizon() {
+        Product product = fixtures.newProduct();
+        Deposit built = fixtures.newDeposit();
+        Deposit pending = fixtures.newDeposit();
+        inventoryManager.add(LocalDateTime.of(2023, 5, 1, 9, 0), product, built, 10);
+        inventoryManager.add(LocalDateTime.of(2023, 5, 1, 9, 0), product, pending, 10);
+        stockHistoryService.buildCheckpoints(LocalDate.of(2023, 5, 1));
+        inventoryManager.add(LocalDateTime.of(2023, 5, 2, 9, 0), product, built, 5);
+        inventoryManager.add(LocalDateTime.of(2023, 5, 2, 9, 0), product, pending, 5);
+
+        // a build up to 05-03 wrote the checkpoints of one key and died before the other, then the instance restarted
+        StockCheckpoint checkpoint = new StockCheckpoint();
+        checkpoint.setDeposit(built);
+        checkpoint.setProduct(product);
+        checkpoint.setDate(LocalDate.of(2023, 5, 2));
+        checkpoint.setSoh(15);
+        stockCheckpointRepository.save(checkpoint);
+        stockHistoryService.loadHorizon();
+
+        assertThat(stockHistoryService.horizon()).isEqualTo(LocalDate.of(2023, 5, 1));
+        assertThat(stockHistoryService.dailyStock(pending.getId(), product.getId(), LocalDate.of(2023, 5, 1), LocalDate.of(2023, 5, 3))
+                .stream().map(DailyStock::soh).toList()).containsExactly(10, 15, 15);
+
+        stockHistoryService.buildCheckpoints(LocalDate.of(2023, 5, 3));
+        assertThat(stockHistoryService.horizon()).isEqualTo(LocalDate.of(2023, 5, 3));
+        for (Deposit deposit : List.of(built, pending)) {
+            assertThat(stockHistoryService.dailyStock(deposit.getId(), product.getId(), LocalDate.of(2023, 5, 1), LocalDate.of(2023, 5, 3))
+                    .stream().map(DailyStock::soh).toList()).containsExactly(10, 15, 15);
+        }
+    }
+
+    private List<Integer> curve(Product product, Deposit deposit) {
+        return stockHistoryService.dailyStock(deposit.getId(), product.getId(), LocalDate.of(2020, 6, 1), LocalDate.of(2020, 6, 6))
+                .stream().map(DailyStock::soh).toList();
+    }
+}
@@ -0,0 +1,160 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.config.StockLedgerProperties;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.DepositHasProduct;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {"inventory.ledger.enabled=true", "inventory.ledger.flush-interval=20ms"})
+@Slf4j
+class StockLedgerTests {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 4, 1, 10, 0);
+
+    @Autowired
+    private StockLedger stockLedger;
+    @Autowired
+    private InventoryManager inventoryManager;
+    @Autowired
+    private DepositHasProductRepository depositHasProductRepository;
+    @Autowired
+    private InventoryFixtures fixtures;
+
+    @Test
+    void ledgerCoalescesMovementsIntoSameTotals() {
+        Product product = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            futures.add(stockLedger.add(DATE, product, deposit, 2));
+            futures.add(stockLedger.remove(DATE, product, deposit, 1));
+            futures.add(stockLedger.addReserve(DATE, product, deposit, 1));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+        DepositHasProduct dhp = depositHasProductRepository.findByDepositIdAndProductId(deposit.getId(), product.getId()).orElseThrow();
+        assertThat(dhp.getSoh()).isEqualTo(300);
+        assertThat(dhp.getReserved()).isEqualTo(300);
+        assertThat(dhp.getAvailable()).isEqualTo(0);
+        assertThat(stockLedger.pending()).isZero();
+    }
+
+    @Test
+    void shutdownCompletesEveryAcceptedMovement() throws Exception {
+        Deposit deposit = fixtures.newDeposit();
+        List<Product> products = List.of(fixtures.newProduct(), fixtures.newProduct(), fixtures.newProduct(), fixtures.newProduct());
+        StockLedger ledger = new StockLedger(inventoryManager, new StockLedgerProperties(true, 4, Duration.ofMillis(20), 500));
+
+        // submitters keep going until the shutdown rejects them
+        ExecutorService executor = Executors.newFixedThreadPool(products.size());
+        List<Future<List<CompletableFuture<Void>>>> results = new ArrayList<>();
+        for (Product product : products) {
+            results.add(executor.submit(() -> {
+                List<CompletableFuture<Void>> acks = new ArrayList<>();
+                try {
+                    while (acks.size() < 100_000) {
+                        acks.add(ledger.add(DATE, product, deposit, 1));
+                    }
+                } catch (IllegalStateException e) {
+                    // shut down
+                }
+                return acks;
+            }));
+        }
+        Thread.sleep(100);
+        ledger.shutdown();
+
+        int accepted = 0;
+        for (Future<List<CompletableFuture<Void>>> result : results) {
+            for (CompletableFuture<Void> ack : result.get(10, TimeUnit.SECONDS)) {
+                ack.get(10, TimeUnit.SECONDS);
+                accepted++;
+            }
+        }
+        executor.shutdown();
+        int soh = products.stream()
+                .mapToInt(p -> depositHasProductRepository.findByDepositIdAndProductId(deposit.getId(), p.getId()).orElseThrow().getSoh())
+                .sum();
+        assertThat(accepted).isPositive();
+        assertThat(soh).isEqualTo(accepted);
+        assertThat(ledger.pending()).isZero();
+    }
+
+    @Test
+    @Tag("benchmark")
+    void ledgerVersusSynchronousPath() throws Exception {
+        int threads = 8;
+        int movementsPerThread = Integer.getInteger("benchmark.ledger.movements", 2_000);
+        int keys = 50;
+        Deposit deposit = fixtures.newDeposit();
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < keys; i++) {
+            products.add(fixtures.newProduct());
+        }
+
+        long syncNanos = run(threads, movementsPerThread, (thread, i) -> {
+            inventoryManager.remove(DATE, products.get((thread + i) % keys), deposit, 1);
+            return null;
+        });
+        long ledgerNanos = run(threads, movementsPerThread, (thread, i) ->
+                stockLedger.remove(DATE, products.get((thread + i) % keys), deposit, 1));
+
+        int total = threads * movementsPerThread;
+        log.info(String.format("synchronous: %d movements in %.2f s (%.0f/s)", total, syncNanos / 1e9, total / (syncNanos / 1e9)));
+        log.info(String.format("stock ledger: %d movements in %.2f s (%.0f/s)", total, ledgerNanos / 1e9, total / (ledgerNanos / 1e9)));
+
+        int soh = products.stream()
+                .mapToInt(p -> depositHasProductRepository.findByDepositIdAndProductId(deposit.getId(), p.getId()).orElseThrow().getSoh())
+                .sum();
+        assertThat(soh).isEqualTo(-2 * total);
+    }
+
+    private long run(int threads, int movementsPerThread, Movement movement) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        List<Future<List<CompletableFuture<Void>>>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            results.add(executor.submit(() -> {
+                List<CompletableFuture<Void>> acks = new ArrayList<>();
+                for (int i = 0; i < movementsPerThread; i++) {
+                    CompletableFuture<Void> ack = movement.apply(thread, i);
+                    if (ack != null) {
+                        acks.add(ack);
+                    }
+                }
+                return acks;
+            }));
+        }
+        for (Future<List<CompletableFuture<Void>>> result : results) {
+            result.get().forEach(CompletableFuture::join);
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        return elapsed;
+    }
+
+    private interface Movement {
+        CompletableFuture<Void> apply(int thread, int i);
+    }
+}
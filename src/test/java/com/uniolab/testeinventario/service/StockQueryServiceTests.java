@@ -0,0 +1,54 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.dto.StockLevel;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.Product;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class StockQueryServiceTests {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 5, 1, 10, 0);
+
+    @Autowired
+    private StockQueryService stockQueryService;
+    @Autowired
+    private StockCache stockCache;
+    @Autowired
+    private InventoryManager inventoryManager;
+    @Autowired
+    private InventoryFixtures fixtures;
+
+    @Test
+    void availabilityIsServedFromCacheAndEvictedByMovements() {
+        Product first = fixtures.newProduct();
+        Product second = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        inventoryManager.add(DATE, first, deposit, 10);
+
+        Map<String, StockLevel> levels = stockQueryService.availability(deposit.getName(), List.of(first.getSku(), second.getSku()));
+        assertThat(levels.get(first.getSku()).available()).isEqualTo(10);
+        assertThat(levels.get(second.getSku()).available()).isZero();
+
+        long hits = stockCache.hits();
+        stockQueryService.availability(deposit.getName(), List.of(first.getSku(), second.getSku()));
+        assertThat(stockCache.hits()).isEqualTo(hits + 2);
+
+        inventoryManager.addReserve(DATE, first, deposit, 4);
+        inventoryManager.add(DATE, second, deposit, 7);
+
+        levels = stockQueryService.availability(deposit.getName(), List.of(first.getSku(), second.getSku()));
+        assertThat(levels.get(first.getSku())).extracting(StockLevel::soh, StockLevel::reserved, StockLevel::available)
+                .containsExactly(10, 4, 6);
+        assertThat(levels.get(second.getSku()).available()).isEqualTo(7);
+    }
+}
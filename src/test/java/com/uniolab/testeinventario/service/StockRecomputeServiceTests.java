@@ -0,0 +1,124 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.dto.MovementLine;
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.DepositHasProduct;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = "inventory.recompute.debounce=50ms")
+@Slf4j
+class StockRecomputeServiceTests {
+
+    @Autowired
+    private StockRecomputeService stockRecomputeService;
+    @Autowired
+    private InventoryManager inventoryManager;
+    @Autowired
+    private DepositHasProductRepository depositHasProductRepository;
+    @Autowired
+    private InventoryFixtures fixtures;
+
+    @Test
+    void backDatedBalanceIsFollowedByLaterMovementsAndKeepsReserved() throws InterruptedException {
+        Product product = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        inventoryManager.add(LocalDateTime.of(2021, 3, 1, 9, 0), product, deposit, 10);
+        inventoryManager.add(LocalDateTime.of(2021, 3, 5, 9, 0), product, deposit, 7);
+        inventoryManager.remove(LocalDateTime.of(2021, 3, 6, 9, 0), product, deposit, 2);
+        inventoryManager.addReserve(LocalDateTime.of(2021, 3, 6, 10, 0), product, deposit, 4);
+
+        // counted 100 on 3 March: the 5 and 6 March movements still apply on top of it
+        inventoryManager.balance(LocalDateTime.of(2021, 3, 3, 18, 0), product, deposit, 100);
+        awaitRecompute();
+
+        DepositHasProduct dhp = stock(product, deposit);
+        assertThat(dhp.getSoh()).isEqualTo(105);
+        assertThat(dhp.getReserved()).isEqualTo(4);
+        assertThat(dhp.getAvailable()).isEqualTo(101);
+
+        // a movement dated before the balance stays absorbed by it
+        inventoryManager.add(LocalDateTime.of(2021, 3, 2, 9, 0), product, deposit, 50);
+        assertThat(stock(product, deposit).getSoh()).isEqualTo(105);
+    }
+
+    @Test
+    void fullRebuildRepairsDriftedTotals() throws InterruptedException {
+        Product product = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        inventoryManager.add(LocalDateTime.of(2021, 4, 1, 9, 0), product, deposit, 10);
+        inventoryManager.addReserve(LocalDateTime.of(2021, 4, 1, 10, 0), product, deposit, 3);
+        depositHasProductRepository.setStock(deposit.getId(), product.getId(), 999, 0);
+
+        stockRecomputeService.rebuildAll();
+
+        DepositHasProduct dhp = stock(product, deposit);
+        assertThat(dhp.getSoh()).isEqualTo(10);
+        assertThat(dhp.getReserved()).isEqualTo(3);
+        assertThat(dhp.getAvailable()).isEqualTo(7);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void fullRebuildTiming() throws InterruptedException {
+        int entries = Integer.getInteger("benchmark.rebuild.entries", 200_000);
+        int products = Integer.getInteger("benchmark.rebuild.products", 1_000);
+        int deposits = Integer.getInteger("benchmark.rebuild.deposits", 8);
+
+        List<String> skus = new ArrayList<>();
+        for (int i = 0; i < products; i++) {
+            skus.add(fixtures.newProduct().getSku());
+        }
+        List<String> depositNames = new ArrayList<>();
+        for (int i = 0; i < deposits; i++) {
+            depositNames.add(fixtures.newDeposit().getName());
+        }
+
+        LocalDateTime start = LocalDateTime.of(2015, 1, 1, 0, 0);
+        List<MovementLine> batch = new ArrayList<>();
+        for (int i = 0; i < entries; i++) {
+            InventoryEntryType type = i % 50 == 0 ? InventoryEntryType.BALANCE
+                    : i % 3 == 0 ? InventoryEntryType.OUT : InventoryEntryType.IN;
+            batch.add(new MovementLine(type, start.plusMinutes(i), skus.get(i % products),
+                    depositNames.get((i / products) % deposits), 1 + i % 7));
+            if (batch.size() == 5_000) {
+                inventoryManager.importBatch(batch);
+                batch.clear();
+            }
+        }
+        inventoryManager.importBatch(batch);
+        awaitRecompute();
+
+        long begin = System.nanoTime();
+        int keys = stockRecomputeService.rebuildAll();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        log.info(String.format("rebuild-stock: %d entries over %d keys in %.2f s (%.0f entries/s)",
+                entries, keys, seconds, entries / seconds));
+    }
+
+    private void awaitRecompute() throws InterruptedException {
+        // debounce window plus the drain itself
+        Thread.sleep(200);
+        for (int i = 0; i < 100 && stockRecomputeService.pending() > 0; i++) {
+            Thread.sleep(50);
+        }
+        Thread.sleep(100);
+    }
+
+    private DepositHasProduct stock(Product product, Deposit deposit) {
+        return depositHasProductRepository.findByDepositIdAndProductId(deposit.getId(), product.getId()).orElseThrow();
+    }
+}
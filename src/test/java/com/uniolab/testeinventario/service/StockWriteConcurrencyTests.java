@@ -0,0 +1,261 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.dto.KeyConflictStats;
+import com.uniolab.testeinventario.dto.StockKey;
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+import com.uniolab.testeinventario.enums.LockingMode;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.DepositHasProduct;
+import com.uniolab.testeinventario.model.InventoryEntry;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest(properties = {
+        "inventory.locking.max-attempts=3",
+        "inventory.locking.min-samples=4"
+})
+@Slf4j
+class StockWriteConcurrencyTests {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 9, 1, 10, 0);
+
+    @Autowired
+    private StockWriteConcurrency stockWriteConcurrency;
+    @Autowired
+    private InventoryManager inventoryManager;
+    @Autowired
+    private DepositHasProductRepository depositHasProductRepository;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private InventoryFixtures fixtures;
+
+    @AfterEach
+    void restoreMode() {
+        stockWriteConcurrency.setMode(LockingMode.ADAPTIVE);
+        stockWriteConcurrency.resetStats();
+    }
+
+    @Test
+    void versionCheckCatchesAtomicUpdatesAndBatchesLoseNothing() throws Exception {
+        Product product = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        inventoryManager.add(DATE, product, deposit, 10);
+
+        // an optimistic read followed by a committed single-key movement
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        try {
+            assertThatThrownBy(() -> transactionTemplate.executeWithoutResult(status -> {
+                DepositHasProduct dhp = depositHasProductRepository
+                        .readByDepositIdInAndProductIdIn(List.of(deposit.getId()), List.of(product.getId())).get(0);
+                try {
+                    other.submit(() -> inventoryManager.add(DATE, product, deposit, 5)).get();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                dhp.setSoh(dhp.getSoh() + 1);
+            })).isInstanceOf(ObjectOptimisticLockingFailureException.class);
+        } finally {
+            other.shutdown();
+        }
+        assertThat(stock(product, deposit).getSoh()).isEqualTo(15);
+
+        // concurrent batches and single-key movements on the same key
+        int threads = 4;
+        int batches = 25;
+        ExecutorService writers = Executors.newFixedThreadPool(threads + 1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(writers.submit(() -> {
+                for (int i = 0; i < batches; i++) {
+                    inventoryManager.applyBatch(List.of(entry(product, deposit)), List.of());
+                }
+            }));
+        }
+        futures.add(writers.submit(() -> {
+            for (int i = 0; i < batches; i++) {
+                inventoryManager.add(DATE, product, deposit, 1);
+            }
+        }));
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        writers.shutdown();
+        assertThat(stock(product, deposit).getSoh()).isEqualTo(15 + threads * batches + batches);
+    }
+
+    @Test
+    void conflictsAreRetriedAndHotKeysLocked() {
+        Product product = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        inventoryManager.add(DATE, product, deposit, 10);
+        DepositHasProduct dhp = stock(product, deposit);
+        StockKey key = new StockKey(deposit.getId(), product.getId());
+
+        // two conflicts, then success
+        List<Boolean> attempts = new ArrayList<>();
+        String result = stockWriteConcurrency.execute(List.of(key), pessimistic -> {
+            attempts.add(pessimistic);
+            if (attempts.size() < 3) {
+                throw new ObjectOptimisticLockingFailureException(DepositHasProduct.class, dhp.getId());
+            }
+            return "done";
+        });
+        assertThat(result).isEqualTo("done");
+        assertThat(attempts).containsExactly(false, false, false);
+        assertThat(stockWriteConcurrency.conflictStats()).containsExactly(new KeyConflictStats(deposit.getId(), product.getId(), 3, 2, false));
+
+        // OPTIMISTIC gives up after max-attempts
+        stockWriteConcurrency.setMode(LockingMode.OPTIMISTIC);
+        attempts.clear();
+        assertThatThrownBy(() -> stockWriteConcurrency.execute(List.of(key), pessimistic -> {
+            attempts.add(pessimistic);
+            throw new ObjectOptimisticLockingFailureException(DepositHasProduct.class, dhp.getId());
+        })).isInstanceOf(ConcurrencyFailureException.class);
+        assertThat(attempts).containsExactly(false, false, false);
+
+        // the conflict rate made the key hot: ADAPTIVE locks it right away
+        assertThat(stockWriteConcurrency.conflictStats().get(0).pessimistic()).isTrue();
+        stockWriteConcurrency.setMode(LockingMode.ADAPTIVE);
+        attempts.clear();
+        stockWriteConcurrency.execute(List.of(key), attempts::add);
+        assertThat(attempts).containsExactly(true);
+
+        // and locks a cold key once its attempts are exhausted
+        attempts.clear();
+        long fallbacks = stockWriteConcurrency.fallbacks();
+        stockWriteConcurrency.execute(List.of(new StockKey(deposit.getId(), -2L)), pessimistic -> {
+            attempts.add(pessimistic);
+            if (!pessimistic) {
+                throw new ObjectOptimisticLockingFailureException("Row updated concurrently", null);
+            }
+            return null;
+        });
+        assertThat(attempts).containsExactly(false, false, false, true);
+        assertThat(stockWriteConcurrency.fallbacks()).isEqualTo(fallbacks + 1);
+
+        // other keys stay optimistic, and a caller's transaction is joined with locks
+        attempts.clear();
+        stockWriteConcurrency.execute(List.of(new StockKey(deposit.getId(), -1L)), attempts::add);
+        transactionTemplate.executeWithoutResult(status ->
+                stockWriteConcurrency.execute(List.of(new StockKey(deposit.getId(), -1L)), attempts::add));
+        assertThat(attempts).containsExactly(false, true);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void lockingModesUnderContention() throws Exception {
+        int threads = Integer.getInteger("benchmark.locking.threads", 8);
+        int batches = Integer.getInteger("benchmark.locking.batches", 300);
+        int coldKeys = Integer.getInteger("benchmark.locking.cold-keys", 2_000);
+        int hotKeys = Integer.getInteger("benchmark.locking.hot-keys", 2);
+        int hotPercent = Integer.getInteger("benchmark.locking.hot-percent", 30);
+
+        long firstProduct = 5_000_000_000L;
+        jdbcTemplate.update("INSERT INTO product (id, name, sku) SELECT CAST(? AS BIGINT) + x, 'Produto', " +
+                "CONCAT('lock-', CAST(? AS BIGINT) + x) FROM SYSTEM_RANGE(1, ?)", firstProduct, firstProduct, coldKeys + hotKeys);
+
+        for (LockingMode mode : List.of(LockingMode.PESSIMISTIC, LockingMode.OPTIMISTIC, LockingMode.ADAPTIVE)) {
+            Deposit deposit = fixtures.newDeposit();
+            jdbcTemplate.update("INSERT INTO deposit_has_product (id, deposit_id, product_id, soh, reserved, available, min, below_min) " +
+                            "SELECT CAST(? AS BIGINT) + x, ?, CAST(? AS BIGINT) + x, 0, 0, 0, -1, false FROM SYSTEM_RANGE(1, ?)",
+                    firstProduct + mode.ordinal() * 1_000_000L, deposit.getId(), firstProduct, coldKeys + hotKeys);
+            stockWriteConcurrency.setMode(mode);
+            stockWriteConcurrency.resetStats();
+            long conflicts = stockWriteConcurrency.conflicts();
+            long retries = stockWriteConcurrency.retries();
+            long fallbacks = stockWriteConcurrency.fallbacks();
+
+            LongAdder failed = new LongAdder();
+            ExecutorService workers = Executors.newFixedThreadPool(threads);
+            List<Future<long[]>> futures = new ArrayList<>();
+            long begin = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                int seed = t;
+                futures.add(workers.submit(() -> {
+                    Random random = new Random(seed);
+                    long[] latencies = new long[batches];
+                    for (int i = 0; i < batches; i++) {
+                        // two cold keys and, in hot-percent of the batches, a hot one
+                        List<InventoryEntry> entries = new ArrayList<>();
+                        entries.add(entry(product(firstProduct + hotKeys + 1 + random.nextInt(coldKeys)), deposit));
+                        entries.add(entry(product(firstProduct + hotKeys + 1 + random.nextInt(coldKeys)), deposit));
+                        if (random.nextInt(100) < hotPercent) {
+                            entries.add(entry(product(firstProduct + 1 + random.nextInt(hotKeys)), deposit));
+                        }
+                        long t0 = System.nanoTime();
+                        try {
+                            inventoryManager.applyBatch(entries, List.of());
+                        } catch (ConcurrencyFailureException e) {
+                            failed.increment(); // OPTIMISTIC gave up, nothing was written
+                        }
+                        latencies[i] = System.nanoTime() - t0;
+                    }
+                    return latencies;
+                }));
+            }
+            long[] latencies = new long[0];
+            for (Future<long[]> future : futures) {
+                long[] part = future.get();
+                latencies = Arrays.copyOf(latencies, latencies.length + part.length);
+                System.arraycopy(part, 0, latencies, latencies.length - part.length, part.length);
+            }
+            double seconds = (System.nanoTime() - begin) / 1e9;
+            workers.shutdown();
+            Arrays.sort(latencies);
+
+            Long soh = jdbcTemplate.queryForObject("SELECT SUM(soh) FROM deposit_has_product WHERE deposit_id = ?", Long.class, deposit.getId());
+            Long lines = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM inventory_entry WHERE deposit_id = ?", Long.class, deposit.getId());
+            List<KeyConflictStats> stats = stockWriteConcurrency.conflictStats();
+            log.info(String.format("locking %s: %d threads x %d batches, %.0f batches/s, p50 %.3f ms p99 %.3f ms, %d conflicts, " +
+                            "%d retries, %d fallbacks, %d failed, %d keys with conflicts (%d pessimistic)",
+                    mode, threads, batches, threads * batches / seconds, percentile(latencies, 0.5), percentile(latencies, 0.99),
+                    stockWriteConcurrency.conflicts() - conflicts, stockWriteConcurrency.retries() - retries,
+                    stockWriteConcurrency.fallbacks() - fallbacks, failed.sum(), stats.size(),
+                    stats.stream().filter(KeyConflictStats::pessimistic).count()));
+            assertThat(soh).isEqualTo(lines);
+        }
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))] / 1e6;
+    }
+
+    private InventoryEntry entry(Product product, Deposit deposit) {
+        return inventoryManager.createInventoryEntry(DATE, product, deposit, 1, InventoryEntryType.IN);
+    }
+
+    private static Product product(long id) {
+        Product product = new Product();
+        product.setId(id);
+        return product;
+    }
+
+    private DepositHasProduct stock(Product product, Deposit deposit) {
+        return depositHasProductRepository.findByDepositIdAndProductId(deposit.getId(), product.getId()).orElseThrow();
+    }
+}
@@ -0,0 +1,148 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.dto.MovementLine;
+import com.uniolab.testeinventario.dto.StockoutForecastResult;
+import com.uniolab.testeinventario.dto.StockoutRow;
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.Product;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest(properties = "inventory.scheduling.enabled=false")
+@Slf4j
+class StockoutForecastServiceTests {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 9, 30);
+
+    @Autowired
+    private StockoutForecastService stockoutForecastService;
+    @Autowired
+    private InventoryManager inventoryManager;
+    @Autowired
+    private ReplenishmentService replenishmentService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private InventoryFixtures fixtures;
+
+    @Test
+    void projectsSohAtTheWindowConsumption() {
+        Product steady = fixtures.newProduct();
+        Product idle = fixtures.newProduct();
+        Product empty = fixtures.newProduct();
+        Deposit deposit = fixtures.newDeposit();
+        Deposit other = fixtures.newDeposit();
+        LocalDateTime start = TODAY.minusDays(60).atStartOfDay();
+        inventoryManager.add(start, steady, deposit, 156);
+        inventoryManager.add(start, idle, deposit, 50);
+        inventoryManager.add(start, empty, deposit, 10);
+        replenishmentService.setLevels(deposit.getId(), steady.getId(), 20, null);
+
+        // 56 in the 28 days before today: 2 a day
+        inventoryManager.remove(TODAY.minusDays(20).atTime(10, 0), steady, deposit, 30);
+        inventoryManager.remove(TODAY.minusDays(1).atTime(10, 0), steady, deposit, 26);
+        // outside the window, a transfer and a movement of today do not count
+        inventoryManager.remove(TODAY.minusDays(40).atTime(10, 0), idle, deposit, 20);
+        inventoryManager.transfer(TODAY.minusDays(5).atTime(10, 0), idle, deposit, other, 10);
+        inventoryManager.remove(TODAY.atTime(10, 0), idle, deposit, 1);
+        inventoryManager.remove(TODAY.minusDays(3).atTime(10, 0), empty, deposit, 10);
+
+        StockoutForecastResult result = stockoutForecastService.forecast(TODAY);
+
+        assertThat(result.deposits()).isGreaterThanOrEqualTo(2);
+        assertThat(stockoutForecastService.stockouts(deposit, TODAY.plusYears(10), 10))
+                .extracting(StockoutRow::productId, StockoutRow::soh, StockoutRow::minDate, StockoutRow::stockoutDate)
+                .containsExactly(
+                        tuple(empty.getId(), 0, null, TODAY),
+                        tuple(steady.getId(), 100, TODAY.plusDays(40), TODAY.plusDays(50)));
+        assertThat(stockoutForecastService.stockouts(deposit, TODAY.plusDays(50), 10))
+                .extracting(StockoutRow::productId).containsExactly(empty.getId());
+        assertThat(stockoutForecastService.stockouts(other, TODAY.plusYears(10), 10)).isEmpty();
+
+        // a later run replaces the forecasts, its window now includes today
+        inventoryManager.add(TODAY.atTime(11, 0), empty, deposit, 7);
+        stockoutForecastService.forecast(TODAY.plusDays(1));
+        assertThat(stockoutForecastService.stockouts(deposit, TODAY.plusYears(10), 10))
+                .extracting(StockoutRow::productId, StockoutRow::soh)
+                .containsExactly(tuple(empty.getId(), 7), tuple(steady.getId(), 100), tuple(idle.getId(), 19));
+    }
+
+    @Test
+    void reachDateIsCappedToTheLastStorableDay() {
+        assertThat(StockoutForecastService.reachDate(TODAY, 10, 0, 3)).isEqualTo(TODAY.plusDays(3));
+        assertThat(StockoutForecastService.reachDate(TODAY, 5, 5, 3)).isEqualTo(TODAY);
+        assertThat(StockoutForecastService.reachDate(TODAY, Integer.MAX_VALUE, 0, 1e-9)).isEqualTo(LocalDate.of(9999, 12, 31));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void forecastThroughput() {
+        int keys = Integer.getInteger("benchmark.forecast.keys", 20_000);
+        int movements = Integer.getInteger("benchmark.forecast.movements", 400_000);
+        int deposits = Integer.getInteger("benchmark.forecast.deposits", 4);
+        int historyPerKey = Integer.getInteger("benchmark.forecast.history-per-key", 100);
+        int historyDays = Integer.getInteger("benchmark.forecast.history-days", 720);
+
+        List<Deposit> depositList = new ArrayList<>();
+        for (int i = 0; i < deposits; i++) {
+            depositList.add(fixtures.newDeposit());
+        }
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < keys / deposits; i++) {
+            products.add(fixtures.newProduct());
+        }
+        List<MovementLine> lines = new ArrayList<>();
+        for (Deposit deposit : depositList) {
+            for (Product product : products) {
+                lines.add(new MovementLine(InventoryEntryType.IN, TODAY.minusDays(60).atStartOfDay(), product.getSku(), deposit.getName(), 1_000_000));
+            }
+        }
+        for (int i = 0; i < movements; i++) {
+            Product product = products.get(i % products.size());
+            int round = i / products.size();
+            Deposit deposit = depositList.get(round % deposits);
+            lines.add(new MovementLine(InventoryEntryType.OUT, TODAY.minusDays(1 + round % 50).atTime(12, 0), product.getSku(), deposit.getName(), 1));
+            if (lines.size() == 5_000) {
+                inventoryManager.importBatch(lines);
+                lines.clear();
+            }
+        }
+        inventoryManager.importBatch(lines);
+        // older history, OUT entries of every key spread over the days before the IN, which the
+        // forecast must skip rather than read
+        for (int d = 0; d < deposits; d++) {
+            jdbcTemplate.update("INSERT INTO inventory_entry (id, type, quantity, date, registration_date, deposit_id, product_id) " +
+                            "SELECT CAST(? AS BIGINT) + dhp.product_id * ? + x, 'OUT', 1, " +
+                            "DATEADD(DAY, -(60 + MOD(x, ?)), CAST(? AS TIMESTAMP)), CURRENT_TIMESTAMP, dhp.deposit_id, dhp.product_id " +
+                            "FROM deposit_has_product dhp, SYSTEM_RANGE(1, ?) WHERE dhp.deposit_id = ?",
+                    5_000_000_000L + d * 1_000_000_000L, historyPerKey, historyDays, TODAY.atStartOfDay(), historyPerKey,
+                    depositList.get(d).getId());
+        }
+        long stored = (long) keys / deposits * deposits * (historyPerKey + 1) + movements;
+
+        stockoutForecastService.forecast(TODAY.minusDays(1)); // warm-up
+        long t0 = System.nanoTime();
+        StockoutForecastResult result = stockoutForecastService.forecast(TODAY);
+        double seconds = (System.nanoTime() - t0) / 1e9;
+
+        log.info(String.format("forecast: %d keys, %d OUT entries of the window read out of %d stored over %d days, " +
+                        "in %.2f s (%,.0f entries/s, %,.0f keys/s), %d forecasts written",
+                result.keys(), result.movements(), stored, 60 + historyDays, seconds, result.movements() / seconds,
+                result.keys() / seconds, result.stockouts()));
+        assertThat(result.stockouts()).isEqualTo(keys / deposits * deposits);
+    }
+}
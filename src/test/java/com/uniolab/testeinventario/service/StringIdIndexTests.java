@@ -0,0 +1,92 @@
+package com.uniolab.testeinventario.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class StringIdIndexTests {
+
+    @Test
+    void putGetAndOverwriteAcrossGrowth() {
+        StringIdIndex index = new StringIdIndex();
+        for (int i = 0; i < 10_000; i++) {
+            index.put("SKU-" + i, i);
+        }
+        index.put("SKU-42", 4242);
+        index.put("Sabão", 7);
+
+        assertThat(index.size()).isEqualTo(10_001);
+        assertThat(index.get("SKU-0")).isZero();
+        assertThat(index.get("SKU-9999")).isEqualTo(9999);
+        assertThat(index.get("SKU-42")).isEqualTo(4242);
+        assertThat(index.get("Sabão")).isEqualTo(7);
+        assertThat(index.get("SKU-10000")).isEqualTo(-1);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void footprintAndLatencyForOneMillionSkus() {
+        int skus = Integer.getInteger("benchmark.catalog.skus", 1_000_000);
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        long before = usedHeap(memory);
+        StringIdIndex index = new StringIdIndex();
+        for (int i = 0; i < skus; i++) {
+            index.put(sku(i), i);
+        }
+        long indexBytes = usedHeap(memory) - before;
+
+        before = usedHeap(memory);
+        Map<String, Long> hashMap = new HashMap<>();
+        for (int i = 0; i < skus; i++) {
+            hashMap.put(sku(i), (long) i);
+        }
+        long hashMapBytes = usedHeap(memory) - before;
+
+        String[] probes = new String[100_000];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = sku((int) ((i * 7919L) % skus));
+        }
+        long sum = 0;
+        for (int round = 0; round < 5; round++) {
+            for (String probe : probes) {
+                sum += index.get(probe);
+            }
+        }
+        long start = System.nanoTime();
+        for (String probe : probes) {
+            sum += index.get(probe);
+        }
+        double nanosPerLookup = (System.nanoTime() - start) / (double) probes.length;
+
+        start = System.nanoTime();
+        for (String probe : probes) {
+            sum += hashMap.get(probe);
+        }
+        double hashMapNanosPerLookup = (System.nanoTime() - start) / (double) probes.length;
+
+        log.info(String.format("catalog lookup: %d SKUs, index %.1f MB (arrays %.1f MB) %.0f ns/lookup, HashMap<String, Long> %.1f MB %.0f ns/lookup",
+                skus, indexBytes / 1e6, index.footprintBytes() / 1e6, nanosPerLookup, hashMapBytes / 1e6, hashMapNanosPerLookup));
+        assertThat(sum).isPositive();
+        assertThat(hashMap).hasSize(skus);
+    }
+
+    private static String sku(int i) {
+        return "SKU-" + (10_000_000 + i);
+    }
+
+    private static long usedHeap(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
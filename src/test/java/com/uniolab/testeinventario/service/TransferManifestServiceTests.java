@@ -0,0 +1,206 @@
+package com.uniolab.testeinventario.service;
+
+import com.uniolab.testeinventario.InventoryFixtures;
+import com.uniolab.testeinventario.dto.InTransitRow;
+import com.uniolab.testeinventario.dto.ManifestLine;
+import com.uniolab.testeinventario.dto.MovementLine;
+import com.uniolab.testeinventario.dto.MovementRow;
+import com.uniolab.testeinventario.enums.InventoryEntryType;
+import com.uniolab.testeinventario.model.Deposit;
+import com.uniolab.testeinventario.model.DepositHasProduct;
+import com.uniolab.testeinventario.model.Product;
+import com.uniolab.testeinventario.model.TransferManifest;
+import com.uniolab.testeinventario.repository.DepositHasProductRepository;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "inventory.scheduling.enabled=false"
+})
+@Slf4j
+class TransferManifestServiceTests {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2024, 9, 2, 8, 0);
+
+    @Autowired
+    private TransferManifestService transferManifestService;
+    @Autowired
+    private InventoryManager inventoryManager;
+    @Autowired
+    private StockQueryService stockQueryService;
+    @Autowired
+    private DepositHasProductRepository depositHasProductRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private InventoryFixtures fixtures;
+
+    @Test
+    void dispatchedLinesAreInTransitUntilReceived() {
+        Product first = fixtures.newProduct();
+        Product second = fixtures.newProduct();
+        Deposit north = fixtures.newDeposit();
+        Deposit south = fixtures.newDeposit();
+        inventoryManager.add(DATE, first, north, 20);
+        inventoryManager.add(DATE, second, north, 20);
+        inventoryManager.add(DATE, first, south, 5);
+
+        String reference = "manifest-" + UUID.randomUUID();
+        TransferManifest manifest = transferManifestService.dispatch(reference, DATE.plusHours(1), north, south, List.of(
+                new ManifestLine(first.getSku(), 4),
+                new ManifestLine(second.getSku(), 7),
+                new ManifestLine(first.getSku(), 2)));
+
+        assertThat(manifest.getLineCount()).isEqualTo(2);
+        assertThat(stock(first, north).getSoh()).isEqualTo(14);
+        assertThat(stock(second, north).getSoh()).isEqualTo(13);
+        assertThat(stock(first, south).getSoh()).isEqualTo(5);
+        assertThat(depositHasProductRepository.findByDepositIdAndProductId(south.getId(), second.getId())).isEmpty();
+        assertThat(transferManifestService.inTransit(south)).extracting(InTransitRow::productId, InTransitRow::quantity)
+                .containsExactlyInAnyOrder(tuple(first.getId(), 6L), tuple(second.getId(), 7L));
+        assertThat(transferManifestService.inTransit(north)).isEmpty();
+
+        assertThatThrownBy(() -> transferManifestService.receive(reference, DATE)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(transferManifestService.receive(reference, DATE.plusHours(5))).hasSize(2);
+
+        assertThat(stock(first, south).getSoh()).isEqualTo(11);
+        assertThat(stock(second, south).getSoh()).isEqualTo(7);
+        assertThat(transferManifestService.inTransit(south)).isEmpty();
+        assertThat(stockQueryService.movements(south.getName(), first.getSku(), null, null, 0, 10))
+                .extracting(MovementRow::type, MovementRow::quantity, MovementRow::transferDepositId)
+                .containsExactly(tuple(InventoryEntryType.IN, 5, null), tuple(InventoryEntryType.IN, 6, north.getId()));
+        assertThat(stockQueryService.movements(north.getName(), first.getSku(), null, null, 0, 10))
+                .extracting(MovementRow::type, MovementRow::quantity, MovementRow::transferDepositId)
+                .containsExactly(tuple(InventoryEntryType.IN, 20, null), tuple(InventoryEntryType.OUT, 6, south.getId()));
+
+        assertThatThrownBy(() -> transferManifestService.receive(reference, DATE.plusHours(6))).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> transferManifestService.dispatch(reference, DATE, north, south,
+                List.of(new ManifestLine(first.getSku(), 1)))).isInstanceOf(IllegalArgumentException.class);
+        assertThat(stock(first, south).getSoh()).isEqualTo(11);
+    }
+
+    @Test
+    void invalidManifestWritesNothing() {
+        Product product = fixtures.newProduct();
+        Deposit north = fixtures.newDeposit();
+        Deposit south = fixtures.newDeposit();
+        inventoryManager.add(DATE, product, north, 10);
+
+        assertThatThrownBy(() -> transferManifestService.dispatch("manifest-" + UUID.randomUUID(), DATE, north, south, List.of(
+                new ManifestLine(product.getSku(), 3),
+                new ManifestLine("unknown-" + UUID.randomUUID(), 1)))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> transferManifestService.dispatch("manifest-" + UUID.randomUUID(), DATE, north, north,
+                List.of(new ManifestLine(product.getSku(), 3)))).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(stock(product, north).getSoh()).isEqualTo(10);
+        assertThat(transferManifestService.inTransit(south)).isEmpty();
+    }
+
+    @Test
+    void statementsDoNotGrowWithLines() {
+        Deposit north = fixtures.newDeposit();
+        Deposit south = fixtures.newDeposit();
+        List<ManifestLine> lines = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            Product product = fixtures.newProduct();
+            inventoryManager.add(DATE, product, north, 100);
+            lines.add(new ManifestLine(product.getSku(), 1));
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        // warm-up, which also creates the destination stock rows
+        String warmUp = "manifest-" + UUID.randomUUID();
+        transferManifestService.dispatch(warmUp, DATE.plusHours(1), north, south, lines);
+        transferManifestService.receive(warmUp, DATE.plusHours(2));
+
+        String few = "manifest-" + UUID.randomUUID();
+        statistics.clear();
+        transferManifestService.dispatch(few, DATE.plusHours(1), north, south, lines.subList(0, 4));
+        transferManifestService.receive(few, DATE.plusHours(2));
+        long fewStatements = statistics.getPrepareStatementCount();
+
+        String many = "manifest-" + UUID.randomUUID();
+        statistics.clear();
+        transferManifestService.dispatch(many, DATE.plusHours(1), north, south, lines);
+        transferManifestService.receive(many, DATE.plusHours(2));
+        // ten times the lines, the same statements but for at most one more fetch of the manifest line
+        // sequence and, in each step, of the entry and daily total sequences
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(fewStatements + 5);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void manifestAgainstPerLineTransfers() {
+        int lines = Integer.getInteger("benchmark.manifest.lines", 2_000);
+        int rounds = Integer.getInteger("benchmark.manifest.rounds", 3);
+
+        Deposit north = fixtures.newDeposit();
+        Deposit south = fixtures.newDeposit();
+        List<Product> products = new ArrayList<>();
+        List<ManifestLine> manifestLines = new ArrayList<>();
+        for (int i = 0; i < lines; i++) {
+            Product product = fixtures.newProduct();
+            products.add(product);
+            manifestLines.add(new ManifestLine(product.getSku(), 1));
+        }
+        inventoryManager.importBatch(products.stream()
+                .map(product -> new MovementLine(InventoryEntryType.IN, DATE, product.getSku(), north.getName(), 1_000))
+                .toList());
+
+        LocalDateTime date = DATE.plusDays(1);
+        transferManifestService.receive(dispatch(north, south, date, manifestLines), date); // warm-up
+        long dispatchNanos = 0;
+        long receiveNanos = 0;
+        for (int round = 0; round < rounds; round++) {
+            date = date.plusHours(1);
+            long t0 = System.nanoTime();
+            String reference = dispatch(north, south, date, manifestLines);
+            long t1 = System.nanoTime();
+            transferManifestService.receive(reference, date);
+            receiveNanos += System.nanoTime() - t1;
+            dispatchNanos += t1 - t0;
+        }
+
+        // the same lines as single-SKU transfers
+        int perLine = Math.min(lines, Integer.getInteger("benchmark.manifest.per-line", 500));
+        long t0 = System.nanoTime();
+        for (int i = 0; i < perLine; i++) {
+            inventoryManager.transfer(date.plusHours(1), products.get(i), north, south, 1);
+        }
+        double perLineMillis = (System.nanoTime() - t0) / 1e6 / perLine;
+
+        double dispatchMillis = dispatchNanos / 1e6 / rounds;
+        double receiveMillis = receiveNanos / 1e6 / rounds;
+        log.info(String.format("manifest: %d lines, dispatch %.0f ms, receive %.0f ms (%.3f ms per line per step)",
+                lines, dispatchMillis, receiveMillis, (dispatchMillis + receiveMillis) / 2 / lines));
+        log.info(String.format("manifest: transfer() per line %.3f ms, %d lines would take %.0f ms",
+                perLineMillis, lines, perLineMillis * lines));
+        assertThat(stock(products.get(0), north).getSoh()).isEqualTo(1_000 - (rounds + 1) - 1);
+    }
+
+    private String dispatch(Deposit source, Deposit destination, LocalDateTime date, List<ManifestLine> lines) {
+        String reference = "manifest-" + UUID.randomUUID();
+        transferManifestService.dispatch(reference, date, source, destination, lines);
+        return reference;
+    }
+
+    private DepositHasProduct stock(Product product, Deposit deposit) {
+        return depositHasProductRepository.findByDepositIdAndProductId(deposit.getId(), product.getId()).orElseThrow();
+    }
+}